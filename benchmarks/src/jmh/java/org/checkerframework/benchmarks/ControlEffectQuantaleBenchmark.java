@@ -0,0 +1,170 @@
+package org.checkerframework.benchmarks;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TreeVisitor;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.genericeffects.ControlEffectQuantale;
+import org.checkerframework.checker.genericeffects.ControlEffectQuantale.NonlocalEffect;
+import org.checkerframework.checker.genericeffects.EffectQuantale;
+import org.checkerframework.checker.genericeffects.FiniteEffectQuantale;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the operations of {@link ControlEffectQuantale}, lifting the tabulated version of
+ * one of the quantales shipped with the Checker Framework. The control effects used are every
+ * underlying element lifted, plus every underlying element as the prefix of a break to one of two
+ * labels, so both the plain-effect fast paths and the non-local paths are exercised.
+ *
+ * <p>With {@code cold} set, the quantale's memo tables are cleared before each pass, as the visitor
+ * does at the start of each method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlEffectQuantaleBenchmark {
+
+  /** The underlying quantale, as for {@link EffectQuantaleBenchmark#quantale}. */
+  @Param({"atomicity", "critical", "casting"})
+  public String quantale;
+
+  /** Whether to clear the memo tables before each pass. */
+  @Param({"true", "false"})
+  public boolean cold;
+
+  /** The control effect quantale under test. */
+  private ControlEffectQuantale<Class<? extends Annotation>> control;
+
+  /** The control effects operated on. */
+  private List<ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect> effects;
+
+  /** Build the quantale and the control effects. */
+  @Setup
+  public void setup() {
+    EffectQuantale<Class<? extends Annotation>> underlying =
+        FiniteEffectQuantale.tabulate(EffectQuantaleBenchmark.createQuantale(quantale), a -> a);
+    // No type factory is needed, since none of the effects throw
+    control = new ControlEffectQuantale<>(underlying, null);
+    List<Class<? extends Annotation>> elements = new ArrayList<>(underlying.getValidEffects());
+    if (!elements.contains(underlying.unit())) {
+      elements.add(underlying.unit());
+    }
+    Tree[] labels = {new Label(), new Label()};
+    effects = new ArrayList<>();
+    for (Class<? extends Annotation> x : elements) {
+      effects.add(control.lift(x));
+      for (Tree label : labels) {
+        effects.add(
+            control.makeEffect(
+                x, null, Collections.singleton(new NonlocalEffect<>(x, label, label))));
+      }
+    }
+  }
+
+  /**
+   * Sequence every pair of control effects.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void seq(Blackhole bh) {
+    if (cold) {
+      control.clearOperationCaches();
+    }
+    for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect l : effects) {
+      for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect r : effects) {
+        bh.consume(checked(control.seq(l, r)));
+      }
+    }
+  }
+
+  /**
+   * Join every pair of control effects.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void lub(Blackhole bh) {
+    if (cold) {
+      control.clearOperationCaches();
+    }
+    for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect l : effects) {
+      for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect r : effects) {
+        bh.consume(control.LUB(l, r));
+      }
+    }
+  }
+
+  /**
+   * Compute the residual of every pair of control effects.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void residual(Blackhole bh) {
+    if (cold) {
+      control.clearOperationCaches();
+    }
+    for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect l : effects) {
+      for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect r : effects) {
+        bh.consume(control.residual(l, r));
+      }
+    }
+  }
+
+  /**
+   * Iterate every control effect.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void iter(Blackhole bh) {
+    for (ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect x : effects) {
+      bh.consume(checked(control.iter(x)));
+    }
+  }
+
+  /**
+   * Reset the quantale's sequencing error log after a failed operation, as the visitor does.
+   *
+   * @param result The result of a sequencing or iteration
+   * @return The result
+   */
+  private ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect checked(
+      ControlEffectQuantale<Class<? extends Annotation>>.ControlEffect result) {
+    if (result == null) {
+      control.lastSequencingErrors();
+    }
+    return result;
+  }
+
+  /** A stand-in for a labeled statement targeted by breaks. */
+  private static final class Label implements Tree {
+    @Override
+    public Kind getKind() {
+      return Kind.LABELED_STATEMENT;
+    }
+
+    @Override
+    public <R, D> R accept(TreeVisitor<R, D> visitor, D data) {
+      return visitor.visitOther(this, data);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.checkerframework.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmarks that run javac in-process with an effect checker over a fixed corpus: the
+ * test directory of that checker. Each invocation parses, attributes, and checks the whole corpus
+ * with {@code -proc:only}, so the time includes javac's front end as well as effect checking.
+ *
+ * <p>The corpus root is given by the {@code benchmarks.corpus} system property, which the build
+ * sets to the checker project's {@code tests} directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EffectCheckerBenchmark {
+
+  /** The test directory checked, which also determines the checker. */
+  @Param({"genericeffects", "atomicity", "critical"})
+  public String corpus;
+
+  /** The checker configuration: the default, or with {@code -AnoEffectTables}. */
+  @Param({"default", "noEffectTables"})
+  public String configuration;
+
+  /** The system Java compiler. */
+  private JavaCompiler javac;
+
+  /** The file manager, shared across invocations so the JDK's classes are only indexed once. */
+  private StandardJavaFileManager fileManager;
+
+  /** The corpus files. */
+  private List<File> files;
+
+  /** The javac options, including the processor. */
+  private List<String> options;
+
+  /**
+   * Locate the corpus and configure the compiler.
+   *
+   * @throws IOException If the corpus cannot be listed
+   */
+  @Setup
+  public void setup() throws IOException {
+    String root = System.getProperty("benchmarks.corpus");
+    if (root == null) {
+      throw new IllegalStateException("Set benchmarks.corpus to the checker's tests directory");
+    }
+    File dir = new File(root, corpus);
+    File[] sources = dir.listFiles((d, name) -> name.endsWith(".java"));
+    if (sources == null || sources.length == 0) {
+      throw new IOException("No Java sources in " + dir);
+    }
+    Arrays.sort(sources);
+    files = Arrays.asList(sources);
+
+    javac = ToolProvider.getSystemJavaCompiler();
+    fileManager = javac.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+    options = new ArrayList<>();
+    options.add("-proc:only");
+    options.add("-processor");
+    options.add(checkerFor(corpus));
+    options.add("-classpath");
+    options.add(System.getProperty("java.class.path"));
+    options.add("-Anomsgtext");
+    if (configuration.equals("noEffectTables")) {
+      options.add("-AnoEffectTables");
+    }
+  }
+
+  /**
+   * Release the file manager.
+   *
+   * @throws IOException If closing the file manager fails
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    fileManager.close();
+  }
+
+  /**
+   * Determine the checker for a test directory.
+   *
+   * @param corpus The name of a test directory
+   * @return The fully-qualified name of the checker the directory's tests use
+   */
+  private static String checkerFor(String corpus) {
+    switch (corpus) {
+      case "genericeffects":
+        return "org.checkerframework.checker.genericeffects.CastingEffectChecker";
+      case "atomicity":
+        return "org.checkerframework.checker.atomicity.AtomicityChecker";
+      case "critical":
+        return "org.checkerframework.checker.critical.CriticalChecker";
+      default:
+        throw new IllegalArgumentException("Unknown corpus " + corpus);
+    }
+  }
+
+  /**
+   * Check the corpus once. The corpus contains expected errors, so the compilation's result is
+   * ignored.
+   *
+   * @return The number of diagnostics reported
+   */
+  @Benchmark
+  public int check() {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+    javac.getTask(new StringWriter(), fileManager, diagnostics, options, null, units).call();
+    return diagnostics.getDiagnostics().size();
+  }
+}
@@ -0,0 +1,154 @@
+package org.checkerframework.benchmarks;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.atomicity.AtomicityQuantale;
+import org.checkerframework.checker.critical.CriticalQuantale;
+import org.checkerframework.checker.genericeffects.CastingEffects;
+import org.checkerframework.checker.genericeffects.EffectQuantale;
+import org.checkerframework.checker.genericeffects.FiniteEffectQuantale;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the operations of the effect quantales shipped with the Checker Framework. Each
+ * benchmark applies one operation to every element (or pair of elements) of the quantale, either
+ * directly or through the lookup tables of {@link FiniteEffectQuantale}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectQuantaleBenchmark {
+
+  /** The quantale to benchmark. */
+  @Param({"atomicity", "critical", "casting"})
+  public String quantale;
+
+  /** Whether to use the quantale directly, or through the tables checkers use by default. */
+  @Param({"direct", "tabulated"})
+  public String representation;
+
+  /** The quantale under test. */
+  private EffectQuantale<Class<? extends Annotation>> lattice;
+
+  /** The elements of the quantale: its valid effects and unit. */
+  private Class<? extends Annotation>[] elements;
+
+  /** Build the quantale and enumerate its elements. */
+  @Setup
+  public void setup() {
+    lattice = createQuantale(quantale);
+    if (representation.equals("tabulated")) {
+      lattice = FiniteEffectQuantale.tabulate(lattice, anno -> anno);
+    }
+    List<Class<? extends Annotation>> effects = new ArrayList<>(lattice.getValidEffects());
+    if (!effects.contains(lattice.unit())) {
+      effects.add(lattice.unit());
+    }
+    @SuppressWarnings("unchecked")
+    Class<? extends Annotation>[] array = effects.toArray(new Class[0]);
+    elements = array;
+  }
+
+  /**
+   * Create one of the quantales benchmarked.
+   *
+   * @param name The name of the quantale, as for {@link #quantale}
+   * @return A fresh instance of the quantale
+   */
+  static EffectQuantale<Class<? extends Annotation>> createQuantale(String name) {
+    switch (name) {
+      case "atomicity":
+        return new AtomicityQuantale();
+      case "critical":
+        return new CriticalQuantale();
+      case "casting":
+        return new CastingEffects();
+      default:
+        throw new IllegalArgumentException("Unknown quantale " + name);
+    }
+  }
+
+  /**
+   * Sequence every pair of elements.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void seq(Blackhole bh) {
+    for (Class<? extends Annotation> l : elements) {
+      for (Class<? extends Annotation> r : elements) {
+        bh.consume(lattice.seq(l, r));
+      }
+    }
+  }
+
+  /**
+   * Join every pair of elements.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void lub(Blackhole bh) {
+    for (Class<? extends Annotation> l : elements) {
+      for (Class<? extends Annotation> r : elements) {
+        bh.consume(lattice.LUB(l, r));
+      }
+    }
+  }
+
+  /**
+   * Compare every pair of elements.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void le(Blackhole bh) {
+    for (Class<? extends Annotation> l : elements) {
+      for (Class<? extends Annotation> r : elements) {
+        bh.consume(lattice.LE(l, r));
+      }
+    }
+  }
+
+  /**
+   * Compute the residual of every pair of elements.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void residual(Blackhole bh) {
+    for (Class<? extends Annotation> sofar : elements) {
+      for (Class<? extends Annotation> target : elements) {
+        bh.consume(lattice.residual(sofar, target));
+      }
+    }
+  }
+
+  /**
+   * Iterate every element.
+   *
+   * @param bh Sink for the results
+   */
+  @Benchmark
+  public void iter(Blackhole bh) {
+    for (Class<? extends Annotation> x : elements) {
+      bh.consume(lattice.iter(x));
+    }
+  }
+}
@@ -114,6 +114,11 @@ public class AtomicityQuantale extends EffectQuantale<Class<? extends Annotation
     return B;
   }
 
+  @Override
+  public Class<? extends Annotation> top() {
+    return N;
+  }
+
   @Override
   public Class<? extends Annotation> iter(Class<? extends Annotation> x) {
     // Iteration is the identity, except for iterating atomic actions
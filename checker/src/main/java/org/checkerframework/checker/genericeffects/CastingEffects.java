@@ -188,6 +188,16 @@ public final class CastingEffects
     return listOfEffects;
   }
 
+  /**
+   * Method that gets the top most effect in the lattice.
+   *
+   * @return The top most effect (UnsafeCast).
+   */
+  @Override
+  public Class<? extends Annotation> top() {
+    return UnsafeCast.class;
+  }
+
   /**
    * Method that gets the bottom most effect in the lattice as defined by the developer.
    *
@@ -1,26 +1,58 @@
 package org.checkerframework.checker.genericeffects;
 
 import com.sun.source.tree.Tree;
-import java.util.AbstractMap;
-import java.util.Deque;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * This class represents the effect of all path executions from the start of a method up to the
  * current program point the checker is examining.
+ *
+ * <p>The history is kept in parallel arrays of effects and AST nodes, in program order, with a
+ * separate stack of mark positions and the context snapshots taken at each mark. None of the
+ * stack operations allocate once the arrays have grown to the depth of the method being checked.
  */
 public class ContextEffect<X> {
 
-  // We abuse Map.Entry as a pair type that doesn't require an extra dependency
-  private Deque<Map.Entry<X, Tree>> rep;
-  private Deque<X> snapshots;
+  /** Initial capacity of the entry and mark arrays */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Effects pushed so far, in program order; null entries mark impossible paths */
+  private Object[] effects;
+  /** The AST node responsible for each entry of {@link #effects} */
+  private Tree[] trees;
+  /** The value of {@link #context} just before each entry of {@link #effects} was added */
+  private Object[] priorContext;
+  /** The value of {@link #contextSinceLastMark} just before each entry was added */
+  private Object[] priorSinceMark;
+  /** Number of live entries in {@link #effects} and {@link #trees} */
+  private int top;
+
+  /** For each outstanding mark, the number of entries that preceded it */
+  private int[] marks;
+  /** For each outstanding mark, the value of {@link #context} when it was placed */
+  private Object[] snapshotContext;
+  /** For each outstanding mark, the value of {@link #contextSinceLastMark} when it was placed */
+  private Object[] snapshotSinceMark;
+  /** Number of outstanding marks */
+  private int markDepth;
+
   private X context;
   private X contextSinceLastMark;
   private EffectQuantale<X> lat;
+  /** Receiver for trace events */
+  private final EffectTraceListener trace;
+  /** Reusable view returned by {@link #rewindToMark()} */
+  private final RewoundView rewound = new RewoundView();
 
+  /**
+   * The number of entries in the context, counting each outstanding mark as an entry.
+   *
+   * @return The number of entries and marks
+   */
   public int size() {
-    return rep.size();
+    return top + markDepth;
   }
 
   /**
@@ -42,60 +74,139 @@ public class ContextEffect<X> {
    *     </code> prints such information, <code>false</code> omits it
    */
   public void debugDump(String prefix, boolean full) {
-    System.err.print(prefix);
-    for (Map.Entry<X, Tree> entr : rep) {
-      if (entr == null) {
-        System.err.print("<mark> | ");
+    StringBuilder sb = new StringBuilder(prefix);
+    // Most recent entries first, as marks are interleaved with the entries they precede
+    int k = markDepth - 1;
+    for (int i = top; i >= 0; i--) {
+      while (k >= 0 && marks[k] == i) {
+        sb.append("<mark> | ");
+        k--;
+      }
+      if (i == 0) {
+        break;
+      }
+      Object eff = effects[i - 1];
+      if (eff == null) {
+        sb.append("<impossible:").append(trees[i - 1]).append("> | ");
+      } else if (full) {
+        sb.append('<').append(eff).append('@').append(trees[i - 1]).append("> | ");
       } else {
-        if (entr.getKey() == null) {
-          System.err.print("<impossible:" + entr.getValue() + "> | ");
-        } else if (full) {
-          System.err.print("<" + entr.getKey() + "@" + entr.getValue() + "> | ");
-        } else {
-          System.err.print(entr.getKey() + " | ");
-        }
+        sb.append(eff).append(" | ");
       }
     }
-    System.err.println();
+    System.err.println(sb);
   }
 
   // private Map<Class<? extends Exception>, Set<Map.Entry<X,Tree>>> excMap;
 
-  // Suppress ErrorProne complaints about access speed; we need a stack impl that supports null.
-  @SuppressWarnings("JdkObsolete")
+  /**
+   * Create an empty context.
+   *
+   * @param l The effect quantale for sequencing
+   */
   public ContextEffect(EffectQuantale<X> l) {
-    rep = new LinkedList<>();
-    snapshots = new LinkedList<>();
+    this(l, EffectTraceListener.NO_OP);
+  }
+
+  /**
+   * Create an empty context which reports its operations to a trace listener.
+   *
+   * @param l The effect quantale for sequencing
+   * @param trace The receiver for trace events
+   */
+  public ContextEffect(EffectQuantale<X> l, EffectTraceListener trace) {
+    this.trace = trace;
+    effects = new Object[INITIAL_CAPACITY];
+    trees = new Tree[INITIAL_CAPACITY];
+    priorContext = new Object[INITIAL_CAPACITY];
+    priorSinceMark = new Object[INITIAL_CAPACITY];
+    marks = new int[INITIAL_CAPACITY];
+    snapshotContext = new Object[INITIAL_CAPACITY];
+    snapshotSinceMark = new Object[INITIAL_CAPACITY];
     lat = l;
     context = lat.unit();
     contextSinceLastMark = lat.unit();
     // excMap = new HashMap<>();
   }
 
+  /**
+   * Retrieve an entry of the history.
+   *
+   * @param i The index of the entry, in program order
+   * @return The effect at that index, or null if it marks an impossible path
+   */
+  @SuppressWarnings("unchecked")
+  private X effectAt(int i) {
+    return (X) effects[i];
+  }
+
+  /**
+   * Append an entry to the history, growing the arrays if necessary. This also records the context
+   * prior to the entry, which must therefore be called before the context is updated.
+   *
+   * @param eff The effect, or null to mark an impossible path
+   * @param t The AST node responsible for the entry
+   */
+  private void append(X eff, Tree t) {
+    if (top == effects.length) {
+      effects = Arrays.copyOf(effects, top * 2);
+      trees = Arrays.copyOf(trees, top * 2);
+      priorContext = Arrays.copyOf(priorContext, top * 2);
+      priorSinceMark = Arrays.copyOf(priorSinceMark, top * 2);
+    }
+    effects[top] = eff;
+    trees[top] = t;
+    priorContext[top] = context;
+    priorSinceMark[top] = contextSinceLastMark;
+    top++;
+  }
+
   /** Mark the context in places restoration will be required */
   public void mark() {
-    rep.addFirst(null);
-    snapshots.addFirst(context);
-    snapshots.addFirst(contextSinceLastMark);
+    if (markDepth == marks.length) {
+      marks = Arrays.copyOf(marks, markDepth * 2);
+      snapshotContext = Arrays.copyOf(snapshotContext, markDepth * 2);
+      snapshotSinceMark = Arrays.copyOf(snapshotSinceMark, markDepth * 2);
+    }
+    marks[markDepth] = top;
+    snapshotContext[markDepth] = context;
+    snapshotSinceMark[markDepth] = contextSinceLastMark;
+    markDepth++;
     // Context since last mark needs to now be unit
     contextSinceLastMark = lat.unit();
+    trace.mark(markDepth);
   }
 
   /**
-   * Return the effects up to the last snapshot, in program-order
+   * Remove the most recent mark, restoring the context to its state when the mark was placed.
    *
-   * <p>Suppress ErrorProne complaints about access speed; we need a stack impl that supports null.
+   * @return The number of entries that preceded the mark
    */
-  @SuppressWarnings("JdkObsolete")
-  public LinkedList<X> rewindToMark() {
-    LinkedList<X> results = new LinkedList<>();
-    while (rep.peekFirst() != null) {
-      results.addFirst(rep.removeFirst().getKey());
-    }
-    rep.removeFirst(); // remove null
-    contextSinceLastMark = snapshots.removeFirst();
-    context = snapshots.removeFirst();
-    return results;
+  @SuppressWarnings("unchecked")
+  private int popMark() {
+    assert markDepth > 0 : "No mark to rewind to";
+    markDepth--;
+    contextSinceLastMark = (X) snapshotSinceMark[markDepth];
+    context = (X) snapshotContext[markDepth];
+    snapshotSinceMark[markDepth] = null;
+    snapshotContext[markDepth] = null;
+    return marks[markDepth];
+  }
+
+  /**
+   * Return the effects up to the last snapshot, in program-order.
+   *
+   * <p>The result is a view of the removed entries rather than a copy, and is only valid until the
+   * next modification of this context.
+   *
+   * @return The effects since the last mark, in program order
+   */
+  public List<X> rewindToMark() {
+    int from = popMark();
+    rewound.from = from;
+    rewound.to = top;
+    top = from;
+    return rewound;
   }
 
   /**
@@ -107,7 +218,7 @@ public class ContextEffect<X> {
    */
   public boolean pushEffect(X eff, Tree t) {
     assert (eff != null);
-    rep.addFirst(new AbstractMap.SimpleEntry<X, Tree>(eff, t));
+    append(eff, t);
     // TODO: do legwork to verify this assertion is true (i.e., enforced by Java's compiler)
     assert context != null
         : "System assumes it is impossible to have code visited after (only) returns and/or throws";
@@ -117,14 +228,17 @@ public class ContextEffect<X> {
     if (sq != null) {
       context = sq;
       contextSinceLastMark = lat.seq(contextSinceLastMark, eff);
+      trace.push(eff, t, true);
       return true;
     } else {
+      trace.push(eff, t, false);
+      trace.sequencingFailure(context, eff, t);
       return false;
     }
   }
 
   public void markImpossible(Tree t) {
-    rep.addFirst(new AbstractMap.SimpleEntry<X, Tree>(null, t));
+    append(null, t);
     context = null;
     contextSinceLastMark = null;
   }
@@ -214,44 +328,28 @@ public class ContextEffect<X> {
   }
 
   public X latestEffect() {
-    return rep.peekFirst().getKey();
+    assert top > (markDepth == 0 ? 0 : marks[markDepth - 1]) : "No effect since the last mark";
+    return effectAt(top - 1);
   }
 
+  /**
+   * Replace the most recent entry with the unit effect, recomputing the context accordingly. Since
+   * sequencing with the unit is the identity, the new context is exactly the one recorded before
+   * that entry was added, so no replay of earlier entries is needed.
+   */
+  @SuppressWarnings("unchecked")
   public void rewriteLastEffectToCommutativeUnit() {
     assert lat.isCommutative();
-    Map.Entry<X, Tree> oldfirst = rep.removeFirst();
-    rep.addFirst(new AbstractMap.SimpleEntry<X, Tree>(lat.unit(), oldfirst.getValue()));
-    // Now need to recompute context and contextSinceLastMark
-    // Start by popping and re-pushing, since there's no direct access
-    if (snapshots.size() == 0) {
-      // replay the whole thing
-      contextSinceLastMark = lat.unit();
-      context = lat.unit();
-    } else {
-      // replay from last snapshot
-      contextSinceLastMark = snapshots.removeFirst();
-      context = snapshots.removeFirst();
-      snapshots.addFirst(context);
-      snapshots.addFirst(contextSinceLastMark);
-    }
-    for (Map.Entry<X, Tree> nd : rep) {
-      if (nd == null) {
-        break;
-      }
-      contextSinceLastMark = lat.seq(contextSinceLastMark, nd.getKey());
-      context = lat.seq(context, nd.getKey());
-    }
+    effects[top - 1] = lat.unit();
+    context = (X) priorContext[top - 1];
+    contextSinceLastMark = (X) priorSinceMark[top - 1];
   }
 
   public X squashMark(Tree t) {
     X squashed = contextSinceLastMark;
     assert (squashed != null) : "Error paths should not be squashed";
-    while (rep.peekFirst() != null) {
-      rep.removeFirst();
-    }
-    rep.removeFirst(); // remove null
-    contextSinceLastMark = snapshots.removeFirst();
-    context = snapshots.removeFirst();
+    top = popMark();
+    trace.squash(squashed, t);
     pushEffect(squashed, t);
     return squashed;
   }
@@ -265,4 +363,24 @@ public class ContextEffect<X> {
   //    return results;
   // }
 
+  /** Read-only view of the entries most recently removed by {@link #rewindToMark()}. */
+  private class RewoundView extends AbstractList<X> {
+    /** Index of the first entry of the view */
+    int from;
+    /** Index one past the last entry of the view */
+    int to;
+
+    @Override
+    public X get(int index) {
+      if (index < 0 || index >= to - from) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+      }
+      return effectAt(from + index);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+  }
 }
@@ -3,10 +3,15 @@ package org.checkerframework.checker.genericeffects;
 import com.sun.source.tree.Tree;
 import com.sun.tools.javac.code.Type.ClassType;
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.WeakHashMap;
 import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.Pair;
 
@@ -31,6 +36,11 @@ import org.checkerframework.javacutil.Pair;
  *   <li>Switch statements for breaks
  * </ul>
  *
+ * <p>Control effects are hash-consed: {@link #makeEffect(Object, Set, Set)} (and the other
+ * operations here) return a single shared instance for each pure underlying effect, and a canonical
+ * instance for each structurally identical effect with non-local behaviors, so that equal effects
+ * produced while checking a compilation unit are usually the same object.
+ *
  * @param <X> The representation type of the underlying effect quantale.
  */
 @SuppressWarnings("interning:not.interned")
@@ -43,6 +53,16 @@ public class ControlEffectQuantale<X>
   /** Reference to a GnericEffectTypeFactory to check subtyping among exceptions */
   private GenericEffectTypeFactory<X> xtypeFactory;
 
+  /** The canonical control effect with no non-local behaviors, for each underlying effect */
+  private final Map<X, ControlEffect> pureEffects = new HashMap<>();
+
+  /**
+   * Canonical control effects with non-local behaviors. Entries disappear once the canonical effect
+   * (which holds the only strong reference to its key) is no longer in use.
+   */
+  private final Map<InternKey<X>, WeakReference<ControlEffect>> internedEffects =
+      new WeakHashMap<>();
+
   /** A representation type for a control effect. */
   public class ControlEffect {
 
@@ -60,21 +80,34 @@ public class ControlEffectQuantale<X>
     /** Effects up to points where breaks cause non-local exits from cases and loops */
     public final Set<NonlocalEffect<X>> breakset;
 
+    /** The key this effect is interned under, kept alive by this reference; null if pure */
+    @SuppressWarnings("UnusedVariable") // only referenced to keep the weak intern entry alive
+    private final InternKey<X> internKey;
+
+    /** Cached hash code, or 0 if not yet computed */
+    private int hash;
+
     /**
-     * Construct a control effect.
+     * Construct a control effect. Use {@link ControlEffectQuantale#makeEffect(Object, Set, Set)}
+     * instead, which returns canonical instances.
      *
      * @param base Underlying effect of normal control flow returns
      * @param excs Exceptions thrown and underlying effects describing behavior up to the throw
      * @param breakset Behaviors up to a break statement
+     * @param internKey The key this effect is interned under, or null for pure effects
      */
-    ControlEffect(
-        X base, Set<Pair<ClassType, NonlocalEffect<X>>> excs, Set<NonlocalEffect<X>> breakset) {
+    private ControlEffect(
+        X base,
+        Set<Pair<ClassType, NonlocalEffect<X>>> excs,
+        Set<NonlocalEffect<X>> breakset,
+        InternKey<X> internKey) {
       assert (excs == null || excs.size() > 0);
       assert (breakset == null || breakset.size() > 0);
       assert (base != null || excs != null || breakset != null);
       this.base = base;
       this.excs = excs;
       this.breakset = breakset;
+      this.internKey = internKey;
     }
 
     /**
@@ -90,7 +123,7 @@ public class ControlEffectQuantale<X>
      * @param breakset Behaviors up to a break statement
      * @param hack A boolean to select this override. Ignored.
      */
-    ControlEffect(
+    private ControlEffect(
         X base,
         Set<Pair<ClassType, NonlocalEffect<X>>> excs,
         Set<NonlocalEffect<X>> breakset,
@@ -98,6 +131,26 @@ public class ControlEffectQuantale<X>
       this.base = base;
       this.excs = excs;
       this.breakset = breakset;
+      this.internKey = null;
+    }
+
+    /**
+     * Check whether this effect has no non-local behaviors, in which case it is the canonical pure
+     * effect for its base.
+     *
+     * @return True if this effect has neither exceptions nor breaks
+     */
+    private boolean isPure() {
+      return excs == null && breakset == null;
+    }
+
+    /**
+     * Retrieve the quantale this effect belongs to, i.e., the one that interned it.
+     *
+     * @return The enclosing control effect quantale
+     */
+    private ControlEffectQuantale<X> owner() {
+      return ControlEffectQuantale.this;
     }
 
     @Override
@@ -112,6 +165,10 @@ public class ControlEffectQuantale<X>
       if (this == o) return true;
       if (null == o || !(o instanceof ControlEffectQuantale<?>.ControlEffect)) return false;
       ControlEffect other = (ControlEffect) o;
+      if (this.isPure() && other.isPure() && this.owner() == other.owner() && this.base != null) {
+        // Pure effects are canonical per base within a quantale
+        return false;
+      }
       boolean baseOK =
           this.base == other.base || (this.base != null && this.base.equals(other.base));
       if (!baseOK) return false;
@@ -153,25 +210,43 @@ public class ControlEffectQuantale<X>
 
     @Override
     public int hashCode() {
-      return (base != null ? base.hashCode() : 3)
-          + (excs != null ? excs.hashCode() : 5)
-          + (breakset != null ? breakset.hashCode() : 13);
+      // Components are never mutated after construction, so the hash can be cached
+      int h = hash;
+      if (h == 0) {
+        h =
+            (base != null ? base.hashCode() : 3)
+                + (excs != null ? excs.hashCode() : 5)
+                + (breakset != null ? breakset.hashCode() : 13);
+        hash = h;
+      }
+      return h;
     }
 
     public ControlEffect filtering(Set<ClassType> caught) {
       if (this.excs == null) {
         return this;
       } else {
+        long[] caughtMask = getExceptionTypes().mask(caught);
+        boolean anyCaught = false;
+        for (Pair<ClassType, NonlocalEffect<X>> p : this.excs) {
+          if (getExceptionTypes().isSubtypeOfAny(p.first, caughtMask)) {
+            anyCaught = true;
+            break;
+          }
+        }
+        if (!anyCaught) {
+          return this;
+        }
         Set<Pair<ClassType, NonlocalEffect<X>>> filtered = null;
         for (Pair<ClassType, NonlocalEffect<X>> p : this.excs) {
-          if (!caught.stream().anyMatch(c -> isSubtype(p.first, c))) {
+          if (!getExceptionTypes().isSubtypeOfAny(p.first, caughtMask)) {
             if (filtered == null) {
               filtered = new HashSet<>();
             }
             filtered.add(p);
           }
         }
-        return new ControlEffect(this.base, filtered, this.breakset, false);
+        return makeEffect(this.base, filtered, this.breakset);
       }
     }
 
@@ -188,8 +263,9 @@ public class ControlEffectQuantale<X>
     public ControlEffect withUnbounded(X u, Set<ClassType> caught, Tree target) {
       Set<Pair<ClassType, NonlocalEffect<X>>> filtered = new HashSet<>();
       if (this.excs != null) {
+        long[] caughtMask = getExceptionTypes().mask(caught);
         for (Pair<ClassType, NonlocalEffect<X>> p : this.excs) {
-          if (!caught.stream().anyMatch(c -> isSubtype(p.first, c))) {
+          if (!getExceptionTypes().isSubtypeOfAny(p.first, caughtMask)) {
             filtered.add(p);
           }
         }
@@ -197,7 +273,7 @@ public class ControlEffectQuantale<X>
       for (ClassType t : caught) {
         filtered.add(Pair.of(t, new UnboundedNonlocalEffect<X>(u, target)));
       }
-      return new ControlEffect(this.base, filtered, this.breakset);
+      return makeEffect(this.base, filtered, this.breakset);
     }
 
     /**
@@ -262,7 +338,175 @@ public class ControlEffectQuantale<X>
         }
       }
 
-      return new ControlEffect(base, excs, breakset);
+      return makeEffect(base, excs, breakset);
+    }
+  }
+
+  /**
+   * Retrieve the canonical control effect with the given components. Empty sets of non-local
+   * behaviors may be given as either null or empty sets. In rare intermediate computations (see
+   * {@link ControlEffect#filtering(Set)}) every component may be absent; such empty effects are
+   * not interned.
+   *
+   * @param base Underlying effect of normal control flow returns, or null if there are none
+   * @param excs Exceptions thrown and underlying effects describing behavior up to the throw
+   * @param breakset Behaviors up to a break statement
+   * @return The canonical control effect with these components
+   */
+  public ControlEffect makeEffect(
+      X base, Set<Pair<ClassType, NonlocalEffect<X>>> excs, Set<NonlocalEffect<X>> breakset) {
+    if (excs != null && excs.isEmpty()) {
+      excs = null;
+    }
+    if (breakset != null && breakset.isEmpty()) {
+      breakset = null;
+    }
+    if (excs == null && breakset == null) {
+      if (base == null) {
+        return new ControlEffect(null, null, null, false);
+      }
+      ControlEffect pure = pureEffects.get(base);
+      if (pure == null) {
+        pure = new ControlEffect(base, null, null, null);
+        pureEffects.put(base, pure);
+      }
+      return pure;
+    }
+    InternKey<X> key = new InternKey<>(base, excs, breakset);
+    WeakReference<ControlEffect> ref = internedEffects.get(key);
+    ControlEffect canonical = ref == null ? null : ref.get();
+    if (canonical == null) {
+      canonical = new ControlEffect(base, excs, breakset, key);
+      internedEffects.put(key, new WeakReference<>(canonical));
+    }
+    return canonical;
+  }
+
+  /**
+   * Structural identity of a control effect with non-local behaviors, used to intern them. Unlike
+   * {@link ControlEffect#equals(Object)}, this distinguishes non-local effects by their source
+   * trees and boundedness, so interning never changes which locations errors are reported at.
+   */
+  private static final class InternKey<X> {
+    /** Underlying effect of normal returns, possibly null */
+    final X base;
+    /** Exceptional behaviors, possibly null */
+    final Set<Pair<ClassType, NonlocalEffect<X>>> excs;
+    /** Break behaviors, possibly null */
+    final Set<NonlocalEffect<X>> breakset;
+    /** Precomputed hash code */
+    final int hash;
+
+    /**
+     * Build an intern key.
+     *
+     * @param base Underlying effect of normal returns, possibly null
+     * @param excs Exceptional behaviors, possibly null
+     * @param breakset Break behaviors, possibly null
+     */
+    InternKey(
+        X base, Set<Pair<ClassType, NonlocalEffect<X>>> excs, Set<NonlocalEffect<X>> breakset) {
+      this.base = base;
+      this.excs = excs;
+      this.breakset = breakset;
+      int h = Objects.hashCode(base);
+      if (excs != null) {
+        for (Pair<ClassType, NonlocalEffect<X>> p : excs) {
+          h += 31 * Objects.hashCode(p.first) + strictHash(p.second);
+        }
+      }
+      if (breakset != null) {
+        for (NonlocalEffect<X> b : breakset) {
+          h += 17 * strictHash(b);
+        }
+      }
+      this.hash = h;
+    }
+
+    /**
+     * Hash a non-local effect consistently with {@link #strictEquals}.
+     *
+     * @param e A non-local effect
+     * @return Its hash code
+     */
+    static int strictHash(NonlocalEffect<?> e) {
+      return e.effect.hashCode()
+          + 7 * System.identityHashCode(e.target)
+          + 11 * System.identityHashCode(e.src);
+    }
+
+    /**
+     * Compare two non-local effects structurally, including source trees and boundedness.
+     *
+     * @param a A non-local effect
+     * @param b Another non-local effect
+     * @return True if they are interchangeable for all purposes
+     */
+    static boolean strictEquals(NonlocalEffect<?> a, NonlocalEffect<?> b) {
+      return a == b
+          || (a.effect.equals(b.effect)
+              && a.target == b.target
+              && a.src == b.src
+              && a.isUnbounded() == b.isUnbounded());
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof InternKey)) {
+        return false;
+      }
+      @SuppressWarnings("unchecked")
+      InternKey<X> other = (InternKey<X>) o;
+      if (hash != other.hash || !Objects.equals(base, other.base)) {
+        return false;
+      }
+      // These sets are small, so quadratic matching is cheaper than building strict copies
+      if (excs != other.excs) {
+        if (excs == null || other.excs == null || excs.size() != other.excs.size()) {
+          return false;
+        }
+        for (Pair<ClassType, NonlocalEffect<X>> here : excs) {
+          boolean found = false;
+          for (Pair<ClassType, NonlocalEffect<X>> there : other.excs) {
+            if (Objects.equals(here.first, there.first)
+                && strictEquals(here.second, there.second)) {
+              found = true;
+              break;
+            }
+          }
+          if (!found) {
+            return false;
+          }
+        }
+      }
+      if (breakset != other.breakset) {
+        if (breakset == null
+            || other.breakset == null
+            || breakset.size() != other.breakset.size()) {
+          return false;
+        }
+        for (NonlocalEffect<X> here : breakset) {
+          boolean found = false;
+          for (NonlocalEffect<X> there : other.breakset) {
+            if (strictEquals(here, there)) {
+              found = true;
+              break;
+            }
+          }
+          if (!found) {
+            return false;
+          }
+        }
+      }
+      return true;
     }
   }
 
@@ -272,7 +516,7 @@ public class ControlEffectQuantale<X>
    * @param <T> The set element type
    * @param a One set
    * @param b Another set
-   * @return A newly-allocated set containing all elements of each input set
+   * @return A set containing all elements of each input set, which may be one of the inputs
    */
   private static <T> Set<T> union(Set<T> a, Set<T> b) {
     /*
@@ -282,6 +526,13 @@ public class ControlEffectQuantale<X>
     */
     assert (a != null);
     assert (b != null);
+    // Sets are never mutated once part of an effect, so an input can be shared when it already
+    // contains the other
+    if (a == b || a.containsAll(b)) {
+      return a;
+    } else if (b.containsAll(a)) {
+      return b;
+    }
     // TODO: perf headache for large effects
     Set<T> result = new HashSet<>(a);
     result.addAll(b);
@@ -375,15 +626,11 @@ public class ControlEffectQuantale<X>
      *     otherwise <code>false</code>
      */
     public boolean LE(EffectQuantale<X> underlying, NonlocalEffect<X> other) {
-      System.err.println("Checking if " + this + " is <= " + other);
-      boolean res =
-          ((other.target == null
-                      || target == other.target
-                      || (target != null && target.equals(other.target)))
-                  && underlying.LE(effect, other.effect))
-              || other.isUnbounded();
-      System.err.println("Checking if " + this + " is <= " + other + ": " + res);
-      return res;
+      return ((other.target == null
+                  || target == other.target
+                  || (target != null && target.equals(other.target)))
+              && underlying.LE(effect, other.effect))
+          || other.isUnbounded();
     }
 
     @Override
@@ -426,8 +673,61 @@ public class ControlEffectQuantale<X>
     this.xtypeFactory = xtypeFactory;
   }
 
+  /** Memo table for {@link #LUB} */
+  private final EffectOperationCache<ControlEffect> lubCache = new EffectOperationCache<>();
+
+  /** Memo table for successful calls to {@link #seq} */
+  private final EffectOperationCache<ControlEffect> seqCache = new EffectOperationCache<>();
+
+  /** Memo table for {@link #residual} */
+  private final EffectOperationCache<ControlEffect> residualCache = new EffectOperationCache<>();
+
+  /**
+   * Discard memoized operation results. The visitor calls this at the start of each method, since
+   * results for one method's effects are rarely useful for the next.
+   */
+  public void clearOperationCaches() {
+    lubCache.clear();
+    seqCache.clear();
+    residualCache.clear();
+  }
+
+  /**
+   * Describe the hit rates of the memoized operations, for {@code -AresourceStats}.
+   *
+   * @return A human-readable summary of memo table hits and misses
+   */
+  public String operationCacheStats() {
+    return "LUB "
+        + lubCache.hits()
+        + "/"
+        + (lubCache.hits() + lubCache.misses())
+        + ", seq "
+        + seqCache.hits()
+        + "/"
+        + (seqCache.hits() + seqCache.misses())
+        + ", residual "
+        + residualCache.hits()
+        + "/"
+        + (residualCache.hits() + residualCache.misses());
+  }
+
   @Override
   public ControlEffect LUB(ControlEffect l, ControlEffect r) {
+    if (lubCache.lookup(l, r)) {
+      return lubCache.result();
+    }
+    return lubCache.store(l, r, computeLUB(l, r));
+  }
+
+  /**
+   * Compute the join of two control effects, without memoization.
+   *
+   * @param l One control effect
+   * @param r Another control effect
+   * @return The least upper bound of the two effects, or null if it does not exist
+   */
+  private ControlEffect computeLUB(ControlEffect l, ControlEffect r) {
     X base;
     Set<Pair<ClassType, NonlocalEffect<X>>> emap;
     Set<NonlocalEffect<X>> bset;
@@ -490,11 +790,26 @@ public class ControlEffectQuantale<X>
       // emap = m;
     }
 
-    return new ControlEffect(base, emap, bset);
+    return makeEffect(base, emap, bset);
+  }
+
+  /** Numbering of exception types with memoized subtyping, created on first use */
+  private ExceptionTypeIndex exceptionTypes;
+
+  /**
+   * Retrieve the index of exception types used for subtype tests among thrown and caught types.
+   *
+   * @return The exception type index for this quantale
+   */
+  public ExceptionTypeIndex getExceptionTypes() {
+    if (exceptionTypes == null) {
+      exceptionTypes = new ExceptionTypeIndex(xtypeFactory.getProcessingEnv().getTypeUtils());
+    }
+    return exceptionTypes;
   }
 
   private boolean isSubtype(ClassType a, ClassType b) {
-    return xtypeFactory.getProcessingEnv().getTypeUtils().isSubtype(a, b);
+    return getExceptionTypes().isSubtype(a, b);
   }
 
   public static class BadSequencing<X> {
@@ -545,13 +860,32 @@ public class ControlEffectQuantale<X>
   // the set if necessary. This will be minimal set allocation.
   @Override
   public ControlEffect seq(ControlEffect l, ControlEffect r) {
+    assert (lastErrors == null)
+        : "ControlEffect.seq called without retrieving errors of prior call";
+    // Only successful sequencing is memoized, since failures must also report their causes
+    if (seqCache.lookup(l, r)) {
+      return seqCache.result();
+    }
+    ControlEffect result = computeSeq(l, r);
+    if (result != null) {
+      seqCache.store(l, r, result);
+    }
+    return result;
+  }
+
+  /**
+   * Sequence two control effects, without memoization. On failure, the causes are recorded for
+   * {@link #lastSequencingErrors()}.
+   *
+   * @param l The control effect executed first
+   * @param r The control effect executed second
+   * @return The sequential composition of the two effects, or null if it does not exist
+   */
+  private ControlEffect computeSeq(ControlEffect l, ControlEffect r) {
     X base;
     Set<Pair<ClassType, NonlocalEffect<X>>> emap = null;
     Set<NonlocalEffect<X>> bset;
 
-    assert (lastErrors == null)
-        : "ControlEffect.seq called without retrieving errors of prior call";
-
     if (l.base == null) {
       // No LHS base effect, no overall base (or anything else)
       return l;
@@ -601,7 +935,7 @@ public class ControlEffectQuantale<X>
     if (emap != null && emap.size() == 0) emap = null;
     // Error-free if lastErrors is still null
     if (lastErrors == null) {
-      return new ControlEffect(base, emap, bset);
+      return makeEffect(base, emap, bset);
     } else {
       return null;
     }
@@ -619,7 +953,7 @@ public class ControlEffectQuantale<X>
 
   @Override
   public ControlEffect unit() {
-    return new ControlEffect(underlying.unit(), null, null);
+    return makeEffect(underlying.unit(), null, null);
   }
 
   /**
@@ -633,7 +967,7 @@ public class ControlEffectQuantale<X>
   public ControlEffect breakout(Tree target, Tree src) {
     Set<NonlocalEffect<X>> bset = new HashSet<>();
     bset.add(new NonlocalEffect<X>(underlying.unit(), target, src));
-    return new ControlEffect(null, null, bset);
+    return makeEffect(null, null, bset);
   }
 
   /**
@@ -650,7 +984,7 @@ public class ControlEffectQuantale<X>
   public ControlEffect raise(ClassType exc, Tree target, Tree src) {
     Set<Pair<ClassType, NonlocalEffect<X>>> throwset = new HashSet<>();
     throwset.add(Pair.of(exc, new NonlocalEffect<X>(underlying.unit(), target, src)));
-    return new ControlEffect(null, throwset, null);
+    return makeEffect(null, throwset, null);
   }
 
   /**
@@ -660,7 +994,7 @@ public class ControlEffectQuantale<X>
    * @return The embedding of that effect as a control effect
    */
   public ControlEffect lift(X x) {
-    return new ControlEffect(x, null, null);
+    return makeEffect(x, null, null);
   }
 
   @Override
@@ -702,7 +1036,7 @@ public class ControlEffectQuantale<X>
     }
 
     if (lastErrors == null) {
-      return new ControlEffect(underlying_iter, exc, brks);
+      return makeEffect(underlying_iter, exc, brks);
     } else {
       return null;
     }
@@ -749,6 +1083,42 @@ public class ControlEffectQuantale<X>
    */
   @Override
   public ControlEffect residual(ControlEffect sofar, ControlEffect target) {
+    if (residualCache.lookup(sofar, target)) {
+      return residualCache.result();
+    }
+    return residualCache.store(sofar, target, computeResidual(sofar, target));
+  }
+
+  /**
+   * Determine, without computing it, whether a residual is known to be defined: both effects are
+   * plain underlying effects, and every underlying residual with respect to the target's is
+   * defined (e.g., because the target is the underlying quantale's top element). This is the case
+   * where {@link #residual(ControlEffect, ControlEffect)} merely lifts the underlying residual.
+   *
+   * @param sofar The control effect executed thus far
+   * @param target The upper bound on the overall control effect
+   * @return True if {@code residual(sofar, target)} is certainly defined
+   */
+  public boolean residualTriviallyDefined(ControlEffect sofar, ControlEffect target) {
+    return sofar.base != null
+        && sofar.breakset == null
+        && sofar.excs == null
+        && target.base != null
+        && target.breakset == null
+        && target.excs == null
+        && underlying.residualAlwaysDefined(target.base);
+  }
+
+  /**
+   * Compute the residual of two control effects, without memoization. See {@link
+   * #residual(ControlEffect, ControlEffect)}.
+   *
+   * @param sofar The control effect executed thus far
+   * @param target The upper bound on the overall control effect
+   * @return The greatest control effect which can follow {@code sofar} within {@code target}, or
+   *     null if none exists
+   */
+  private ControlEffect computeResidual(ControlEffect sofar, ControlEffect target) {
     // TODO: Fix for exception inheritance
     if (sofar.base == null) {
       // anything sequenced after only non-local behaviors has no impact on the overall effect, so
@@ -760,7 +1130,6 @@ public class ControlEffectQuantale<X>
       } else {
         // sofar isn't less than target, and we can't sequence anything on the right of it to make
         // it so
-        System.err.println("sofar has null underlying, so must be LE target, but isn't");
         return null;
       }
     }
@@ -772,7 +1141,6 @@ public class ControlEffectQuantale<X>
         && target.excs == null) {
       X baseResid = underlying.residual(sofar.base, target.base);
       if (baseResid == null) {
-        System.err.println("sofar.base has no underlying residual with target.base");
         return null;
       }
       return lift(baseResid);
@@ -798,7 +1166,7 @@ public class ControlEffectQuantale<X>
             }
           }
           if (throwResiduals.size() > 0) {
-            return new ControlEffect(null, throwResiduals, null);
+            return makeEffect(null, throwResiduals, null);
           }
         }
         // Otherwise, this can't lead to any valid exceptions/breaks either
@@ -894,19 +1262,11 @@ public class ControlEffectQuantale<X>
                 && (possibleUB.second.isUnbounded()
                     || underlying.LE(exc.second.effect, possibleUB.second.effect))) {
               // overApproxExc.add(possibleUB);
-              System.err.println(exc + " is permitted by " + possibleUB);
               permitted = true;
-            } else {
-              System.err.println(exc + " is NOT permitted by " + possibleUB);
             }
           }
           if (!permitted) {
             // Sofar throws something the target doesn't allow at all
-            System.err.println(
-                "WIP: sofar throws "
-                    + exc
-                    + " but target doesn't allow this: "
-                    + target.excs); // return null;
             return null;
           }
         }
@@ -943,7 +1303,7 @@ public class ControlEffectQuantale<X>
       }
       if (excMap.size() == 0) excMap = null;
 
-      return new ControlEffect(baseResid, excMap, breakset);
+      return makeEffect(baseResid, excMap, breakset);
     }
   }
 
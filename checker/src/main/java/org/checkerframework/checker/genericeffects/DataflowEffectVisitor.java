@@ -0,0 +1,244 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.code.Type.ClassType;
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import org.checkerframework.dataflow.analysis.ForwardAnalysisImpl;
+import org.checkerframework.dataflow.analysis.TransferInput;
+import org.checkerframework.dataflow.analysis.TransferResult;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.UnderlyingAST;
+import org.checkerframework.dataflow.cfg.UnderlyingAST.CFGLambda;
+import org.checkerframework.dataflow.cfg.UnderlyingAST.CFGMethod;
+import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.block.ExceptionBlock;
+import org.checkerframework.dataflow.cfg.node.MarkerNode;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.cfg.node.ThrowNode;
+import org.checkerframework.javacutil.Pair;
+import org.checkerframework.javacutil.TreePathUtil;
+import org.checkerframework.javacutil.TreeUtils;
+
+/**
+ * A visitor that checks method bodies with a dataflow analysis over their control flow graphs,
+ * rather than the syntax-directed traversal of {@link GenericEffectVisitor}.
+ *
+ * <p>The abstract state at each program point is the join of the effects of every path reaching it
+ * (see {@link EffectStore} and {@link EffectTransfer}). Branches, loops, breaks, exceptions, and
+ * finally blocks are all handled by the graph's edges, so every statement form is supported, and
+ * loops are iterated to a fixed point by the analysis worklist. Within a compound checker, graphs
+ * built by other checkers for the same code are reused.
+ *
+ * <p>Paths that leave the body by an exception, either from a {@code throw} or from a call with a
+ * declared {@link org.checkerframework.checker.genericeffects.qual.ThrownEffect}, are checked
+ * where they reach the exceptional exit: against the declared thrown effect for a supertype of the
+ * exception, or against the declared effect of normal completion if there is none. Exceptions a
+ * call may throw without a declared thrown effect are not checked, as in {@link
+ * GenericEffectVisitor}.
+ *
+ * <p>Lambda bodies are checked as separate graphs against the declared effect of their functional
+ * interface's method. Field and static initializers are still checked by {@link
+ * GenericEffectVisitor}.
+ */
+public class DataflowEffectVisitor<X> extends GenericEffectVisitor<X> {
+
+  /**
+   * Create a visitor that checks method bodies by dataflow analysis.
+   *
+   * @param checker The checker this visitor belongs to
+   * @param ext Plugin for determining the effects of basic Java language features
+   * @param fromAnno Conversion from annotations to effects
+   */
+  public DataflowEffectVisitor(
+      GenericEffectChecker<X> checker,
+      GenericEffectExtension<X> ext,
+      Function<Class<? extends Annotation>, X> fromAnno) {
+    super(checker, ext, fromAnno);
+  }
+
+  @Override
+  public Void visitMethod(MethodTree node, Void p) {
+    if (node.getBody() == null) {
+      return super.visitMethod(node, p);
+    }
+    ExecutableElement methElt = TreeUtils.elementFromDeclaration(node);
+    if (debugSpew) {
+      System.err.println("\nAnalyzing method " + methElt);
+    }
+    xtypeFactory.checkEffectAnnotations(methElt, node);
+    xtypeFactory.checkEffectOverride(
+        (TypeElement) methElt.getEnclosingElement(), methElt, true, node);
+    ClassTree classTree = TreePathUtil.enclosingClass(getCurrentPath());
+    X inferenceTarget = xtypeFactory.getInferenceTarget(methElt);
+    X target =
+        inferenceTarget != null ? inferenceTarget : xtypeFactory.getDeclaredBaseEffect(methElt);
+    List<Pair<ClassType, X>> thrown =
+        inferenceTarget != null
+            ? Collections.emptyList()
+            : xtypeFactory.getDeclaredThrownEffects(methElt);
+    analyze(new CFGMethod(node, classTree), node, target, thrown, classTree, node, p);
+    return p;
+  }
+
+  /**
+   * Check a method or lambda body against a declared effect, then check the classes and lambdas
+   * declared within it.
+   *
+   * @param ast The code to check
+   * @param tree The method or lambda, used as the location of errors about the whole body
+   * @param target The declared effect
+   * @param thrown The declared exceptional behaviors
+   * @param classTree The enclosing class
+   * @param method The enclosing method
+   * @param p Void
+   */
+  private void analyze(
+      UnderlyingAST ast,
+      Tree tree,
+      X target,
+      List<Pair<ClassType, X>> thrown,
+      ClassTree classTree,
+      MethodTree method,
+      Void p) {
+    ControlFlowGraph cfg = xtypeFactory.getEffectCFG(ast);
+    EffectTransfer<X> transfer = new EffectTransfer<>(xchecker, xtypeFactory, extension, target);
+    ForwardAnalysisImpl<EffectValue<X>, EffectStore<X>, EffectTransfer<X>> analysis =
+        new ForwardAnalysisImpl<>(transfer);
+    analysis.performAnalysis(cfg);
+
+    // Replay each block from its final input, now reporting errors
+    transfer.startReporting();
+    for (Block b : cfg.getAllBlocks()) {
+      TransferInput<EffectValue<X>, EffectStore<X>> input = analysis.getInput(b);
+      if (input == null) {
+        continue; // unreachable
+      }
+      EffectStore<X> store = input.getRegularStore();
+      if (store.unjoinable != null && !store.reported && !b.getNodes().isEmpty()) {
+        transfer.report(
+            b.getNodes().get(0).getTree(), "undefined.join", store.path, store.unjoinable);
+      }
+      for (Node n : b.getNodes()) {
+        TransferResult<EffectValue<X>, EffectStore<X>> result =
+            n.accept(transfer, new TransferInput<>(n, analysis, store));
+        if (b.getType() == Block.BlockType.EXCEPTION_BLOCK) {
+          checkEscaping(
+              (ExceptionBlock) b, cfg.getExceptionalExitBlock(), store, result, transfer, thrown);
+        }
+        store = result.getRegularStore();
+      }
+    }
+
+    TransferInput<EffectValue<X>, EffectStore<X>> exit =
+        analysis.getInput(cfg.getRegularExitBlock());
+    if (exit != null && !exit.getRegularStore().reported) {
+      X bodyEffect = exit.getRegularStore().path;
+      ExecutableElement methElt = TreeUtils.elementFromDeclaration(method);
+      if (tree == method && xtypeFactory.getInferenceTarget(methElt) != null) {
+        xtypeFactory.observeBodyEffect(methElt, bodyEffect);
+      } else if (!xchecker.getTabulatedEffectLattice().LE(bodyEffect, target)) {
+        checkError(tree, lift(bodyEffect), lift(target), "subeffect.invalid.methodbody");
+      } else if (extension.reportWarning(tree) != null) {
+        checkWarning(tree, lift(bodyEffect), lift(target), extension.reportWarning(tree));
+      }
+    }
+
+    for (LambdaExpressionTree lambda : cfg.getDeclaredLambdas()) {
+      ExecutableElement function =
+          (ExecutableElement) TreeUtils.findFunction(lambda, checker.getProcessingEnvironment());
+      analyze(
+          new CFGLambda(lambda, classTree, method),
+          lambda,
+          xtypeFactory.getDeclaredBaseEffect(function),
+          xtypeFactory.getDeclaredThrownEffects(function),
+          classTree,
+          method,
+          p);
+    }
+    for (ClassTree cls : cfg.getDeclaredClasses()) {
+      scan(TreePath.getPath(getCurrentPath().getCompilationUnit(), cls), p);
+    }
+  }
+
+  /**
+   * Check the paths on which an exception thrown by a node leaves the body. Only exceptions from a
+   * {@code throw}, from a declared thrown effect of a callee, or rethrown at the end of a {@code
+   * finally} block are checked.
+   *
+   * <p>An exception is permitted if its path is below a declared thrown effect for a supertype of
+   * the exception, or, if there is none, below the declared effect of normal completion. A {@code
+   * finally} block rethrows whatever reached it, so its rethrow is permitted below any of these.
+   *
+   * @param b The block of the node
+   * @param exceptionalExit The exceptional exit block of the graph
+   * @param before The store before the node
+   * @param result The result of the node
+   * @param transfer The transfer function, which reports errors and knows the declared effect of
+   *     normal completion
+   * @param thrown The declared exceptional behaviors
+   */
+  private void checkEscaping(
+      ExceptionBlock b,
+      Block exceptionalExit,
+      EffectStore<X> before,
+      TransferResult<EffectValue<X>, EffectStore<X>> result,
+      EffectTransfer<X> transfer,
+      List<Pair<ClassType, X>> thrown) {
+    EffectQuantale<X> lattice = xchecker.getTabulatedEffectLattice();
+    // The only node ending a block with exceptional successors is the end of a finally block
+    boolean rethrow = b.getNode() instanceof MarkerNode;
+    for (Map.Entry<TypeMirror, Set<Block>> e : b.getExceptionalSuccessors().entrySet()) {
+      if (!e.getValue().contains(exceptionalExit)) {
+        continue;
+      }
+      EffectStore<X> escaping = result.getExceptionalStore(e.getKey());
+      if (escaping == null) {
+        if (!rethrow && !(b.getNode() instanceof ThrowNode)) {
+          continue;
+        }
+        escaping = before;
+      }
+      if (escaping.reported) {
+        continue;
+      }
+      X bound = transfer.getTarget();
+      boolean declared = false;
+      boolean permitted = false;
+      for (Pair<ClassType, X> t : thrown) {
+        if (rethrow || types.isSubtype(e.getKey(), t.first)) {
+          bound = t.second;
+          declared = true;
+          permitted |= lattice.LE(escaping.path, t.second);
+        }
+      }
+      if (!declared || rethrow) {
+        permitted |= lattice.LE(escaping.path, transfer.getTarget());
+      }
+      if (!permitted) {
+        transfer.report(b.getNode().getTree(), "invalid.throw", escaping.path, bound);
+      }
+    }
+  }
+
+  /**
+   * Lift an underlying effect to a control effect, for use as a diagnostic argument.
+   *
+   * @param x An underlying effect
+   * @return The control effect with no non-local behaviors
+   */
+  private ControlEffectQuantale<X>.ControlEffect lift(X x) {
+    return genericEffect.lift(x);
+  }
+}
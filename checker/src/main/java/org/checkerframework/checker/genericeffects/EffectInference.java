@@ -0,0 +1,129 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The state of one round of effect inference over a compilation, shared between {@link
+ * EffectSummaryBatch} and the checker it runs. Methods are named by their summary keys (see {@link
+ * EffectSummaryWriter#methodKey}).
+ *
+ * <p>While a method's effect is being inferred, its body is checked against the {@link #top()}
+ * effect, so that checking records the body's effect instead of failing; its callers see the
+ * effect assumed for it in this round. Methods with effect annotations keep their declared effects.
+ *
+ * @param <X> The representation type of effects
+ */
+public final class EffectInference<X> {
+
+  /** The greatest effect, which inferred method bodies are checked against */
+  private final X top;
+
+  /** The methods whose effects are being inferred in this round */
+  private final Set<String> targets;
+
+  /** The effects of methods inferred so far, including this round's assumptions for targets */
+  private final Function<String, X> assumed;
+
+  /** The targets whose bodies were checked in this round */
+  private final Set<String> checked = new HashSet<>();
+
+  /** The body effect of each target observed in this round */
+  private final Map<String, X> observed = new HashMap<>();
+
+  /** The declared effect of each target that turned out to carry effect annotations */
+  private final Map<String, X> declared = new HashMap<>();
+
+  /**
+   * Create the state for one round of inference.
+   *
+   * @param top The greatest effect
+   * @param targets The methods whose effects are being inferred
+   * @param assumed The effects of methods inferred earlier, and those assumed for the targets; null
+   *     for methods whose effects are not known
+   */
+  public EffectInference(X top, Set<String> targets, Function<String, X> assumed) {
+    this.top = top;
+    this.targets = new HashSet<>(targets);
+    this.assumed = assumed;
+  }
+
+  /**
+   * Get the greatest effect.
+   *
+   * @return The effect inferred method bodies are checked against
+   */
+  public X top() {
+    return top;
+  }
+
+  /**
+   * Get the effect assumed for a method without effect annotations.
+   *
+   * @param key The method's summary key
+   * @return The inferred or assumed effect, or null to use the method's default effect
+   */
+  public X assumedEffect(String key) {
+    return assumed.apply(key);
+  }
+
+  /**
+   * Record that a method carries effect annotations, so its declared effect is used rather than
+   * inferred.
+   *
+   * @param key The method's summary key
+   * @param effect The method's declared effect
+   */
+  public void declare(String key, X effect) {
+    if (targets.remove(key)) {
+      declared.put(key, effect);
+    }
+  }
+
+  /**
+   * Determine whether a method's effect is being inferred, recording that its body is being checked
+   * if so.
+   *
+   * @param key The method's summary key
+   * @return True if the method is a target without effect annotations
+   */
+  public boolean isInferring(String key) {
+    if (!targets.contains(key)) {
+      return false;
+    }
+    checked.add(key);
+    return true;
+  }
+
+  /**
+   * Record the effect of a target's body.
+   *
+   * @param key The method's summary key
+   * @param effect The effect of the method body's normal completion
+   */
+  public void observe(String key, X effect) {
+    if (targets.contains(key)) {
+      observed.put(key, effect);
+    }
+  }
+
+  /**
+   * Get the effects found in this round. A target whose body was checked but could not be given an
+   * effect (because checking it failed even against the top effect, or it never completes normally)
+   * gets the top effect. A target whose body was never checked is absent.
+   *
+   * @return The observed body effects of targets, and the declared effects of annotated targets
+   */
+  public Map<String, X> results() {
+    Map<String, X> results = new HashMap<>();
+    for (String key : checked) {
+      results.put(key, top);
+    }
+    results.putAll(observed);
+    results.putAll(declared);
+    return results;
+  }
+}
@@ -0,0 +1,123 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.util.Arrays;
+
+/**
+ * A bounded, direct-mapped memo table for a binary operation on effects, keyed on the identities
+ * of its arguments.
+ *
+ * <p>This is only sound for operations that are pure functions of their arguments, over immutable
+ * effect representations. Since {@link ControlEffectQuantale} interns its effects, equal effects
+ * are usually identical, so identity keys give high hit rates without the cost of deep equality
+ * checks. A colliding entry simply replaces the previous one, so lookups and updates never
+ * allocate.
+ *
+ * @param <T> The representation type of effects
+ */
+public final class EffectOperationCache<T> {
+
+  /** Number of entries; must be a power of two. */
+  private static final int CAPACITY = 256;
+
+  /** Left arguments of cached entries; null marks an empty slot. */
+  private final Object[] lefts = new Object[CAPACITY];
+
+  /** Right arguments of cached entries. */
+  private final Object[] rights = new Object[CAPACITY];
+
+  /** Cached results, which may be null for undefined results. */
+  private final Object[] results = new Object[CAPACITY];
+
+  /** Slot of the most recent {@link #lookup} hit. */
+  private int lastHit = -1;
+
+  /** Number of lookups answered from the table. */
+  private long hits;
+
+  /** Number of lookups not answered from the table. */
+  private long misses;
+
+  /**
+   * Compute the slot for a pair of arguments.
+   *
+   * @param l The left argument
+   * @param r The right argument
+   * @return The index of the slot for this pair
+   */
+  private static int slot(Object l, Object r) {
+    int h = System.identityHashCode(l) * 31 + System.identityHashCode(r);
+    return (h ^ (h >>> 16)) & (CAPACITY - 1);
+  }
+
+  /**
+   * Check whether the result for a pair of arguments is cached. On a hit, the result is available
+   * from {@link #result()} until the next lookup; on a miss, the caller should compute the result
+   * and pass it to {@link #store}.
+   *
+   * @param l The left argument
+   * @param r The right argument
+   * @return True if the result is cached
+   */
+  public boolean lookup(T l, T r) {
+    int i = slot(l, r);
+    if (lefts[i] == l && rights[i] == r) {
+      hits++;
+      lastHit = i;
+      return true;
+    }
+    misses++;
+    return false;
+  }
+
+  /**
+   * Retrieve the result found by the last successful {@link #lookup}.
+   *
+   * @return The cached result, possibly null
+   */
+  @SuppressWarnings("unchecked")
+  public T result() {
+    return (T) results[lastHit];
+  }
+
+  /**
+   * Record the result of the operation for a pair of arguments, replacing any colliding entry.
+   *
+   * @param l The left argument
+   * @param r The right argument
+   * @param result The result of the operation, possibly null
+   * @return {@code result}, for convenience
+   */
+  public T store(T l, T r, T result) {
+    int i = slot(l, r);
+    lefts[i] = l;
+    rights[i] = r;
+    results[i] = result;
+    return result;
+  }
+
+  /** Discard all cached entries. Hit and miss counts are retained. */
+  public void clear() {
+    Arrays.fill(lefts, null);
+    Arrays.fill(rights, null);
+    Arrays.fill(results, null);
+    lastHit = -1;
+  }
+
+  /**
+   * The number of lookups answered from the table so far.
+   *
+   * @return The hit count
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * The number of lookups not answered from the table so far.
+   *
+   * @return The miss count
+   */
+  public long misses() {
+    return misses;
+  }
+}
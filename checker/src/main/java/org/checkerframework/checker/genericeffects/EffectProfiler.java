@@ -0,0 +1,530 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.code.Symbol;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Per-method counters and timings of effect checking, collected under {@code -AresourceStats}.
+ *
+ * <p>The visitor brackets the checking of each method with {@link #enter} and {@link #exit}, and of
+ * each class body (field and static initializers) likewise, so that every event is attributed to
+ * the innermost method or class being checked. Times are self times: the time spent in a nested
+ * method, such as one of an anonymous class, is charged to that method and not its enclosing one.
+ *
+ * <p>Effect quantale operations are counted by wrapping the checker's quantale with {@link
+ * #countOperations}. The profiler also receives the visitor's trace events, forwarding them to
+ * another listener, to track the depth of effect contexts and the number of exceptional behaviors
+ * of pushed effects.
+ */
+public class EffectProfiler implements EffectTraceListener {
+
+  /** The events counted for each method. */
+  public enum Counter {
+    /** AST nodes scanned by the visitor. */
+    NODES,
+    /** Calls to {@link EffectQuantale#seq}. */
+    SEQ,
+    /** Calls to {@link EffectQuantale#seq} that returned null. */
+    SEQ_FAILURES,
+    /** Calls to {@link EffectQuantale#LUB}. */
+    LUB,
+    /** Calls to {@link EffectQuantale#LUB} that returned null. */
+    LUB_FAILURES,
+    /** Calls to {@link EffectQuantale#LE}. */
+    LE,
+    /** Calls to {@link EffectQuantale#residual}. */
+    RESIDUAL,
+    /** Calls to {@link EffectQuantale#residual} that returned null. */
+    RESIDUAL_FAILURES,
+    /** Calls to {@link EffectQuantale#iter}. */
+    ITER,
+    /** Calls to {@link EffectQuantale#iter} that returned null. */
+    ITER_FAILURES,
+    /** Lookups of declared method effects in the type factory. */
+    DECLARED_EFFECT_LOOKUPS;
+
+    /**
+     * The name of this counter in reports.
+     *
+     * @return The counter's name in lower case, with hyphens
+     */
+    public String label() {
+      return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+  }
+
+  /** The counters and timings of one method, or of the initializers of one class. */
+  public static final class Profile {
+    /** The binary name of the class. */
+    public final String className;
+    /** The method's name and parameter types, or {@code <init-fields>} for a class body. */
+    public final String member;
+    /** The number of times each event occurred, indexed by {@link Counter#ordinal()}. */
+    final long[] counts = new long[Counter.values().length];
+    /** The self time spent checking this member, in nanoseconds. */
+    long nanos;
+    /** The greatest number of outstanding marks in an effect context. */
+    int maxContextDepth;
+    /** The greatest number of exceptional behaviors in a pushed effect. */
+    int maxExceptions;
+
+    /**
+     * Create an empty profile.
+     *
+     * @param className The binary name of the class
+     * @param member The member's description
+     */
+    Profile(String className, String member) {
+      this.className = className;
+      this.member = member;
+    }
+
+    /**
+     * Get the count of an event.
+     *
+     * @param c The event
+     * @return How many times it occurred
+     */
+    public long count(Counter c) {
+      return counts[c.ordinal()];
+    }
+
+    /**
+     * Get the self time spent checking this member.
+     *
+     * @return The time in nanoseconds
+     */
+    public long nanos() {
+      return nanos;
+    }
+
+    /**
+     * Add another profile's counts and times to this one, keeping the greater maxima.
+     *
+     * @param other Another profile
+     */
+    void add(Profile other) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+      }
+      nanos += other.nanos;
+      maxContextDepth = Math.max(maxContextDepth, other.maxContextDepth);
+      maxExceptions = Math.max(maxExceptions, other.maxExceptions);
+    }
+  }
+
+  /** A member currently being checked. */
+  private static final class Frame {
+    /** The profile charged for this member. */
+    final Profile profile;
+    /** When checking of the member started or last resumed, from {@link System#nanoTime()}. */
+    long resumed;
+
+    /**
+     * Create a frame for a member whose checking starts now.
+     *
+     * @param profile The member's profile
+     * @param now The current time
+     */
+    Frame(Profile profile, long now) {
+      this.profile = profile;
+      this.resumed = now;
+    }
+  }
+
+  /** Description of class bodies in profiles. */
+  public static final String CLASS_BODY = "<init-fields>";
+
+  /** The listener trace events are forwarded to. */
+  private final EffectTraceListener delegate;
+
+  /** Profiles by class and member, in the order checking first reached them. */
+  private final Map<String, Profile> profiles = new LinkedHashMap<>();
+
+  /** The members being checked, innermost first. */
+  private final Deque<Frame> frames = new ArrayDeque<>();
+
+  /** Profile for events outside any method or class, e.g. while building the type factory. */
+  private final Profile unattributed = new Profile("", "<none>");
+
+  /** The profile events are currently charged to. */
+  private Profile current = unattributed;
+
+  /**
+   * Create a profiler.
+   *
+   * @param delegate The listener trace events are forwarded to
+   */
+  public EffectProfiler(EffectTraceListener delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Start checking a method or class. Until the matching {@link #exit}, events are charged to it.
+   *
+   * @param elt A method, constructor, or initializer's element, or a class element for its body
+   */
+  public void enter(Element elt) {
+    long now = System.nanoTime();
+    Frame outer = frames.peek();
+    if (outer != null) {
+      outer.profile.nanos += now - outer.resumed;
+    }
+    String className;
+    String member;
+    if (elt instanceof TypeElement) {
+      className = binaryName((TypeElement) elt);
+      member = CLASS_BODY;
+    } else {
+      Element enclosing = elt.getEnclosingElement();
+      className = enclosing instanceof TypeElement ? binaryName((TypeElement) enclosing) : "";
+      member = elt.toString();
+    }
+    String key = className + "#" + member;
+    Profile profile = profiles.get(key);
+    if (profile == null) {
+      profile = new Profile(className, member);
+      profiles.put(key, profile);
+    }
+    frames.push(new Frame(profile, now));
+    current = profile;
+  }
+
+  /** Finish checking the member passed to the matching {@link #enter}. */
+  public void exit() {
+    long now = System.nanoTime();
+    Frame done = frames.pop();
+    done.profile.nanos += now - done.resumed;
+    Frame outer = frames.peek();
+    if (outer != null) {
+      outer.resumed = now;
+      current = outer.profile;
+    } else {
+      current = unattributed;
+    }
+  }
+
+  /**
+   * Get the binary name of a class, including the numbering of anonymous and local classes.
+   *
+   * @param te A class
+   * @return Its binary name, e.g. {@code p.Outer$1}
+   */
+  private static String binaryName(TypeElement te) {
+    if (te instanceof Symbol.ClassSymbol) {
+      return ((Symbol.ClassSymbol) te).flatName().toString();
+    }
+    return te.getQualifiedName().toString();
+  }
+
+  /**
+   * Record an event against the member currently being checked.
+   *
+   * @param c The event
+   */
+  public void count(Counter c) {
+    current.counts[c.ordinal()]++;
+  }
+
+  /** Record that the visitor scanned an AST node. */
+  public void nodeVisited() {
+    current.counts[Counter.NODES.ordinal()]++;
+  }
+
+  @Override
+  public void compilationUnit(CompilationUnitTree root) {
+    delegate.compilationUnit(root);
+  }
+
+  @Override
+  public void mark(int depth) {
+    if (depth > current.maxContextDepth) {
+      current.maxContextDepth = depth;
+    }
+    delegate.mark(depth);
+  }
+
+  @Override
+  public void push(Object effect, Tree tree, boolean valid) {
+    if (effect instanceof ControlEffectQuantale.ControlEffect) {
+      ControlEffectQuantale<?>.ControlEffect ce = (ControlEffectQuantale<?>.ControlEffect) effect;
+      if (ce.excs != null && ce.excs.size() > current.maxExceptions) {
+        current.maxExceptions = ce.excs.size();
+      }
+    }
+    delegate.push(effect, tree, valid);
+  }
+
+  @Override
+  public void squash(Object effect, Tree tree) {
+    delegate.squash(effect, tree);
+  }
+
+  @Override
+  public void residualCheck(Object sofar, Object target, boolean defined, Tree tree) {
+    delegate.residualCheck(sofar, target, defined, tree);
+  }
+
+  @Override
+  public void sequencingFailure(Object left, Object right, Tree tree) {
+    delegate.sequencingFailure(left, right, tree);
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Get the profiles collected so far, in the order checking first reached them.
+   *
+   * @return The profile of each method and class body checked
+   */
+  public Collection<Profile> getProfiles() {
+    return profiles.values();
+  }
+
+  /**
+   * Print the members that took longest to check, followed by the classes that took longest in
+   * total, with their counters.
+   *
+   * @param out The destination
+   * @param limit The number of members and of classes to print
+   */
+  public void report(PrintStream out, int limit) {
+    List<Profile> members = new ArrayList<>(profiles.values());
+    if (unattributed.nanos > 0 || count(unattributed) > 0) {
+      members.add(unattributed);
+    }
+    Map<String, Profile> classes = new LinkedHashMap<>();
+    Profile total = new Profile("", "<total>");
+    for (Profile p : members) {
+      Profile cls = classes.get(p.className);
+      if (cls == null) {
+        cls = new Profile(p.className, "");
+        classes.put(p.className, cls);
+      }
+      cls.add(p);
+      total.add(p);
+    }
+    Comparator<Profile> slowestFirst = (a, b) -> Long.compare(b.nanos, a.nanos);
+    members.sort(slowestFirst);
+    List<Profile> byClass = new ArrayList<>(classes.values());
+    byClass.sort(slowestFirst);
+
+    out.println(
+        "Effect checking profile: "
+            + profiles.size()
+            + " members, "
+            + String.format(Locale.ROOT, "%.1f", total.nanos / 1e6)
+            + " ms; "
+            + describe(total));
+    out.println("Slowest methods:");
+    for (Profile p : members.subList(0, Math.min(limit, members.size()))) {
+      out.println(
+          String.format(Locale.ROOT, "  %10.2f ms  %s#%s", p.nanos / 1e6, p.className, p.member));
+      out.println("                 " + describe(p));
+    }
+    out.println("Slowest classes:");
+    for (Profile p : byClass.subList(0, Math.min(limit, byClass.size()))) {
+      out.println(String.format(Locale.ROOT, "  %10.2f ms  %s", p.nanos / 1e6, p.className));
+      out.println("                 " + describe(p));
+    }
+  }
+
+  /**
+   * Sum the counts of a profile, to decide whether it recorded anything.
+   *
+   * @param p A profile
+   * @return The total of its counters
+   */
+  private static long count(Profile p) {
+    long sum = 0;
+    for (long c : p.counts) {
+      sum += c;
+    }
+    return sum;
+  }
+
+  /**
+   * Describe the non-zero counters and maxima of a profile.
+   *
+   * @param p A profile
+   * @return A one-line summary
+   */
+  private static String describe(Profile p) {
+    StringBuilder sb = new StringBuilder();
+    for (Counter c : Counter.values()) {
+      long n = p.count(c);
+      if (n != 0) {
+        sb.append(c.label()).append('=').append(n).append(' ');
+      }
+    }
+    sb.append("max-context-depth=").append(p.maxContextDepth);
+    sb.append(" max-exceptions=").append(p.maxExceptions);
+    return sb.toString();
+  }
+
+  /**
+   * Write every profile as a row of a CSV file, with a header row.
+   *
+   * @param file The file to write, replacing any existing contents
+   * @throws IOException If the file cannot be written
+   */
+  public void writeCsv(Path file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    StringBuilder header = new StringBuilder("class,member,nanos");
+    for (Counter c : Counter.values()) {
+      header.append(',').append(c.label());
+    }
+    header.append(",max-context-depth,max-exceptions");
+    lines.add(header.toString());
+    for (Profile p : profiles.values()) {
+      StringBuilder row = new StringBuilder();
+      row.append(csvField(p.className)).append(',').append(csvField(p.member));
+      row.append(',').append(p.nanos);
+      for (long n : p.counts) {
+        row.append(',').append(n);
+      }
+      row.append(',').append(p.maxContextDepth).append(',').append(p.maxExceptions);
+      lines.add(row.toString());
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Quote a CSV field; method descriptions contain commas between parameter types.
+   *
+   * @param s The field's contents
+   * @return The quoted field
+   */
+  private static String csvField(String s) {
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  /**
+   * Wrap an effect quantale so that each of its operations is counted against the member being
+   * checked.
+   *
+   * @param <X> The representation type of effects
+   * @param q The effect quantale
+   * @return A quantale with the same behavior as {@code q}
+   */
+  public <X> EffectQuantale<X> countOperations(EffectQuantale<X> q) {
+    return new CountingEffectQuantale<>(q);
+  }
+
+  /**
+   * An effect quantale that delegates to another, counting each operation.
+   *
+   * @param <X> The representation type of effects
+   */
+  private final class CountingEffectQuantale<X> extends EffectQuantale<X> {
+
+    /** The quantale operations are delegated to. */
+    private final EffectQuantale<X> q;
+
+    /**
+     * Wrap an effect quantale.
+     *
+     * @param q The quantale operations are delegated to
+     */
+    CountingEffectQuantale(EffectQuantale<X> q) {
+      this.q = q;
+    }
+
+    @Override
+    public boolean LE(X left, X right) {
+      count(Counter.LE);
+      return q.LE(left, right);
+    }
+
+    @Override
+    public X LUB(X l, X r) {
+      count(Counter.LUB);
+      X result = q.LUB(l, r);
+      if (result == null) {
+        count(Counter.LUB_FAILURES);
+      }
+      return result;
+    }
+
+    @Override
+    public X seq(X l, X r) {
+      count(Counter.SEQ);
+      X result = q.seq(l, r);
+      if (result == null) {
+        count(Counter.SEQ_FAILURES);
+      }
+      return result;
+    }
+
+    @Override
+    public ArrayList<Class<? extends Annotation>> getValidEffects() {
+      return q.getValidEffects();
+    }
+
+    @Override
+    public X unit() {
+      return q.unit();
+    }
+
+    @Override
+    public X iter(X x) {
+      count(Counter.ITER);
+      X result = q.iter(x);
+      if (result == null) {
+        count(Counter.ITER_FAILURES);
+      }
+      return result;
+    }
+
+    @Override
+    public X residual(X sofar, X target) {
+      count(Counter.RESIDUAL);
+      X result = q.residual(sofar, target);
+      if (result == null) {
+        count(Counter.RESIDUAL_FAILURES);
+      }
+      return result;
+    }
+
+    @Override
+    public X top() {
+      return q.top();
+    }
+
+    @Override
+    public boolean residualAlwaysDefined(X target) {
+      return q.residualAlwaysDefined(target);
+    }
+
+    @Override
+    public boolean supportsErrorLocalization() {
+      return q.supportsErrorLocalization();
+    }
+
+    @Override
+    public boolean isCommutative() {
+      return q.isCommutative();
+    }
+  }
+}
@@ -110,6 +110,29 @@ public abstract class EffectQuantale<X> {
    */
   public abstract X residual(X sofar, X target);
 
+  /**
+   * The greatest effect of the quantale, if it has one. Implementations with a top element may
+   * declare it here; by default no top element is declared.
+   *
+   * @return The top effect, or null if none is declared
+   */
+  public X top() {
+    return null;
+  }
+
+  /**
+   * Determine whether {@code residual(sofar, target)} is defined for every effect {@code sofar}, so
+   * that checking residuals against {@code target} can never fail. This holds for the {@link
+   * #top()} element, since <code>LE(seq(sofar,unit()),top())</code> for every {@code sofar}.
+   *
+   * @param target A possible residual target
+   * @return True if every residual with respect to {@code target} is known to be defined
+   */
+  public boolean residualAlwaysDefined(X target) {
+    X top = top();
+    return top != null && top.equals(target);
+  }
+
   /**
    * Flag indicating whether this effect quantale supports residuals.
    *
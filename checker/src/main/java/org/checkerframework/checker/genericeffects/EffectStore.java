@@ -0,0 +1,121 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.util.Objects;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.analysis.Store;
+import org.checkerframework.dataflow.cfg.visualize.CFGVisualizer;
+import org.checkerframework.dataflow.expression.JavaExpression;
+
+/**
+ * The dataflow store of an {@link EffectTransfer}: the effect of every path from the start of the
+ * method to a program point, joined. Stores are immutable, so {@link #copy()} returns the store
+ * itself.
+ *
+ * @param <X> The representation type of effects
+ */
+public final class EffectStore<X> implements Store<EffectStore<X>> {
+
+  /** The effect quantale used for joins */
+  private final EffectQuantale<X> lattice;
+
+  /** The effect of the paths reaching this point */
+  final X path;
+
+  /**
+   * Whether every path reaching this point has already been reported as an error, in which case
+   * further errors along these paths are suppressed.
+   */
+  final boolean reported;
+
+  /** If two paths met here with no join, the effect of the path that was dropped; otherwise null */
+  final @Nullable X unjoinable;
+
+  /**
+   * Create a store.
+   *
+   * @param lattice The effect quantale used for joins
+   * @param path The effect of the paths reaching this point
+   * @param reported Whether every path reaching this point has already been reported
+   * @param unjoinable The effect of a path whose join with {@code path} is undefined, or null
+   */
+  EffectStore(EffectQuantale<X> lattice, X path, boolean reported, @Nullable X unjoinable) {
+    this.lattice = lattice;
+    this.path = path;
+    this.reported = reported;
+    this.unjoinable = unjoinable;
+  }
+
+  /**
+   * Create a store for the same paths followed by further behavior.
+   *
+   * @param next The effect of the extended paths
+   * @param reported Whether the extended paths have already been reported
+   * @return A store for the extended paths
+   */
+  EffectStore<X> with(X next, boolean reported) {
+    if (next == path && reported == this.reported && unjoinable == null) {
+      return this;
+    }
+    return new EffectStore<>(lattice, next, reported, null);
+  }
+
+  @Override
+  public EffectStore<X> copy() {
+    return this;
+  }
+
+  /**
+   * Join the paths of two stores. Paths that were already reported only suppress errors if every
+   * joined path was reported. If the join is undefined, this keeps the effect of this store and
+   * records the other, so that the checker can report the failed merge.
+   */
+  @Override
+  public EffectStore<X> leastUpperBound(EffectStore<X> other) {
+    X lub = lattice.LUB(path, other.path);
+    boolean bothReported = reported && other.reported;
+    if (lub == null) {
+      return new EffectStore<>(lattice, path, bothReported, other.path);
+    }
+    return new EffectStore<>(lattice, lub, bothReported, null);
+  }
+
+  /**
+   * Join the paths of two stores. Effect quantales used for checking are finite, so loops converge
+   * without widening.
+   */
+  @Override
+  public EffectStore<X> widenedUpperBound(EffectStore<X> previous) {
+    return leastUpperBound(previous);
+  }
+
+  @Override
+  public boolean canAlias(JavaExpression a, JavaExpression b) {
+    return true;
+  }
+
+  @Override
+  public String visualize(CFGVisualizer<?, EffectStore<X>, ?> viz) {
+    return viz.visualizeStoreKeyVal("effect", toString());
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (!(o instanceof EffectStore)) {
+      return false;
+    }
+    EffectStore<?> other = (EffectStore<?>) o;
+    return reported == other.reported
+        && Objects.equals(path, other.path)
+        && Objects.equals(unjoinable, other.unjoinable);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, reported, unjoinable);
+  }
+
+  @Override
+  public String toString() {
+    return path + (reported ? " (reported)" : "") + (unjoinable == null ? "" : " | " + unjoinable);
+  }
+}
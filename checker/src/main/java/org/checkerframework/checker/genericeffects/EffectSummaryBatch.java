@@ -0,0 +1,973 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.TreeUtils;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Infers effect summaries for a directory of sources that carry no effect annotations, such as the
+ * sources of a third-party library, and writes them as a summary file that later compilations load
+ * with the "effectSummaries" option instead of hand-written stubs.
+ *
+ * <p>Effects are inferred bottom-up over the call graph of the sources. Each strongly connected
+ * component of the call graph is inferred once all the components it calls are done, by checking
+ * its methods' bodies against the top effect with the checker and recording the bodies' effects;
+ * recursive components repeat this, joining the effects found, until they stabilize. Independent
+ * components are inferred concurrently. Each worker thread loads the checker in its own class
+ * loader, since the Checker Framework keeps some static state that is not thread-safe.
+ *
+ * <p>Methods with effect annotations keep their declared effects. A method whose body cannot be
+ * given an effect is summarized with the top effect. The run fails if the sources do not compile.
+ * The checker's effect quantale must have a greatest effect that is one of its effect annotations
+ * (or a least upper bound of them). Usage:
+ *
+ * <pre>{@code
+ * EffectSummaryBatch --checker=<processor> --sources=<dir> --output=<file>
+ *     [--classpath=<path>] [--threads=<n>] [--max-rounds=<n>] [--option=-A<option>]...
+ * }</pre>
+ *
+ * The JVM running the batch needs the checker on its classpath, and on JDK 9+ the same {@code
+ * --add-exports} options as javac.
+ */
+public final class EffectSummaryBatch {
+
+  /** Result of a worker for a method whose effect is declared but cannot be summarized */
+  static final String UNSUMMARIZED = "";
+
+  /** The diagnostic code of errors reported by annotation processors, such as the checker */
+  private static final String PROCESSOR_ERROR = "compiler.err.proc.messager";
+
+  /** The default bound on rounds of inference for one recursive component */
+  private static final int DEFAULT_MAX_ROUNDS = 10;
+
+  /** The binary name of the checker */
+  private final String checkerName;
+  /** The root directory of the sources */
+  private final File sourceDir;
+  /** The classpath of the sources, without the checker */
+  private final String classpath;
+  /** The number of worker threads */
+  private final int threads;
+  /** The bound on rounds of inference for one recursive component */
+  private final int maxRounds;
+  /** Additional javac options for the checker */
+  private final List<String> extraOptions;
+
+  /** The source file declaring each method with a body, by summary key */
+  private final Map<String, File> methodFiles = new LinkedHashMap<>();
+  /** The methods with bodies called by each method with a body, by summary key */
+  private final Map<String, Set<String>> callees = new HashMap<>();
+  /** The effect found for each method, as the canonical name of an effect annotation */
+  private final Map<String, String> inferred = new ConcurrentHashMap<>();
+
+  /**
+   * Create a batch run.
+   *
+   * @param checkerName The binary name of the checker
+   * @param sourceDir The root directory of the sources
+   * @param classpath The classpath of the sources, without the checker
+   * @param threads The number of worker threads
+   * @param maxRounds The bound on rounds of inference for one recursive component
+   * @param extraOptions Additional javac options for the checker
+   */
+  public EffectSummaryBatch(
+      String checkerName,
+      File sourceDir,
+      String classpath,
+      int threads,
+      int maxRounds,
+      List<String> extraOptions) {
+    this.checkerName = checkerName;
+    this.sourceDir = sourceDir;
+    this.classpath = classpath;
+    this.threads = threads;
+    this.maxRounds = maxRounds;
+    this.extraOptions = new ArrayList<>(extraOptions);
+  }
+
+  /**
+   * Infer the effects of every method in the sources and write them to a summary file.
+   *
+   * @param output The summary file to write
+   * @throws IOException If the sources cannot be read or the summary cannot be written
+   * @throws InterruptedException If interrupted while waiting for the workers
+   */
+  public void run(Path output) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    List<File> sources;
+    try (Stream<Path> paths = Files.walk(sourceDir.toPath())) {
+      sources =
+          paths
+              .filter(p -> p.toString().endsWith(".java"))
+              .map(Path::toFile)
+              .collect(Collectors.toList());
+    }
+    buildCallGraph(sources);
+    List<List<String>> components = components();
+
+    // Index each component's position and the components waiting on it
+    Map<String, Integer> componentOf = new HashMap<>();
+    for (int i = 0; i < components.size(); i++) {
+      for (String key : components.get(i)) {
+        componentOf.put(key, i);
+      }
+    }
+    List<Set<Integer>> dependents = new ArrayList<>();
+    AtomicInteger[] pending = new AtomicInteger[components.size()];
+    boolean[] recursive = new boolean[components.size()];
+    for (int i = 0; i < components.size(); i++) {
+      dependents.add(new HashSet<>());
+      pending[i] = new AtomicInteger();
+    }
+    for (int i = 0; i < components.size(); i++) {
+      Set<Integer> calls = new HashSet<>();
+      for (String key : components.get(i)) {
+        for (String callee : callees.get(key)) {
+          calls.add(componentOf.get(callee));
+        }
+      }
+      recursive[i] = calls.remove(i) || components.get(i).size() > 1;
+      pending[i].set(calls.size());
+      for (int callee : calls) {
+        dependents.get(callee).add(i);
+      }
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ThreadLocal<WorkerHandle> workers = ThreadLocal.withInitial(this::newWorker);
+    AtomicInteger remaining = new AtomicInteger(components.size());
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    CountDownLatch done = new CountDownLatch(components.isEmpty() ? 0 : 1);
+    WorkerHandle writer = newWorker();
+    String top = writer.top();
+
+    class Job implements Runnable {
+      /** The index of the component this job infers */
+      final int component;
+
+      /**
+       * Create a job.
+       *
+       * @param component The index of the component to infer
+       */
+      Job(int component) {
+        this.component = component;
+      }
+
+      @Override
+      public void run() {
+        try {
+          inferComponent(workers.get(), components.get(component), recursive[component], top);
+          for (int dependent : dependents.get(component)) {
+            if (pending[dependent].decrementAndGet() == 0) {
+              pool.execute(new Job(dependent));
+            }
+          }
+          if (remaining.decrementAndGet() == 0) {
+            done.countDown();
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+          done.countDown();
+        }
+      }
+    }
+
+    for (int i = 0; i < components.size(); i++) {
+      if (pending[i].get() == 0) {
+        pool.execute(new Job(i));
+      }
+    }
+    try {
+      done.await();
+    } finally {
+      pool.shutdownNow();
+    }
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+
+    Map<String, String> summaries = new HashMap<>();
+    for (Map.Entry<String, String> e : inferred.entrySet()) {
+      if (!e.getValue().equals(UNSUMMARIZED)) {
+        summaries.put(e.getKey(), e.getValue());
+      }
+    }
+    writer.write(summaries, output.toString());
+    int largest = 0;
+    for (List<String> c : components) {
+      largest = Math.max(largest, c.size());
+    }
+    System.out.printf(
+        "Summarized %d of %d methods in %d components (largest %d) with %d threads in %d ms%n",
+        summaries.size(),
+        methodFiles.size(),
+        components.size(),
+        largest,
+        threads,
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Infer the effects of one strongly connected component of the call graph, whose callees outside
+   * the component are already inferred.
+   *
+   * @param worker The worker to check the component's methods with
+   * @param component The summary keys of the component's methods
+   * @param recursive Whether any method of the component calls a method of the component
+   * @param top The name of the top effect
+   */
+  private void inferComponent(
+      WorkerHandle worker, List<String> component, boolean recursive, String top) {
+    Set<String> targets = new HashSet<>(component);
+    Set<File> fileSet = new TreeSet<>();
+    for (String key : component) {
+      fileSet.add(methodFiles.get(key));
+    }
+    List<File> files = new ArrayList<>(fileSet);
+    Map<String, String> guesses = new HashMap<>();
+    for (int round = 1; ; round++) {
+      Map<String, String> found = worker.infer(files, targets, guesses, inferred);
+      Map<String, String> next = new HashMap<>();
+      for (String key : new ArrayList<>(targets)) {
+        String observed = found.get(key);
+        if (observed == null) {
+          throw new BugInCF("No effect inferred for %s", key);
+        }
+        if (observed.equals(UNSUMMARIZED)) {
+          inferred.put(key, UNSUMMARIZED);
+          targets.remove(key);
+          continue;
+        }
+        String previous = guesses.get(key);
+        next.put(key, previous == null ? observed : worker.lub(previous, observed));
+      }
+      if (!recursive || next.equals(guesses)) {
+        inferred.putAll(next);
+        return;
+      }
+      if (round == maxRounds) {
+        for (String key : next.keySet()) {
+          inferred.put(key, top);
+        }
+        return;
+      }
+      guesses = next;
+    }
+  }
+
+  /**
+   * Parse and attribute the sources, and record the methods they declare and the calls between
+   * them. Calls made by local and anonymous classes and lambdas are attributed to the enclosing
+   * method.
+   *
+   * @param sources The source files
+   * @throws IOException If the sources cannot be read
+   */
+  private void buildCallGraph(List<File> sources) throws IOException {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> options = Arrays.asList("-proc:none", "-classpath", compileClasspath());
+    try (StandardJavaFileManager fileManager =
+        javac.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+      JavacTask task =
+          (JavacTask)
+              javac.getTask(
+                  new StringWriter(),
+                  fileManager,
+                  diagnostics,
+                  options,
+                  null,
+                  fileManager.getJavaFileObjectsFromFiles(sources));
+      Iterable<? extends CompilationUnitTree> units = task.parse();
+      task.analyze();
+      Trees trees = Trees.instance(task);
+      Map<String, Set<String>> calls = new HashMap<>();
+      for (CompilationUnitTree unit : units) {
+        new CallScanner(trees, task.getTypes(), new File(unit.getSourceFile().toUri()), calls)
+            .scan(unit, null);
+      }
+      for (Map.Entry<String, Set<String>> e : calls.entrySet()) {
+        Set<String> known = new HashSet<>(e.getValue());
+        known.retainAll(methodFiles.keySet());
+        callees.put(e.getKey(), known);
+      }
+    }
+  }
+
+  /** Records the methods with bodies in a compilation unit and the methods each of them calls. */
+  private class CallScanner extends TreePathScanner<Void, Void> {
+    /** Tree utilities of the compilation */
+    private final Trees trees;
+    /** Type utilities of the compilation */
+    private final Types types;
+    /** The file of the compilation unit */
+    private final File file;
+    /** The methods called by each method, including those without bodies */
+    private final Map<String, Set<String>> calls;
+    /** The summary key of the method being scanned, or null outside methods */
+    private String current;
+
+    /**
+     * Create a scanner.
+     *
+     * @param trees Tree utilities of the compilation
+     * @param types Type utilities of the compilation
+     * @param file The file of the compilation unit to be scanned
+     * @param calls The methods called by each method, extended in place
+     */
+    CallScanner(Trees trees, Types types, File file, Map<String, Set<String>> calls) {
+      this.trees = trees;
+      this.types = types;
+      this.file = file;
+      this.calls = calls;
+    }
+
+    @Override
+    public Void visitMethod(MethodTree node, Void p) {
+      if (current != null || node.getBody() == null) {
+        return super.visitMethod(node, p);
+      }
+      ExecutableElement method = (ExecutableElement) trees.getElement(getCurrentPath());
+      if (method == null) {
+        return super.visitMethod(node, p);
+      }
+      NestingKind nesting = ((TypeElement) method.getEnclosingElement()).getNestingKind();
+      if (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER) {
+        return super.visitMethod(node, p);
+      }
+      current = EffectSummaryWriter.methodKey(method, types);
+      methodFiles.put(current, file);
+      calls.computeIfAbsent(current, k -> new HashSet<>());
+      super.visitMethod(node, p);
+      current = null;
+      return null;
+    }
+
+    @Override
+    public Void visitMethodInvocation(MethodInvocationTree node, Void p) {
+      recordCall(TreeUtils.elementFromUse(node));
+      return super.visitMethodInvocation(node, p);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree node, Void p) {
+      recordCall(TreeUtils.elementFromUse(node));
+      return super.visitNewClass(node, p);
+    }
+
+    /**
+     * Record a call from the method being scanned.
+     *
+     * @param callee The method or constructor called, or null if it could not be resolved
+     */
+    private void recordCall(ExecutableElement callee) {
+      if (current != null && callee != null) {
+        calls.get(current).add(EffectSummaryWriter.methodKey(callee, types));
+      }
+    }
+  }
+
+  /**
+   * Compute the strongly connected components of the call graph with Tarjan's algorithm, without
+   * recursion so deep call chains cannot overflow the stack.
+   *
+   * @return The components, each before any component that calls it
+   */
+  private List<List<String>> components() {
+    List<String> nodes = new ArrayList<>(methodFiles.keySet());
+    Map<String, Integer> index = new HashMap<>();
+    Map<String, Integer> lowlink = new HashMap<>();
+    Set<String> onStack = new HashSet<>();
+    Deque<String> stack = new ArrayDeque<>();
+    List<List<String>> result = new ArrayList<>();
+    int next = 0;
+    for (String root : nodes) {
+      if (index.containsKey(root)) {
+        continue;
+      }
+      // Each frame is a node and an iterator over its remaining callees
+      Deque<Map.Entry<String, Iterator<String>>> frames = new ArrayDeque<>();
+      index.put(root, next);
+      lowlink.put(root, next);
+      next++;
+      stack.push(root);
+      onStack.add(root);
+      frames.push(new SimpleEntry<>(root, callees.get(root).iterator()));
+      while (!frames.isEmpty()) {
+        String node = frames.peek().getKey();
+        Iterator<String> it = frames.peek().getValue();
+        if (it.hasNext()) {
+          String callee = it.next();
+          if (!index.containsKey(callee)) {
+            index.put(callee, next);
+            lowlink.put(callee, next);
+            next++;
+            stack.push(callee);
+            onStack.add(callee);
+            frames.push(
+                new SimpleEntry<>(callee, callees.get(callee).iterator()));
+          } else if (onStack.contains(callee)) {
+            lowlink.put(node, Math.min(lowlink.get(node), index.get(callee)));
+          }
+          continue;
+        }
+        frames.pop();
+        if (!frames.isEmpty()) {
+          String parent = frames.peek().getKey();
+          lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(node)));
+        }
+        if (lowlink.get(node).equals(index.get(node))) {
+          List<String> component = new ArrayList<>();
+          String member;
+          do {
+            member = stack.pop();
+            onStack.remove(member);
+            component.add(member);
+          } while (!member.equals(node));
+          result.add(component);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the classpath for compiling the sources: the given classpath, followed by the classpath of
+   * this JVM so that effect annotations resolve.
+   *
+   * @return The classpath
+   */
+  private String compileClasspath() {
+    String own = System.getProperty("java.class.path");
+    return classpath.isEmpty() ? own : classpath + File.pathSeparator + own;
+  }
+
+  /**
+   * Create a worker in a fresh class loader.
+   *
+   * @return A handle on the worker
+   */
+  private WorkerHandle newWorker() {
+    List<URL> urls = new ArrayList<>();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      try {
+        urls.add(new File(entry).toURI().toURL());
+      } catch (MalformedURLException e) {
+        throw new UserError("Invalid classpath entry %s", entry);
+      }
+    }
+    ClassLoader loader =
+        new IsolatingClassLoader(
+            urls.toArray(new URL[0]), EffectSummaryBatch.class.getClassLoader());
+    List<String> options = new ArrayList<>();
+    options.add("-proc:only");
+    options.add("-classpath");
+    options.add(compileClasspath());
+    options.add("-sourcepath");
+    options.add(sourceDir.getPath());
+    options.addAll(extraOptions);
+    try {
+      Class<?> workerClass = Class.forName(Worker.class.getName(), true, loader);
+      return new WorkerHandle(
+          workerClass.getConstructor(String.class, List.class).newInstance(checkerName, options));
+    } catch (InvocationTargetException e) {
+      throw WorkerHandle.unwrap(e);
+    } catch (ReflectiveOperationException e) {
+      throw new UserError("Unable to create an effect inference worker: %s", e);
+    }
+  }
+
+  /**
+   * Loads classes from the classpath itself rather than delegating to its parent, except for the
+   * platform and the compiler, so that each worker has its own copy of the Checker Framework's
+   * static state.
+   */
+  private static final class IsolatingClassLoader extends URLClassLoader {
+
+    /**
+     * Create a class loader.
+     *
+     * @param urls The classpath
+     * @param parent The loader of the platform and compiler classes
+     */
+    IsolatingClassLoader(URL[] urls, ClassLoader parent) {
+      super(urls, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("java.")
+          || name.startsWith("javax.")
+          || name.startsWith("jdk.")
+          || name.startsWith("sun.")
+          || name.startsWith("com.sun.")) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> c = findLoadedClass(name);
+        if (c == null) {
+          try {
+            c = findClass(name);
+          } catch (ClassNotFoundException e) {
+            return super.loadClass(name, resolve);
+          }
+        }
+        if (resolve) {
+          resolveClass(c);
+        }
+        return c;
+      }
+    }
+  }
+
+  /**
+   * Calls a {@link Worker} in another class loader. Effects cross the class loader boundary as the
+   * canonical names of effect annotations.
+   */
+  private static final class WorkerHandle {
+    /** The worker */
+    private final Object worker;
+    /** {@link Worker#infer} */
+    private final Method infer;
+    /** {@link Worker#lub} */
+    private final Method lub;
+    /** {@link Worker#top} */
+    private final Method top;
+    /** {@link Worker#write} */
+    private final Method write;
+
+    /**
+     * Create a handle.
+     *
+     * @param worker A {@link Worker}, loaded by another class loader
+     * @throws NoSuchMethodException If the worker's class is not {@link Worker}
+     */
+    WorkerHandle(Object worker) throws NoSuchMethodException {
+      this.worker = worker;
+      Class<?> c = worker.getClass();
+      infer = c.getMethod("infer", List.class, Set.class, Map.class, Map.class);
+      lub = c.getMethod("lub", String.class, String.class);
+      top = c.getMethod("top");
+      write = c.getMethod("write", Map.class, String.class);
+    }
+
+    /**
+     * See {@link Worker#infer}.
+     *
+     * @param files The files declaring the targets
+     * @param targets The methods whose effects are inferred
+     * @param guesses The effects assumed for the targets
+     * @param inferred The effects of methods inferred earlier
+     * @return The effects found for the targets
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, String> infer(
+        List<File> files,
+        Set<String> targets,
+        Map<String, String> guesses,
+        Map<String, String> inferred) {
+      return (Map<String, String>) call(infer, files, targets, guesses, inferred);
+    }
+
+    /**
+     * See {@link Worker#lub}.
+     *
+     * @param a An effect
+     * @param b Another effect
+     * @return Their least upper bound
+     */
+    String lub(String a, String b) {
+      return (String) call(lub, a, b);
+    }
+
+    /**
+     * See {@link Worker#top}.
+     *
+     * @return The top effect
+     */
+    String top() {
+      return (String) call(top);
+    }
+
+    /**
+     * See {@link Worker#write}.
+     *
+     * @param effects The effect of each method
+     * @param file The summary file
+     */
+    void write(Map<String, String> effects, String file) {
+      call(write, effects, file);
+    }
+
+    /**
+     * Invoke a method of the worker.
+     *
+     * @param m The method
+     * @param args The arguments
+     * @return The result
+     */
+    private Object call(Method m, Object... args) {
+      try {
+        return m.invoke(worker, args);
+      } catch (InvocationTargetException e) {
+        throw unwrap(e);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Rethrow the exception thrown by a reflectively invoked method.
+     *
+     * @param e The exception wrapping the thrown exception
+     * @return Never returns; declared so callers can {@code throw} the result
+     */
+    static RuntimeException unwrap(InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Runs the checker for one round of inference at a time. Each worker is loaded by its own class
+   * loader and used by one thread, so its interface uses only platform types.
+   *
+   * @param <X> The representation type of the checker's effects
+   */
+  public static final class Worker<X> {
+    /** The binary name of the checker */
+    private final String checkerName;
+    /** The javac options for checking */
+    private final List<String> options;
+    /** The checker's effect quantale */
+    private final EffectQuantale<X> lattice;
+    /** The checker's conversion from annotations to effects */
+    private final Function<Class<? extends Annotation>, X> fromAnnotation;
+    /** The checker's effect annotations */
+    private final List<Class<? extends Annotation>> validEffects;
+    /** The effect of each annotation, by canonical name */
+    private final Map<String, X> byName = new HashMap<>();
+    /** The canonical name of an annotation for each effect that has one */
+    private final Map<X, String> names = new HashMap<>();
+    /** The top effect */
+    private final X top;
+
+    /**
+     * Create a worker.
+     *
+     * @param checkerName The binary name of the checker
+     * @param options The javac options for checking
+     */
+    public Worker(String checkerName, List<String> options) {
+      this.checkerName = checkerName;
+      this.options = options;
+      GenericEffectChecker<X> probe = newChecker();
+      lattice = probe.getEffectLattice();
+      fromAnnotation = probe::fromAnnotation;
+      validEffects = lattice.getValidEffects();
+      for (int i = validEffects.size() - 1; i >= 0; i--) {
+        Class<? extends Annotation> anno = validEffects.get(i);
+        X effect = fromAnnotation.apply(anno);
+        byName.put(anno.getCanonicalName(), effect);
+        names.put(effect, anno.getCanonicalName());
+      }
+      X greatest = greatestEffect();
+      if (greatest == null || !names.containsKey(greatest)) {
+        throw new UserError(
+            "%s has no greatest effect with an annotation, so cannot infer effects", checkerName);
+      }
+      top = greatest;
+    }
+
+    /**
+     * Find the greatest effect: the declared top element, or else the least upper bound of all the
+     * effect annotations.
+     *
+     * @return The greatest effect, or null if there is none
+     */
+    private X greatestEffect() {
+      if (lattice.top() != null) {
+        return lattice.top();
+      }
+      X greatest = null;
+      for (Class<? extends Annotation> anno : validEffects) {
+        X effect = fromAnnotation.apply(anno);
+        greatest = greatest == null ? effect : lattice.LUB(greatest, effect);
+        if (greatest == null) {
+          return null;
+        }
+      }
+      return greatest;
+    }
+
+    /**
+     * Instantiate the checker.
+     *
+     * @return A new checker
+     */
+    @SuppressWarnings("unchecked")
+    private GenericEffectChecker<X> newChecker() {
+      try {
+        return (GenericEffectChecker<X>)
+            Class.forName(checkerName, true, Worker.class.getClassLoader())
+                .getDeclaredConstructor()
+                .newInstance();
+      } catch (ReflectiveOperationException | ClassCastException e) {
+        throw new UserError("Unable to instantiate effect checker %s: %s", checkerName, e);
+      }
+    }
+
+    /**
+     * Check some files for one round of inference.
+     *
+     * @param files The files declaring the targets
+     * @param targets The methods whose effects are inferred, by summary key
+     * @param guesses The effects assumed for the targets in this round
+     * @param inferred The effects of methods inferred earlier
+     * @return The effect found for each target, {@link #UNSUMMARIZED} for targets whose declared
+     *     effects cannot be summarized; targets whose bodies could not be given an effect get the
+     *     top effect
+     * @throws UserError If the files do not compile, or some target's body was not checked
+     */
+    public Map<String, String> infer(
+        List<File> files,
+        Set<String> targets,
+        Map<String, String> guesses,
+        Map<String, String> inferred) {
+      EffectInference<X> inference =
+          new EffectInference<>(
+              top,
+              targets,
+              key -> byName.get(guesses.containsKey(key) ? guesses.get(key) : inferred.get(key)));
+      GenericEffectChecker<X> checker = newChecker();
+      checker.setInference(inference);
+      JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+      DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+      boolean succeeded;
+      try (StandardJavaFileManager fileManager =
+          javac.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+        CompilationTask task =
+            javac.getTask(
+                new StringWriter(),
+                fileManager,
+                diagnostics,
+                options,
+                null,
+                fileManager.getJavaFileObjectsFromFiles(files));
+        task.setProcessors(Collections.singletonList(checker));
+        succeeded = task.call();
+      } catch (IOException e) {
+        throw new UserError("Unable to read %s: %s", files, e.getMessage());
+      }
+      // Effect errors against the top effect only leave bodies without an effect; anything else
+      // means the sources do not compile, and no effect found for them can be trusted
+      List<String> errors = new ArrayList<>();
+      boolean checkerErrors = false;
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+        if (d.getKind() != Diagnostic.Kind.ERROR) {
+          continue;
+        } else if (PROCESSOR_ERROR.equals(d.getCode())) {
+          checkerErrors = true;
+        } else if (d.getSource() == null) {
+          errors.add(d.getMessage(null));
+        } else {
+          errors.add(
+              d.getSource().getName() + ":" + d.getLineNumber() + ": " + d.getMessage(null));
+        }
+      }
+      if (!errors.isEmpty() || (!succeeded && !checkerErrors)) {
+        throw new UserError(
+            "Unable to compile %s to infer the effects of %s:%n%s",
+            files, targets, String.join(System.lineSeparator(), errors));
+      }
+      Map<String, String> results = new HashMap<>();
+      for (Map.Entry<String, X> e : inference.results().entrySet()) {
+        results.put(e.getKey(), e.getValue() == null ? UNSUMMARIZED : encode(e.getValue()));
+      }
+      Set<String> unchecked = new TreeSet<>(targets);
+      unchecked.removeAll(results.keySet());
+      if (!unchecked.isEmpty()) {
+        throw new UserError("Effect inference did not check the bodies of %s", unchecked);
+      }
+      return results;
+    }
+
+    /**
+     * Compute the least upper bound of two effects.
+     *
+     * @param a The canonical name of an effect annotation
+     * @param b The canonical name of an effect annotation
+     * @return The least upper bound, or the top effect if there is none
+     */
+    public String lub(String a, String b) {
+      X lub = lattice.LUB(byName.get(a), byName.get(b));
+      return lub == null ? names.get(top) : encode(lub);
+    }
+
+    /**
+     * Get the top effect.
+     *
+     * @return The canonical name of the top effect's annotation
+     */
+    public String top() {
+      return names.get(top);
+    }
+
+    /**
+     * Write a summary file.
+     *
+     * @param effects The effect of each method, by summary key
+     * @param file The summary file
+     */
+    public void write(Map<String, String> effects, String file) {
+      EffectSummaryWriter<X> writer =
+          new EffectSummaryWriter<>(checkerName, validEffects, fromAnnotation, lattice.unit());
+      for (Map.Entry<String, String> e : effects.entrySet()) {
+        writer.addMethod(e.getKey(), byName.get(e.getValue()), Collections.emptyList());
+      }
+      try {
+        writer.write(Paths.get(file));
+      } catch (IOException e) {
+        throw new UserError("Unable to write effect summary %s: %s", file, e.getMessage());
+      }
+    }
+
+    /**
+     * Name an effect by an annotation, rounding up to the least effect with an annotation above it
+     * when it has none.
+     *
+     * @param effect An effect
+     * @return The canonical name of an effect annotation
+     */
+    private String encode(X effect) {
+      String name = names.get(effect);
+      if (name != null) {
+        return name;
+      }
+      X best = top;
+      for (X candidate : byName.values()) {
+        if (lattice.LE(effect, candidate) && lattice.LE(candidate, best)) {
+          best = candidate;
+        }
+      }
+      return names.get(best);
+    }
+  }
+
+  /**
+   * Runs a batch from the command line; see the class documentation for the arguments.
+   *
+   * @param args The command-line arguments
+   * @throws IOException If the sources cannot be read or the summary cannot be written
+   * @throws InterruptedException If interrupted while waiting for the workers
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    String checker = null;
+    String sources = null;
+    String output = null;
+    String classpath = "";
+    int threads = Runtime.getRuntime().availableProcessors();
+    int maxRounds = DEFAULT_MAX_ROUNDS;
+    List<String> options = new ArrayList<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      String key = eq < 0 ? arg : arg.substring(0, eq);
+      String value = eq < 0 ? "" : arg.substring(eq + 1);
+      switch (key) {
+        case "--checker":
+          checker = value;
+          break;
+        case "--sources":
+          sources = value;
+          break;
+        case "--output":
+          output = value;
+          break;
+        case "--classpath":
+          classpath = value;
+          break;
+        case "--threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "--max-rounds":
+          maxRounds = Integer.parseInt(value);
+          break;
+        case "--option":
+          options.add(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown argument " + arg);
+      }
+    }
+    if (checker == null || sources == null || output == null) {
+      throw new IllegalArgumentException("--checker, --sources, and --output are required");
+    }
+    new EffectSummaryBatch(checker, new File(sources), classpath, threads, maxRounds, options)
+        .run(Paths.get(output));
+  }
+}
@@ -0,0 +1,237 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.Pair;
+
+/**
+ * A memory-mapped view of an effect summary file written by {@link EffectSummaryWriter}.
+ *
+ * <p>Opening a summary only decodes its header. Each lookup binary-searches the hash index in the
+ * mapped file and decodes just the matching record, so loading the summaries of many dependencies
+ * costs little more than the lookups actually made.
+ *
+ * @param <X> The representation type of effects
+ */
+public final class EffectSummaryReader<X> {
+
+  /** The summary of a method's declared effect. */
+  public static final class MethodSummary<X> {
+    /** The declared effect of normal completion */
+    public final X base;
+    /** The canonical name of each declared thrown exception, with its effect */
+    public final List<Pair<String, X>> thrown;
+
+    /**
+     * Create a method summary.
+     *
+     * @param base The declared effect of normal completion
+     * @param thrown The canonical name of each declared thrown exception, with its effect
+     */
+    MethodSummary(X base, List<Pair<String, X>> thrown) {
+      this.base = base;
+      this.thrown = thrown;
+    }
+  }
+
+  /** The mapped file */
+  private final ByteBuffer buffer;
+  /** Local effect for each effect code of the file; null for effects this checker lacks */
+  private final List<@Nullable X> effects;
+  /** The unit effect, for {@link EffectSummaryWriter#UNIT} */
+  private final X unit;
+  /** Position of the hash index in the file */
+  private final int indexStart;
+  /** Number of records in the file */
+  private final int count;
+
+  /**
+   * Create a reader over a mapped summary file whose header has been decoded.
+   *
+   * @param buffer The mapped file, positioned after the header
+   * @param effects Local effect for each effect code of the file
+   * @param unit The unit effect
+   * @param count Number of records in the file
+   */
+  private EffectSummaryReader(ByteBuffer buffer, List<@Nullable X> effects, X unit, int count) {
+    this.buffer = buffer;
+    this.effects = effects;
+    this.unit = unit;
+    this.indexStart = buffer.position();
+    this.count = count;
+  }
+
+  /**
+   * Map a summary file and decode its header.
+   *
+   * @param file The summary file
+   * @param checkerName The name of the checker loading the summary
+   * @param validEffects The checker's valid effect annotations
+   * @param fromAnnotation Conversion from annotations to effects
+   * @param unit The unit effect
+   * @param <X> The representation type of effects
+   * @return A reader for the file, or null if the file summarizes a different checker
+   * @throws IOException If the file cannot be read or is not an effect summary
+   */
+  public static <X> @Nullable EffectSummaryReader<X> open(
+      Path file,
+      String checkerName,
+      List<Class<? extends Annotation>> validEffects,
+      Function<Class<? extends Annotation>, X> fromAnnotation,
+      X unit)
+      throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      if (buffer.getInt() != EffectSummaryWriter.MAGIC
+          || buffer.getInt() != EffectSummaryWriter.VERSION) {
+        throw new IOException("Not an effect summary file (or an unsupported version): " + file);
+      }
+      if (!checkerName.equals(readString(buffer))) {
+        return null;
+      }
+      Map<String, X> byName = new HashMap<>();
+      for (Class<? extends Annotation> effect : validEffects) {
+        byName.put(effect.getCanonicalName(), fromAnnotation.apply(effect));
+      }
+      int numEffects = buffer.getInt();
+      List<@Nullable X> effects = new ArrayList<>(numEffects);
+      for (int i = 0; i < numEffects; i++) {
+        effects.add(byName.get(readString(buffer)));
+      }
+      int count = buffer.getInt();
+      return new EffectSummaryReader<>(buffer, effects, unit, count);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated effect summary file: " + file, e);
+    }
+  }
+
+  /**
+   * Retrieve the summary of a method.
+   *
+   * @param key The method's key, from {@link EffectSummaryWriter#methodKey}
+   * @return The method's summary, or null if the file has none usable by this checker
+   */
+  public @Nullable MethodSummary<X> lookupMethod(String key) {
+    ByteBuffer record = find(key, EffectSummaryWriter.METHOD);
+    if (record == null) {
+      return null;
+    }
+    X base = decode(record.get());
+    int numThrown = record.get() & 0xFF;
+    List<Pair<String, X>> thrown =
+        numThrown == 0 ? Collections.emptyList() : new ArrayList<>(numThrown);
+    for (int i = 0; i < numThrown; i++) {
+      String exc = readString(record);
+      X effect = decode(record.get());
+      if (effect == null) {
+        return null;
+      }
+      thrown.add(Pair.of(exc, effect));
+    }
+    return base == null ? null : new MethodSummary<>(base, thrown);
+  }
+
+  /**
+   * Retrieve the default effect of a class.
+   *
+   * @param key The class's key, from {@link EffectSummaryWriter#classKey}
+   * @return The class's default effect, or null if the file has none usable by this checker
+   */
+  public @Nullable X lookupClassDefault(String key) {
+    ByteBuffer record = find(key, EffectSummaryWriter.CLASS);
+    return record == null ? null : decode(record.get());
+  }
+
+  /**
+   * Find a record by key.
+   *
+   * @param key The record's key
+   * @param kind The expected kind of record
+   * @return A buffer positioned after the record's kind, or null if there is no such record
+   */
+  private @Nullable ByteBuffer find(String key, byte kind) {
+    int hash = key.hashCode();
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    // Leftmost index entry with the key's hash
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (buffer.getInt(indexStart + 8 * mid) < hash) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    ByteBuffer record = buffer.duplicate();
+    for (int i = lo; i < count && buffer.getInt(indexStart + 8 * i) == hash; i++) {
+      record.position(buffer.getInt(indexStart + 8 * i + 4));
+      if (matches(record, keyBytes)) {
+        return record.get() == kind ? record : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compare the key of a record with a given key, advancing past the record's key.
+   *
+   * @param record A buffer positioned at the start of a record
+   * @param keyBytes The UTF-8 bytes of the key
+   * @return True if the record has the given key
+   */
+  private static boolean matches(ByteBuffer record, byte[] keyBytes) {
+    int length = record.getShort() & 0xFFFF;
+    if (length != keyBytes.length) {
+      return false;
+    }
+    for (byte b : keyBytes) {
+      if (record.get() != b) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decode an effect code.
+   *
+   * @param code An effect code
+   * @return The corresponding effect, or null if this checker has no such effect
+   */
+  private @Nullable X decode(byte code) {
+    if (code == EffectSummaryWriter.UNIT) {
+      return unit;
+    }
+    return (code & 0xFF) < effects.size() ? effects.get(code & 0xFF) : null;
+  }
+
+  /**
+   * Read a string written by {@link EffectSummaryWriter}.
+   *
+   * @param buffer A buffer positioned at the string
+   * @return The string
+   */
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
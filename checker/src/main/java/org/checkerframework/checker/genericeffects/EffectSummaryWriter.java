@@ -0,0 +1,238 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.Types;
+import org.checkerframework.javacutil.Pair;
+
+/**
+ * Collects the declared effects of the methods and classes compiled in one compilation, and writes
+ * them as a binary summary file that later compilations can load with {@link
+ * EffectSummaryReader}.
+ *
+ * <p>The file starts with a header: the {@link #MAGIC} number, the {@link #VERSION}, the name of
+ * the checker, and the canonical names of the checker's valid effect annotations. Effects are
+ * encoded as indices into that list of names, or {@link #UNIT} for the unit effect. The header is
+ * followed by an index of {@code (key hash, record offset)} pairs sorted by hash, and then by the
+ * records themselves. Each record holds its key, its kind ({@link #METHOD} or {@link #CLASS}), the
+ * encoded base (or default) effect, and for methods the declared thrown effects as pairs of an
+ * exception's canonical name and an encoded effect. Strings are written as an unsigned 16-bit
+ * length followed by UTF-8 bytes.
+ *
+ * @param <X> The representation type of effects
+ */
+public final class EffectSummaryWriter<X> {
+
+  /** Magic number identifying effect summary files */
+  static final int MAGIC = 0x45464653;
+  /** Version of the summary file format */
+  static final int VERSION = 1;
+  /** Record kind of a method summary */
+  static final byte METHOD = 0;
+  /** Record kind of a class default effect */
+  static final byte CLASS = 1;
+  /** Effect code of the unit effect, when it is not one of the valid effects */
+  static final byte UNIT = -1;
+
+  /** The name of the checker whose effects are summarized */
+  private final String checkerName;
+  /** The valid effect annotations, whose positions are the effect codes */
+  private final List<Class<? extends Annotation>> validEffects;
+  /** Map from each encodable effect to its code */
+  private final Map<X, Byte> codes = new HashMap<>();
+  /** Encoded records, by key, in key order so output is deterministic */
+  private final Map<String, byte[]> records = new TreeMap<>();
+
+  /**
+   * Create a writer for a checker's effects.
+   *
+   * @param checkerName The name of the checker whose effects are summarized
+   * @param validEffects The checker's valid effect annotations
+   * @param fromAnnotation Conversion from annotations to effects
+   * @param unit The unit effect
+   */
+  public EffectSummaryWriter(
+      String checkerName,
+      List<Class<? extends Annotation>> validEffects,
+      Function<Class<? extends Annotation>, X> fromAnnotation,
+      X unit) {
+    this.checkerName = checkerName;
+    this.validEffects = new ArrayList<>(validEffects);
+    for (int i = validEffects.size() - 1; i >= 0; i--) {
+      codes.put(fromAnnotation.apply(validEffects.get(i)), (byte) i);
+    }
+    codes.putIfAbsent(unit, UNIT);
+  }
+
+  /**
+   * Compute the summary key of a method or constructor: the canonical name of its class, its name,
+   * and the erasures of its parameter types.
+   *
+   * @param method A method or constructor
+   * @param types Type utilities, for erasure
+   * @return The summary key of the method
+   */
+  static String methodKey(ExecutableElement method, Types types) {
+    StringBuilder key = new StringBuilder();
+    key.append(((TypeElement) method.getEnclosingElement()).getQualifiedName())
+        .append('#')
+        .append(method.getSimpleName())
+        .append('(');
+    boolean first = true;
+    for (VariableElement param : method.getParameters()) {
+      if (!first) {
+        key.append(',');
+      }
+      key.append(types.erasure(param.asType()));
+      first = false;
+    }
+    return key.append(')').toString();
+  }
+
+  /**
+   * Compute the summary key of a class's default effect.
+   *
+   * @param cls A class or interface
+   * @return The summary key of the class
+   */
+  static String classKey(TypeElement cls) {
+    return cls.getQualifiedName().toString();
+  }
+
+  /**
+   * Record the declared effect of a method. Methods whose effects have no annotation are skipped,
+   * so readers fall back to the method's annotations.
+   *
+   * @param key The method's key, from {@link #methodKey(ExecutableElement, Types)}
+   * @param base The declared effect of normal completion
+   * @param thrown The canonical name of each declared thrown exception, with its effect
+   */
+  public void addMethod(String key, X base, List<Pair<String, X>> thrown) {
+    Byte baseCode = codes.get(base);
+    if (baseCode == null || thrown.size() > 255) {
+      return;
+    }
+    ByteSink out = new ByteSink();
+    try {
+      out.data.writeByte(METHOD);
+      out.data.writeByte(baseCode);
+      out.data.writeByte(thrown.size());
+      for (Pair<String, X> t : thrown) {
+        Byte code = codes.get(t.second);
+        if (code == null) {
+          return;
+        }
+        writeString(out.data, t.first);
+        out.data.writeByte(code);
+      }
+    } catch (IOException e) {
+      return; // an exception name too long to encode
+    }
+    records.put(key, out.bytes());
+  }
+
+  /**
+   * Record the default effect of a class.
+   *
+   * @param key The class's key, from {@link #classKey(TypeElement)}
+   * @param defaultEffect The default effect of the class's methods
+   */
+  public void addClass(String key, X defaultEffect) {
+    Byte code = codes.get(defaultEffect);
+    if (code != null) {
+      records.put(key, new byte[] {CLASS, code});
+    }
+  }
+
+  /**
+   * Write the recorded summaries to a file, replacing it if it exists.
+   *
+   * @param file The summary file
+   * @throws IOException If the file cannot be written
+   */
+  public void write(Path file) throws IOException {
+    ByteSink header = new ByteSink();
+    header.data.writeInt(MAGIC);
+    header.data.writeInt(VERSION);
+    writeString(header.data, checkerName);
+    header.data.writeInt(validEffects.size());
+    for (Class<? extends Annotation> effect : validEffects) {
+      writeString(header.data, effect.getCanonicalName());
+    }
+    header.data.writeInt(records.size());
+
+    // Sort by hash for the index; ties keep key order
+    List<Map.Entry<String, byte[]>> sorted = new ArrayList<>(records.entrySet());
+    sorted.sort((a, b) -> Integer.compare(a.getKey().hashCode(), b.getKey().hashCode()));
+
+    ByteSink body = new ByteSink();
+    int[] offsets = new int[sorted.size()];
+    int bodyStart = header.data.size() + 8 * sorted.size();
+    for (int i = 0; i < sorted.size(); i++) {
+      offsets[i] = bodyStart + body.data.size();
+      writeString(body.data, sorted.get(i).getKey());
+      body.data.write(sorted.get(i).getValue());
+    }
+
+    try (OutputStream os = Files.newOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+      header.data.flush();
+      out.write(header.buffer.toByteArray());
+      for (int i = 0; i < sorted.size(); i++) {
+        out.writeInt(sorted.get(i).getKey().hashCode());
+        out.writeInt(offsets[i]);
+      }
+      body.data.flush();
+      out.write(body.buffer.toByteArray());
+    }
+  }
+
+  /**
+   * Write a string as an unsigned 16-bit length followed by its UTF-8 bytes.
+   *
+   * @param out The destination
+   * @param s The string
+   * @throws IOException If writing fails
+   */
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > 0xFFFF) {
+      throw new IOException("Summary key too long: " + s);
+    }
+    out.writeShort(bytes.length);
+    out.write(bytes);
+  }
+
+  /** An in-memory data output stream. */
+  private static final class ByteSink {
+    /** The buffer receiving the bytes */
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    /** The data stream writing to the buffer */
+    final DataOutputStream data = new DataOutputStream(buffer);
+
+    /**
+     * Retrieve the bytes written so far.
+     *
+     * @return The bytes written so far
+     */
+    byte[] bytes() {
+      return buffer.toByteArray();
+    }
+  }
+}
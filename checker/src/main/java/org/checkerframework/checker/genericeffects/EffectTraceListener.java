@@ -0,0 +1,71 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+
+/**
+ * Receives structured events from effect checking, for offline profiling and debugging.
+ *
+ * <p>All methods default to doing nothing, and {@link #NO_OP} is used unless the {@code
+ * -AeffectTrace} option names a file to record events in (see {@link
+ * JsonLinesEffectTraceListener}). Effects are passed as objects so that listeners can be shared
+ * across effect representations; implementations should not retain them.
+ */
+public interface EffectTraceListener {
+
+  /** A listener that ignores all events. */
+  EffectTraceListener NO_OP = new EffectTraceListener() {};
+
+  /**
+   * Checking moved to a compilation unit; the AST nodes of later events belong to it.
+   *
+   * @param root The compilation unit
+   */
+  default void compilationUnit(CompilationUnitTree root) {}
+
+  /**
+   * A mark was placed in a {@link ContextEffect}.
+   *
+   * @param depth The number of marks outstanding after this one was placed
+   */
+  default void mark(int depth) {}
+
+  /**
+   * An effect was pushed onto a {@link ContextEffect}.
+   *
+   * @param effect The effect pushed
+   * @param tree The AST node responsible for the effect
+   * @param valid Whether sequencing the effect after the current context was defined
+   */
+  default void push(Object effect, Tree tree, boolean valid) {}
+
+  /**
+   * The entries since the last mark of a {@link ContextEffect} were squashed into one.
+   *
+   * @param effect The squashed effect
+   * @param tree The AST node the squashed effect is attributed to, possibly null
+   */
+  default void squash(Object effect, Tree tree) {}
+
+  /**
+   * A residual check was performed by the visitor.
+   *
+   * @param sofar The path effect so far
+   * @param target The effect the path must be completable to
+   * @param defined Whether the residual was defined
+   * @param tree The AST node at which the check was performed
+   */
+  default void residualCheck(Object sofar, Object target, boolean defined, Tree tree) {}
+
+  /**
+   * Sequencing two effects failed.
+   *
+   * @param left The effect executed first
+   * @param right The effect executed second
+   * @param tree The AST node responsible for the second effect
+   */
+  default void sequencingFailure(Object left, Object right, Tree tree) {}
+
+  /** Flush and release any resources held by this listener. */
+  default void close() {}
+}
@@ -0,0 +1,268 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.tools.javac.code.Type.ClassType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import org.checkerframework.checker.compilermsgs.qual.CompilerMessageKey;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.analysis.ForwardTransferFunction;
+import org.checkerframework.dataflow.analysis.RegularTransferResult;
+import org.checkerframework.dataflow.analysis.TransferInput;
+import org.checkerframework.dataflow.analysis.TransferResult;
+import org.checkerframework.dataflow.cfg.UnderlyingAST;
+import org.checkerframework.dataflow.cfg.node.AbstractNodeVisitor;
+import org.checkerframework.dataflow.cfg.node.InstanceOfNode;
+import org.checkerframework.dataflow.cfg.node.LocalVariableNode;
+import org.checkerframework.dataflow.cfg.node.MethodInvocationNode;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.cfg.node.ObjectCreationNode;
+import org.checkerframework.dataflow.cfg.node.ReturnNode;
+import org.checkerframework.dataflow.cfg.node.TypeCastNode;
+import org.checkerframework.javacutil.Pair;
+import org.checkerframework.javacutil.TreeUtils;
+
+/**
+ * Transfer function computing the effect of every path through a control flow graph, for checking
+ * a method body against a declared effect.
+ *
+ * <p>Method invocations, object creations, and the casts and instanceof tests handled by the
+ * checker's {@link GenericEffectExtension} sequence their effects onto the path. Calls with
+ * declared {@link org.checkerframework.checker.genericeffects.qual.ThrownEffect}s send the
+ * corresponding exceptional effects along the exceptional edges for the callee's declared
+ * exception types. Each extended path that completes normally is also checked for a residual with
+ * respect to the declared effect, so errors are localized to the first node that makes the
+ * declared effect unreachable. Throwing paths are checked where they leave the body, by {@link
+ * DataflowEffectVisitor}.
+ *
+ * <p>The analysis may apply the transfer function to a node several times before reaching a fixed
+ * point, so errors are only reported once {@link #startReporting()} has been called, when the
+ * checker replays each block from its final input store.
+ *
+ * @param <X> The representation type of effects
+ */
+public class EffectTransfer<X>
+    extends AbstractNodeVisitor<
+        TransferResult<EffectValue<X>, EffectStore<X>>,
+        TransferInput<EffectValue<X>, EffectStore<X>>>
+    implements ForwardTransferFunction<EffectValue<X>, EffectStore<X>> {
+
+  /** The checker reporting errors */
+  private final GenericEffectChecker<X> checker;
+  /** The type factory providing declared effects */
+  private final GenericEffectTypeFactory<X> factory;
+  /** Plugin for determining the effects of basic Java language features */
+  private final GenericEffectExtension<X> extension;
+  /** The underlying effect quantale */
+  private final EffectQuantale<X> lattice;
+  /** Type utilities, for matching declared thrown effects against exception types */
+  private final Types types;
+  /** The declared effect of the code being checked */
+  private final X target;
+  /** Whether to check residuals along the way; not when every residual of the target is defined */
+  private final boolean checkResiduals;
+  /** Whether errors are reported; false while the analysis is still converging */
+  private boolean reporting;
+  /** Trees already reported, since a tree may correspond to several nodes */
+  private final Set<Tree> reportedTrees = Collections.newSetFromMap(new IdentityHashMap<>());
+  /** Trees already warned about, kept apart so that a tree may have both an error and a warning */
+  private final Set<Tree> warnedTrees = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Create a transfer function for checking a method, lambda, or initializer.
+   *
+   * @param checker The checker reporting errors
+   * @param factory The type factory providing declared effects
+   * @param extension Plugin for determining the effects of basic Java language features
+   * @param target The declared effect of the code being checked
+   */
+  public EffectTransfer(
+      GenericEffectChecker<X> checker,
+      GenericEffectTypeFactory<X> factory,
+      GenericEffectExtension<X> extension,
+      X target) {
+    this.checker = checker;
+    this.factory = factory;
+    this.extension = extension;
+    this.lattice = checker.getTabulatedEffectLattice();
+    this.types = checker.getProcessingEnvironment().getTypeUtils();
+    this.target = target;
+    this.checkResiduals =
+        lattice.supportsErrorLocalization()
+            && checker.getOption("ignoreErrors") == null
+            && !lattice.residualAlwaysDefined(target);
+  }
+
+  /**
+   * Returns the declared effect of the code being checked.
+   *
+   * @return The declared effect of normal completion
+   */
+  public X getTarget() {
+    return target;
+  }
+
+  /** Report errors from now on. Called once the analysis has reached a fixed point. */
+  public void startReporting() {
+    reporting = true;
+  }
+
+  /**
+   * Report an error, unless the analysis is still converging or the tree was already reported.
+   *
+   * @param tree The error location, possibly null for synthetic nodes
+   * @param key The message key
+   * @param first The first effect argument
+   * @param second The second effect argument
+   */
+  void report(@Nullable Tree tree, @CompilerMessageKey String key, X first, X second) {
+    if (!reporting || tree == null || !reportedTrees.add(tree)) {
+      return;
+    }
+    ControlEffectQuantale<X> q = factory.getControlEffectQuantale();
+    checker.reportError(tree, key, q.lift(first), q.lift(second));
+  }
+
+  /**
+   * Sequence an effect onto the paths of a store, checking the residual of the extended paths.
+   *
+   * @param before The store before the effect
+   * @param eff The effect
+   * @param tree The tree responsible for the effect, used as the error location
+   * @param normal Whether the extended paths may complete normally, so that they are bounded by the
+   *     declared effect; paths that are throwing are instead checked at the exceptional exit
+   * @return The store after the effect
+   */
+  private EffectStore<X> sequence(
+      EffectStore<X> before, X eff, @Nullable Tree tree, boolean normal) {
+    X next = lattice.seq(before.path, eff);
+    if (next == null) {
+      if (!before.reported) {
+        report(tree, "undefined.sequencing", before.path, eff);
+      }
+      return before.with(before.path, true);
+    }
+    if (normal && checkResiduals && !before.reported && lattice.residual(next, target) == null) {
+      if (lattice.isCommutative()) {
+        // As in GenericEffectVisitor, drop the offending effect so later effects are checked alone
+        report(tree, "operation.invalid", eff, target);
+        return before.with(before.path, false);
+      }
+      report(tree, "undefined.residual", next, target);
+      return before.with(next, true);
+    }
+    return before.with(next, before.reported);
+  }
+
+  /**
+   * Compute the result of invoking a method or constructor.
+   *
+   * @param callee The invoked method or constructor
+   * @param tree The invocation
+   * @param in The input before the invocation
+   * @return The result of the invocation, with exceptional stores for declared thrown effects
+   */
+  private TransferResult<EffectValue<X>, EffectStore<X>> invoke(
+      ExecutableElement callee, Tree tree, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    EffectStore<X> before = in.getRegularStore();
+    X base = factory.getDeclaredBaseEffect(callee);
+    List<Pair<ClassType, X>> thrown = factory.getDeclaredThrownEffects(callee);
+    Map<TypeMirror, EffectStore<X>> exceptional = null;
+    if (!thrown.isEmpty()) {
+      exceptional = new HashMap<>();
+      for (TypeMirror cause : callee.getThrownTypes()) {
+        X exc = null;
+        for (Pair<ClassType, X> t : thrown) {
+          if (types.isSubtype(t.first, cause) || types.isSubtype(cause, t.first)) {
+            X lub = exc == null ? t.second : lattice.LUB(exc, t.second);
+            exc = lub == null ? exc : lub;
+          }
+        }
+        if (exc != null) {
+          exceptional.put(cause, sequence(before, exc, tree, false));
+        }
+      }
+    }
+    return new RegularTransferResult<>(
+        new EffectValue<>(lattice, base), sequence(before, base, tree, true), exceptional);
+  }
+
+  /**
+   * Compute the result of a node with an effect of its own.
+   *
+   * @param eff The effect of the node
+   * @param tree The tree of the node
+   * @param in The input before the node
+   * @return The result of the node
+   */
+  private TransferResult<EffectValue<X>, EffectStore<X>> perform(
+      X eff, Tree tree, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    return new RegularTransferResult<>(
+        new EffectValue<>(lattice, eff), sequence(in.getRegularStore(), eff, tree, true));
+  }
+
+  @Override
+  public EffectStore<X> initialStore(
+      UnderlyingAST underlyingAST, List<LocalVariableNode> parameters) {
+    return new EffectStore<>(lattice, lattice.unit(), false, null);
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitNode(
+      Node n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    return new RegularTransferResult<>(null, in.getRegularStore());
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitMethodInvocation(
+      MethodInvocationNode n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    return invoke(n.getTarget().getMethod(), n.getTree(), in);
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitObjectCreation(
+      ObjectCreationNode n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    return invoke(TreeUtils.elementFromUse(n.getTree()), n.getTree(), in);
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitTypeCast(
+      TypeCastNode n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    TypeCastTree tree = (TypeCastTree) n.getTree();
+    TransferResult<EffectValue<X>, EffectStore<X>> result =
+        perform(extension.checkTypeCast(tree), tree, in);
+    String warning = extension.reportWarning(tree);
+    if (reporting && warning != null && warnedTrees.add(tree)) {
+      checker.reportWarning(tree, warning);
+    }
+    return result;
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitInstanceOf(
+      InstanceOfNode n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    if (!extension.doesInstanceOfCheck()) {
+      return visitNode(n, in);
+    }
+    return perform(extension.checkInstanceOf(n.getTree()), n.getTree(), in);
+  }
+
+  @Override
+  public TransferResult<EffectValue<X>, EffectStore<X>> visitReturn(
+      ReturnNode n, TransferInput<EffectValue<X>, EffectStore<X>> in) {
+    EffectStore<X> before = in.getRegularStore();
+    if (before.reported || lattice.LE(before.path, target)) {
+      return visitNode(n, in);
+    }
+    report(n.getTree(), "invalid.return", before.path, target);
+    return new RegularTransferResult<>(null, before.with(before.path, true));
+  }
+}
@@ -0,0 +1,53 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.util.Objects;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.analysis.AbstractValue;
+
+/**
+ * The dataflow value of a node for an {@link EffectTransfer}: the latent effect of the node itself,
+ * such as the declared effect of an invoked method.
+ *
+ * @param <X> The representation type of effects
+ */
+public final class EffectValue<X> implements AbstractValue<EffectValue<X>> {
+
+  /** The effect quantale used for joins */
+  private final EffectQuantale<X> lattice;
+
+  /** The effect of the node */
+  final X effect;
+
+  /**
+   * Create a value.
+   *
+   * @param lattice The effect quantale used for joins
+   * @param effect The effect of the node
+   */
+  EffectValue(EffectQuantale<X> lattice, X effect) {
+    this.lattice = lattice;
+    this.effect = effect;
+  }
+
+  /** Join the effects of two values. If the join is undefined, this keeps this value's effect. */
+  @Override
+  public EffectValue<X> leastUpperBound(EffectValue<X> other) {
+    X lub = lattice.LUB(effect, other.effect);
+    return new EffectValue<>(lattice, lub == null ? effect : lub);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    return o instanceof EffectValue && Objects.equals(effect, ((EffectValue<?>) o).effect);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(effect);
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(effect);
+  }
+}
@@ -0,0 +1,649 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.CatchTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.InstanceOfTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ThrowTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Type.ClassType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.UnionType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.javacutil.ElementUtils;
+import org.checkerframework.javacutil.Pair;
+import org.checkerframework.javacutil.TreeUtils;
+
+/**
+ * A persistent cache of the diagnostics issued for each method, so that methods unchanged since a
+ * previous compilation need not be checked again.
+ *
+ * <p>Each entry is keyed by the method's signature, and records a {@linkplain #fingerprint
+ * fingerprint} of everything the verdict depends on: the method's code, the enclosing classes'
+ * declarations, the declared effects of the method and of the methods it overrides, the declared
+ * effects of the methods overridden by members of its local and anonymous classes and implemented
+ * by its lambdas, the types and declared effects of the elements its code refers to, and the
+ * supertypes of the classes it refers to, casts to, tests against, throws, or catches, since
+ * subtyping decides which exceptions are caught and may decide the effects of casts. When the
+ * fingerprint matches, the visitor replays the recorded diagnostics instead of checking the
+ * method. Each diagnostic is
+ * stored as its formatted message and the preorder index of the tree it was reported at within the
+ * method, so replayed diagnostics point at the current positions of those trees.
+ *
+ * <p>The file starts with the {@link #MAGIC} number, the {@link #VERSION}, and a description of the
+ * checking environment (the checker, its code, and the options that affect diagnostics); if any of
+ * these differ, the whole file is ignored. The entries follow as a count, then for each entry its
+ * key, fingerprint, and diagnostics.
+ */
+public final class EffectVerdictCache {
+
+  /** Magic number identifying verdict cache files */
+  static final int MAGIC = 0x45465643;
+  /** Version of the cache file format */
+  static final int VERSION = 1;
+
+  /** Options that do not affect the diagnostics issued, so do not invalidate the cache */
+  private static final Set<String> IRRELEVANT_OPTIONS =
+      new LinkedHashSet<>(
+          Arrays.asList(
+              "effectCache",
+              "effectTrace",
+              "effectSummaryOutput",
+              "effectProfileTop",
+              "effectProfileCsv",
+              "resourceStats"));
+
+  /** A diagnostic issued within a method. */
+  public static final class CachedDiagnostic {
+    /** The kind of diagnostic, after any {@code -Awarns} conversion */
+    final Diagnostic.Kind kind;
+    /** The preorder index, within the method, of the tree the diagnostic was reported at */
+    final int treeIndex;
+    /** The formatted message */
+    final String message;
+
+    /**
+     * Create a cached diagnostic.
+     *
+     * @param kind The kind of diagnostic
+     * @param treeIndex The preorder index of its tree within the method
+     * @param message The formatted message
+     */
+    CachedDiagnostic(Diagnostic.Kind kind, int treeIndex, String message) {
+      this.kind = kind;
+      this.treeIndex = treeIndex;
+      this.message = message;
+    }
+  }
+
+  /** A diagnostic reported while checking a method, before it is cached. */
+  public static final class ReportedDiagnostic {
+    /** The kind of diagnostic, after any {@code -Awarns} conversion */
+    final Diagnostic.Kind kind;
+    /** The formatted message */
+    final String message;
+    /** The tree the diagnostic was reported at */
+    final Tree tree;
+
+    /**
+     * Create a reported diagnostic.
+     *
+     * @param kind The kind of diagnostic
+     * @param message The formatted message
+     * @param tree The tree the diagnostic was reported at
+     */
+    public ReportedDiagnostic(Diagnostic.Kind kind, String message, Tree tree) {
+      this.kind = kind;
+      this.message = message;
+      this.tree = tree;
+    }
+  }
+
+  /** A cached verdict for one method. */
+  private static final class Entry {
+    /** The fingerprint the verdict was computed under */
+    final byte[] fingerprint;
+    /** The diagnostics issued */
+    final List<CachedDiagnostic> diagnostics;
+
+    /**
+     * Create an entry.
+     *
+     * @param fingerprint The fingerprint the verdict was computed under
+     * @param diagnostics The diagnostics issued
+     */
+    Entry(byte[] fingerprint, List<CachedDiagnostic> diagnostics) {
+      this.fingerprint = fingerprint;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  /** The cache file */
+  private final Path file;
+  /** Description of the checking environment the entries are valid for */
+  private final String environment;
+  /** Entries by method key, in key order so output is deterministic */
+  private final Map<String, Entry> entries = new TreeMap<>();
+  /** Whether any entry was added or replaced since the file was read */
+  private boolean modified = false;
+  /** Number of lookups answered from the cache */
+  private int hits = 0;
+  /** Number of lookups not answered from the cache */
+  private int misses = 0;
+
+  /**
+   * Create a cache backed by the given file, loading the entries it holds if it exists and was
+   * written for the same environment. A truncated or corrupt file is treated as empty.
+   *
+   * @param file The cache file
+   * @param environment Description of the checking environment, from {@link #environment}
+   * @throws IOException If the file exists but cannot be read
+   */
+  public EffectVerdictCache(Path file, String environment) throws IOException {
+    this.file = file;
+    this.environment = environment;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      read(in);
+    } catch (NoSuchFileException e) {
+      // Nothing cached yet
+    } catch (EOFException | RuntimeException e) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Read the entries of a cache file, if its header matches this cache's environment.
+   *
+   * @param in The contents of the file
+   * @throws IOException If the file cannot be read
+   */
+  private void read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC
+        || in.readInt() != VERSION
+        || !readString(in).equals(environment)) {
+      return;
+    }
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      String key = readString(in);
+      byte[] fingerprint = new byte[in.readUnsignedByte()];
+      in.readFully(fingerprint);
+      int n = in.readInt();
+      List<CachedDiagnostic> diagnostics = new ArrayList<>(n);
+      for (int j = 0; j < n; j++) {
+        Diagnostic.Kind kind = Diagnostic.Kind.values()[in.readUnsignedByte()];
+        int treeIndex = in.readInt();
+        diagnostics.add(new CachedDiagnostic(kind, treeIndex, readString(in)));
+      }
+      entries.put(key, new Entry(fingerprint, diagnostics));
+    }
+  }
+
+  /**
+   * Look up the cached diagnostics of a method.
+   *
+   * @param key The method's key
+   * @param fingerprint The method's current fingerprint
+   * @return The diagnostics recorded for the method, or null if there are none for this fingerprint
+   */
+  public @Nullable List<CachedDiagnostic> lookup(String key, byte[] fingerprint) {
+    Entry entry = entries.get(key);
+    if (entry != null && Arrays.equals(entry.fingerprint, fingerprint)) {
+      hits++;
+      return entry.diagnostics;
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Record the diagnostics of a method, replacing any previous entry for it. Nothing is recorded if
+   * any diagnostic was reported at a tree outside the method, since it could not be replayed.
+   *
+   * @param key The method's key
+   * @param fingerprint The method's fingerprint
+   * @param tree The method's declaration
+   * @param reported The diagnostics reported while checking the method
+   */
+  public void store(
+      String key, byte[] fingerprint, MethodTree tree, List<ReportedDiagnostic> reported) {
+    List<CachedDiagnostic> diagnostics = new ArrayList<>(reported.size());
+    if (!reported.isEmpty()) {
+      Map<Tree, Integer> indices = new IdentityHashMap<>();
+      List<Tree> trees = preorder(tree);
+      for (int i = 0; i < trees.size(); i++) {
+        indices.put(trees.get(i), i);
+      }
+      for (ReportedDiagnostic d : reported) {
+        Integer index = indices.get(d.tree);
+        if (index == null) {
+          modified |= entries.remove(key) != null;
+          return;
+        }
+        diagnostics.add(new CachedDiagnostic(d.kind, index, d.message));
+      }
+    }
+    entries.put(key, new Entry(fingerprint, diagnostics));
+    modified = true;
+  }
+
+  /**
+   * Describe how many lookups were answered from the cache, for {@code -AresourceStats}.
+   *
+   * @return A human-readable summary of cache hits and lookups
+   */
+  public String stats() {
+    return hits + "/" + (hits + misses);
+  }
+
+  /**
+   * Write the cache back to its file, if anything changed. The file is replaced atomically where
+   * the file system allows, so concurrent compilations never see a partial file.
+   *
+   * @throws IOException If the file cannot be written
+   */
+  public void write() throws IOException {
+    if (!modified) {
+      return;
+    }
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, environment);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        writeString(out, e.getKey());
+        out.writeByte(e.getValue().fingerprint.length);
+        out.write(e.getValue().fingerprint);
+        out.writeInt(e.getValue().diagnostics.size());
+        for (CachedDiagnostic d : e.getValue().diagnostics) {
+          out.writeByte(d.kind.ordinal());
+          out.writeInt(d.treeIndex);
+          writeString(out, d.message);
+        }
+      }
+    }
+    try {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    modified = false;
+  }
+
+  /**
+   * Write a string as an int length followed by UTF-8 bytes; messages may exceed the 64KB limit of
+   * {@link DataOutputStream#writeUTF}.
+   *
+   * @param out The destination
+   * @param s The string
+   * @throws IOException If writing fails
+   */
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string written by {@link #writeString}.
+   *
+   * @param in The source
+   * @return The string
+   * @throws IOException If reading fails
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Describe the checking environment that cached verdicts depend on: the checker, the location and
+   * modification time of its code, and the options that can change its diagnostics.
+   *
+   * @param checker The checker
+   * @param options The annotation processor options
+   * @return The description
+   */
+  public static String environment(GenericEffectChecker<?> checker, Map<String, String> options) {
+    StringBuilder sb = new StringBuilder(checker.getClass().getName());
+    try {
+      CodeSource source = checker.getClass().getProtectionDomain().getCodeSource();
+      if (source != null && source.getLocation() != null) {
+        Path code = Paths.get(source.getLocation().toURI());
+        sb.append('@').append(code).append('@').append(Files.getLastModifiedTime(code));
+      }
+    } catch (IOException | SecurityException | URISyntaxException e) {
+      // Without a location, a changed checker goes unnoticed; clear the cache when upgrading
+    }
+    for (Map.Entry<String, String> e : new TreeMap<>(options).entrySet()) {
+      if (!IRRELEVANT_OPTIONS.contains(e.getKey())) {
+        sb.append(';').append(e.getKey()).append('=').append(e.getValue());
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Compute the cache key of a method, or null if the method cannot be cached: methods of local
+   * and anonymous classes have no stable name, and are cached as part of their enclosing method.
+   *
+   * @param method A method
+   * @param types The type utilities
+   * @return The method's key, or null
+   */
+  public static @Nullable String key(ExecutableElement method, Types types) {
+    for (Element e = method.getEnclosingElement(); e instanceof TypeElement; ) {
+      NestingKind nesting = ((TypeElement) e).getNestingKind();
+      if (nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS) {
+        return null;
+      }
+      e = e.getEnclosingElement();
+    }
+    return EffectSummaryWriter.methodKey(method, types);
+  }
+
+  /**
+   * Compute the fingerprint of everything the diagnostics for a method depend on.
+   *
+   * @param tree The method's declaration
+   * @param method The method's element
+   * @param factory The type factory, for declared effects
+   * @return A SHA-256 digest
+   */
+  public static byte[] fingerprint(
+      MethodTree tree, ExecutableElement method, GenericEffectTypeFactory<?> factory) {
+    Types types = factory.getProcessingEnv().getTypeUtils();
+    StringBuilder sb = new StringBuilder();
+    // The code itself, independent of formatting and comments
+    sb.append(tree).append('\n');
+    // The enclosing classes, whose annotations, supertypes, and defaults apply to the method
+    for (Element e = method.getEnclosingElement(); e != null; e = e.getEnclosingElement()) {
+      sb.append(e).append(e.getAnnotationMirrors());
+      if (e instanceof TypeElement) {
+        TypeElement te = (TypeElement) e;
+        sb.append(" extends ").append(te.getSuperclass()).append(te.getInterfaces());
+      }
+      sb.append('\n');
+    }
+    // The types whose supertypes the verdict may depend on
+    List<TypeMirror> referenced = new ArrayList<>();
+    appendDeclaredEffect(sb, method, factory, referenced);
+    for (ExecutableElement overridden : ElementUtils.getOverriddenMethods(method, types)) {
+      sb.append("overrides ").append(overridden.getEnclosingElement()).append('.');
+      appendDeclaredEffect(sb, overridden, factory, referenced);
+    }
+    // Everything the code refers to
+    Set<Element> used = Collections.newSetFromMap(new IdentityHashMap<>());
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void visitClass(ClassTree node, Void p) {
+        // Members of local and anonymous classes are checked against the methods they override
+        TypeElement cls = TreeUtils.elementFromDeclaration(node);
+        referenced.add(cls.asType());
+        for (ExecutableElement member : ElementFilter.methodsIn(cls.getEnclosedElements())) {
+          for (ExecutableElement overridden : ElementUtils.getOverriddenMethods(member, types)) {
+            sb.append(member).append(" overrides ").append(overridden.getEnclosingElement());
+            sb.append('.');
+            appendDeclaredEffect(sb, overridden, factory, referenced);
+          }
+        }
+        return super.visitClass(node, p);
+      }
+
+      @Override
+      public Void visitLambdaExpression(LambdaExpressionTree node, Void p) {
+        // A lambda body is checked against the method of its functional interface
+        ExecutableElement function =
+            (ExecutableElement) TreeUtils.findFunction(node, factory.getProcessingEnv());
+        sb.append("lambda implements ").append(function.getEnclosingElement()).append('.');
+        appendDeclaredEffect(sb, function, factory, referenced);
+        return super.visitLambdaExpression(node, p);
+      }
+
+      @Override
+      public Void visitTypeCast(TypeCastTree node, Void p) {
+        referenced.add(TreeUtils.typeOf(node.getType()));
+        referenced.add(TreeUtils.typeOf(node.getExpression()));
+        return super.visitTypeCast(node, p);
+      }
+
+      @Override
+      public Void visitInstanceOf(InstanceOfTree node, Void p) {
+        referenced.add(TreeUtils.typeOf(node.getType()));
+        referenced.add(TreeUtils.typeOf(node.getExpression()));
+        return super.visitInstanceOf(node, p);
+      }
+
+      @Override
+      public Void visitCatch(CatchTree node, Void p) {
+        referenced.add(TreeUtils.typeOf(node.getParameter().getType()));
+        return super.visitCatch(node, p);
+      }
+
+      @Override
+      public Void visitThrow(ThrowTree node, Void p) {
+        referenced.add(TreeUtils.typeOf(node.getExpression()));
+        return super.visitThrow(node, p);
+      }
+
+      @Override
+      public Void visitIdentifier(IdentifierTree node, Void p) {
+        use(node);
+        return super.visitIdentifier(node, p);
+      }
+
+      @Override
+      public Void visitMemberSelect(MemberSelectTree node, Void p) {
+        use(node);
+        return super.visitMemberSelect(node, p);
+      }
+
+      @Override
+      public Void visitMemberReference(MemberReferenceTree node, Void p) {
+        use(node);
+        return super.visitMemberReference(node, p);
+      }
+
+      @Override
+      public Void visitMethodInvocation(MethodInvocationTree node, Void p) {
+        use(node);
+        return super.visitMethodInvocation(node, p);
+      }
+
+      @Override
+      public Void visitNewClass(NewClassTree node, Void p) {
+        use(node);
+        return super.visitNewClass(node, p);
+      }
+
+      /**
+       * Record the element an expression refers to, once.
+       *
+       * @param node An expression
+       */
+      private void use(ExpressionTree node) {
+        Element elt = TreeUtils.elementFromUse(node);
+        if (elt == null || !used.add(elt)) {
+          return;
+        }
+        sb.append(elt.getKind()).append(' ');
+        if (elt.getKind() != ElementKind.LOCAL_VARIABLE && elt.getKind() != ElementKind.PARAMETER) {
+          sb.append(elt.getEnclosingElement()).append('.');
+        }
+        sb.append(elt).append(" : ").append(elt.asType());
+        if (elt instanceof ExecutableElement) {
+          sb.append(' ');
+          appendDeclaredEffect(sb, (ExecutableElement) elt, factory, referenced);
+        } else {
+          sb.append('\n');
+        }
+        if (elt instanceof TypeElement) {
+          referenced.add(elt.asType());
+        }
+      }
+    }.scan(tree, null);
+
+    Set<Element> supertypesSeen = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (TypeMirror t : referenced) {
+      appendSupertypes(sb, t, supertypesSeen);
+    }
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("SHA-256 is required of every Java platform", e);
+    }
+  }
+
+  /**
+   * Append a method's signature and declared effects to a fingerprint.
+   *
+   * @param sb The fingerprint being built
+   * @param method A method
+   * @param factory The type factory, for declared effects
+   * @param referenced The types whose supertypes the fingerprint covers; the method's thrown types
+   *     are added to it
+   */
+  private static void appendDeclaredEffect(
+      StringBuilder sb,
+      ExecutableElement method,
+      GenericEffectTypeFactory<?> factory,
+      List<TypeMirror> referenced) {
+    sb.append(method)
+        .append(" : ")
+        .append(factory.getDeclaredBaseEffect(method))
+        .append(' ')
+        .append(factory.getDeclaredThrownEffects(method))
+        .append(" throws ")
+        .append(method.getThrownTypes())
+        .append('\n');
+    referenced.addAll(method.getThrownTypes());
+    for (Pair<ClassType, ?> thrown : factory.getDeclaredThrownEffects(method)) {
+      referenced.add(thrown.first);
+    }
+  }
+
+  /**
+   * Append the declared supertypes of a type, and of each of those, to a fingerprint.
+   *
+   * @param sb The fingerprint being built
+   * @param type A type
+   * @param seen The classes whose supertypes were already appended
+   */
+  private static void appendSupertypes(StringBuilder sb, TypeMirror type, Set<Element> seen) {
+    switch (type.getKind()) {
+      case ARRAY:
+        appendSupertypes(sb, ((ArrayType) type).getComponentType(), seen);
+        return;
+      case UNION:
+        for (TypeMirror alternative : ((UnionType) type).getAlternatives()) {
+          appendSupertypes(sb, alternative, seen);
+        }
+        return;
+      case INTERSECTION:
+        for (TypeMirror bound : ((IntersectionType) type).getBounds()) {
+          appendSupertypes(sb, bound, seen);
+        }
+        return;
+      case TYPEVAR:
+        appendSupertypes(sb, ((TypeVariable) type).getUpperBound(), seen);
+        return;
+      case DECLARED:
+        break;
+      default:
+        return;
+    }
+    TypeElement cls = (TypeElement) ((DeclaredType) type).asElement();
+    if (!seen.add(cls)) {
+      return;
+    }
+    sb.append("type ")
+        .append(cls.getQualifiedName())
+        .append(" extends ")
+        .append(cls.getSuperclass())
+        .append(cls.getInterfaces())
+        .append('\n');
+    appendSupertypes(sb, cls.getSuperclass(), seen);
+    for (TypeMirror i : cls.getInterfaces()) {
+      appendSupertypes(sb, i, seen);
+    }
+  }
+
+  /**
+   * List the trees of a method in preorder, the order that {@link CachedDiagnostic#treeIndex}
+   * refers to.
+   *
+   * @param tree A method declaration
+   * @return Every tree within the method, including the method itself, in preorder
+   */
+  public static List<Tree> preorder(MethodTree tree) {
+    List<Tree> trees = new ArrayList<>();
+    new TreeScanner<Void, Void>() {
+      @Override
+      public Void scan(Tree node, Void p) {
+        if (node != null) {
+          trees.add(node);
+        }
+        return super.scan(node, p);
+      }
+    }.scan(tree, null);
+    return trees;
+  }
+}
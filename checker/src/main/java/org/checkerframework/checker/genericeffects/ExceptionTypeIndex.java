@@ -0,0 +1,158 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.tools.javac.code.Type.ClassType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import javax.lang.model.util.Types;
+
+/**
+ * Dense numbering of the exception types seen while checking, with memoized subtype tests.
+ *
+ * <p>Exception and catch types are compared many times: every filtering of a control effect by a
+ * try block, every residual check involving thrown behaviors, and every equivalence check between
+ * control effects with exceptions. This index assigns each exception type a small integer, records
+ * each subtype verdict in a bit matrix the first time it is computed, and represents sets of catch
+ * types as bit masks, so repeated tests become word operations.
+ */
+public final class ExceptionTypeIndex {
+
+  /** The type utilities used to compute subtype verdicts. */
+  private final Types types;
+
+  /** Map from each exception type seen so far to its number. */
+  private final Map<ClassType, Integer> ids = new HashMap<>();
+
+  /** The exception types seen so far, indexed by number. */
+  private ClassType[] byId = new ClassType[16];
+
+  /** For each type number, the bits of the types for which a subtype verdict is known. */
+  private long[][] known = new long[16][];
+
+  /** For each type number, the bits of the known supertypes. */
+  private long[][] supertypes = new long[16][];
+
+  /**
+   * Create an empty index.
+   *
+   * @param types The type utilities to compute subtype verdicts with
+   */
+  public ExceptionTypeIndex(Types types) {
+    this.types = types;
+  }
+
+  /**
+   * Retrieve the number of an exception type, assigning one if necessary.
+   *
+   * @param t An exception type
+   * @return Its number
+   */
+  public int id(ClassType t) {
+    Integer i = ids.get(t);
+    if (i != null) {
+      return i;
+    }
+    int n = ids.size();
+    if (n == byId.length) {
+      byId = Arrays.copyOf(byId, n * 2);
+      known = Arrays.copyOf(known, n * 2);
+      supertypes = Arrays.copyOf(supertypes, n * 2);
+    }
+    byId[n] = t;
+    known[n] = new long[1];
+    supertypes[n] = new long[1];
+    ids.put(t, n);
+    return n;
+  }
+
+  /**
+   * Check whether one exception type is a subtype of another.
+   *
+   * @param a A possible subtype
+   * @param b A possible supertype
+   * @return True if {@code a} is a subtype of {@code b}
+   */
+  public boolean isSubtype(ClassType a, ClassType b) {
+    if (a == b) {
+      return true;
+    }
+    return isSubtype(id(a), id(b));
+  }
+
+  /**
+   * Check whether one numbered exception type is a subtype of another, computing and recording the
+   * verdict if it is not yet known.
+   *
+   * @param a The number of a possible subtype
+   * @param b The number of a possible supertype
+   * @return True if type {@code a} is a subtype of type {@code b}
+   */
+  private boolean isSubtype(int a, int b) {
+    int word = b >>> 6;
+    long bit = 1L << b;
+    long[] k = known[a];
+    if (word < k.length && (k[word] & bit) != 0) {
+      return (supertypes[a][word] & bit) != 0;
+    }
+    if (word >= k.length) {
+      known[a] = k = Arrays.copyOf(k, word + 1);
+      supertypes[a] = Arrays.copyOf(supertypes[a], word + 1);
+    }
+    boolean sub = types.isSubtype(byId[a], byId[b]);
+    k[word] |= bit;
+    if (sub) {
+      supertypes[a][word] |= bit;
+    }
+    return sub;
+  }
+
+  /**
+   * Compute the bit mask for a set of exception types, e.g., the types caught by a try block.
+   *
+   * @param caught A collection of exception types
+   * @return A bit mask with the bit of each type's number set
+   */
+  public long[] mask(Collection<ClassType> caught) {
+    long[] m = new long[(ids.size() + caught.size() + 63) >>> 6];
+    for (ClassType c : caught) {
+      int i = id(c);
+      m[i >>> 6] |= 1L << i;
+    }
+    return m;
+  }
+
+  /**
+   * Check whether an exception type is a subtype of any type in a mask.
+   *
+   * @param a An exception type
+   * @param mask A mask computed by {@link #mask(Collection)}
+   * @return True if {@code a} is a subtype of some type in the mask
+   */
+  public boolean isSubtypeOfAny(ClassType a, long[] mask) {
+    int ia = id(a);
+    for (int w = 0; w < mask.length; w++) {
+      long pending = mask[w];
+      if (pending == 0) {
+        continue;
+      }
+      long[] k = known[ia];
+      long[] s = supertypes[ia];
+      if (w < k.length) {
+        // Answer from known verdicts first
+        if ((s[w] & pending) != 0) {
+          return true;
+        }
+        pending &= ~k[w];
+      }
+      while (pending != 0) {
+        int b = (w << 6) + Long.numberOfTrailingZeros(pending);
+        if (isSubtype(ia, b)) {
+          return true;
+        }
+        pending &= pending - 1;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,381 @@
+package org.checkerframework.checker.genericeffects;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A table-driven implementation of a finite {@link EffectQuantale}.
+ *
+ * <p>Most effect quantales used with the framework are small, finite structures whose operations
+ * are written as chains of identity comparisons. Since {@link GenericEffectVisitor} invokes these
+ * operations for essentially every AST node, this adapter enumerates a finite effect quantale once
+ * (starting from its valid effects and unit, and closing under all operations) and then answers
+ * every operation by indexing into dense tables.
+ *
+ * <p>Operations whose underlying implementation throws during enumeration (e.g., unimplemented
+ * operations or assertion failures for unexpected inputs) are not tabulated; those entries, and any
+ * effect outside the enumerated set, are delegated to the underlying quantale so behavior is
+ * identical to using it directly.
+ *
+ * @param <X> The representation type of behaviors handled by this effect quantale
+ */
+public final class FiniteEffectQuantale<X> extends EffectQuantale<X> {
+
+  /** Largest number of elements we are willing to tabulate. */
+  public static final int MAX_ELEMENTS = 64;
+
+  /** Table entry indicating the operation is undefined (the underlying operation returns null). */
+  private static final int UNDEFINED = -1;
+
+  /** Table entry indicating the operation must be delegated to the underlying quantale. */
+  private static final int DELEGATE = -2;
+
+  /** The quantale being tabulated. */
+  private final EffectQuantale<X> underlying;
+
+  /** The enumerated elements, in index order. */
+  private final List<X> elements;
+
+  /** Map from each enumerated element to its index in {@link #elements}. */
+  private final Map<X, Integer> index;
+
+  /** Number of enumerated elements. */
+  private final int size;
+
+  /** Row-major table of sequencing results. */
+  private final int[] seqTable;
+
+  /** Row-major table of least-upper-bound results. */
+  private final int[] lubTable;
+
+  /** Row-major table of residual results. */
+  private final int[] residualTable;
+
+  /** Table of iteration results. */
+  private final int[] iterTable;
+
+  /** Ordering as a bit matrix: bit {@code r} of row {@code l} is set iff {@code LE(l,r)}. */
+  private final long[] leMatrix;
+
+  /** Bit matrix of ordering queries that must be delegated to the underlying quantale. */
+  private final long[] leDelegate;
+
+  /** Index of the unit element. */
+  private final int unitIndex;
+
+  /** Index of the greatest element, or -1 if there is none (or it could not be tabulated). */
+  private final int topIndex;
+
+  /** Bit {@code t} is set iff every residual with respect to element {@code t} is defined. */
+  private final long residualTotal;
+
+  /**
+   * Build the tables for a finite effect quantale. Use {@link #tabulate(EffectQuantale, Function)}
+   * instead, which falls back to the original quantale if it cannot be enumerated.
+   *
+   * @param underlying The quantale to tabulate
+   * @param elements The closed set of elements of the quantale, including its unit
+   */
+  private FiniteEffectQuantale(EffectQuantale<X> underlying, List<X> elements) {
+    this.underlying = underlying;
+    this.elements = elements;
+    this.size = elements.size();
+    this.index = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      index.put(elements.get(i), i);
+    }
+
+    seqTable = new int[size * size];
+    lubTable = new int[size * size];
+    residualTable = new int[size * size];
+    iterTable = new int[size];
+    leMatrix = new long[size];
+    leDelegate = new long[size];
+
+    for (int l = 0; l < size; l++) {
+      X left = elements.get(l);
+      for (int r = 0; r < size; r++) {
+        X right = elements.get(r);
+        seqTable[l * size + r] = tabulateOp(() -> underlying.seq(left, right));
+        lubTable[l * size + r] = tabulateOp(() -> underlying.LUB(left, right));
+        residualTable[l * size + r] = tabulateOp(() -> underlying.residual(left, right));
+        try {
+          if (underlying.LE(left, right)) {
+            leMatrix[l] |= 1L << r;
+          }
+        } catch (RuntimeException | AssertionError e) {
+          leDelegate[l] |= 1L << r;
+        }
+      }
+      iterTable[l] = tabulateOp(() -> underlying.iter(left));
+    }
+    unitIndex = index.get(underlying.unit());
+
+    long aboveAll = size == 64 ? -1L : (1L << size) - 1;
+    long total = aboveAll;
+    for (int l = 0; l < size; l++) {
+      aboveAll &= leMatrix[l] & ~leDelegate[l];
+      for (int t = 0; t < size; t++) {
+        if (residualTable[l * size + t] < 0) {
+          total &= ~(1L << t);
+        }
+      }
+    }
+    topIndex = aboveAll == 0 ? -1 : Long.numberOfTrailingZeros(aboveAll);
+    residualTotal = total;
+  }
+
+  /**
+   * Compute a table entry for an operation of the underlying quantale.
+   *
+   * @param op The operation to run
+   * @return The index of the result, {@link #UNDEFINED} if it is undefined, or {@link #DELEGATE} if
+   *     the operation must be re-run at use time
+   */
+  private int tabulateOp(Supplier<X> op) {
+    X result;
+    try {
+      result = op.get();
+    } catch (RuntimeException | AssertionError e) {
+      return DELEGATE;
+    }
+    if (result == null) {
+      return UNDEFINED;
+    }
+    Integer i = index.get(result);
+    return i == null ? DELEGATE : i;
+  }
+
+  /**
+   * Enumerate a finite effect quantale into lookup tables, if possible.
+   *
+   * <p>The enumeration starts from the quantale's valid effects and unit, and closes the set under
+   * sequencing, joins, residuals, and iteration. If the quantale is not finite (or has more than
+   * {@link #MAX_ELEMENTS} elements), or cannot be enumerated at all, the original quantale is
+   * returned unchanged.
+   *
+   * @param <X> The representation type of behaviors
+   * @param q The effect quantale to tabulate
+   * @param fromAnnotation Conversion from effect annotations to effects of the quantale
+   * @return A table-driven quantale equivalent to {@code q}, or {@code q} itself
+   */
+  public static <X> EffectQuantale<X> tabulate(
+      EffectQuantale<X> q, Function<Class<? extends Annotation>, X> fromAnnotation) {
+    if (q instanceof FiniteEffectQuantale) {
+      return q;
+    }
+    List<X> elements = new ArrayList<>();
+    Map<X, Integer> seen = new HashMap<>();
+    try {
+      addElement(q.unit(), elements, seen);
+      for (Class<? extends Annotation> anno : q.getValidEffects()) {
+        addElement(fromAnnotation.apply(anno), elements, seen);
+      }
+    } catch (RuntimeException e) {
+      return q;
+    }
+    // Close under the quantale operations. The set only grows, so we re-scan until no new
+    // elements are discovered.
+    int closedUpTo = 0;
+    while (closedUpTo < elements.size()) {
+      int end = elements.size();
+      for (int l = 0; l < end; l++) {
+        X left = elements.get(l);
+        for (int r = (l < closedUpTo ? closedUpTo : 0); r < end; r++) {
+          X right = elements.get(r);
+          addResult(() -> q.seq(left, right), elements, seen);
+          addResult(() -> q.seq(right, left), elements, seen);
+          addResult(() -> q.LUB(left, right), elements, seen);
+          addResult(() -> q.residual(left, right), elements, seen);
+          addResult(() -> q.residual(right, left), elements, seen);
+        }
+        if (l >= closedUpTo) {
+          addResult(() -> q.iter(left), elements, seen);
+        }
+      }
+      closedUpTo = end;
+      if (elements.size() > MAX_ELEMENTS) {
+        return q;
+      }
+    }
+    return new FiniteEffectQuantale<>(q, elements);
+  }
+
+  /**
+   * Add an element to the enumeration if it is new.
+   *
+   * @param <X> The representation type of behaviors
+   * @param x The element, or null for an undefined result
+   * @param elements The enumeration so far
+   * @param seen Index of the elements already enumerated
+   */
+  private static <X> void addElement(X x, List<X> elements, Map<X, Integer> seen) {
+    if (x != null && !seen.containsKey(x)) {
+      seen.put(x, elements.size());
+      elements.add(x);
+    }
+  }
+
+  /**
+   * Run an operation during enumeration, adding its result if it is new. Operations that throw are
+   * ignored here and delegated at use time.
+   *
+   * @param <X> The representation type of behaviors
+   * @param op The operation to run
+   * @param elements The enumeration so far
+   * @param seen Index of the elements already enumerated
+   */
+  private static <X> void addResult(Supplier<X> op, List<X> elements, Map<X, Integer> seen) {
+    X result;
+    try {
+      result = op.get();
+    } catch (RuntimeException | AssertionError e) {
+      return;
+    }
+    addElement(result, elements, seen);
+  }
+
+  /**
+   * Look up the index of an effect.
+   *
+   * @param x An effect
+   * @return Its index, or -1 if it was not enumerated
+   */
+  private int indexOf(X x) {
+    if (x == null) {
+      return -1;
+    }
+    Integer i = index.get(x);
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * Decode a table entry.
+   *
+   * @param entry A table entry which is not {@link #DELEGATE}
+   * @return The corresponding effect, or null for undefined results
+   */
+  private X decode(int entry) {
+    return entry == UNDEFINED ? null : elements.get(entry);
+  }
+
+  /**
+   * Retrieve the quantale this instance was built from.
+   *
+   * @return The underlying (non-tabulated) effect quantale
+   */
+  public EffectQuantale<X> getUnderlying() {
+    return underlying;
+  }
+
+  /**
+   * The number of distinct effects in the tables.
+   *
+   * @return The number of enumerated effects
+   */
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean LE(X left, X right) {
+    int l = indexOf(left);
+    int r = indexOf(right);
+    if (l < 0 || r < 0 || (leDelegate[l] & (1L << r)) != 0) {
+      return underlying.LE(left, right);
+    }
+    return (leMatrix[l] & (1L << r)) != 0;
+  }
+
+  @Override
+  public X LUB(X l, X r) {
+    int li = indexOf(l);
+    int ri = indexOf(r);
+    if (li < 0 || ri < 0) {
+      return underlying.LUB(l, r);
+    }
+    int entry = lubTable[li * size + ri];
+    return entry == DELEGATE ? underlying.LUB(l, r) : decode(entry);
+  }
+
+  @Override
+  public X seq(X l, X r) {
+    int li = indexOf(l);
+    int ri = indexOf(r);
+    if (li < 0 || ri < 0) {
+      return underlying.seq(l, r);
+    }
+    int entry = seqTable[li * size + ri];
+    return entry == DELEGATE ? underlying.seq(l, r) : decode(entry);
+  }
+
+  @Override
+  public ArrayList<Class<? extends Annotation>> getValidEffects() {
+    return underlying.getValidEffects();
+  }
+
+  @Override
+  public X unit() {
+    return elements.get(unitIndex);
+  }
+
+  @Override
+  public X iter(X x) {
+    int i = indexOf(x);
+    if (i < 0) {
+      return underlying.iter(x);
+    }
+    int entry = iterTable[i];
+    return entry == DELEGATE ? underlying.iter(x) : decode(entry);
+  }
+
+  @Override
+  public X residual(X sofar, X target) {
+    int si = indexOf(sofar);
+    int ti = indexOf(target);
+    if (si < 0 || ti < 0) {
+      return underlying.residual(sofar, target);
+    }
+    int entry = residualTable[si * size + ti];
+    return entry == DELEGATE ? underlying.residual(sofar, target) : decode(entry);
+  }
+
+  /** Returns the declared top element, or else the one found in the tables. */
+  @Override
+  public X top() {
+    X declared = underlying.top();
+    if (declared != null || topIndex < 0) {
+      return declared;
+    }
+    return elements.get(topIndex);
+  }
+
+  /**
+   * Determine whether every residual with respect to a target is defined. For enumerated targets
+   * this is read from the residual table, so it covers every such target rather than only the top
+   * element.
+   */
+  @Override
+  public boolean residualAlwaysDefined(X target) {
+    int t = indexOf(target);
+    if (t < 0) {
+      return underlying.residualAlwaysDefined(target);
+    }
+    return (residualTotal & (1L << t)) != 0;
+  }
+
+  @Override
+  public boolean supportsErrorLocalization() {
+    return underlying.supportsErrorLocalization();
+  }
+
+  @Override
+  public boolean isCommutative() {
+    return underlying.isCommutative();
+  }
+}
@@ -0,0 +1,767 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.ArrayAccessTree;
+import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.AssertTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.BreakTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ContinueTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.InstanceOfTree;
+import com.sun.source.tree.IntersectionTypeTree;
+import com.sun.source.tree.LabeledStatementTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.SwitchTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.ThrowTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TryTree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.UnionTypeTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.tree.WildcardTree;
+import com.sun.source.util.TreeScanner;
+import java.lang.annotation.Annotation;
+import java.util.function.Function;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import org.checkerframework.javacutil.TreeUtils;
+
+/**
+ * A visitor for commutative effect quantales (such as any {@link FlowInsensitiveEffectLattice})
+ * that checks most method bodies with a running join instead of a {@link ContextEffect} history.
+ *
+ * <p>For a commutative quantale, the only history {@link GenericEffectVisitor} ever consults is the
+ * effect accumulated so far, the effect since the innermost enclosing node, and the most recent
+ * entry, which it rewinds after a failed residual check. This visitor keeps exactly those three
+ * values in fields, saving and restoring them in locals around each node, and works on underlying
+ * effects directly rather than control effects. It reports the same diagnostics, with the same
+ * arguments, as {@link GenericEffectVisitor}.
+ *
+ * <p>Control effects are only needed for non-local control flow. A method whose declared effect
+ * includes a {@link org.checkerframework.checker.genericeffects.qual.ThrownEffect}, or whose body
+ * throws, catches, breaks, continues, switches, synchronizes, uses an enhanced for loop, or calls a
+ * method with thrown effects, is checked by {@link GenericEffectVisitor} as before. So are field
+ * initializers and static initializers.
+ */
+public class FlowInsensitiveEffectVisitor<X> extends GenericEffectVisitor<X> {
+
+  /** The underlying effect quantale, which must be commutative */
+  private final EffectQuantale<X> lattice;
+  /** Receiver for trace events */
+  private final EffectTraceListener trace;
+  /** Scanner that finds method bodies needing control effects */
+  private final NonlocalControlScanner nonlocalControl = new NonlocalControlScanner();
+
+  /** Whether the current method is being checked with a running join */
+  private boolean fastPath;
+  /** Declared effect of the current method */
+  private X target;
+  /** Whether every residual with respect to {@link #target} is defined, so none need checking */
+  private boolean targetAbsorbs;
+  /** Join of the effects of the current method so far; null on impossible paths */
+  private X context;
+  /** Join of the effects since the innermost enclosing node; null on impossible paths */
+  private X sinceMark;
+  /** The most recent effect added; null if it marked an impossible path */
+  private X latest;
+  /** The value of {@link #context} just before {@link #latest} was added */
+  private X priorContext;
+  /** The value of {@link #sinceMark} just before {@link #latest} was added */
+  private X priorSinceMark;
+
+  /**
+   * Create a visitor for a commutative effect quantale.
+   *
+   * @param checker The checker this visitor belongs to
+   * @param ext Plugin for determining the effects of basic Java language features
+   * @param fromAnno Conversion from annotations to effects
+   */
+  public FlowInsensitiveEffectVisitor(
+      GenericEffectChecker<X> checker,
+      GenericEffectExtension<X> ext,
+      Function<Class<? extends Annotation>, X> fromAnno) {
+    super(checker, ext, fromAnno);
+    lattice = checker.getTabulatedEffectLattice();
+    assert lattice.isCommutative() && lattice.supportsErrorLocalization();
+    trace = checker.getTraceListener();
+  }
+
+  @Override
+  public void processClassTree(ClassTree node) {
+    // Field and static initializers, including those of anonymous classes, use the full context
+    boolean enclosingFastPath = fastPath;
+    fastPath = false;
+    super.processClassTree(node);
+    fastPath = enclosingFastPath;
+  }
+
+  @Override
+  public Void visitMethod(MethodTree node, Void p) {
+    ExecutableElement methElt = TreeUtils.elementFromDeclaration(node);
+    X inferenceTarget = xtypeFactory.getInferenceTarget(methElt);
+    X declared =
+        inferenceTarget != null ? inferenceTarget : xtypeFactory.getDeclaredPureEffect(methElt);
+    boolean eligible =
+        declared != null && !Boolean.TRUE.equals(nonlocalControl.scan(node.getBody(), null));
+
+    boolean enclosingFastPath = fastPath;
+    if (!eligible) {
+      fastPath = false;
+      Void ret = super.visitMethod(node, p);
+      fastPath = enclosingFastPath;
+      return ret;
+    }
+
+    if (debugSpew) {
+      System.err.println("\nVisiting method " + methElt + " with a running join");
+    }
+    // Methods of anonymous inner classes don't inherit contextual errors or effects
+    boolean contextualErrorOnCurrentPath = errorOnCurrentPath;
+    errorOnCurrentPath = false;
+    X enclosingTarget = target;
+    boolean enclosingTargetAbsorbs = targetAbsorbs;
+    X enclosingContext = context;
+    X enclosingSinceMark = sinceMark;
+    X enclosingLatest = latest;
+    X enclosingPriorContext = priorContext;
+    X enclosingPriorSinceMark = priorSinceMark;
+
+    xtypeFactory.checkEffectAnnotations(methElt, node);
+    xtypeFactory.checkEffectOverride(
+        (TypeElement) methElt.getEnclosingElement(), methElt, true, node);
+
+    fastPath = true;
+    target = declared;
+    targetAbsorbs = lattice.residualAlwaysDefined(declared);
+    context = lattice.unit();
+    sinceMark = lattice.unit();
+    latest = null;
+
+    Void ret = defaultVisitMethod(node, p);
+
+    // Completion check, as in GenericEffectVisitor
+    if (!errorOnCurrentPath && sinceMark != null) {
+      if (inferenceTarget != null) {
+        xtypeFactory.observeBodyEffect(methElt, context);
+      } else if (!lattice.LE(context, target)) {
+        checkError(node, lift(context), lift(target), "subeffect.invalid.methodbody");
+      } else if (extension.reportWarning(node) != null) {
+        checkWarning(node, lift(context), lift(target), extension.reportWarning(node));
+      }
+    }
+
+    fastPath = enclosingFastPath;
+    target = enclosingTarget;
+    targetAbsorbs = enclosingTargetAbsorbs;
+    context = enclosingContext;
+    sinceMark = enclosingSinceMark;
+    latest = enclosingLatest;
+    priorContext = enclosingPriorContext;
+    priorSinceMark = enclosingPriorSinceMark;
+    errorOnCurrentPath = contextualErrorOnCurrentPath;
+    return ret;
+  }
+
+  /**
+   * Lift an underlying effect to a control effect, for use as a diagnostic argument.
+   *
+   * @param x An underlying effect
+   * @return The control effect with no non-local behaviors
+   */
+  private ControlEffectQuantale<X>.ControlEffect lift(X x) {
+    return genericEffect.lift(x);
+  }
+
+  /**
+   * Sequence an effect after the current path, as {@link ContextEffect#pushEffect} does.
+   *
+   * @param eff The effect sequenced
+   * @return True when sequencing was valid, false when sequencing was undefined
+   */
+  private boolean push(X eff) {
+    priorContext = context;
+    priorSinceMark = sinceMark;
+    latest = eff;
+    X sq = lattice.seq(context, eff);
+    if (sq == null) {
+      return false;
+    }
+    context = sq;
+    sinceMark = lattice.seq(sinceMark, eff);
+    return true;
+  }
+
+  /**
+   * Replace the effects since a node began with their join, as {@link ContextEffect#squashMark}
+   * does.
+   *
+   * @param markContext The value of {@link #context} when the node began
+   * @param markSinceMark The value of {@link #sinceMark} when the node began
+   * @return The join of the effects since the node began
+   */
+  private X squash(X markContext, X markSinceMark) {
+    X squashed = sinceMark;
+    assert (squashed != null) : "Error paths should not be squashed";
+    context = markContext;
+    sinceMark = markSinceMark;
+    push(squashed);
+    return squashed;
+  }
+
+  /** Mark the current path as impossible, as {@link ContextEffect#markImpossible} does. */
+  private void markImpossible() {
+    priorContext = context;
+    priorSinceMark = sinceMark;
+    latest = null;
+    context = null;
+    sinceMark = null;
+  }
+
+  /**
+   * Check that the current method has not already exceeded its declared effect. For a commutative
+   * quantale, a failure is blamed on the most recent effect, which is then discarded so that later
+   * effects are checked independently.
+   *
+   * @param node The AST node currently being checked, used as the error location
+   */
+  private void checkResidual(Tree node) {
+    if (ignoringErrors || errorOnCurrentPath || targetAbsorbs || context == null) {
+      return;
+    }
+    boolean defined = lattice.residual(context, target) != null;
+    trace.residualCheck(context, target, defined, node);
+    if (!defined) {
+      checker.reportError(node, "operation.invalid", lift(latest), lift(target));
+      latest = lattice.unit();
+      context = priorContext;
+      sinceMark = priorSinceMark;
+    }
+  }
+
+  @Override
+  public Void visitMethodInvocation(MethodInvocationTree node, Void p) {
+    if (!fastPath) {
+      return super.visitMethodInvocation(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getMethodSelect(), p);
+    for (Tree args : node.getArguments()) {
+      scan(args, p);
+    }
+    X eff = xtypeFactory.getDeclaredPureEffect(TreeUtils.elementFromUse(node));
+    if (!push(eff)) {
+      errorOnCurrentPath = true;
+      checker.reportError(node, "undefined.sequencing", lift(context), lift(eff));
+    }
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitIdentifier(IdentifierTree node, Void p) {
+    if (!fastPath) {
+      return super.visitIdentifier(node, p);
+    }
+    push(lattice.unit());
+    return p;
+  }
+
+  @Override
+  public Void visitNewClass(NewClassTree node, Void p) {
+    if (!fastPath) {
+      return super.visitNewClass(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    defaultVisitNewClass(node, p);
+    push(xtypeFactory.getDeclaredPureEffect(TreeUtils.elementFromUse(node)));
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitArrayAccess(ArrayAccessTree node, Void p) {
+    if (!fastPath) {
+      return super.visitArrayAccess(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getExpression(), p);
+    scan(node.getIndex(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitArrayType(ArrayTypeTree node, Void p) {
+    if (!fastPath) {
+      return super.visitArrayType(node, p);
+    }
+    if (extension.doesArrayTypeCheck()) {
+      push(extension.checkArrayType(node));
+      checkResidual(node);
+    }
+    return defaultVisitArrayType(node, p);
+  }
+
+  @Override
+  public Void visitAssert(AssertTree node, Void p) {
+    if (!fastPath) {
+      return super.visitAssert(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getCondition(), p);
+    X condEff = squash(markContext, markSinceMark);
+    if (lattice.LUB(lattice.unit(), condEff) == null) {
+      checker.reportError(node, "undefined.join.assertion", lift(condEff));
+    }
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitAssignment(AssignmentTree node, Void p) {
+    if (!fastPath) {
+      return super.visitAssignment(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getVariable(), p);
+    scan(node.getExpression(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitBinary(BinaryTree node, Void p) {
+    if (!fastPath) {
+      return super.visitBinary(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getLeftOperand(), p);
+    scan(node.getRightOperand(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitCompoundAssignment(CompoundAssignmentTree node, Void p) {
+    if (!fastPath) {
+      return super.visitCompoundAssignment(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getVariable(), p);
+    scan(node.getExpression(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitDoWhileLoop(DoWhileLoopTree node, Void p) {
+    if (!fastPath) {
+      return super.visitDoWhileLoop(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getStatement(), p);
+    X bodyEff = latest;
+    scan(node.getCondition(), p);
+    X condEff = latest;
+    context = markContext;
+    sinceMark = markSinceMark;
+
+    X repeff = lattice.iter(lattice.seq(bodyEff, condEff));
+    if (repeff == null) {
+      checker.reportError(node, "undefined.repetition.twopart", lift(bodyEff), lift(condEff));
+      push(lattice.seq(bodyEff, condEff));
+    } else {
+      push(lattice.seq(condEff, repeff));
+    }
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitForLoop(ForLoopTree node, Void p) {
+    if (!fastPath) {
+      return super.visitForLoop(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getInitializer(), p);
+    X initEff = latest;
+    scan(node.getCondition(), p);
+    X condEff = latest;
+    scan(node.getStatement(), p);
+    X bodyEff = latest;
+    X updateContext = context;
+    X updateSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getUpdate(), p);
+    X updateEff = squash(updateContext, updateSinceMark);
+    context = markContext;
+    sinceMark = markSinceMark;
+
+    X repeff = lattice.iter(lattice.seq(lattice.seq(bodyEff, updateEff), condEff));
+    if (repeff == null) {
+      checker.reportError(
+          node,
+          "undefined.repetition.threepart",
+          lift(bodyEff),
+          lift(updateEff),
+          lift(condEff));
+      push(lattice.seq(condEff, lattice.seq(bodyEff, condEff)));
+    } else {
+      push(lattice.seq(lattice.seq(initEff, condEff), repeff));
+    }
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  protected Void checkConditional(
+      Tree node, ExpressionTree condTree, Tree thenTree, Tree elseTree, Void p) {
+    if (!fastPath) {
+      return super.checkConditional(node, condTree, thenTree, elseTree, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(condTree, p);
+    boolean condError = errorOnCurrentPath;
+    X condContext = context;
+    X condSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(thenTree, p);
+    boolean thenError = errorOnCurrentPath;
+    // Each branch leaves a single effect, so the effect since the mark is that effect
+    X thenEff = sinceMark;
+    context = condContext;
+    sinceMark = condSinceMark;
+    X elseEff = lattice.unit();
+    boolean elseError = false;
+    errorOnCurrentPath = condError;
+    if (elseTree != null) {
+      sinceMark = lattice.unit();
+      scan(elseTree, p);
+      elseError = errorOnCurrentPath;
+      elseEff = sinceMark;
+      context = condContext;
+      sinceMark = condSinceMark;
+    }
+    X condEff = sinceMark;
+    context = markContext;
+    sinceMark = markSinceMark;
+
+    errorOnCurrentPath = condError || (thenError && elseError);
+
+    if (errorOnCurrentPath) {
+      push(lattice.unit());
+    } else if (thenError) {
+      push(lattice.seq(condEff, elseEff));
+    } else if (elseError) {
+      push(lattice.seq(condEff, thenEff));
+    } else {
+      X lub = lattice.LUB(thenEff, elseEff);
+      if (lub == null) {
+        if (elseTree == null) {
+          checker.reportError(node, "undefined.join.unaryif", lift(thenEff), lift(elseEff));
+        } else {
+          checker.reportError(node, "undefined.join", lift(thenEff), lift(elseEff));
+        }
+        errorOnCurrentPath = true;
+        push(lattice.unit());
+      } else {
+        push(lattice.seq(condEff, lub));
+        checkResidual(node);
+      }
+    }
+    return p;
+  }
+
+  @Override
+  public Void visitInstanceOf(InstanceOfTree node, Void p) {
+    if (!fastPath) {
+      return super.visitInstanceOf(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getExpression(), p);
+    if (extension.doesInstanceOfCheck()) {
+      push(extension.checkInstanceOf(node));
+    }
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitIntersectionType(IntersectionTypeTree node, Void p) {
+    if (!fastPath) {
+      return super.visitIntersectionType(node, p);
+    }
+    if (extension.doesIntersectionTypeCheck()) {
+      push(extension.checkIntersectionType(node));
+      checkResidual(node);
+    }
+    return p;
+  }
+
+  @Override
+  public Void visitLabeledStatement(LabeledStatementTree node, Void p) {
+    if (!fastPath) {
+      return super.visitLabeledStatement(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getStatement(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitLiteral(LiteralTree node, Void p) {
+    if (!fastPath) {
+      return super.visitLiteral(node, p);
+    }
+    push(lattice.unit());
+    return p;
+  }
+
+  @Override
+  public Void visitNewArray(NewArrayTree node, Void p) {
+    if (!fastPath) {
+      return super.visitNewArray(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    for (ExpressionTree init : node.getInitializers()) {
+      scan(init, p);
+    }
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitReturn(ReturnTree node, Void p) {
+    if (!fastPath) {
+      return super.visitReturn(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getExpression(), p);
+    squash(markContext, markSinceMark);
+    if (!lattice.LE(context, target)) {
+      checker.reportError(node, "invalid.return", lift(context), lift(target));
+    }
+    markImpossible();
+    return p;
+  }
+
+  @Override
+  public Void visitTypeCast(TypeCastTree node, Void p) {
+    if (!fastPath) {
+      return super.visitTypeCast(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getExpression(), p);
+    push(extension.checkTypeCast(node));
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    String warning = extension.reportWarning(node);
+    if (warning != null) {
+      checker.reportWarning(node, warning);
+    }
+    return p;
+  }
+
+  @Override
+  public Void visitUnary(UnaryTree node, Void p) {
+    if (!fastPath) {
+      return super.visitUnary(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getExpression(), p);
+    squash(markContext, markSinceMark);
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitUnionType(UnionTypeTree node, Void p) {
+    if (!fastPath) {
+      return super.visitUnionType(node, p);
+    }
+    if (extension.doesUnionTypeCheck()) {
+      push(extension.checkUnionType(node));
+      checkResidual(node);
+    }
+    return p;
+  }
+
+  @Override
+  public Void visitBlock(BlockTree node, Void p) {
+    if (!fastPath) {
+      return super.visitBlock(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    defaultVisitBlock(node, p);
+    if (sinceMark == null) {
+      context = markContext;
+      sinceMark = markSinceMark;
+      markImpossible();
+    } else {
+      squash(markContext, markSinceMark);
+    }
+    return p;
+  }
+
+  @Override
+  public Void visitWhileLoop(WhileLoopTree node, Void p) {
+    if (!fastPath) {
+      return super.visitWhileLoop(node, p);
+    }
+    X markContext = context;
+    X markSinceMark = sinceMark;
+    sinceMark = lattice.unit();
+    scan(node.getCondition(), p);
+    X condEff = latest;
+    scan(node.getStatement(), p);
+    X bodyEff = latest;
+    context = markContext;
+    sinceMark = markSinceMark;
+
+    X repeff = lattice.iter(lattice.seq(bodyEff, condEff));
+    if (repeff == null) {
+      checker.reportError(node, "undefined.repetition.twopart", lift(bodyEff), lift(condEff));
+      push(lattice.seq(condEff, lattice.seq(bodyEff, condEff)));
+    } else {
+      push(lattice.seq(condEff, repeff));
+    }
+    checkResidual(node);
+    return p;
+  }
+
+  @Override
+  public Void visitWildcard(WildcardTree node, Void p) {
+    if (!fastPath) {
+      return super.visitWildcard(node, p);
+    }
+    if (extension.doesWildcardCheck()) {
+      push(extension.checkWildcard(node));
+      checkResidual(node);
+    }
+    return p;
+  }
+
+  /**
+   * Scanner that determines whether a method body needs control effects: whether it contains
+   * non-local control flow, or calls a method that declares thrown effects. Nested class bodies are
+   * not scanned, since their methods are checked separately.
+   */
+  private class NonlocalControlScanner extends TreeScanner<Boolean, Void> {
+
+    @Override
+    public Boolean reduce(Boolean r1, Boolean r2) {
+      return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+    }
+
+    @Override
+    public Boolean visitClass(ClassTree node, Void p) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitMethodInvocation(MethodInvocationTree node, Void p) {
+      return xtypeFactory.getDeclaredPureEffect(TreeUtils.elementFromUse(node)) == null
+          || super.visitMethodInvocation(node, p);
+    }
+
+    @Override
+    public Boolean visitNewClass(NewClassTree node, Void p) {
+      return xtypeFactory.getDeclaredPureEffect(TreeUtils.elementFromUse(node)) == null
+          || super.visitNewClass(node, p);
+    }
+
+    @Override
+    public Boolean visitTry(TryTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitThrow(ThrowTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitBreak(BreakTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitContinue(ContinueTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitSwitch(SwitchTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitSynchronized(SynchronizedTree node, Void p) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitEnhancedForLoop(EnhancedForLoopTree node, Void p) {
+      return true;
+    }
+  }
+}
@@ -1,21 +1,69 @@
 package org.checkerframework.checker.genericeffects;
 
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import org.checkerframework.checker.compilermsgs.qual.CompilerMessageKey;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.checker.signature.qual.CanonicalName;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
+import org.checkerframework.framework.source.DiagMessage;
 import org.checkerframework.framework.source.SupportedLintOptions;
 import org.checkerframework.framework.source.SupportedOptions;
+import org.checkerframework.javacutil.UserError;
 
 /**
  * Base class providing reusable infrastructure for implementing effect systems in the Checker
  * Framework.
  */
 @SupportedLintOptions({"debugSpew"})
-@SupportedOptions({"ignoreEffects", "ignoreErrors", "ignoreWarnings"})
+@SupportedOptions({
+  "ignoreEffects",
+  "ignoreErrors",
+  "ignoreWarnings",
+  "noEffectTables",
+  "effectTrace",
+  "noFlowInsensitiveFastPath",
+  "effectDataflow",
+  "effectSummaries",
+  "effectSummaryOutput",
+  "effectProfileTop",
+  "effectProfileCsv",
+  "effectCache"
+})
 public abstract class GenericEffectChecker<X> extends BaseTypeChecker {
 
+  /**
+   * Create the visitor. With the "effectDataflow" option, method bodies are checked by a {@link
+   * DataflowEffectVisitor} over their control flow graphs. Otherwise, commutative effect quantales
+   * are checked by a {@link FlowInsensitiveEffectVisitor}, which keeps a running join instead of a
+   * full effect context, unless the "noFlowInsensitiveFastPath" option is given.
+   *
+   * @return The visitor for this checker
+   */
   @Override
   protected BaseTypeVisitor<?> createSourceVisitor() {
+    if (hasOption("effectDataflow")) {
+      return new DataflowEffectVisitor<X>(this, getExtension(), this::fromAnnotation);
+    }
+    EffectQuantale<X> l = getEffectLattice();
+    if (l.isCommutative()
+        && l.supportsErrorLocalization()
+        && !hasOption("noFlowInsensitiveFastPath")) {
+      return new FlowInsensitiveEffectVisitor<X>(this, getExtension(), this::fromAnnotation);
+    }
     return new GenericEffectVisitor<X>(this, getExtension(), this::fromAnnotation);
   }
 
@@ -29,6 +77,325 @@ public abstract class GenericEffectChecker<X> extends BaseTypeChecker {
    */
   public abstract EffectQuantale<X> getEffectLattice();
 
+  /** Table-driven version of the effect quantale, computed on first use */
+  private EffectQuantale<X> tabulatedLattice;
+
+  /**
+   * Get the effect quantale used for checking. Unless the "noEffectTables" option is given, finite
+   * effect quantales are enumerated once into lookup tables (see {@link FiniteEffectQuantale}), and
+   * this returns the table-driven version; otherwise it returns {@link #getEffectLattice()}. With
+   * the "resourceStats" option, operations on the result are counted by the {@link #getProfiler()
+   * profiler}.
+   *
+   * @return The effect quantale the visitor and type factory should use.
+   */
+  public EffectQuantale<X> getTabulatedEffectLattice() {
+    if (tabulatedLattice == null) {
+      if (hasOption("noEffectTables")) {
+        tabulatedLattice = getEffectLattice();
+      } else {
+        tabulatedLattice = FiniteEffectQuantale.tabulate(getEffectLattice(), this::fromAnnotation);
+      }
+      EffectProfiler p = getProfiler();
+      if (p != null) {
+        tabulatedLattice = p.countOperations(tabulatedLattice);
+      }
+    }
+    return tabulatedLattice;
+  }
+
+  /** Effects keyed by the canonical name of their annotation, computed on first use */
+  private Map<@CanonicalName String, X> effectsByName;
+
+  /** Effects keyed by the declaration of their annotation, computed on first use */
+  private Map<TypeElement, X> effectsByElement;
+
+  /** Index the valid effect annotations by canonical name and by declaration. */
+  private void indexEffects() {
+    effectsByName = new HashMap<>();
+    effectsByElement = new HashMap<>();
+    Elements elements = processingEnv.getElementUtils();
+    for (Class<? extends Annotation> anno : getEffectLattice().getValidEffects()) {
+      @CanonicalName String name = anno.getCanonicalName();
+      X effect = fromAnnotation(anno);
+      effectsByName.put(name, effect);
+      TypeElement annoElt = elements.getTypeElement(name);
+      if (annoElt != null) {
+        effectsByElement.put(annoElt, effect);
+      }
+    }
+  }
+
+  /**
+   * Get the effects of this checker keyed by the canonical name of their annotations.
+   *
+   * @return An unmodifiable map from canonical annotation names to effects
+   */
+  public Map<@CanonicalName String, X> getEffectsByName() {
+    if (effectsByName == null) {
+      indexEffects();
+    }
+    return Collections.unmodifiableMap(effectsByName);
+  }
+
+  /**
+   * Get the effect denoted by an annotation type, without any string comparison in the common
+   * case.
+   *
+   * @param annoElt The declaration of an annotation type
+   * @return The corresponding effect, or null if the annotation is not an effect of this checker
+   */
+  public @Nullable X effectForAnnotation(TypeElement annoElt) {
+    if (effectsByElement == null) {
+      indexEffects();
+    }
+    X effect = effectsByElement.get(annoElt);
+    if (effect == null) {
+      effect = effectsByName.get(annoElt.getQualifiedName().toString());
+    }
+    return effect;
+  }
+
+  /** Destination for effect-checking trace events, created on first use */
+  private EffectTraceListener traceListener;
+
+  /**
+   * Get the listener receiving effect-checking trace events. This is a no-op listener unless the
+   * "effectTrace" option names a file, in which case events are written to that file as JSON
+   * lines.
+   *
+   * @return The trace listener for this checker
+   */
+  public EffectTraceListener getTraceListener() {
+    if (traceListener == null) {
+      String traceFile = getOption("effectTrace");
+      if (traceFile == null) {
+        traceListener = EffectTraceListener.NO_OP;
+      } else {
+        try {
+          traceListener = new JsonLinesEffectTraceListener(Paths.get(traceFile));
+        } catch (IOException e) {
+          throw new UserError("Unable to open effect trace file %s: %s", traceFile, e.getMessage());
+        }
+      }
+      if (hasOption("resourceStats")) {
+        profiler = new EffectProfiler(traceListener);
+        traceListener = profiler;
+      }
+    }
+    return traceListener;
+  }
+
+  @Override
+  public void typeProcess(TypeElement e, TreePath p) {
+    if (p != null) {
+      getTraceListener().compilationUnit(p.getCompilationUnit());
+    }
+    super.typeProcess(e, p);
+  }
+
+  /** Per-method profiler, present only with the "resourceStats" option */
+  private EffectProfiler profiler;
+
+  /**
+   * Get the per-method profiler. With the "resourceStats" option, the visitor, type factory, and
+   * effect quantale report their work to it, and it receives trace events before forwarding them to
+   * the "effectTrace" file, if any.
+   *
+   * @return The profiler, or null without the "resourceStats" option
+   */
+  public EffectProfiler getProfiler() {
+    getTraceListener();
+    return profiler;
+  }
+
+  /** Persistent cache of per-method verdicts, created on first use */
+  private EffectVerdictCache verdictCache;
+
+  /**
+   * Get the persistent cache of per-method verdicts named by the "effectCache" option.
+   *
+   * @return The cache, or null without the "effectCache" option
+   */
+  public EffectVerdictCache getVerdictCache() {
+    String cacheFile = getOption("effectCache");
+    if (verdictCache == null && cacheFile != null) {
+      try {
+        verdictCache =
+            new EffectVerdictCache(
+                Paths.get(cacheFile),
+                EffectVerdictCache.environment(this, processingEnv.getOptions()));
+      } catch (IOException e) {
+        throw new UserError("Unable to read effect cache %s: %s", cacheFile, e.getMessage());
+      }
+    }
+    return verdictCache;
+  }
+
+  /** The state of effect inference, or null when checking normally */
+  private EffectInference<X> inference;
+
+  /**
+   * Run this checker as one round of effect inference for {@link EffectSummaryBatch}, rather than
+   * checking. Must be called before the checker is initialized.
+   *
+   * @param inference The state of the round
+   */
+  public void setInference(EffectInference<X> inference) {
+    this.inference = inference;
+  }
+
+  /**
+   * Get the state of effect inference.
+   *
+   * @return The state set by {@link #setInference}, or null when checking normally
+   */
+  public EffectInference<X> getInference() {
+    return inference;
+  }
+
+  /** Diagnostics reported since {@link #startRecordingDiagnostics}, or null when not recording */
+  private List<EffectVerdictCache.ReportedDiagnostic> recordedDiagnostics;
+
+  /** Whether a diagnostic that cannot be recorded was reported while recording */
+  private boolean unrecordableDiagnostic;
+
+  /**
+   * Start recording the diagnostics this checker reports, in addition to reporting them, for
+   * {@link EffectVerdictCache}.
+   */
+  public void startRecordingDiagnostics() {
+    recordedDiagnostics = new ArrayList<>();
+    unrecordableDiagnostic = false;
+  }
+
+  /**
+   * Stop recording diagnostics.
+   *
+   * @return Each diagnostic reported since {@link #startRecordingDiagnostics}, or null if any was
+   *     reported at an element rather than a tree, so cannot be replayed
+   */
+  public List<EffectVerdictCache.ReportedDiagnostic> stopRecordingDiagnostics() {
+    List<EffectVerdictCache.ReportedDiagnostic> result =
+        unrecordableDiagnostic ? null : recordedDiagnostics;
+    recordedDiagnostics = null;
+    return result;
+  }
+
+  /**
+   * Report a diagnostic recorded by an earlier compilation, exactly as it was reported then.
+   *
+   * @param kind The kind of diagnostic
+   * @param message The formatted message
+   * @param source The tree to report the diagnostic at
+   */
+  public void replayDiagnostic(Diagnostic.Kind kind, String message, Tree source) {
+    printOrStoreMessage(kind, message, source, currentRoot);
+  }
+
+  @Override
+  protected void printOrStoreMessage(
+      Diagnostic.Kind kind, String message, Tree source, CompilationUnitTree root) {
+    if (recordedDiagnostics != null) {
+      recordedDiagnostics.add(new EffectVerdictCache.ReportedDiagnostic(kind, message, source));
+    }
+    super.printOrStoreMessage(kind, message, source, root);
+  }
+
+  @Override
+  public void report(Object source, DiagMessage d) {
+    if (recordedDiagnostics != null && !(source instanceof Tree)) {
+      unrecordableDiagnostic = true;
+    }
+    super.report(source, d);
+  }
+
+  @Override
+  public void reportError(Object source, @CompilerMessageKey String messageKey, Object... args) {
+    if (recordedDiagnostics != null && !(source instanceof Tree)) {
+      unrecordableDiagnostic = true;
+    }
+    super.reportError(source, messageKey, args);
+  }
+
+  @Override
+  public void reportWarning(Object source, @CompilerMessageKey String messageKey, Object... args) {
+    if (recordedDiagnostics != null && !(source instanceof Tree)) {
+      unrecordableDiagnostic = true;
+    }
+    super.reportWarning(source, messageKey, args);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void printStats() {
+    super.printStats();
+    GenericEffectTypeFactory<X> factory = (GenericEffectTypeFactory<X>) getTypeFactory();
+    if (factory != null) {
+      System.out.println(
+          "Control effect memo hits/lookups: "
+              + factory.getControlEffectQuantale().operationCacheStats());
+    }
+    if (profiler != null) {
+      profiler.report(System.out, profileReportLimit());
+    }
+    if (verdictCache != null) {
+      System.out.println("Effect verdict cache hits/lookups: " + verdictCache.stats());
+    }
+  }
+
+  /**
+   * Get the number of methods and classes listed in the profile report, from the
+   * "effectProfileTop" option.
+   *
+   * @return The number of entries to print
+   */
+  private int profileReportLimit() {
+    String top = getOption("effectProfileTop");
+    if (top == null) {
+      return 10;
+    }
+    try {
+      return Integer.parseInt(top);
+    } catch (NumberFormatException e) {
+      throw new UserError("-AeffectProfileTop must be a number: %s", top);
+    }
+  }
+
+  /**
+   * Close the trace listener, write the profile with the "effectProfileCsv" option and the verdict
+   * cache with the "effectCache" option, and with the "effectSummaryOutput" option, write the
+   * summary of the effects declared in this compilation.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void typeProcessingOver() {
+    if (traceListener != null) {
+      traceListener.close();
+    }
+    String profileCsv = getOption("effectProfileCsv");
+    if (profiler != null && profileCsv != null) {
+      try {
+        profiler.writeCsv(Paths.get(profileCsv));
+      } catch (IOException e) {
+        throw new UserError("Unable to write effect profile %s: %s", profileCsv, e.getMessage());
+      }
+    }
+    if (verdictCache != null) {
+      try {
+        verdictCache.write();
+      } catch (IOException e) {
+        throw new UserError(
+            "Unable to write effect cache %s: %s", getOption("effectCache"), e.getMessage());
+      }
+    }
+    GenericEffectTypeFactory<X> factory = (GenericEffectTypeFactory<X>) getTypeFactory();
+    if (factory != null) {
+      factory.writeEffectSummary();
+    }
+    super.typeProcessingOver();
+  }
+
   public GenericEffectExtension<X> getExtension() {
     return new GenericEffectExtension<X>(this.getEffectLattice());
   }
@@ -2,8 +2,15 @@ package org.checkerframework.checker.genericeffects;
 
 import com.sun.source.tree.Tree;
 import com.sun.tools.javac.code.Type.ClassType;
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,9 +21,9 @@ import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
-import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
@@ -26,8 +33,14 @@ import org.checkerframework.checker.genericeffects.qual.Placeholder;
 import org.checkerframework.checker.genericeffects.qual.ThrownEffect;
 import org.checkerframework.checker.genericeffects.qual.ThrownEffects;
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.UnderlyingAST;
+import org.checkerframework.framework.flow.CFCFGBuilder;
 import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.Pair;
+import org.checkerframework.javacutil.TreeUtils;
+import org.checkerframework.javacutil.UserError;
 
 /**
  * A base type factory for effect systems.
@@ -43,6 +56,27 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
   /** Reference to the effect quantale being checked. */
   private ControlEffectQuantale<X> genericEffect;
 
+  /** Per-method profiler, or null without the "resourceStats" option. */
+  private final EffectProfiler profiler;
+
+  /** The checker, which maps effect annotations to effects. */
+  private final GenericEffectChecker<X> effectChecker;
+
+  /** The state of effect inference, or null when checking normally. */
+  private final EffectInference<X> inference;
+
+  /** The {@code value} element of {@link DefaultEffect}. */
+  private final ExecutableElement defaultEffectValue;
+
+  /** The {@code value} element of {@link ThrownEffects}. */
+  private final ExecutableElement thrownEffectsValue;
+
+  /** The {@code exception} element of {@link ThrownEffect}. */
+  private final ExecutableElement thrownEffectException;
+
+  /** The {@code behavior} element of {@link ThrownEffect}. */
+  private final ExecutableElement thrownEffectBehavior;
+
   /**
    * Constructor for the checker's type factory.
    *
@@ -54,12 +88,30 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
     // use true to enable flow inference, false to disable it
     super(checker, false);
 
-    genericEffect = new ControlEffectQuantale<X>(checker.getEffectLattice(), this);
+    genericEffect = new ControlEffectQuantale<X>(checker.getTabulatedEffectLattice(), this);
+    profiler = checker.getProfiler();
+    effectChecker = checker;
+    inference = checker.getInference();
+    defaultEffectValue = TreeUtils.getMethod(DefaultEffect.class, "value", 0, processingEnv);
+    thrownEffectsValue = TreeUtils.getMethod(ThrownEffects.class, "value", 0, processingEnv);
+    thrownEffectException =
+        TreeUtils.getMethod(ThrownEffect.class, "exception", 0, processingEnv);
+    thrownEffectBehavior = TreeUtils.getMethod(ThrownEffect.class, "behavior", 0, processingEnv);
 
     debugSpew = spew;
     this.postInit();
   }
 
+  /**
+   * Retrieve the control effect quantale used for declared effects. Control effects are interned
+   * per quantale, so the visitor shares this instance.
+   *
+   * @return The control effect quantale lifting the checker's effect quantale
+   */
+  public ControlEffectQuantale<X> getControlEffectQuantale() {
+    return genericEffect;
+  }
+
   public void setConversion(Function<Class<? extends Annotation>, X> fromAnno) {
     assert (fromAnno != null);
     fromAnnotation = fromAnno;
@@ -93,15 +145,15 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
       }
 
       for (Element e : elem.getEnclosedElements()) {
+        if (e.getKind() != ElementKind.METHOD
+            || !e.getSimpleName().equals(overrider.getSimpleName())) {
+          continue;
+        }
         if (debugSpew) {
           System.err.println("Considering element " + e);
         }
-        if (e.getKind() == ElementKind.METHOD || e.getKind() == ElementKind.CONSTRUCTOR) {
-          ExecutableElement ex = (ExecutableElement) e;
-          boolean overrides = elements.overrides(overrider, ex, overriderClass);
-          if (overrides) {
-            return ex;
-          }
+        if (elements.overrides(overrider, (ExecutableElement) e, overriderClass)) {
+          return (ExecutableElement) e;
         }
       }
       if (debugSpew) {
@@ -111,6 +163,144 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
     return null;
   }
 
+  /** A proper supertype of a class, as recorded in {@link #supertypeClosures}. */
+  private static final class Supertype {
+    /** The supertype, as written in the extends or implements clause that introduced it */
+    final DeclaredType type;
+    /** The declaration of the supertype */
+    final TypeElement element;
+    /** Whether this supertype is an interface rather than a superclass */
+    final boolean isInterface;
+
+    /**
+     * Record a supertype.
+     *
+     * @param type The supertype
+     * @param isInterface Whether it is an interface
+     */
+    Supertype(DeclaredType type, boolean isInterface) {
+      this.type = type;
+      this.element = (TypeElement) type.asElement();
+      this.isInterface = isInterface;
+    }
+  }
+
+  /**
+   * For each class checked so far, its proper supertypes: the superclass chain in order, followed
+   * by every interface implemented directly or indirectly, each listed once.
+   */
+  private final Map<TypeElement, List<Supertype>> supertypeClosures = new HashMap<>();
+
+  /** A method declared by a proper supertype, as recorded in {@link #inheritedMethods}. */
+  private static final class InheritedMethod {
+    /** The supertype declaring the method */
+    final Supertype supertype;
+    /** The method */
+    final ExecutableElement method;
+
+    /**
+     * Record an inherited method.
+     *
+     * @param supertype The supertype declaring the method
+     * @param method The method
+     */
+    InheritedMethod(Supertype supertype, ExecutableElement method) {
+      this.supertype = supertype;
+      this.method = method;
+    }
+  }
+
+  /**
+   * For each class checked so far, the methods declared by its proper supertypes, indexed by {@link
+   * #overrideKey}, each list in the order of {@link #supertypeClosure}.
+   */
+  private final Map<TypeElement, Map<String, List<InheritedMethod>>> inheritedMethods =
+      new HashMap<>();
+
+  /** Whether the effect of each (overrider, overridden) pair checked so far is a valid override. */
+  private final Map<Pair<ExecutableElement, ExecutableElement>, Boolean> overrideVerdicts =
+      new HashMap<>();
+
+  /**
+   * Retrieve (computing if necessary) the proper supertypes of a class.
+   *
+   * @param declaringType A class or interface
+   * @return The superclass chain followed by all transitively implemented interfaces
+   */
+  private List<Supertype> supertypeClosure(TypeElement declaringType) {
+    List<Supertype> closure = supertypeClosures.get(declaringType);
+    if (closure != null) {
+      return closure;
+    }
+    closure = new ArrayList<>();
+    Set<TypeElement> seen = new HashSet<>();
+    Deque<TypeMirror> interfaces = new ArrayDeque<>(declaringType.getInterfaces());
+    TypeMirror superclass = declaringType.getSuperclass();
+    while (superclass instanceof DeclaredType) {
+      Supertype st = new Supertype((DeclaredType) superclass, false);
+      if (!seen.add(st.element)) {
+        break;
+      }
+      closure.add(st);
+      interfaces.addAll(st.element.getInterfaces());
+      superclass = st.element.getSuperclass();
+    }
+    while (!interfaces.isEmpty()) {
+      TypeMirror iface = interfaces.removeFirst();
+      if (iface instanceof DeclaredType) {
+        Supertype st = new Supertype((DeclaredType) iface, true);
+        if (seen.add(st.element)) {
+          closure.add(st);
+          interfaces.addAll(st.element.getInterfaces());
+        }
+      }
+    }
+    supertypeClosures.put(declaringType, closure);
+    return closure;
+  }
+
+  /**
+   * Compute the part of a method's signature that every method it overrides shares: its name and
+   * number of parameters. Parameter types are left out, since an override of a method of a generic
+   * supertype may erase to different parameter types than the method it overrides.
+   *
+   * @param method A method
+   * @return The method's index key in {@link #inheritedMethods}
+   */
+  private static String overrideKey(ExecutableElement method) {
+    return method.getSimpleName() + "/" + method.getParameters().size();
+  }
+
+  /**
+   * Retrieve (computing if necessary) the methods of a class's proper supertypes that a method of
+   * the class might override.
+   *
+   * @param declaringType A class or interface
+   * @param overrider A method of {@code declaringType}
+   * @return The supertypes' methods with the same name and number of parameters as {@code
+   *     overrider}, in the order of {@link #supertypeClosure}
+   */
+  private List<InheritedMethod> overrideCandidates(
+      TypeElement declaringType, ExecutableElement overrider) {
+    Map<String, List<InheritedMethod>> index = inheritedMethods.get(declaringType);
+    if (index == null) {
+      index = new HashMap<>();
+      for (Supertype st : supertypeClosure(declaringType)) {
+        for (Element e : st.element.getEnclosedElements()) {
+          if (e.getKind() == ElementKind.METHOD) {
+            ExecutableElement method = (ExecutableElement) e;
+            index
+                .computeIfAbsent(overrideKey(method), k -> new ArrayList<>())
+                .add(new InheritedMethod(st, method));
+          }
+        }
+      }
+      inheritedMethods.put(declaringType, index);
+    }
+    List<InheritedMethod> candidates = index.get(overrideKey(overrider));
+    return candidates == null ? Collections.emptyList() : candidates;
+  }
+
   /**
    * This method is used to get the inner most class with a DefaultEffect annotation from an element
    * (in case there are nested classes). This is done by continually getting the enclosing element
@@ -119,16 +309,17 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
    * and ignore nested classes.
    *
    * @param elt An element for which a DefaultEffect annotated class has to be found.
-   * @return Inner most annotated class with the DefaultEffect annotation. If none is found then the
-   *     outer most class is returned.
+   * @return The DefaultEffect annotation of the innermost annotated enclosing element, or null if
+   *     there is none.
    */
-  private Element getInnermostAnnotatedClass(Element elt) {
+  private AnnotationMirror getInnermostDefaultEffect(Element elt) {
     Element encElt = elt;
     while (encElt != null) {
-      if (encElt.getAnnotation(DefaultEffect.class) != null) return encElt;
+      AnnotationMirror defaultEffect = getDeclAnnotation(encElt, DefaultEffect.class);
+      if (defaultEffect != null) return defaultEffect;
       else encElt = encElt.getEnclosingElement();
     }
-    return elt;
+    return null;
     /*
     while (encElt.getKind() != ElementKind.CLASS || encElt.getKind() != ElementKind.INTERFACE) {
         encElt = encElt.getEnclosingElement();
@@ -140,37 +331,48 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
   private Function<Class<? extends Annotation>, X> fromAnnotation;
 
   /**
-   * This method is used to get the default effect of a class that is annotated with DefaultEffect.
-   * The way this method works is by attempting to call the value() method of DefaultEffect which
-   * will raise a mirrored type exception because it is "attempting to access a class object
-   * corresponding to a TypeMirror". The current solution to this is to analyze the exception and
-   * get the TypeMirror object because it contains the information that is needed. Note: This link
-   * provides more information on this workaround and may be useful for future changes:
-   * https://stackoverflow.com/questions/7687829/java-6-annotation-processing-getting-a-class-from-an-annotation
+   * Get the effect named by a {@link DefaultEffect} annotation. The annotation's value is read as a
+   * type mirror and mapped to an effect through the declaration of the named annotation type.
    *
-   * @param clsElt An element representing a class.
-   * @return The default effect of the class element that was passed as a parameter.
+   * @param defaultEffect A DefaultEffect annotation, or null.
+   * @return The effect named by the annotation, or the unit effect if there is no annotation or it
+   *     does not name an effect of this checker.
    */
-  private X getClassType(Element clsElt) {
-    // TODO: There may be a better approach to getting the information that is needed than
-    // raising an exception
-    TypeMirror clsAnno = null;
-    try {
-      clsElt.getAnnotation(DefaultEffect.class).value();
-    } catch (NullPointerException e) {
+  private X getClassType(AnnotationMirror defaultEffect) {
+    if (defaultEffect == null) {
       return genericEffect.underlyingUnit();
-    } catch (MirroredTypeException e) {
-      clsAnno = e.getTypeMirror();
     }
-    // TODO: Find a way to extract the class type from the TypeElement object without making use
-    // of Strings.
-    Types TypeUtils = this.processingEnv.getTypeUtils();
-    TypeElement typeElt = (TypeElement) TypeUtils.asElement(clsAnno);
-    String name = typeElt.getSimpleName().toString();
-    for (Class<? extends Annotation> validEffect : genericEffect.getValidEffects()) {
-      if (name.equals(validEffect.getSimpleName())) return this.fromAnnotation.apply(validEffect);
+    X effect = effectOfAnnotationType(classValue(defaultEffect, defaultEffectValue));
+    return effect == null ? genericEffect.underlyingUnit() : effect;
+  }
+
+  /**
+   * Read a class-valued annotation element, falling back to the element's default value.
+   *
+   * @param anno An annotation
+   * @param element A class-valued element of the annotation's type
+   * @return The class named by the element
+   */
+  private static ClassType classValue(AnnotationMirror anno, ExecutableElement element) {
+    AnnotationValue value = anno.getElementValues().get(element);
+    if (value == null) {
+      value = element.getDefaultValue();
     }
-    return genericEffect.underlyingUnit();
+    return (ClassType) value.getValue();
+  }
+
+  /**
+   * Map an annotation type to the effect it denotes.
+   *
+   * @param annoType The type of an annotation
+   * @return The corresponding effect, or null if the annotation is not an effect of this checker
+   */
+  private X effectOfAnnotationType(TypeMirror annoType) {
+    Element annoElt = processingEnv.getTypeUtils().asElement(annoType);
+    if (!(annoElt instanceof TypeElement)) {
+      return null;
+    }
+    return effectChecker.effectForAnnotation((TypeElement) annoElt);
   }
 
   /**
@@ -180,10 +382,166 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
    * @return Default effect of the element.
    */
   public X getDefaultEffect(Element elt) {
-    Element clsElt = getInnermostAnnotatedClass(elt);
-    return getClassType(clsElt);
+    if (!ElementUtils.isElementFromSourceCode(elt)) {
+      TypeElement cls = ElementUtils.enclosingTypeElement(elt);
+      if (cls != null) {
+        String key = EffectSummaryWriter.classKey(cls);
+        for (EffectSummaryReader<X> summary : getEffectSummaries()) {
+          X summarized = summary.lookupClassDefault(key);
+          if (summarized != null) {
+            return summarized;
+          }
+        }
+      }
+    }
+    return getClassType(getInnermostDefaultEffect(elt));
+  }
+
+  /** Summaries of separately compiled code, loaded on first use */
+  private List<EffectSummaryReader<X>> effectSummaries;
+
+  /**
+   * Retrieve the summaries named by the "effectSummaries" option, a path-separated list of summary
+   * files. Summaries written for a different checker are ignored.
+   *
+   * @return The loaded summaries, in the order given
+   */
+  private List<EffectSummaryReader<X>> getEffectSummaries() {
+    if (effectSummaries == null) {
+      effectSummaries = new ArrayList<>();
+      String files = checker.getOption("effectSummaries");
+      if (files != null) {
+        for (String file : files.split(File.pathSeparator)) {
+          if (file.isEmpty()) {
+            continue;
+          }
+          try {
+            EffectSummaryReader<X> summary =
+                EffectSummaryReader.open(
+                    Paths.get(file),
+                    checker.getClass().getName(),
+                    genericEffect.getValidEffects(),
+                    fromAnnotation,
+                    genericEffect.underlyingUnit());
+            if (summary != null) {
+              effectSummaries.add(summary);
+            }
+          } catch (IOException e) {
+            throw new UserError("Unable to read effect summary %s: %s", file, e.getMessage());
+          }
+        }
+      }
+    }
+    return effectSummaries;
+  }
+
+  /** Summaries of the classes checked in this compilation; null unless requested */
+  private EffectSummaryWriter<X> summaryWriter;
+
+  /**
+   * Record the declared effects of a checked class and its methods for the summary file named by
+   * the "effectSummaryOutput" option. Does nothing without that option.
+   *
+   * @param cls A class being checked
+   */
+  public void recordEffectSummary(TypeElement cls) {
+    if (checker.getOption("effectSummaryOutput") == null
+        || cls.getNestingKind() == NestingKind.ANONYMOUS
+        || cls.getNestingKind() == NestingKind.LOCAL) {
+      return;
+    }
+    if (summaryWriter == null) {
+      summaryWriter =
+          new EffectSummaryWriter<>(
+              checker.getClass().getName(),
+              genericEffect.getValidEffects(),
+              fromAnnotation,
+              genericEffect.underlyingUnit());
+    }
+    summaryWriter.addClass(EffectSummaryWriter.classKey(cls), getDefaultEffect(cls));
+    Types types = processingEnv.getTypeUtils();
+    for (Element e : cls.getEnclosedElements()) {
+      if (e.getKind() != ElementKind.METHOD && e.getKind() != ElementKind.CONSTRUCTOR) {
+        continue;
+      }
+      ExecutableElement method = (ExecutableElement) e;
+      DeclaredMethodEffect declared = lookupDeclaredEffect(method);
+      List<Pair<String, X>> thrown = new ArrayList<>(declared.thrown.size());
+      for (Pair<ClassType, X> t : declared.thrown) {
+        thrown.add(Pair.of(t.first.tsym.getQualifiedName().toString(), t.second));
+      }
+      summaryWriter.addMethod(
+          EffectSummaryWriter.methodKey(method, types), declared.base, thrown);
+    }
+  }
+
+  /**
+   * Write the summary file named by the "effectSummaryOutput" option, if any classes were
+   * recorded.
+   */
+  public void writeEffectSummary() {
+    String file = checker.getOption("effectSummaryOutput");
+    if (file == null || summaryWriter == null) {
+      return;
+    }
+    try {
+      summaryWriter.write(Paths.get(file));
+    } catch (IOException e) {
+      throw new UserError("Unable to write effect summary %s: %s", file, e.getMessage());
+    }
+  }
+
+  /**
+   * The call-site-independent part of a method's declared effect: the underlying effect of normal
+   * completion, plus the exception types and underlying behaviors from any {@link ThrownEffect}
+   * annotations.
+   */
+  private class DeclaredMethodEffect {
+    /** The declared (or defaulted) underlying effect of the method */
+    final X base;
+
+    /** Exceptions the method may throw, paired with the behavior before the throw */
+    final List<Pair<ClassType, X>> thrown;
+
+    /** The full declared effect, shared by all call sites; null if the method throws */
+    final ControlEffectQuantale<X>.ControlEffect withoutThrows;
+
+    /**
+     * Construct a declared method effect summary.
+     *
+     * @param base The underlying effect of normal completion
+     * @param thrown The exceptional behaviors of the method
+     */
+    DeclaredMethodEffect(X base, List<Pair<ClassType, X>> thrown) {
+      this.base = base;
+      this.thrown = thrown;
+      this.withoutThrows = thrown.isEmpty() ? genericEffect.lift(base) : null;
+    }
+
+    /**
+     * Instantiate this summary at a particular use.
+     *
+     * @param use The tree where the method is being invoked (or declared)
+     * @return The declared effect, with exceptional behaviors attributed to {@code use}
+     */
+    ControlEffectQuantale<X>.ControlEffect at(Tree use) {
+      if (withoutThrows != null) {
+        return withoutThrows;
+      }
+      Set<Pair<ClassType, NonlocalEffect<X>>> excBehaviors = new HashSet<>();
+      for (Pair<ClassType, X> p : thrown) {
+        excBehaviors.add(Pair.of(p.first, new NonlocalEffect<X>(p.second, null, use)));
+      }
+      return genericEffect.makeEffect(base, excBehaviors, null);
+    }
   }
 
+  /**
+   * Cache of declared method effects, so that repeated calls to the same method do not repeat the
+   * annotation lookups, enclosing-class defaulting, and {@link ThrownEffect} parsing.
+   */
+  private final Map<ExecutableElement, DeclaredMethodEffect> declaredEffects = new HashMap<>();
+
   /**
    * Returns the Declared Effect on the passed method as parameter.
    *
@@ -192,132 +550,237 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
    * (e.g., method override checks). Contextual uses like at method or constructor invocations need
    * to rewrite the targets in context.
    *
+   * <p>The call-site-independent part of the result is computed once per method and cached.
+   *
    * @param methodElt : Method for which declared effect is to be returned
    * @param use : The tree where this element is being invoked
    * @return declared effect : if methodElt is annotated with a valid effect
    *     bottomMostEffectInLattice : otherwise, bottom most effect of lattice
    */
-  @SuppressWarnings({
-    "unchecked",
-    "deprecation",
-    "signature:argument"
-  }) // TODO: fetch annotation values the right way
   public ControlEffectQuantale<X>.ControlEffect getDeclaredEffect(
       ExecutableElement methodElt, Tree use) {
+    return lookupDeclaredEffect(methodElt).at(use);
+  }
+
+  /**
+   * Retrieve the declared underlying effect of a method that declares no exceptional behaviors.
+   *
+   * @param methodElt Method for which declared effect is to be returned
+   * @return The declared (or defaulted) underlying effect, or null if the method declares any
+   *     {@link ThrownEffect}
+   */
+  public X getDeclaredPureEffect(ExecutableElement methodElt) {
+    DeclaredMethodEffect declared = lookupDeclaredEffect(methodElt);
+    return declared.thrown.isEmpty() ? declared.base : null;
+  }
+
+  /**
+   * Retrieve the declared underlying effect of a method's normal completion.
+   *
+   * @param methodElt Method for which declared effect is to be returned
+   * @return The declared (or defaulted) underlying effect
+   */
+  public X getDeclaredBaseEffect(ExecutableElement methodElt) {
+    return lookupDeclaredEffect(methodElt).base;
+  }
+
+  /**
+   * Retrieve the declared exceptional behaviors of a method.
+   *
+   * @param methodElt Method for which declared effect is to be returned
+   * @return Each exception type from a {@link ThrownEffect} annotation, with the underlying effect
+   *     before the throw
+   */
+  public List<Pair<ClassType, X>> getDeclaredThrownEffects(ExecutableElement methodElt) {
+    return lookupDeclaredEffect(methodElt).thrown;
+  }
+
+  /**
+   * Get the effect a method body is checked against while its effect is being inferred by {@link
+   * EffectSummaryBatch}.
+   *
+   * @param methodElt A method being checked
+   * @return The top effect if the method's effect is being inferred, otherwise null
+   */
+  public X getInferenceTarget(ExecutableElement methodElt) {
+    if (inference == null) {
+      return null;
+    }
+    // Settle whether the method declares its effect before asking whether it is inferred
+    lookupDeclaredEffect(methodElt);
+    String key = EffectSummaryWriter.methodKey(methodElt, processingEnv.getTypeUtils());
+    return inference.isInferring(key) ? inference.top() : null;
+  }
+
+  /**
+   * Record the effect of a method body whose effect is being inferred.
+   *
+   * @param methodElt A method for which {@link #getInferenceTarget} returned non-null
+   * @param bodyEffect The effect of the body's normal completion
+   */
+  public void observeBodyEffect(ExecutableElement methodElt, X bodyEffect) {
+    inference.observe(
+        EffectSummaryWriter.methodKey(methodElt, processingEnv.getTypeUtils()), bodyEffect);
+  }
+
+  /**
+   * Retrieve the control flow graph of a method, lambda, or initializer. Within a compound checker
+   * this reuses the graph built by another checker for the same code.
+   *
+   * @param ast The code whose control flow graph is needed
+   * @return The control flow graph
+   */
+  public ControlFlowGraph getEffectCFG(UnderlyingAST ast) {
+    return CFCFGBuilder.build(root, ast, checker, this, processingEnv);
+  }
+
+  /**
+   * Retrieve the cached declared effect summary of a method, computing it on first use.
+   *
+   * @param methodElt Method for which declared effect is to be returned
+   * @return The declared effect summary for the method
+   */
+  private DeclaredMethodEffect lookupDeclaredEffect(ExecutableElement methodElt) {
+    if (profiler != null) {
+      profiler.count(EffectProfiler.Counter.DECLARED_EFFECT_LOOKUPS);
+    }
+    DeclaredMethodEffect declared = declaredEffects.get(methodElt);
+    if (declared == null) {
+      declared = computeDeclaredEffect(methodElt);
+      declaredEffects.put(methodElt, declared);
+    }
+    return declared;
+  }
+
+  /**
+   * Compute the call-site-independent declared effect of a method from its annotations, the
+   * defaults of its enclosing classes, and its {@link ThrownEffect} annotations.
+   *
+   * @param methodElt Method for which declared effect is to be computed
+   * @return The declared effect summary for the method
+   */
+  private DeclaredMethodEffect computeDeclaredEffect(ExecutableElement methodElt) {
     if (debugSpew) {
       System.err.println("> Retrieving declared effect of: " + methodElt);
     }
-    ArrayList<Class<? extends Annotation>> validEffects = genericEffect.getValidEffects();
-    AnnotationMirror annotatedEffect = null;
-    X baseEffect = null;
-
-    for (Class<? extends Annotation> OkEffect : validEffects) {
-      annotatedEffect = getDeclAnnotation(methodElt, OkEffect);
-      if (annotatedEffect != null) {
-        if (debugSpew) {
-          System.err.println("< Method marked @" + annotatedEffect);
-        }
-        baseEffect = fromAnnotation.apply(OkEffect);
+    if (!ElementUtils.isElementFromSourceCode(methodElt) && !getEffectSummaries().isEmpty()) {
+      DeclaredMethodEffect summarized = summarizedEffect(methodElt);
+      if (summarized != null) {
+        return summarized;
       }
     }
-
-    if (baseEffect == null) {
-      Element clsElt = getInnermostAnnotatedClass(methodElt);
+    X baseEffect = null;
+    // Whether the method is annotated with more than one effect
+    boolean severalEffects = false;
+    // Collect the base effect and any @ThrownEffect uses in one pass over the declaration
+    // annotations
+    List<Pair<ClassType, X>> excBehaviors = new ArrayList<>();
+    for (AnnotationMirror anno : getDeclAnnotations(methodElt)) {
       if (debugSpew) {
-        System.err.println("< By default found: " + getClassType(clsElt));
+        System.err.println("Found declanno " + anno);
       }
-      baseEffect = getClassType(clsElt);
-    }
-
-    // We have a base effect, now check for @Throws annotations
-    Set<Pair<ClassType, NonlocalEffect<X>>> excBehaviors = new HashSet<>();
-    // Check that any @ThrownEffect uses are valid
-    for (AnnotationMirror thrown : getDeclAnnotations(methodElt)) {
-      System.err.println("Found declanno " + thrown);
-      // Handle the case of multiple thrown annotations
-      if (areSameByClass(thrown, ThrownEffects.class)) {
-        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e :
-            thrown.getElementValues().entrySet()) {
-          System.err.println(e.getKey() + "->" + e.getValue());
+      X annotated = effectOfAnnotationType(anno.getAnnotationType());
+      if (annotated != null) {
+        if (debugSpew) {
+          System.err.println("< Method marked " + anno);
         }
-        // ThrownEffect[] thrownArray = AnnotationUtils.getElementValue(thrown, "value",
-        // ThrownEffect[].class, true);
+        severalEffects |= baseEffect != null && !baseEffect.equals(annotated);
+        baseEffect = annotated;
+      } else if (areSameByClass(anno, ThrownEffects.class)) {
+        // Handle the case of multiple thrown annotations
         List<AnnotationMirror> throwList =
-            AnnotationUtils.getElementValueArray(thrown, "value", AnnotationMirror.class, true);
+            AnnotationUtils.getElementValueArray(anno, thrownEffectsValue, AnnotationMirror.class);
         for (AnnotationMirror innerThrown : throwList) {
-          ClassType exc =
-              AnnotationUtils.getElementValue(innerThrown, "exception", ClassType.class, true);
-          Object beh = AnnotationUtils.getElementValue(innerThrown, "behavior", Object.class, true);
-          Class<? extends Annotation> annoClass = null;
-          try {
-            annoClass = (Class<? extends Annotation>) Class.forName(beh.toString());
-            System.err.println("Converted annotation to: " + annoClass);
-          } catch (ClassNotFoundException e) {
-            System.err.println("Unable to get class for " + beh);
-          }
-          excBehaviors.add(
-              Pair.of(exc, new NonlocalEffect<X>(fromAnnotation.apply(annoClass), null, use)));
-        }
-      }
-      if (areSameByClass(thrown, ThrownEffect.class)) {
-        System.err.println("Found declanno " + thrown);
-        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e :
-            thrown.getElementValues().entrySet()) {
-          System.err.println(e.getKey() + "->" + e.getValue());
-        }
-        // TODO: this version of getElementValue is deprecated, check the handling of @SubtypeOf to
-        // see how main framework does this
-        // Class<? extends Exception> exc = (Class<? extends Exception>)AnnotationUtils.<Class<?
-        // extends Exception>>getElementValue(thrown, "exception", (Class<Class<? extends
-        // Exception>>)Class<? extends Exception>.class, true);
-        // Class<? extends Exception> exc = (Class<? extends Exception>)AnnotationUtils.<Class<?
-        // extends Exception>>getElementValue(thrown, "exception", Class.class, true);
-
-        // This almost works, but I get a cast exception...
-        // Class<? extends Exception> exc = (Class<? extends
-        // Exception>)AnnotationUtils.getElementValue(thrown, "exception", Class.class, true);
-        ClassType exc = AnnotationUtils.getElementValue(thrown, "exception", ClassType.class, true);
-        Object beh = AnnotationUtils.getElementValue(thrown, "behavior", Object.class, true);
-        System.err.println(
-            "Retrieved @ThrownEffect(exception="
-                + exc
-                + ", behavior="
-                + beh
-                + "@"
-                + beh.getClass()
-                + ")");
-        // TODO: There *must* be some kind of proper way to convert ClassType to a Class... or
-        // perhaps not: actually, this will only work for exception types on the compiler's
-        // classpath, not exception types being compiled! Should probably switch to using ClassType
-        // instead of Class<? extends Exception>
-        // Class<? extends Exception> excClass = null;
-        // try {
-        //  excClass = (Class<? extends Exception>)Class.forName(exc.toString());
-        //  System.err.println("Converted exception to: "+excClass);
-        // } catch (ClassNotFoundException e) {
-        //  throw new BugInCF("Unable to get class for "+exc, e);
-        // }
-        /* The annotations used for effects are supposed to be already compiled
-        and on the compiler's classpath */
-        Class<? extends Annotation> annoClass = null;
-        try {
-          annoClass = (Class<? extends Annotation>) Class.forName(beh.toString());
-          System.err.println("Converted annotation to: " + annoClass);
-        } catch (ClassNotFoundException e) {
-          System.err.println("Unable to get class for " + beh);
+          addThrownEffect(innerThrown, excBehaviors);
         }
-
-        // ThrownEffect thrownEff = (ThrownEffect) thrown;
+      } else if (areSameByClass(anno, ThrownEffect.class)) {
         // TODO: require the effect be a checked exception (i.e., not subtype of RuntimeException)
         // TODO: This needs a target for the exceptional behavior: the try-catch or method body
         // enclosing the call, depending on the exception type!
-        excBehaviors.add(
-            Pair.of(exc, new NonlocalEffect<X>(fromAnnotation.apply(annoClass), null, use)));
+        addThrownEffect(anno, excBehaviors);
+      }
+    }
+    if (severalEffects) {
+      // checkEffectAnnotations reports the conflict; to keep checking, the effect written that
+      // comes last in getValidEffects() order wins
+      for (Class<? extends Annotation> validEffect : genericEffect.getValidEffects()) {
+        if (getDeclAnnotation(methodElt, validEffect) != null) {
+          baseEffect = fromAnnotation.apply(validEffect);
+        }
       }
     }
 
-    return genericEffect
-    .new ControlEffect(baseEffect, excBehaviors.size() > 0 ? excBehaviors : null, null);
+    if (inference != null) {
+      String key = EffectSummaryWriter.methodKey(methodElt, processingEnv.getTypeUtils());
+      if (baseEffect != null || !excBehaviors.isEmpty()) {
+        inference.declare(key, baseEffect != null ? baseEffect : getDefaultEffect(methodElt));
+      } else {
+        baseEffect = inference.assumedEffect(key);
+      }
+    }
+
+    if (baseEffect == null) {
+      baseEffect = getDefaultEffect(methodElt);
+      if (debugSpew) {
+        System.err.println("< By default found: " + baseEffect);
+      }
+    }
+
+    return new DeclaredMethodEffect(baseEffect, excBehaviors);
+  }
+
+  /**
+   * Decode a {@link ThrownEffect} annotation. The exception and behavior are read as type mirrors,
+   * so neither needs to be on the compiler's classpath; a behavior that is not an effect of this
+   * checker is ignored.
+   *
+   * @param thrown A ThrownEffect annotation
+   * @param excBehaviors The exceptional behaviors found so far, extended in place
+   */
+  private void addThrownEffect(AnnotationMirror thrown, List<Pair<ClassType, X>> excBehaviors) {
+    ClassType exc = classValue(thrown, thrownEffectException);
+    ClassType beh = classValue(thrown, thrownEffectBehavior);
+    if (debugSpew) {
+      System.err.println("Retrieved @ThrownEffect(exception=" + exc + ", behavior=" + beh + ")");
+    }
+    X behavior = effectOfAnnotationType(beh);
+    if (behavior == null) {
+      if (debugSpew) {
+        System.err.println("Ignoring behavior " + beh + ", which is not an effect of this checker");
+      }
+      return;
+    }
+    excBehaviors.add(Pair.of(exc, behavior));
+  }
+
+  /**
+   * Retrieve the declared effect of a separately compiled method from the loaded summaries.
+   *
+   * @param methodElt A method that is not being compiled
+   * @return The summarized declared effect, or null if no summary covers the method (or names an
+   *     exception type that cannot be resolved)
+   */
+  private DeclaredMethodEffect summarizedEffect(ExecutableElement methodElt) {
+    String key = EffectSummaryWriter.methodKey(methodElt, processingEnv.getTypeUtils());
+    for (EffectSummaryReader<X> summary : getEffectSummaries()) {
+      EffectSummaryReader.MethodSummary<X> found = summary.lookupMethod(key);
+      if (found == null) {
+        continue;
+      }
+      List<Pair<ClassType, X>> thrown = new ArrayList<>(found.thrown.size());
+      for (Pair<String, X> t : found.thrown) {
+        TypeElement exc = elements.getTypeElement(t.first);
+        if (exc == null) {
+          return null;
+        }
+        thrown.add(Pair.of((ClassType) exc.asType(), t.second));
+      }
+      if (debugSpew) {
+        System.err.println("< Summarized as: " + found.base + " " + found.thrown);
+      }
+      return new DeclaredMethodEffect(found.base, thrown);
+    }
+    return null;
   }
 
   /**
@@ -329,7 +792,11 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
    * the effect of the override is less than the declared effect of the origin.
    *
    * <p>There are two sets of subtypes to traverse: 1. Chain of Parent classes terminating in Object
-   * 2. Set of interfaces the class implements.
+   * 2. Set of interfaces the class implements, directly or through its superclasses or other
+   * interfaces. Both are computed once per class, along with an index of their methods by name and
+   * arity; only the indexed methods matching the overrider are confirmed with {@link
+   * javax.lang.model.util.Elements#overrides}. The verdicts for each (overrider, overridden) pair
+   * are cached.
    *
    * @param declaringType : Class containing the overriding method
    * @param overridingMethod : Overriding method in declaringType
@@ -343,52 +810,68 @@ public class GenericEffectTypeFactory<X> extends BaseAnnotatedTypeFactory {
       Tree errorNode) {
     assert (declaringType != null);
 
-    ControlEffectQuantale<X>.ControlEffect overridingEffect =
-        getDeclaredEffect(overridingMethod, errorNode);
-
-    // Chain of parent classes
-    TypeMirror superclass = declaringType.getSuperclass();
-    while (superclass != null && superclass.getKind() != TypeKind.NONE) {
-      ExecutableElement overrides = findJavaOverride(overridingMethod, superclass);
-      if (overrides != null) {
-        ControlEffectQuantale<X>.ControlEffect superClassEffect =
-            getDeclaredEffect(overrides, errorNode);
-        if (!genericEffect.LE(overridingEffect, superClassEffect)) {
-          checker.reportError(
-              errorNode,
-              "override.effect.invalid",
-              overridingMethod,
-              declaringType,
-              overrides,
-              superclass);
-        }
+    for (InheritedMethod candidate : overrideCandidates(declaringType, overridingMethod)) {
+      Supertype st = candidate.supertype;
+      if (st.isInterface && !issueConflictWarning) {
+        continue;
+      }
+      ExecutableElement overrides = candidate.method;
+      if (elements.overrides(overridingMethod, overrides, declaringType)
+          && !isValidEffectOverride(overridingMethod, overrides, errorNode)) {
+        checker.reportError(
+            errorNode,
+            "override.effect.invalid",
+            overridingMethod,
+            declaringType,
+            overrides,
+            st.type);
       }
+    }
+  }
 
-      DeclaredType decl = (DeclaredType) superclass;
-      superclass = ((TypeElement) decl.asElement()).getSuperclass();
-    }
-
-    // Set of interfaces
-    List<? extends TypeMirror> listOfInterfaces = declaringType.getInterfaces();
-    if (listOfInterfaces != null) {
-      for (TypeMirror implementedInterface : listOfInterfaces) {
-        if (implementedInterface.getKind() != TypeKind.NONE) {
-          ExecutableElement overrides = findJavaOverride(overridingMethod, implementedInterface);
-          if (overrides != null) {
-            ControlEffectQuantale<X>.ControlEffect interfaceEffect =
-                getDeclaredEffect(overrides, errorNode);
-            if (!genericEffect.LE(overridingEffect, interfaceEffect) && issueConflictWarning) {
-              checker.reportError(
-                  errorNode,
-                  "override.effect.invalid",
-                  overridingMethod,
-                  declaringType,
-                  overrides,
-                  implementedInterface);
-            }
-          }
-        }
+  /**
+   * Report each effect annotation on a method declaration that conflicts with an earlier one, since
+   * a method has a single declared effect.
+   *
+   * @param methodElt A method being checked
+   * @param errorNode The method's declaration, where errors are reported
+   */
+  public void checkEffectAnnotations(ExecutableElement methodElt, Tree errorNode) {
+    AnnotationMirror first = null;
+    X firstEffect = null;
+    for (AnnotationMirror anno : getDeclAnnotations(methodElt)) {
+      X effect = effectOfAnnotationType(anno.getAnnotationType());
+      if (effect == null) {
+        continue;
       }
+      if (first == null) {
+        first = anno;
+        firstEffect = effect;
+      } else if (!effect.equals(firstEffect)) {
+        checker.reportError(errorNode, "effect.annotation.conflict", methodElt, first, anno);
+      }
+    }
+  }
+
+  /**
+   * Check (or recall the verdict of a previous check) whether the declared effect of an overriding
+   * method is bounded by that of the method it overrides.
+   *
+   * @param overrider The overriding method
+   * @param overridden The overridden method
+   * @param errorNode The node the effects are being compared for
+   * @return True if the override's effect is less than or equal to the overridden method's effect
+   */
+  private boolean isValidEffectOverride(
+      ExecutableElement overrider, ExecutableElement overridden, Tree errorNode) {
+    Pair<ExecutableElement, ExecutableElement> key = Pair.of(overrider, overridden);
+    Boolean verdict = overrideVerdicts.get(key);
+    if (verdict == null) {
+      verdict =
+          genericEffect.LE(
+              getDeclaredEffect(overrider, errorNode), getDeclaredEffect(overridden, errorNode));
+      overrideVerdicts.put(key, verdict);
     }
+    return verdict;
   }
 }
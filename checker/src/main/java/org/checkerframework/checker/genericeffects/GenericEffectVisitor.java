@@ -87,6 +87,13 @@ import org.checkerframework.javacutil.TypesUtils;
  * across top-most stack :-p TODO: Add methods to the GenericEffectChecker to configure default
  * upper bounds on static and instance field initializers (static runs anywhere, field runs with
  * <i>every</i> ctor).
+ *
+ * <p>A visitor instance is confined to the compiler thread. Besides its own stacks, checking a
+ * method body queries javac's {@code Types}, {@code Elements} and attributed trees (for declared
+ * effects, exception subtyping, and override checks), consults the type factory's caches, and
+ * reports diagnostics through javac's {@code Log}, none of which are thread-safe. Checking
+ * separate classes concurrently would therefore require a separate compiler context per worker,
+ * not merely separate visitor state.
  */
 @SuppressWarnings("interning:not.interned")
 public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFactory<X>> {
@@ -94,9 +101,9 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
   /** Debug flag, set via the "debugSpew" lint option */
   protected final boolean debugSpew;
   /** Reference to the effect quantale being checked. */
-  private ControlEffectQuantale<X> genericEffect;
+  protected ControlEffectQuantale<X> genericEffect;
   /** Reference to a plugin for determining the effects of basic Java language features. */
-  private GenericEffectExtension<X> extension;
+  protected GenericEffectExtension<X> extension;
   /** Flag to disable residual checking for systems that may not yet support it */
   private final boolean noResiduals;
 
@@ -131,6 +138,15 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
 
   GenericEffectChecker<X> xchecker;
 
+  /** Per-method profiler, or null without the "resourceStats" option. */
+  protected final EffectProfiler profiler;
+
+  /** Persistent cache of per-method verdicts, or null without the "effectCache" option. */
+  private final EffectVerdictCache verdictCache;
+
+  /** Whether diagnostics are being recorded for the verdict cache, for an enclosing method. */
+  private boolean recordingVerdict = false;
+
   @SuppressWarnings("UnusedVariable")
   private Function<Class<? extends Annotation>, X> fromAnnotation;
 
@@ -168,7 +184,9 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     ignoringErrors = checker.getOption("ignoreErrors") != null;
     errorOnCurrentPath = false;
 
-    genericEffect = new ControlEffectQuantale<X>(checker.getEffectLattice(), xtypeFactory);
+    genericEffect = xtypeFactory.getControlEffectQuantale();
+    profiler = checker.getProfiler();
+    verdictCache = checker.getVerdictCache();
     noResiduals = !checker.getEffectLattice().supportsErrorLocalization();
 
     if (debugSpew) {
@@ -208,16 +226,113 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
    */
   @Override
   public void processClassTree(ClassTree node) {
+    if (profiler == null) {
+      processClassTreeWithContext(node);
+      return;
+    }
+    profiler.enter(TreeUtils.elementFromDeclaration(node));
+    try {
+      processClassTreeWithContext(node);
+    } finally {
+      profiler.exit();
+    }
+  }
+
+  /**
+   * Set up the effect context for the field and static initializers of a class, and check the
+   * class.
+   *
+   * @param node Class declaration to process
+   */
+  private void processClassTreeWithContext(ClassTree node) {
     // Fix up context for static initializers of new class
     currentMethods.addFirst(null);
-    effStack.addFirst(new ContextEffect<ControlEffectQuantale<X>.ControlEffect>(genericEffect));
+    effStack.addFirst(
+        new ContextEffect<ControlEffectQuantale<X>.ControlEffect>(
+            genericEffect, xchecker.getTraceListener()));
     residualTargets.addFirst(null);
+    xtypeFactory.recordEffectSummary(TreeUtils.elementFromDeclaration(node));
     super.processClassTree(node);
     currentMethods.removeFirst();
     effStack.removeFirst();
     residualTargets.removeFirst();
   }
 
+  /**
+   * Scan a tree, counting it for the profiler. Method declarations are looked up in the verdict
+   * cache, if any, and the work done within them is attributed to them by the profiler.
+   *
+   * @param tree The tree to scan, possibly null
+   * @param p Void
+   * @return Void
+   */
+  @Override
+  public Void scan(Tree tree, Void p) {
+    if (tree == null || (profiler == null && verdictCache == null)) {
+      return super.scan(tree, p);
+    }
+    if (profiler != null) {
+      profiler.nodeVisited();
+    }
+    if (tree.getKind() != Tree.Kind.METHOD) {
+      return super.scan(tree, p);
+    }
+    MethodTree method = (MethodTree) tree;
+    if (profiler == null) {
+      return scanMethod(method, p);
+    }
+    profiler.enter(TreeUtils.elementFromDeclaration(method));
+    try {
+      return scanMethod(method, p);
+    } finally {
+      profiler.exit();
+    }
+  }
+
+  /**
+   * Scan a method declaration, unless the verdict cache holds its diagnostics for its current
+   * fingerprint, in which case they are replayed instead. Otherwise, the diagnostics reported while
+   * scanning it are cached. Methods nested in another method are cached as part of it, and methods
+   * whose effects are being inferred are never cached.
+   *
+   * @param method The method declaration
+   * @param p Void
+   * @return Void
+   */
+  private Void scanMethod(MethodTree method, Void p) {
+    if (verdictCache == null || recordingVerdict || method.getBody() == null) {
+      return super.scan(method, p);
+    }
+    ExecutableElement methElt = TreeUtils.elementFromDeclaration(method);
+    String key = EffectVerdictCache.key(methElt, types);
+    // Inference observes the effect of the body, which a replayed verdict would not
+    if (key == null || xtypeFactory.getInferenceTarget(methElt) != null) {
+      return super.scan(method, p);
+    }
+    byte[] fingerprint = EffectVerdictCache.fingerprint(method, methElt, xtypeFactory);
+    List<EffectVerdictCache.CachedDiagnostic> cached = verdictCache.lookup(key, fingerprint);
+    if (cached != null) {
+      List<Tree> trees = EffectVerdictCache.preorder(method);
+      for (EffectVerdictCache.CachedDiagnostic d : cached) {
+        xchecker.replayDiagnostic(d.kind, d.message, trees.get(d.treeIndex));
+      }
+      return null;
+    }
+    recordingVerdict = true;
+    xchecker.startRecordingDiagnostics();
+    List<EffectVerdictCache.ReportedDiagnostic> reported;
+    try {
+      super.scan(method, p);
+    } finally {
+      recordingVerdict = false;
+      reported = xchecker.stopRecordingDiagnostics();
+    }
+    if (reported != null) {
+      verdictCache.store(key, fingerprint, method, reported);
+    }
+    return null;
+  }
+
   /**
    * Method that visits method tree nodes and adds their effects to the stacks set up in the
    * constructor.
@@ -241,15 +356,19 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     assert (methElt != null);
 
     // Override check
+    xtypeFactory.checkEffectAnnotations(methElt, node);
     xtypeFactory.checkEffectOverride(
         (TypeElement) methElt.getEnclosingElement(), methElt, true, node);
 
-    // Initialize method stack
+    // Initialize method stack; a method whose effect is being inferred is checked against top
+    X inferenceTarget = xtypeFactory.getInferenceTarget(methElt);
+    genericEffect.clearOperationCaches();
     currentMethods.addFirst(node);
-    effStack.addFirst(new ContextEffect<>(genericEffect));
+    effStack.addFirst(new ContextEffect<>(genericEffect, xchecker.getTraceListener()));
     residualTargets.addFirst(
-        xtypeFactory.getDeclaredEffect(
-            TreeUtils.elementFromDeclaration(currentMethods.peek()), node));
+        inferenceTarget != null
+            ? genericEffect.lift(inferenceTarget)
+            : xtypeFactory.getDeclaredEffect(methElt, node));
 
     if (debugSpew) {
       System.err.println(
@@ -265,7 +384,11 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     // TODO: Maybe an extra flag on the lattice, so we handle non-comm differently from comm
     // systems?
     // TODO: Work out laws for residuals w/ comm: e.g., x\(y\z) def <-> y\(x\z) def?
-    if (!errorOnCurrentPath) {
+    if (!errorOnCurrentPath && inferenceTarget != null) {
+      if (!effStack.peek().currentlyImpossible()) {
+        xtypeFactory.observeBodyEffect(methElt, effStack.peek().currentPathEffect().base);
+      }
+    } else if (!errorOnCurrentPath) {
       ControlEffectQuantale<X>.ControlEffect targetEffect = effStack.peek().currentPathEffect();
       ControlEffectQuantale<X>.ControlEffect callerEffect =
           xtypeFactory.getDeclaredEffect(methElt, node);
@@ -328,7 +451,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
    * @param callerEffect Caller effect of node.
    * @param failureMsg Error message to be reported.
    */
-  private void checkError(
+  protected void checkError(
       Tree node,
       ControlEffectQuantale<X>.ControlEffect targetEffect,
       ControlEffectQuantale<X>.ControlEffect callerEffect,
@@ -360,10 +483,13 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     // Skip the check if we've already reported an error on this path.
     if (!ignoringErrors && !errorOnCurrentPath) {
       ControlEffectQuantale<X>.ControlEffect pathEffect = effStack.peek().currentPathEffect();
-      // if (pathEffect == Impossible.class) {
-      //  return; // In an enclosing context of a path that always throws/returns
-      // }
+      if (pathEffect == null || effStack.peek().currentlyImpossible()) {
+        return; // In an enclosing context of a path that always throws/returns
+      }
       ControlEffectQuantale<X>.ControlEffect methodEffect = residualTargets.peek();
+      if (genericEffect.residualTriviallyDefined(pathEffect, methodEffect)) {
+        return; // e.g., the method's declared effect is top, so every path has a residual
+      }
 
       // TODO: In general we don't want to check the residual against the method declaration,
       // because entering a break target or try-catch can change the acceptable behaviors. In
@@ -376,7 +502,9 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
         System.err.println("Checking residual " + pathEffect + " \\ " + methodEffect);
         // System.err.println("In location " + TreePathUtil.toString(visitorState.getPath()));
       }
-      if (genericEffect.residual(pathEffect, methodEffect) == null) {
+      boolean defined = genericEffect.residual(pathEffect, methodEffect) != null;
+      xchecker.getTraceListener().residualCheck(pathEffect, methodEffect, defined, node);
+      if (!defined) {
         if (genericEffect.isCommutative()) {
           // For commutative systems, we clean up the error message by peeking at the last addition
           checker.reportError(
@@ -406,7 +534,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
    * @param callerEffect Caller effect of node.
    * @param warningMsg Warning message to be reported.
    */
-  private void checkWarning(
+  protected void checkWarning(
       Tree node,
       ControlEffectQuantale<X>.ControlEffect targetEffect,
       ControlEffectQuantale<X>.ControlEffect callerEffect,
@@ -428,6 +556,51 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     return xtypeFactory.getDeclaredEffect(callerElt, callerTree);
   }
 
+  /**
+   * Visit a method declaration with the default traversal, without any effect bookkeeping. This
+   * lets subclasses that track effects differently reuse the traversal this class overrides.
+   *
+   * @param node The method declaration
+   * @param p Void
+   * @return Void
+   */
+  protected final Void defaultVisitMethod(MethodTree node, Void p) {
+    return super.visitMethod(node, p);
+  }
+
+  /**
+   * Visit an object allocation with the default traversal, without any effect bookkeeping.
+   *
+   * @param node The allocation
+   * @param p Void
+   * @return Void
+   */
+  protected final Void defaultVisitNewClass(NewClassTree node, Void p) {
+    return super.visitNewClass(node, p);
+  }
+
+  /**
+   * Visit an array type with the default traversal, without any effect bookkeeping.
+   *
+   * @param node The array type
+   * @param p Void
+   * @return Void
+   */
+  protected final Void defaultVisitArrayType(ArrayTypeTree node, Void p) {
+    return super.visitArrayType(node, p);
+  }
+
+  /**
+   * Visit a block with the default traversal, without any effect bookkeeping.
+   *
+   * @param node The block
+   * @param p Void
+   * @return Void
+   */
+  protected final Void defaultVisitBlock(BlockTree node, Void p) {
+    return super.visitBlock(node, p);
+  }
+
   /**
    * Retrieve the tree of the nearest enclosing break scope
    *
@@ -472,7 +645,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
 
           // TODO: Figure out how to check supertypes for catches
           // TypeMirror upcast  TypesUtils.asSuper(thrown, classty, ???)
-          if (atypeFactory.getProcessingEnv().getTypeUtils().isSubtype(thrown, classty)) {
+          if (genericEffect.getExceptionTypes().isSubtype(thrown, classty)) {
             // if (TypesUtils.areSameDeclaredTypes(thrown, classty)) {
             return t;
           }
@@ -523,7 +696,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
               new NonlocalEffect<>(
                   e.second.effect, getEnclosingThrowScopeTree(e.first), e.second.src)));
     }
-    return genericEffect.new ControlEffect(ul, m, null);
+    return genericEffect.makeEffect(ul, m, null);
   }
 
   /**
@@ -770,7 +943,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     ControlEffectQuantale<X>.ControlEffect condEff = effStack.peek().latestEffect();
 
     // Here we DO NOT simply squash, because we must invoke iteration
-    LinkedList<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
+    List<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
     assert (pieces.get(0) == bodyEff);
     assert (pieces.get(1) == condEff);
 
@@ -820,7 +993,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     // We care about iterating body-update-cond, though
 
     // Here we DO NOT simply squash, because we must invoke iteration
-    LinkedList<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
+    List<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
     assert (pieces.get(0) == initEff);
     assert (pieces.get(1) == condEff);
     assert (pieces.get(2) == bodyEff);
@@ -862,7 +1035,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     effStack.peek().mark();
     scan(thenTree, p);
     boolean thenError = errorOnCurrentPath;
-    LinkedList<ControlEffectQuantale<X>.ControlEffect> thenEffs = effStack.peek().rewindToMark();
+    List<ControlEffectQuantale<X>.ControlEffect> thenEffs = effStack.peek().rewindToMark();
     assert (thenEffs.size() == 1);
     ControlEffectQuantale<X>.ControlEffect thenEff = thenEffs.get(0);
     ControlEffectQuantale<X>.ControlEffect elseEff = genericEffect.unit();
@@ -874,16 +1047,20 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
       effStack.peek().mark();
       scan(elseTree, p);
       elseError = errorOnCurrentPath;
-      LinkedList<ControlEffectQuantale<X>.ControlEffect> elseEffs = effStack.peek().rewindToMark();
+      List<ControlEffectQuantale<X>.ControlEffect> elseEffs = effStack.peek().rewindToMark();
       assert (elseEffs.size() == 1);
       elseEff = elseEffs.get(0);
     }
     // stack still has the condition effect on it, but no branch effects
-    effStack.peek().debugDump("@@@@@@", true);
-    LinkedList<ControlEffectQuantale<X>.ControlEffect> condEffs = effStack.peek().rewindToMark();
-    effStack.peek().debugDump("&&&&&&", true);
-    System.err.println("thenEff == " + thenEff);
-    System.err.println("elseEff == " + elseEff);
+    if (debugSpew) {
+      effStack.peek().debugDump("@@@@@@", true);
+    }
+    List<ControlEffectQuantale<X>.ControlEffect> condEffs = effStack.peek().rewindToMark();
+    if (debugSpew) {
+      effStack.peek().debugDump("&&&&&&", true);
+      System.err.println("thenEff == " + thenEff);
+      System.err.println("elseEff == " + elseEff);
+    }
     assert (condEffs.size() == 1);
     ControlEffectQuantale<X>.ControlEffect condEff = condEffs.get(0);
 
@@ -1078,7 +1255,9 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     // TODO: For that matter, figure out how to deal with fixing the residual checking to allow for
     // the underlying effect of a method to be formed in part by catching a thrown exception
 
-    System.err.println("Visiting TRY: " + node);
+    if (debugSpew) {
+      System.err.println("Visiting TRY: " + node);
+    }
     effStack.peek().mark();
 
     // Within a try block, the residual target must be extended to include locally-handled
@@ -1117,30 +1296,31 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     }
     residualTargets.addFirst(
         residualTargets.peek().withUnbounded(genericEffect.underlyingUnit(), caught, node));
-    System.err.println(
-        "TRY updated context for residuals to include " + caught + ": " + residualTargets.peek());
+    if (debugSpew) {
+      System.err.println(
+          "TRY updated context for residuals to include " + caught + ": " + residualTargets.peek());
+    }
     effStack.peek().mark();
     scan(node.getBlock(), p);
     List<ControlEffectQuantale<X>.ControlEffect> bodyEffs = effStack.peek().rewindToMark();
     assert (bodyEffs.size() == 1);
     ControlEffectQuantale<X>.ControlEffect bodyEff = bodyEffs.get(0);
-    System.err.println("--> body effect = " + bodyEff);
+    if (debugSpew) {
+      System.err.println("--> body effect = " + bodyEff);
+    }
     residualTargets.removeFirst(); // Catch blocks are not handled by other peer catch blocks
 
     Set<Pair<ControlEffectQuantale<X>.ControlEffect, CatchTree>> catchpaths = new HashSet<>();
 
     Collection<Pair<ClassType, NonlocalEffect<X>>> unhandled = bodyEff.excs;
     for (CatchTree cblk : node.getCatches()) {
+      ClassType catchType = (ClassType) TreeUtils.typeOf(cblk.getParameter());
       // Each catch block runs after the prefixes of that throw
       Map<Boolean, List<Pair<ClassType, NonlocalEffect<X>>>> m =
           unhandled.stream()
               .collect(
                   Collectors.partitioningBy(
-                      kv ->
-                          atypeFactory
-                              .getProcessingEnv()
-                              .getTypeUtils()
-                              .isSubtype(kv.first, TreeUtils.typeOf(cblk.getParameter()))));
+                      kv -> genericEffect.getExceptionTypes().isSubtype(kv.first, catchType)));
       List<Pair<ClassType, NonlocalEffect<X>>> resolvedpaths = m.get(true);
       unhandled = m.get(false);
       assert (resolvedpaths.size() > 0)
@@ -1153,17 +1333,14 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
       NonlocalEffect<X> lastHandled = null;
       X exclub = null;
       for (Pair<ClassType, NonlocalEffect<X>> eff : resolvedpaths) {
-        assert atypeFactory
-            .getProcessingEnv()
-            .getTypeUtils()
-            .isSubtype(eff.first, TreeUtils.typeOf(cblk.getParameter()));
+        assert genericEffect.getExceptionTypes().isSubtype(eff.first, catchType);
         if (exclub == null) {
           // first entry
           exclub = eff.second.effect;
           lastHandled = eff.second;
         } else {
           // subsequent entries
-          X tmp = xchecker.getEffectLattice().LUB(exclub, eff.second.effect);
+          X tmp = xchecker.getTabulatedEffectLattice().LUB(exclub, eff.second.effect);
           if (tmp == null) {
             throw new UnsupportedOperationException(
                 "Implement good error messages for bad exc lubs; no lub of "
@@ -1293,7 +1470,7 @@ public class GenericEffectVisitor<X> extends BaseTypeVisitor<GenericEffectTypeFa
     ControlEffectQuantale<X>.ControlEffect bodyEff = effStack.peek().latestEffect();
 
     // Here we DO NOT simply squash, because we must invoke iteration
-    LinkedList<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
+    List<ControlEffectQuantale<X>.ControlEffect> pieces = effStack.peek().rewindToMark();
     assert (pieces.get(0) == condEff);
     assert (pieces.get(1) == bodyEff);
 
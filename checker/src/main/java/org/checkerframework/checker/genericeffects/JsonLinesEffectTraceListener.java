@@ -0,0 +1,194 @@
+package org.checkerframework.checker.genericeffects;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An {@link EffectTraceListener} that writes one JSON object per line for each event.
+ *
+ * <p>Each record has an {@code "ev"} field naming the event ({@code mark}, {@code push}, {@code
+ * squash}, {@code residual}, or {@code seqfail}), plus the event's effects as strings and, where
+ * available, the {@code "kind"} and start position {@code "pos"} of the responsible AST node.
+ * Positions are offsets into the source file named by the latest {@code file} record, whose {@code
+ * "path"} field is written whenever checking moves to a different file.
+ */
+public class JsonLinesEffectTraceListener implements EffectTraceListener {
+
+  /** Destination for trace records. */
+  private final Writer out;
+
+  /** Reusable buffer for building one record at a time. */
+  private final StringBuilder buf = new StringBuilder();
+
+  /** The source file named by the latest {@code file} record, or null before the first. */
+  private String currentFile;
+
+  /**
+   * Create a listener writing to the given file, replacing any existing contents.
+   *
+   * @param file The file to write trace records to
+   * @throws IOException If the file cannot be opened
+   */
+  public JsonLinesEffectTraceListener(Path file) throws IOException {
+    this(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Create a listener writing to the given writer.
+   *
+   * @param out The destination for trace records
+   */
+  public JsonLinesEffectTraceListener(Writer out) {
+    this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+  }
+
+  @Override
+  public void compilationUnit(CompilationUnitTree root) {
+    String file = root.getSourceFile().getName();
+    if (file.equals(currentFile)) {
+      return;
+    }
+    currentFile = file;
+    begin("file");
+    field("path", file);
+    end();
+  }
+
+  @Override
+  public void mark(int depth) {
+    begin("mark");
+    buf.append(",\"depth\":").append(depth);
+    end();
+  }
+
+  @Override
+  public void push(Object effect, Tree tree, boolean valid) {
+    begin("push");
+    field("eff", effect);
+    buf.append(",\"ok\":").append(valid);
+    tree(tree);
+    end();
+  }
+
+  @Override
+  public void squash(Object effect, Tree tree) {
+    begin("squash");
+    field("eff", effect);
+    tree(tree);
+    end();
+  }
+
+  @Override
+  public void residualCheck(Object sofar, Object target, boolean defined, Tree tree) {
+    begin("residual");
+    field("sofar", sofar);
+    field("target", target);
+    buf.append(",\"ok\":").append(defined);
+    tree(tree);
+    end();
+  }
+
+  @Override
+  public void sequencingFailure(Object left, Object right, Tree tree) {
+    begin("seqfail");
+    field("left", left);
+    field("right", right);
+    tree(tree);
+    end();
+  }
+
+  @Override
+  public void close() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Start a new record.
+   *
+   * @param event The event name
+   */
+  private void begin(String event) {
+    buf.setLength(0);
+    buf.append("{\"ev\":\"").append(event).append('"');
+  }
+
+  /**
+   * Append a string-valued field to the current record.
+   *
+   * @param name The field name
+   * @param value The value, rendered with {@code toString()}, or null
+   */
+  private void field(String name, Object value) {
+    buf.append(",\"").append(name).append("\":");
+    if (value == null) {
+      buf.append("null");
+      return;
+    }
+    String s = value.toString();
+    buf.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          buf.append("\\\"");
+          break;
+        case '\\':
+          buf.append("\\\\");
+          break;
+        case '\n':
+          buf.append("\\n");
+          break;
+        case '\r':
+          buf.append("\\r");
+          break;
+        case '\t':
+          buf.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            buf.append(String.format("\\u%04x", (int) c));
+          } else {
+            buf.append(c);
+          }
+      }
+    }
+    buf.append('"');
+  }
+
+  /**
+   * Append the kind and position of an AST node to the current record.
+   *
+   * @param tree The AST node, possibly null
+   */
+  private void tree(Tree tree) {
+    if (tree == null) {
+      return;
+    }
+    buf.append(",\"kind\":\"").append(tree.getKind()).append('"');
+    if (tree instanceof JCTree) {
+      buf.append(",\"pos\":").append(((JCTree) tree).getStartPosition());
+    }
+  }
+
+  /** Finish the current record and write it out. */
+  private void end() {
+    buf.append("}\n");
+    try {
+      out.append(buf);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -178,11 +178,15 @@ public class InitializationStore<V extends CFAbstractValue<V>, S extends Initial
       // Remove invariant annotated fields to avoid performance issue reported in #1438.
       for (FieldAccess invariantField : invariantFields.keySet()) {
         V v = fieldValues.remove(invariantField);
-        removedFieldValues.put(invariantField, v);
+        if (v != null) {
+          removedFieldValues.put(invariantField, v);
+        }
       }
       for (FieldAccess invariantField : other.invariantFields.keySet()) {
         V v = other.fieldValues.remove(invariantField);
-        removedOtherFieldValues.put(invariantField, v);
+        if (v != null) {
+          removedOtherFieldValues.put(invariantField, v);
+        }
       }
 
       return super.supersetOf(other);
@@ -200,11 +204,15 @@ public class InitializationStore<V extends CFAbstractValue<V>, S extends Initial
     Map<FieldAccess, V> removedOtherFieldValues = new HashMap<>(other.invariantFields.size());
     for (FieldAccess invariantField : invariantFields.keySet()) {
       V v = fieldValues.remove(invariantField);
-      removedFieldValues.put(invariantField, v);
+      if (v != null) {
+        removedFieldValues.put(invariantField, v);
+      }
     }
     for (FieldAccess invariantField : other.invariantFields.keySet()) {
       V v = other.fieldValues.remove(invariantField);
-      removedOtherFieldValues.put(invariantField, v);
+      if (v != null) {
+        removedOtherFieldValues.put(invariantField, v);
+      }
     }
 
     S result = super.leastUpperBound(other);
@@ -0,0 +1,24 @@
+package tests;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Runs the casting effect tests with method bodies checked by the dataflow analysis. */
+public class CastingEffectsDataflowTest extends CheckerFrameworkPerDirectoryTest {
+
+  public CastingEffectsDataflowTest(List<File> testFiles) {
+    super(
+        testFiles,
+        org.checkerframework.checker.genericeffects.CastingEffectChecker.class,
+        "genericeffects-dataflow",
+        "-Anomsgtext",
+        "-AeffectDataflow");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"genericeffects-dataflow"};
+  }
+}
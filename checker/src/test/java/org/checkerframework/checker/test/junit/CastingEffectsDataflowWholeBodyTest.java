@@ -0,0 +1,28 @@
+package tests;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the dataflow effect tests without residual checks, so that method bodies are only checked
+ * where their paths complete normally or exceptionally.
+ */
+public class CastingEffectsDataflowWholeBodyTest extends CheckerFrameworkPerDirectoryTest {
+
+  public CastingEffectsDataflowWholeBodyTest(List<File> testFiles) {
+    super(
+        testFiles,
+        org.checkerframework.checker.genericeffects.CastingEffectChecker.class,
+        "genericeffects-dataflow-wholebody",
+        "-Anomsgtext",
+        "-AeffectDataflow",
+        "-AignoreErrors=undefined.residual");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"genericeffects-dataflow-wholebody"};
+  }
+}
@@ -0,0 +1,24 @@
+package tests;
+
+import java.io.File;
+import java.util.List;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/** Runs the casting effect tests with the full effect context instead of the running join. */
+public class CastingEffectsFullContextTest extends CheckerFrameworkPerDirectoryTest {
+
+  public CastingEffectsFullContextTest(List<File> testFiles) {
+    super(
+        testFiles,
+        org.checkerframework.checker.genericeffects.CastingEffectChecker.class,
+        "genericeffects",
+        "-Anomsgtext",
+        "-AnoFlowInsensitiveFastPath");
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"genericeffects"};
+  }
+}
@@ -0,0 +1,131 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.checkerframework.checker.genericeffects.CastingEffectChecker;
+import org.checkerframework.checker.genericeffects.CastingEffects;
+import org.checkerframework.checker.genericeffects.EffectSummaryBatch;
+import org.checkerframework.checker.genericeffects.EffectSummaryReader;
+import org.checkerframework.checker.genericeffects.qual.DecimalOverflow;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeIntegerCast;
+import org.checkerframework.javacutil.UserError;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Infers casting effect summaries for a small source tree with {@link EffectSummaryBatch}, and
+ * checks the summary it writes.
+ */
+public class CastingEffectsSummaryBatchTest {
+
+  /** The directory the test's sources and summaries are written to */
+  private static final File DIR = new File("build/tmp/CastingEffectsSummaryBatchTest");
+
+  /**
+   * Infers the effects of an acyclic call chain and a mutually recursive pair of methods, whose
+   * effects only stabilize after a second round.
+   */
+  @Test
+  public void chainAndRecursion() throws IOException, InterruptedException {
+    File sources = sources("chain");
+    write(
+        sources,
+        "Chain.java",
+        "class Chain {",
+        "  void first(double d) { second(d); }",
+        "  void second(double d) { third(d); }",
+        "  void third(double d) { int i = (int) d; }",
+        "  void pure() {}",
+        "}");
+    write(
+        sources,
+        "Recursion.java",
+        "class Recursion {",
+        "  void even(int n) { short s = (short) n; if (n > 0) { odd(n - 1); } }",
+        "  void odd(int n) { float f = (float) (long) n; if (n > 0) { even(n - 1); } }",
+        "}");
+    EffectSummaryReader<Class<? extends Annotation>> summary = infer(sources);
+
+    Assert.assertEquals(DecimalOverflow.class, summary.lookupMethod("Chain#third(double)").base);
+    Assert.assertEquals(DecimalOverflow.class, summary.lookupMethod("Chain#second(double)").base);
+    Assert.assertEquals(DecimalOverflow.class, summary.lookupMethod("Chain#first(double)").base);
+    Assert.assertEquals(SafeCast.class, summary.lookupMethod("Chain#pure()").base);
+    Assert.assertEquals(UnsafeIntegerCast.class, summary.lookupMethod("Recursion#even(int)").base);
+    Assert.assertEquals(UnsafeIntegerCast.class, summary.lookupMethod("Recursion#odd(int)").base);
+  }
+
+  /** Fails the run, rather than summarizing with the top effect, when sources do not compile. */
+  @Test
+  public void compileError() throws IOException, InterruptedException {
+    File sources = sources("broken");
+    write(sources, "Broken.java", "class Broken {", "  void m() { int i = \"string\"; }", "}");
+    try {
+      infer(sources);
+      Assert.fail("Inference of sources with a compile error succeeded");
+    } catch (RuntimeException e) {
+      // The worker's UserError comes from the worker's own class loader
+      Assert.assertEquals(UserError.class.getName(), e.getClass().getName());
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("Broken.java"));
+    }
+  }
+
+  /**
+   * Creates an empty source directory.
+   *
+   * @param name the name of the directory
+   * @return the directory
+   */
+  private static File sources(String name) throws IOException {
+    File dir = new File(DIR, name);
+    if (dir.exists()) {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+    }
+    Files.createDirectories(dir.toPath());
+    return dir;
+  }
+
+  /**
+   * Writes a source file.
+   *
+   * @param dir the source directory
+   * @param name the name of the file
+   * @param lines the lines of the file
+   */
+  private static void write(File dir, String name, String... lines) throws IOException {
+    Files.write(new File(dir, name).toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Infers the effects of the sources in a directory and opens the summary written.
+   *
+   * @param sources the source directory
+   * @return the summary
+   */
+  private static EffectSummaryReader<Class<? extends Annotation>> infer(File sources)
+      throws IOException, InterruptedException {
+    Path output = new File(DIR, sources.getName() + ".summary").toPath();
+    Files.deleteIfExists(output);
+    new EffectSummaryBatch(
+            CastingEffectChecker.class.getName(), sources, "", 2, 10, Collections.emptyList())
+        .run(output);
+    CastingEffects lattice = new CastingEffects();
+    EffectSummaryReader<Class<? extends Annotation>> summary =
+        EffectSummaryReader.open(
+            output,
+            CastingEffectChecker.class.getName(),
+            lattice.getValidEffects(),
+            anno -> anno,
+            lattice.unit());
+    Assert.assertNotNull(summary);
+    return summary;
+  }
+}
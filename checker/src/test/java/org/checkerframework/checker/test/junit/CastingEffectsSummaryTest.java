@@ -0,0 +1,89 @@
+package tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.genericeffects.CastingEffectChecker;
+import org.checkerframework.checker.genericeffects.CastingEffects;
+import org.checkerframework.checker.genericeffects.EffectSummaryReader;
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.framework.test.TestConfiguration;
+import org.checkerframework.framework.test.TestConfigurationBuilder;
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.framework.test.TypecheckExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Compiles the library in genericeffects-summary-lib with a summary output, then checks the client
+ * tests in genericeffects-summary against the library's class files and that summary.
+ */
+public class CastingEffectsSummaryTest extends CheckerFrameworkPerDirectoryTest {
+
+  /** The directory the library's classes are compiled to */
+  private static final File LIBRARY_CLASSES = new File("build/tmp/CastingEffectsSummaryTest");
+
+  /** The summary of the library */
+  private static final File SUMMARY = new File("build/tmp/CastingEffectsSummaryTest.summary");
+
+  public CastingEffectsSummaryTest(List<File> testFiles) {
+    super(
+        testFiles,
+        CastingEffectChecker.class,
+        "genericeffects-summary",
+        Collections.singletonList(LIBRARY_CLASSES.getPath()),
+        "-Anomsgtext",
+        "-AeffectSummaries=" + SUMMARY.getPath());
+  }
+
+  @Override
+  @Test
+  public void run() {
+    compileLibrary();
+    super.run();
+  }
+
+  /** Compiles the library, writing its class files and its summary. */
+  private static void compileLibrary() {
+    LIBRARY_CLASSES.mkdirs();
+    SUMMARY.delete();
+    TestConfiguration config =
+        TestConfigurationBuilder.buildDefaultConfiguration(
+            "tests/genericeffects-summary-lib",
+            TestUtilities.findNestedJavaTestFiles("genericeffects-summary-lib"),
+            Collections.singletonList(CastingEffectChecker.class.getName()),
+            Arrays.asList(
+                "-Anomsgtext",
+                "-AeffectSummaryOutput=" + SUMMARY.getPath(),
+                "-d",
+                LIBRARY_CLASSES.getAbsolutePath()),
+            TestUtilities.getShouldEmitDebugInfo());
+    TestUtilities.assertTestDidNotFail(new TypecheckExecutor().runTest(config));
+
+    CastingEffects lattice = new CastingEffects();
+    try {
+      EffectSummaryReader<Class<? extends Annotation>> summary =
+          EffectSummaryReader.open(
+              SUMMARY.toPath(),
+              CastingEffectChecker.class.getName(),
+              lattice.getValidEffects(),
+              anno -> anno,
+              lattice.unit());
+      Assert.assertNotNull(summary);
+      Assert.assertEquals(
+          IntegerOverflow.class, summary.lookupMethod("SummaryLibrary#overflow()").base);
+    } catch (IOException e) {
+      throw new AssertionError("Unable to read " + SUMMARY, e);
+    }
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"genericeffects-summary"};
+  }
+}
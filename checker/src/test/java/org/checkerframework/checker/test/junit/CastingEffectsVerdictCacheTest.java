@@ -0,0 +1,95 @@
+package tests;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.checkerframework.checker.genericeffects.CastingEffectChecker;
+import org.checkerframework.checker.genericeffects.EffectVerdictCache;
+import org.checkerframework.framework.test.CheckerFrameworkPerDirectoryTest;
+import org.checkerframework.framework.test.TestConfigurationBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the casting effect tests twice with a fresh verdict cache: once checking every method and
+ * filling the cache, and once replaying the cached diagnostics. A last run then checks that the
+ * cache answered its lookups.
+ */
+public class CastingEffectsVerdictCacheTest extends CheckerFrameworkPerDirectoryTest {
+
+  public CastingEffectsVerdictCacheTest(List<File> testFiles) {
+    super(
+        testFiles,
+        CastingEffectChecker.class,
+        "genericeffects",
+        "-Anomsgtext",
+        "-AeffectCache=" + freshCacheFile());
+  }
+
+  /**
+   * Returns a cache file that does not yet exist.
+   *
+   * @return the path of the cache file
+   */
+  private static String freshCacheFile() {
+    File cache = new File("build/tmp/CastingEffectsVerdictCacheTest.cache");
+    cache.delete();
+    return cache.getPath();
+  }
+
+  @Override
+  @Test
+  public void run() {
+    super.run();
+    super.run();
+    assertCacheHits();
+  }
+
+  /**
+   * Checks the tests again with a checker instance created here, with the same processor
+   * options as the runs above, and checks that the cache answered its lookups.
+   */
+  private void assertCacheHits() {
+    CastingEffectChecker checker = new CastingEffectChecker();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    List<String> options = new ArrayList<>();
+    options.add("-proc:only");
+    options.add("-classpath");
+    options.add(TestConfigurationBuilder.getDefaultClassPath());
+    options.addAll(checkerOptions);
+    options.add("-ApermitMissingJdk");
+    options.add("-Anocheckjdk");
+    JavaCompiler.CompilationTask task =
+        compiler.getTask(
+            new StringWriter(),
+            fileManager,
+            new DiagnosticCollector<JavaFileObject>(),
+            options,
+            null,
+            fileManager.getJavaFileObjectsFromFiles(testFiles));
+    task.setProcessors(Collections.singletonList(checker));
+    task.call();
+
+    EffectVerdictCache cache = checker.getVerdictCache();
+    Assert.assertNotNull(cache);
+    String[] stats = cache.stats().split("/");
+    int hits = Integer.parseInt(stats[0]);
+    int lookups = Integer.parseInt(stats[1]);
+    Assert.assertTrue("No cache lookups", lookups > 0);
+    Assert.assertTrue("No cache hits in " + cache.stats() + " lookups", hits > 0);
+  }
+
+  @Parameters
+  public static String[] getTestDirs() {
+    return new String[] {"genericeffects"};
+  }
+}
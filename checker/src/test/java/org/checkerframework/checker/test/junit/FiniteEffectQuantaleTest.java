@@ -0,0 +1,166 @@
+package tests;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.checkerframework.checker.atomicity.AtomicityQuantale;
+import org.checkerframework.checker.critical.CriticalQuantale;
+import org.checkerframework.checker.genericeffects.CastingEffects;
+import org.checkerframework.checker.genericeffects.EffectQuantale;
+import org.checkerframework.checker.genericeffects.FiniteEffectQuantale;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks every entry of the tables of {@link FiniteEffectQuantale} against the quantale it was
+ * built from.
+ */
+public class FiniteEffectQuantaleTest {
+
+  /**
+   * Runs an operation, turning an exception into a description of it so that an operation that
+   * throws can be compared with one that throws the same way.
+   *
+   * @param op the operation
+   * @return the result of the operation, or the class of what it threw
+   */
+  private static Object outcome(Supplier<?> op) {
+    try {
+      return op.get();
+    } catch (RuntimeException | AssertionError e) {
+      return e.getClass();
+    }
+  }
+
+  /**
+   * Determines whether the outcome of an operation is an effect, rather than nothing or what it
+   * threw.
+   *
+   * @param outcome the outcome of the operation
+   * @return true if the outcome is an effect
+   */
+  private static boolean isEffect(Object outcome) {
+    return outcome instanceof Class && !Throwable.class.isAssignableFrom((Class<?>) outcome);
+  }
+
+  /**
+   * Enumerates the effects a quantale's tables cover: its unit and valid effects, closed under its
+   * operations.
+   *
+   * @param q the quantale
+   * @return the effects
+   */
+  private static List<Class<? extends Annotation>> closure(
+      EffectQuantale<Class<? extends Annotation>> q) {
+    Set<Class<? extends Annotation>> effects = new LinkedHashSet<>();
+    effects.add(q.unit());
+    effects.addAll(q.getValidEffects());
+    boolean grew = true;
+    while (grew) {
+      List<Class<? extends Annotation>> current = new ArrayList<>(effects);
+      for (Class<? extends Annotation> l : current) {
+        add(effects, () -> q.iter(l));
+        for (Class<? extends Annotation> r : current) {
+          add(effects, () -> q.seq(l, r));
+          add(effects, () -> q.LUB(l, r));
+          add(effects, () -> q.residual(l, r));
+        }
+      }
+      grew = effects.size() > current.size();
+    }
+    return new ArrayList<>(effects);
+  }
+
+  /**
+   * Adds the result of an operation to a set of effects, if it has one.
+   *
+   * @param effects the set of effects
+   * @param op the operation
+   */
+  private static void add(
+      Set<Class<? extends Annotation>> effects, Supplier<Class<? extends Annotation>> op) {
+    Object result = outcome(op);
+    if (isEffect(result)) {
+      @SuppressWarnings("unchecked")
+      Class<? extends Annotation> effect = (Class<? extends Annotation>) result;
+      effects.add(effect);
+    }
+  }
+
+  /**
+   * Asserts that two outcomes are the same.
+   *
+   * @param operation a description of the operation
+   * @param expected the outcome of the underlying quantale
+   * @param actual the outcome of the tabulated quantale
+   */
+  private static void assertSame(String operation, Object expected, Object actual) {
+    Assert.assertTrue(
+        operation + ": " + expected + " != " + actual, Objects.equals(expected, actual));
+  }
+
+  /**
+   * Checks each LE, LUB, seq, residual, and iter entry of the tables of a quantale against the
+   * quantale itself.
+   *
+   * @param q the quantale
+   */
+  private static void checkTables(EffectQuantale<Class<? extends Annotation>> q) {
+    EffectQuantale<Class<? extends Annotation>> tabulated =
+        FiniteEffectQuantale.tabulate(q, anno -> anno);
+    Assert.assertTrue(tabulated instanceof FiniteEffectQuantale);
+    List<Class<? extends Annotation>> effects = closure(q);
+    Assert.assertEquals(effects.size(), ((FiniteEffectQuantale<?>) tabulated).size());
+    for (Class<? extends Annotation> l : effects) {
+      String name = l.getSimpleName();
+      assertSame("iter(" + name + ")", outcome(() -> q.iter(l)), outcome(() -> tabulated.iter(l)));
+      for (Class<? extends Annotation> r : effects) {
+        String args = "(" + name + ", " + r.getSimpleName() + ")";
+        assertSame("LE" + args, outcome(() -> q.LE(l, r)), outcome(() -> tabulated.LE(l, r)));
+        assertSame("LUB" + args, outcome(() -> q.LUB(l, r)), outcome(() -> tabulated.LUB(l, r)));
+        assertSame("seq" + args, outcome(() -> q.seq(l, r)), outcome(() -> tabulated.seq(l, r)));
+        assertSame(
+            "residual" + args,
+            outcome(() -> q.residual(l, r)),
+            outcome(() -> tabulated.residual(l, r)));
+      }
+    }
+    // The table knows exactly which residuals are total, which the quantale may only approximate
+    for (Class<? extends Annotation> target : effects) {
+      boolean total = true;
+      for (Class<? extends Annotation> sofar : effects) {
+        Object residual = outcome(() -> q.residual(sofar, target));
+        total &= isEffect(residual);
+      }
+      String name = target.getSimpleName();
+      Assert.assertEquals(
+          "residualAlwaysDefined(" + name + ")", total, tabulated.residualAlwaysDefined(target));
+      Assert.assertTrue(!q.residualAlwaysDefined(target) || total);
+    }
+    Assert.assertEquals(q.unit(), tabulated.unit());
+    Assert.assertEquals(q.top(), tabulated.top());
+    Assert.assertEquals(q.getValidEffects(), tabulated.getValidEffects());
+    Assert.assertEquals(q.isCommutative(), tabulated.isCommutative());
+  }
+
+  /** The tables of the casting effects match the quantale. */
+  @Test
+  public void castingEffects() {
+    checkTables(new CastingEffects());
+  }
+
+  /** The tables of the atomicity and critical section quantales match the quantales. */
+  @Test
+  public void otherQuantales() {
+    for (EffectQuantale<Class<? extends Annotation>> q :
+        Arrays.<EffectQuantale<Class<? extends Annotation>>>asList(
+            new AtomicityQuantale(), new CriticalQuantale())) {
+      checkTables(q);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.ThrownEffect;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+// Without residual checks, errors are only found where paths leave the body
+public class DataflowWholeBody {
+
+  @UnsafeCast
+  public void unsafe() {}
+
+  @SafeCast
+  // :: error: (subeffect.invalid.methodbody)
+  public void regularExit() {
+    unsafe();
+  }
+
+  @SafeCast
+  public void throwsAfterUnsafe() {
+    unsafe();
+    // :: error: (invalid.throw)
+    throw new RuntimeException();
+  }
+
+  @SafeCast
+  @ThrownEffect(exception = IllegalStateException.class, behavior = UnsafeCast.class)
+  public void throwsDeclared() {
+    unsafe();
+    throw new IllegalStateException();
+  }
+
+  @SafeCast
+  @ThrownEffect(exception = IllegalStateException.class, behavior = UnsafeCast.class)
+  public void throwsOther() {
+    unsafe();
+    // :: error: (invalid.throw)
+    throw new IllegalArgumentException();
+  }
+
+  @SafeCast
+  // :: error: (subeffect.invalid.methodbody)
+  public void finallyRethrows(boolean b) {
+    // :: error: (invalid.throw)
+    try {
+      if (b) {
+        throw new IllegalStateException();
+      }
+    } finally {
+      unsafe();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.checker.genericeffects.qual.IntegerPrecisionLoss;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeIntegerCast;
+
+public class DataflowBranches {
+
+  int c = 1234;
+
+  @IntegerOverflow
+  public void overflow() {}
+
+  @IntegerPrecisionLoss
+  public void precisionLoss() {}
+
+  @UnsafeIntegerCast
+  public void eitherBranch(boolean b) {
+    // okay: the join of the branches is UnsafeIntegerCast
+    if (b) {
+      overflow();
+    } else {
+      precisionLoss();
+    }
+  }
+
+  @IntegerOverflow
+  public void onlyOneBranchAllowed(boolean b) {
+    if (b) {
+      overflow();
+    } else {
+      // :: error: (operation.invalid)
+      precisionLoss();
+    }
+  }
+
+  @SafeCast
+  public void castInBranch(boolean b) {
+    byte x = 0;
+    if (b) {
+      // :: error: (operation.invalid)
+      x = (byte) c;
+    }
+  }
+
+  @IntegerOverflow
+  public byte earlyReturn(boolean b) {
+    if (b) {
+      return (byte) c;
+    }
+    return 0;
+  }
+
+  @SafeCast
+  public int conditionalExpression(boolean b) {
+    // :: error: (operation.invalid)
+    return b ? c : (short) c;
+  }
+}
@@ -0,0 +1,95 @@
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.ThrownEffect;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+public class DataflowExceptions {
+
+  @UnsafeCast
+  public void unsafe() {}
+
+  @SafeCast
+  public void safe() {}
+
+  @SafeCast
+  @ThrownEffect(exception = IllegalStateException.class, behavior = UnsafeCast.class)
+  public void risky() throws IllegalStateException {}
+
+  @SafeCast
+  @ThrownEffect(exception = IllegalStateException.class, behavior = UnsafeCast.class)
+  public void propagates() {
+    // okay: the exceptional path is declared
+    risky();
+  }
+
+  @SafeCast
+  public void undeclaredPropagation() {
+    // :: error: (invalid.throw)
+    risky();
+  }
+
+  @UnsafeCast
+  public void catches() {
+    try {
+      risky();
+    } catch (IllegalStateException e) {
+      safe();
+    }
+  }
+
+  @SafeCast
+  // :: error: (subeffect.invalid.methodbody)
+  public void catchesInSafe() {
+    try {
+      risky();
+    } catch (IllegalStateException e) {
+      // the handler runs after the thrown effect
+    }
+  }
+
+  @SafeCast
+  public void throwsAfterUnsafe() {
+    // :: error: (operation.invalid)
+    unsafe();
+    throw new RuntimeException();
+  }
+
+  @SafeCast
+  @ThrownEffect(exception = IllegalStateException.class, behavior = UnsafeCast.class)
+  public void throwsDeclared(boolean b) {
+    if (b) {
+      throw new IllegalStateException();
+    }
+  }
+
+  @SafeCast
+  public void finallyRuns() {
+    try {
+      safe();
+    } finally {
+      // :: error: (operation.invalid)
+      unsafe();
+    }
+  }
+
+  @UnsafeCast
+  public void finallyAllowed(boolean b) {
+    try {
+      if (b) {
+        throw new IllegalStateException();
+      }
+    } finally {
+      unsafe();
+    }
+  }
+
+  @SafeCast
+  public void redundantCastInFinally(int i) {
+    try {
+      safe();
+    } finally {
+      // The finally block is copied for each way out of the try block, but warned about once
+      // :: warning: (cast.redundant)
+      int j = (int) i;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+public class DataflowLambdas {
+
+  interface SafeAction {
+    @SafeCast
+    void run();
+  }
+
+  interface UnsafeAction {
+    @UnsafeCast
+    void run();
+  }
+
+  @UnsafeCast
+  public void unsafe() {}
+
+  @SafeCast
+  public void unsafeLambdaInSafeMethod() {
+    // okay: the lambda is checked against UnsafeAction.run, not this method
+    UnsafeAction a = () -> unsafe();
+  }
+
+  @UnsafeCast
+  public void safeLambdaInUnsafeMethod() {
+    // :: error: (operation.invalid)
+    SafeAction a = () -> unsafe();
+  }
+
+  @SafeCast
+  public void blockLambda() {
+    SafeAction a =
+        () -> {
+          // :: error: (operation.invalid)
+          unsafe();
+        };
+  }
+}
@@ -0,0 +1,56 @@
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+
+public class DataflowLoops {
+
+  int c = 1234;
+
+  @IntegerOverflow
+  public void overflow() {}
+
+  @IntegerOverflow
+  public void loopBody(int n) {
+    // okay: the body's effect is repeated
+    for (int i = 0; i < n; i++) {
+      overflow();
+    }
+  }
+
+  @SafeCast
+  public void castInLoop(int n) {
+    byte x = 0;
+    while (n-- > 0) {
+      // :: error: (operation.invalid)
+      x = (byte) c;
+    }
+  }
+
+  @IntegerOverflow
+  public void breakAndContinue(int[] values) {
+    for (int v : values) {
+      if (v == 2) {
+        continue;
+      }
+      if (v == 5) {
+        break;
+      }
+      byte y = (byte) v;
+    }
+  }
+
+  @IntegerOverflow
+  public void loopCondition() {
+    // :: error: (operation.invalid)
+    while ((float) c > 0) {
+      c--;
+    }
+  }
+
+  @SafeCast
+  public void doWhile(int n) {
+    do {
+      // :: error: (operation.invalid)
+      overflow();
+    } while (n-- > 0);
+  }
+}
@@ -0,0 +1,21 @@
+import org.checkerframework.checker.genericeffects.qual.DefaultEffect;
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+// Compiled with -AeffectSummaryOutput before the client in genericeffects-summary, which sees
+// these classes only through their class files and the summary.
+public class SummaryLibrary {
+  @IntegerOverflow
+  public static void overflow() {}
+
+  public static void unannotated() {}
+
+  @DefaultEffect(UnsafeCast.class)
+  public static class Defaults {
+    public static void defaulted() {}
+
+    @SafeCast
+    public static void safe() {}
+  }
+}
@@ -0,0 +1,25 @@
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+
+// Calls the separately compiled SummaryLibrary, whose effects come from its summary.
+public class SummaryClient {
+  @SafeCast
+  public void safe() {
+    // :: error: (operation.invalid)
+    SummaryLibrary.overflow();
+    // okay
+    SummaryLibrary.unannotated();
+    // :: error: (operation.invalid)
+    SummaryLibrary.Defaults.defaulted();
+    // okay
+    SummaryLibrary.Defaults.safe();
+  }
+
+  @IntegerOverflow
+  public void overflow() {
+    // okay
+    SummaryLibrary.overflow();
+    // okay
+    SummaryLibrary.unannotated();
+  }
+}
@@ -0,0 +1,24 @@
+import org.checkerframework.checker.genericeffects.qual.IntegerOverflow;
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+public class ConflictingEffectAnnotations {
+
+  @SafeCast
+  @UnsafeCast
+  // :: error: (effect.annotation.conflict)
+  public void conflicting() {}
+
+  @IntegerOverflow
+  @SafeCast
+  @UnsafeCast
+  // :: error: (effect.annotation.conflict) :: error: (effect.annotation.conflict)
+  public void threeWays() {}
+
+  @SafeCast
+  public void caller() {
+    // The declared effect is the one written that comes last in the checker's effect order
+    // :: error: (operation.invalid)
+    conflicting();
+  }
+}
@@ -0,0 +1,36 @@
+import org.checkerframework.checker.genericeffects.qual.SafeCast;
+import org.checkerframework.checker.genericeffects.qual.UnsafeCast;
+
+// An override is checked against interfaces it implements only through other interfaces, and is
+// reported once per overridden method even when that method is inherited along several paths.
+public class TransitiveInterfaceOverride {
+  interface I1 {
+    @SafeCast
+    void m();
+  }
+
+  interface I2 extends I1 {}
+
+  interface I3 extends I1 {}
+
+  static class C implements I2 {
+    @Override
+    @UnsafeCast
+    // :: error: (override.effect.invalid)
+    public void m() {}
+  }
+
+  static class Diamond implements I2, I3 {
+    @Override
+    @UnsafeCast
+    // :: error: (override.effect.invalid)
+    public void m() {}
+  }
+
+  static class Sub extends C {
+    @Override
+    @UnsafeCast
+    // :: error: (override.effect.invalid)
+    public void m() {}
+  }
+}
@@ -3,13 +3,15 @@ package org.checkerframework.dataflow.analysis;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
-import java.util.Comparator;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.StringJoiner;
 import javax.lang.model.element.Element;
 import javax.lang.model.type.TypeMirror;
 import org.checkerframework.checker.interning.qual.FindDistinct;
@@ -26,6 +28,7 @@ import org.checkerframework.dataflow.cfg.node.AssignmentNode;
 import org.checkerframework.dataflow.cfg.node.LocalVariableNode;
 import org.checkerframework.dataflow.cfg.node.Node;
 import org.checkerframework.dataflow.qual.Pure;
+import org.checkerframework.dataflow.util.GraphIndexedMap;
 import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.ElementUtils;
 
@@ -59,13 +62,13 @@ public abstract class AbstractAnalysis<
    * The transfer inputs of every basic block (assumed to be 'no information' if not present, inputs
    * before blocks in forward analysis, after blocks in backward analysis).
    */
-  protected final IdentityHashMap<Block, TransferInput<V, S>> inputs = new IdentityHashMap<>();
+  protected final GraphIndexedMap<Block, TransferInput<V, S>> inputs = GraphIndexedMap.forBlocks();
 
   /** The worklist used for the fix-point iteration. */
   protected final Worklist worklist;
 
   /** Abstract values of nodes. */
-  protected final IdentityHashMap<Node, V> nodeValues = new IdentityHashMap<>();
+  protected final GraphIndexedMap<Node, V> nodeValues = GraphIndexedMap.forNodes();
 
   /** Map from (effectively final) local variable elements to their abstract value. */
   protected final HashMap<Element, V> finalLocalValues = new HashMap<>();
@@ -170,7 +173,12 @@ public abstract class AbstractAnalysis<
           "AbstractAnalysis::getResult() shouldn't be called when the analysis is running.");
     }
     return new AnalysisResult<>(
-        nodeValues, inputs, cfg.getTreeLookup(), cfg.getPostfixNodeLookup(), finalLocalValues);
+        nodeValues,
+        inputs,
+        cfg.getTreeLookup(),
+        cfg.getPostfixNodeLookup(),
+        finalLocalValues,
+        new IdentityHashMap<>());
   }
 
   @Override
@@ -205,7 +213,7 @@ public abstract class AbstractAnalysis<
    *
    * @return {@link #nodeValues}
    */
-  public IdentityHashMap<Node, V> getNodeValues() {
+  public Map<Node, V> getNodeValues() {
     return nodeValues;
   }
 
@@ -214,7 +222,7 @@ public abstract class AbstractAnalysis<
    *
    * @param in the current node values
    */
-  /*package-private*/ void setNodeValues(IdentityHashMap<Node, V> in) {
+  /*package-private*/ void setNodeValues(Map<Node, V> in) {
     assert !isRunning;
     nodeValues.clear();
     nodeValues.putAll(in);
@@ -443,47 +451,35 @@ public abstract class AbstractAnalysis<
    * @param b the block to add to {@link #worklist}
    */
   protected void addToWorklist(Block b) {
-    // TODO: use a more efficient way to check if b is already present
-    if (!worklist.contains(b)) {
-      worklist.add(b);
-    }
+    worklist.add(b);
   }
 
   /**
    * A worklist is a priority queue of blocks in which the order is given by depth-first ordering to
    * place non-loop predecessors ahead of successors.
+   *
+   * <p>Blocks are identified by their dense {@link Block#getIndex() indices}, which follow
+   * depth-first order, so the worklist is a bit set of indices: membership tests, additions, and
+   * removals take constant time and allocate nothing. A cursor bounds the position of the next
+   * block (the smallest index for a forward analysis, the largest for a backward one), so polling
+   * scans only the bits between the cursor and that block.
    */
   protected static class Worklist {
 
-    /** Map all blocks in the CFG to their depth-first order. */
-    protected final IdentityHashMap<Block, Integer> depthFirstOrder = new IdentityHashMap<>();
+    /** Whether blocks with smaller indices are polled first. */
+    protected final boolean forward;
 
-    /**
-     * Comparators to allow priority queue to order blocks by their depth-first order, using by
-     * forward analysis.
-     */
-    public class ForwardDFOComparator implements Comparator<Block> {
-      @SuppressWarnings("nullness:unboxing.of.nullable")
-      @Override
-      public int compare(Block b1, Block b2) {
-        return depthFirstOrder.get(b1) - depthFirstOrder.get(b2);
-      }
-    }
+    /** The blocks of the control flow graph being analyzed, by index. */
+    protected List<Block> blocks = Collections.emptyList();
+
+    /** The indices of the blocks in the worklist. */
+    protected final BitSet members = new BitSet();
 
     /**
-     * Comparators to allow priority queue to order blocks by their depth-first order, using by
-     * backward analysis.
+     * A bound on the index of the next block to poll: no member has a smaller index (forward) or
+     * a larger index (backward).
      */
-    public class BackwardDFOComparator implements Comparator<Block> {
-      @SuppressWarnings("nullness:unboxing.of.nullable")
-      @Override
-      public int compare(Block b1, Block b2) {
-        return depthFirstOrder.get(b2) - depthFirstOrder.get(b1);
-      }
-    }
-
-    /** The backing priority queue. */
-    protected final PriorityQueue<Block> queue;
+    protected int cursor;
 
     /**
      * Create a Worklist.
@@ -492,76 +488,89 @@ public abstract class AbstractAnalysis<
      */
     public Worklist(Direction direction) {
       if (direction == Direction.FORWARD) {
-        queue = new PriorityQueue<>(new ForwardDFOComparator());
+        forward = true;
       } else if (direction == Direction.BACKWARD) {
-        queue = new PriorityQueue<>(new BackwardDFOComparator());
+        forward = false;
       } else {
         throw new BugInCF("Unexpected Direction meet: " + direction.name());
       }
     }
 
     /**
-     * Process the control flow graph, add the blocks to {@link #depthFirstOrder}.
+     * Process the control flow graph: clear the worklist and prepare it for the blocks of {@code
+     * cfg}.
      *
      * @param cfg the control flow graph to process
      */
     public void process(ControlFlowGraph cfg) {
-      depthFirstOrder.clear();
-      int count = 1;
-      for (Block b : cfg.getDepthFirstOrderedBlocks()) {
-        depthFirstOrder.put(b, count++);
-      }
-
-      queue.clear();
+      blocks = cfg.getIndexedBlocks();
+      members.clear();
+      cursor = forward ? 0 : blocks.size() - 1;
     }
 
     /**
-     * See {@link PriorityQueue#isEmpty}.
+     * Returns true if the worklist is empty.
      *
-     * @see PriorityQueue#isEmpty
-     * @return true if {@link #queue} is empty else false
+     * @return true if the worklist is empty else false
      */
     @Pure
     @EnsuresNonNullIf(result = false, expression = "poll()")
     @SuppressWarnings("nullness:contracts.conditional.postcondition") // forwarded
     public boolean isEmpty() {
-      return queue.isEmpty();
+      return members.isEmpty();
     }
 
     /**
-     * Check if {@link #queue} contains the block which is passed as the argument.
+     * Check if the worklist contains the block which is passed as the argument.
      *
      * @param block the given block to check
-     * @return true if {@link #queue} contains the given block
+     * @return true if the worklist contains the given block
      */
     public boolean contains(Block block) {
-      return queue.contains(block);
+      int index = block.getIndex();
+      return index >= 0 && members.get(index);
     }
 
     /**
-     * Add the given block to {@link #queue}. Adds unconditionally: does not check containment
-     * first.
+     * Add the given block to the worklist, if it is not already present.
      *
-     * @param block the block to add to {@link #queue}
+     * @param block the block to add to the worklist; must be reachable in the control flow graph
+     *     last passed to {@link #process}
      */
     public void add(Block block) {
-      queue.add(block);
+      int index = block.getIndex();
+      if (index < 0) {
+        throw new BugInCF("Adding an unreachable block to the worklist: " + block);
+      }
+      members.set(index);
+      if (forward ? index < cursor : index > cursor) {
+        cursor = index;
+      }
     }
 
     /**
-     * See {@link PriorityQueue#poll}.
+     * Remove and return the first block of the worklist in depth-first order (forward) or reverse
+     * depth-first order (backward).
      *
-     * @see PriorityQueue#poll
-     * @return the head of {@link #queue}
+     * @return the first block of the worklist, or null if it is empty
      */
-    @Pure
     public @Nullable Block poll() {
-      return queue.poll();
+      int index = forward ? members.nextSetBit(cursor) : members.previousSetBit(cursor);
+      if (index < 0) {
+        return null;
+      }
+      members.clear(index);
+      cursor = index;
+      return blocks.get(index);
     }
 
     @Override
     public String toString() {
-      return "Worklist(" + queue + ")";
+      StringJoiner result = new StringJoiner(", ", "Worklist(", ")");
+      for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+        result.add(blocks.get(i).toString());
+      }
+      return result.toString();
     }
   }
 }
@@ -75,7 +75,8 @@ public interface Analysis<
    * {@code analysisCaches} is not null, this method uses a cache. {@code analysisCaches} is a map
    * of a block of node to the cached analysis result. If the cache for {@code transferInput} is not
    * in {@code analysisCaches}, this method creates new cache and stores it in {@code
-   * analysisCaches}. The cache is a map of nodes to the analysis results of the nodes.
+   * analysisCaches}. The cache is a map of nodes to the analysis results of the nodes; an
+   * implementation may keep results for only some of the nodes, from which it replays the rest.
    *
    * @param node the node to analyze
    * @param preOrPost which store to return: the store immediately before {@code node} or the store
@@ -90,7 +91,7 @@ public interface Analysis<
       Node node,
       Analysis.BeforeOrAfter preOrPost,
       TransferInput<V, S> blockTransferInput,
-      IdentityHashMap<Node, V> nodeValues,
+      Map<Node, V> nodeValues,
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches);
 
   /**
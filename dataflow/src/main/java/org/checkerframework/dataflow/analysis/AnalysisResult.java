@@ -15,6 +15,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.cfg.block.Block;
 import org.checkerframework.dataflow.cfg.block.ExceptionBlock;
 import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.util.GraphIndexedMap;
 import org.checkerframework.dataflow.util.UnmodifiableIdentityHashMap;
 import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.TreeUtils;
@@ -37,7 +38,7 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
   private boolean mapsCopied = false;
 
   /** Abstract values of nodes. */
-  protected IdentityHashMap<Node, V> nodeValues;
+  protected GraphIndexedMap<Node, V> nodeValues;
 
   /**
    * Map from AST {@link Tree}s to sets of {@link Node}s.
@@ -57,12 +58,12 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
   protected final HashMap<Element, V> finalLocalValues;
 
   /** The stores before every method call. */
-  protected final IdentityHashMap<Block, TransferInput<V, S>> stores;
+  protected final GraphIndexedMap<Block, TransferInput<V, S>> stores;
 
   /**
    * Caches of the analysis results for each input for the block of the node and each node.
    *
-   * @see #runAnalysisFor(Node, Analysis.BeforeOrAfter, TransferInput, IdentityHashMap, Map)
+   * @see #runAnalysisFor(Node, Analysis.BeforeOrAfter, TransferInput, Map, Map)
    */
   protected final Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>>
       analysisCaches;
@@ -88,13 +89,14 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
    * @param analysisCaches {@link #analysisCaches}
    */
   protected AnalysisResult(
-      IdentityHashMap<Node, V> nodeValues,
-      IdentityHashMap<Block, TransferInput<V, S>> stores,
+      GraphIndexedMap<Node, V> nodeValues,
+      GraphIndexedMap<Block, TransferInput<V, S>> stores,
       IdentityHashMap<Tree, Set<Node>> treeLookup,
       IdentityHashMap<UnaryTree, BinaryTree> postfixLookup,
       HashMap<Element, V> finalLocalValues,
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches) {
-    this.nodeValues = UnmodifiableIdentityHashMap.wrap(nodeValues);
+    // nodeValues is copied before it is mutated; see copyMapsIfNeeded().
+    this.nodeValues = nodeValues;
     this.treeLookup = UnmodifiableIdentityHashMap.wrap(treeLookup);
     this.postfixLookup = UnmodifiableIdentityHashMap.wrap(postfixLookup);
     // TODO: why are stores and finalLocalValues captured?
@@ -104,7 +106,7 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
   }
 
   /**
-   * Initialize with given mappings and empty cache.
+   * Initialize with copies of given mappings and empty cache.
    *
    * @param nodeValues {@link #nodeValues}
    * @param stores {@link #stores}
@@ -118,7 +120,15 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
       IdentityHashMap<Tree, Set<Node>> treeLookup,
       IdentityHashMap<UnaryTree, BinaryTree> postfixLookup,
       HashMap<Element, V> finalLocalValues) {
-    this(nodeValues, stores, treeLookup, postfixLookup, finalLocalValues, new IdentityHashMap<>());
+    this(
+        GraphIndexedMap.forNodes(),
+        GraphIndexedMap.forBlocks(),
+        treeLookup,
+        postfixLookup,
+        finalLocalValues,
+        new IdentityHashMap<>());
+    this.nodeValues.putAll(nodeValues);
+    this.stores.putAll(stores);
   }
 
   /**
@@ -129,8 +139,8 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
   public AnalysisResult(
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches) {
     this(
-        new IdentityHashMap<>(),
-        new IdentityHashMap<>(),
+        GraphIndexedMap.forNodes(),
+        GraphIndexedMap.forBlocks(),
         new IdentityHashMap<>(),
         new IdentityHashMap<>(),
         new HashMap<>(),
@@ -151,10 +161,10 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
     finalLocalValues.putAll(other.finalLocalValues);
   }
 
-  /** Make copies of certain internal IdentityHashMaps, if they have not been copied already. */
+  /** Make copies of certain internal maps, if they have not been copied already. */
   private void copyMapsIfNeeded() {
     if (!mapsCopied) {
-      nodeValues = new IdentityHashMap<>(nodeValues);
+      nodeValues = nodeValues.copy();
       treeLookup = new IdentityHashMap<>(treeLookup);
       postfixLookup = new IdentityHashMap<>(postfixLookup);
       mapsCopied = true;
@@ -419,7 +429,7 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
       return null;
     }
     // Calling Analysis.runAnalysisFor() may mutate the internal nodeValues map inside an
-    // AbstractAnalysis object, and by default the AnalysisResult constructor just wraps this map
+    // AbstractAnalysis object, and by default the AnalysisResult constructor just keeps this map
     // without copying it.  So here the AnalysisResult maps must be copied, to preserve them.
     copyMapsIfNeeded();
     return runAnalysisFor(node, preOrPost, transferInput, nodeValues, analysisCaches);
@@ -432,7 +442,8 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
    * {@code analysisCaches} is not null, this method uses a cache. {@code analysisCaches} is a map
    * of a block of node to the cached analysis result. If the cache for {@code transferInput} is not
    * in {@code analysisCaches}, this method creates new cache and stores it in {@code
-   * analysisCaches}. The cache is a map of nodes to the analysis results of the nodes.
+   * analysisCaches}. The cache is a map of nodes to the analysis results of the nodes; an
+   * implementation may keep results for only some of the nodes, from which it replays the rest.
    *
    * @param <V> the abstract value type to be tracked by the analysis
    * @param <S> the store type used in the analysis
@@ -449,7 +460,7 @@ public class AnalysisResult<V extends AbstractValue<V>, S extends Store<S>> impl
       Node node,
       Analysis.BeforeOrAfter preOrPost,
       TransferInput<V, S> transferInput,
-      IdentityHashMap<Node, V> nodeValues,
+      Map<Node, V> nodeValues,
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches) {
     if (transferInput.analysis == null) {
       throw new BugInCF("Analysis in transferInput cannot be null.");
@@ -197,8 +197,7 @@ public class BackwardAnalysisImpl<
     worklist.process(cfg);
     SpecialBlock regularExitBlock = cfg.getRegularExitBlock();
     SpecialBlock exceptionExitBlock = cfg.getExceptionalExitBlock();
-    if (worklist.depthFirstOrder.get(regularExitBlock) == null
-        && worklist.depthFirstOrder.get(exceptionExitBlock) == null) {
+    if (regularExitBlock.getIndex() < 0 && exceptionExitBlock.getIndex() < 0) {
       throw new BugInCF(
           "regularExitBlock and exceptionExitBlock should never both be null at the same time.");
     }
@@ -209,12 +208,12 @@ public class BackwardAnalysisImpl<
     S exceptionalInitialStore = transferFunction.initialExceptionalExitStore(underlyingAST);
     // If regularExitBlock or exceptionExitBlock is reachable in the control flow graph, then
     // initialize it as a start point of the analysis.
-    if (worklist.depthFirstOrder.get(regularExitBlock) != null) {
+    if (regularExitBlock.getIndex() >= 0) {
       worklist.add(regularExitBlock);
       inputs.put(regularExitBlock, new TransferInput<>(null, this, normalInitialStore));
       outStores.put(regularExitBlock, normalInitialStore);
     }
-    if (worklist.depthFirstOrder.get(exceptionExitBlock) != null) {
+    if (exceptionExitBlock.getIndex() >= 0) {
       worklist.add(exceptionExitBlock);
       inputs.put(exceptionExitBlock, new TransferInput<>(null, this, exceptionalInitialStore));
       outStores.put(exceptionExitBlock, exceptionalInitialStore);
@@ -329,7 +328,7 @@ public class BackwardAnalysisImpl<
       @FindDistinct Node node,
       Analysis.BeforeOrAfter preOrPost,
       TransferInput<V, S> blockTransferInput,
-      IdentityHashMap<Node, V> nodeValues,
+      Map<Node, V> nodeValues,
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches) {
     Block block = node.getBlock();
     assert block != null : "@AssumeAssertion(nullness): invariant";
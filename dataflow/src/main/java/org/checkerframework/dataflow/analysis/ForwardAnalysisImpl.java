@@ -61,6 +61,19 @@ public class ForwardAnalysisImpl<
   /** The stores after every return statement. */
   protected final IdentityHashMap<ReturnNode, TransferResult<V, S>> storesAtReturnStatements;
 
+  /**
+   * The transfer input of the block {@link #runAnalysisFor} replayed last, or null. Together with
+   * {@link #replayPosition} and {@link #replayInput}, it lets a query for a later node of the same
+   * block continue where the previous query stopped.
+   */
+  private @Nullable TransferInput<V, S> replayBlockInput;
+
+  /** The position in its block of the node {@link #runAnalysisFor} queried last. */
+  private int replayPosition;
+
+  /** The transfer input before the node {@link #runAnalysisFor} queried last, or null. */
+  private @Nullable TransferInput<V, S> replayInput;
+
   // `@code`, not `@link`, because dataflow module doesn't depend on framework module.
   /**
    * Construct an object that can perform a org.checkerframework.dataflow forward analysis over a
@@ -232,7 +245,7 @@ public class ForwardAnalysisImpl<
       @FindDistinct Node node,
       Analysis.BeforeOrAfter preOrPost,
       TransferInput<V, S> blockTransferInput,
-      IdentityHashMap<Node, V> nodeValues,
+      Map<Node, V> nodeValues,
       Map<TransferInput<V, S>, IdentityHashMap<Node, TransferResult<V, S>>> analysisCaches) {
     Block block = node.getBlock();
     assert block != null : "@AssumeAssertion(nullness): invariant";
@@ -256,30 +269,57 @@ public class ForwardAnalysisImpl<
       switch (block.getType()) {
         case REGULAR_BLOCK:
           {
-            RegularBlock rb = (RegularBlock) block;
-            // Apply transfer function to contents until we found the node we are looking for.
+            List<Node> nodes = ((RegularBlock) block).getNodes();
+            int target = positionInBlock(nodes, node);
+            if (target < 0) {
+              throw new BugInCF("node %s is not in node.getBlock()=%s", node, block);
+            }
+            // Start from the latest point before the node whose input is known: where the previous
+            // query of this block stopped, or else the latest checkpoint in the cache.
+            int position = 0;
             TransferInput<V, S> store = blockTransferInput;
-            TransferResult<V, S> transferResult;
-            for (Node n : rb.getNodes()) {
+            if (replayBlockInput == blockTransferInput
+                && replayPosition <= target
+                && replayInput != null) {
+              position = replayPosition;
+              store = replayInput;
+            }
+            int interval = getCheckpointInterval(nodes.size());
+            if (cache != null) {
+              for (int i = target - 1; i >= position; i = i / interval * interval - 1) {
+                TransferResult<V, S> checkpoint = cache.get(nodes.get(i));
+                if (checkpoint != null) {
+                  position = i + 1;
+                  store = new TransferInput<>(nodes.get(i), this, checkpoint);
+                  break;
+                }
+              }
+            }
+            // Apply transfer function to contents until we found the node we are looking for.
+            for (; ; position++) {
+              Node n = nodes.get(position);
               setCurrentNode(n);
-              if (n == node && preOrPost == Analysis.BeforeOrAfter.BEFORE) {
-                return store.getRegularStore();
+              if (position == target) {
+                replayBlockInput = blockTransferInput;
+                replayPosition = position;
+                replayInput = store;
+                if (preOrPost == Analysis.BeforeOrAfter.BEFORE) {
+                  return store.getRegularStore();
+                }
               }
-              if (cache != null && cache.containsKey(n)) {
-                transferResult = cache.get(n);
-              } else {
+              TransferResult<V, S> transferResult = cache == null ? null : cache.get(n);
+              if (transferResult == null) {
                 // Copy the store to avoid changing other blocks' transfer inputs in {@link #inputs}
                 transferResult = callTransferFunction(n, store.copy());
-                if (cache != null) {
+                if (cache != null && (position + 1) % interval == 0) {
                   cache.put(n, transferResult);
                 }
               }
-              if (n == node) {
+              if (position == target) {
                 return transferResult.getRegularStore();
               }
               store = new TransferInput<>(n, this, transferResult);
             }
-            throw new BugInCF("node %s is not in node.getBlock()=%s", node, block);
           }
         case EXCEPTION_BLOCK:
           {
@@ -319,8 +359,58 @@ public class ForwardAnalysisImpl<
     }
   }
 
+  /**
+   * Returns the number of nodes between the checkpoints that {@link #runAnalysisFor} keeps in a
+   * block's cache. A query replays at most this many transfer steps once the checkpoints exist.
+   * The interval is 8, or more for a block so long that it would otherwise keep more than {@link
+   * #getCheckpointBudget} transfer results.
+   *
+   * @param blockSize the number of nodes in the block
+   * @return the number of nodes between checkpoints
+   */
+  protected int getCheckpointInterval(int blockSize) {
+    int budget = getCheckpointBudget();
+    return Math.max(8, (blockSize + budget - 1) / budget);
+  }
+
+  /**
+   * Returns the largest number of transfer results that {@link #runAnalysisFor} keeps in a block's
+   * cache. The caller bounds the number of blocks it caches, so this bounds the memory that
+   * checkpoints take.
+   *
+   * @return the most checkpoints kept for one block
+   */
+  protected int getCheckpointBudget() {
+    return 64;
+  }
+
+  /**
+   * Returns the position of a node in the contents of its block.
+   *
+   * @param nodes the contents of a block
+   * @param node a node
+   * @return the index of {@code node} in {@code nodes}, or -1 if it is absent
+   */
+  private static int positionInBlock(List<Node> nodes, Node node) {
+    if (!nodes.isEmpty() && node.getGraphIndex() >= 0) {
+      // The nodes of a block are numbered consecutively.
+      int position = node.getGraphIndex() - nodes.get(0).getGraphIndex();
+      if (position >= 0 && position < nodes.size() && nodes.get(position) == node) {
+        return position;
+      }
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      if (nodes.get(i) == node) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   protected void initFields(ControlFlowGraph cfg) {
+    replayBlockInput = null;
+    replayInput = null;
     thenStores.clear();
     elseStores.clear();
     if (blockCount != null) {
@@ -19,9 +19,12 @@ import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.atomic.AtomicLong;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
+import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.analysis.AnalysisResult;
 import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.block.BlockImpl;
 import org.checkerframework.dataflow.cfg.block.ConditionalBlock;
 import org.checkerframework.dataflow.cfg.block.ExceptionBlock;
 import org.checkerframework.dataflow.cfg.block.RegularBlock;
@@ -98,6 +101,12 @@ public class ControlFlowGraph implements UniqueId {
    */
   protected final List<ReturnNode> returnNodes;
 
+  /** The blocks reachable from the entry block, by index; null until they are numbered. */
+  private @MonotonicNonNull List<Block> indexedBlocks;
+
+  /** The nodes of the blocks in {@link #indexedBlocks}, by index; null until they are numbered. */
+  private @MonotonicNonNull List<Node> indexedNodes;
+
   /**
    * Class declarations that have been encountered when building the control-flow graph for a
    * method.
@@ -258,6 +267,64 @@ public class ControlFlowGraph implements UniqueId {
     return dfsOrderResult;
   }
 
+  /**
+   * Returns the blocks reachable from the entry block in depth-first order, each at the position
+   * given by its {@link Block#getIndex() index}. The blocks are numbered when the CFG is built, or
+   * on first use for graphs built otherwise.
+   *
+   * @return the reachable blocks, by index
+   */
+  public List<Block> getIndexedBlocks() {
+    if (indexedBlocks == null) {
+      numberBlocks();
+    }
+    return indexedBlocks;
+  }
+
+  /**
+   * Returns the nodes of the blocks reachable from the entry block, each at the position given by
+   * its {@link Node#getGraphIndex() index}. Nodes are listed block by block, in the order of {@link
+   * #getIndexedBlocks()}.
+   *
+   * @return the nodes of the reachable blocks, by index
+   */
+  public List<Node> getIndexedNodes() {
+    if (indexedNodes == null) {
+      numberBlocks();
+    }
+    return indexedNodes;
+  }
+
+  /**
+   * Assign each block reachable from the entry block a dense index, in the order of {@link
+   * #getDepthFirstOrderedBlocks()}. A block that appears more than once in that sequence is placed
+   * at its last occurrence. The nodes of those blocks are then numbered in block order.
+   */
+  @EnsuresNonNull({"indexedBlocks", "indexedNodes"})
+  public void numberBlocks() {
+    List<Block> order = getDepthFirstOrderedBlocks();
+    Set<Block> seen = new HashSet<>();
+    List<Block> result = new ArrayList<>();
+    for (int i = order.size() - 1; i >= 0; i--) {
+      Block b = order.get(i);
+      if (seen.add(b)) {
+        result.add(b);
+      }
+    }
+    Collections.reverse(result);
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < result.size(); i++) {
+      Block b = result.get(i);
+      ((BlockImpl) b).setIndex(this, i);
+      for (Node n : b.getNodes()) {
+        n.setGraphIndex(nodes.size());
+        nodes.add(n);
+      }
+    }
+    indexedBlocks = Collections.unmodifiableList(result);
+    indexedNodes = Collections.unmodifiableList(nodes);
+  }
+
   /**
    * Returns an unmodifiable view of the tree-lookup map. Ignores convertedTreeLookup, though {@link
    * #getNodesCorrespondingToTree} uses that field.
@@ -3,6 +3,7 @@ package org.checkerframework.dataflow.cfg.block;
 import java.util.List;
 import java.util.Set;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.dataflow.cfg.node.Node;
 import org.checkerframework.dataflow.qual.Pure;
 import org.plumelib.util.UniqueId;
@@ -26,6 +27,27 @@ public interface Block extends UniqueId {
     EXCEPTION_BLOCK,
   }
 
+  /**
+   * Returns the index of this basic block in its control flow graph: its position in {@link
+   * org.checkerframework.dataflow.cfg.ControlFlowGraph#getIndexedBlocks()}. Indices are dense, from
+   * 0 to one less than the number of blocks reachable from the entry block, and follow depth-first
+   * order.
+   *
+   * @return the index of this basic block, or -1 if it is not reachable from the entry block
+   */
+  @Pure
+  int getIndex();
+
+  /**
+   * Returns the control flow graph that numbered this basic block.
+   *
+   * @return the control flow graph whose {@link
+   *     org.checkerframework.dataflow.cfg.ControlFlowGraph#getIndexedBlocks()} contains this block,
+   *     or {@code null} if it is not reachable from the entry block
+   */
+  @Pure
+  @Nullable ControlFlowGraph getGraph();
+
   /**
    * Returns the type of this basic block.
    *
@@ -4,6 +4,8 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 
 /** Base class of the {@link Block} implementation hierarchy. */
 public abstract class BlockImpl implements Block {
@@ -28,6 +30,34 @@ public abstract class BlockImpl implements Block {
     return uid;
   }
 
+  /** The index of this block in its control flow graph, or -1 if it has not been numbered. */
+  protected int index = -1;
+
+  /** The control flow graph that numbered this block, or null if it has not been numbered. */
+  protected @Nullable ControlFlowGraph graph;
+
+  @Override
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public @Nullable ControlFlowGraph getGraph() {
+    return graph;
+  }
+
+  /**
+   * Set the index of this block in its control flow graph. Only {@link
+   * ControlFlowGraph#numberBlocks()} should call this.
+   *
+   * @param graph the control flow graph that numbers this block
+   * @param index the index of this block
+   */
+  public void setIndex(ControlFlowGraph graph, int index) {
+    this.graph = graph;
+    this.index = index;
+  }
+
   /**
    * Create a new BlockImpl.
    *
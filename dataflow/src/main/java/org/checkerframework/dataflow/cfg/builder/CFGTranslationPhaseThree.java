@@ -143,6 +143,9 @@ public class CFGTranslationPhaseThree {
         }
       }
     }
+
+    // the graph is final: give each remaining block its dense index
+    cfg.numberBlocks();
     return cfg;
   }
 
@@ -42,6 +42,13 @@ public abstract class Node implements UniqueId {
    */
   protected @Nullable Block block;
 
+  /**
+   * The index of this node in its control flow graph, or -1 if its block has not been numbered.
+   *
+   * @see #getGraphIndex()
+   */
+  protected int graphIndex = -1;
+
   /** Is this node an l-value? */
   protected boolean lvalue = false;
 
@@ -97,6 +104,28 @@ public abstract class Node implements UniqueId {
     block = b;
   }
 
+  /**
+   * Returns the index of this node in the control flow graph of its block: its position in {@link
+   * org.checkerframework.dataflow.cfg.ControlFlowGraph#getIndexedNodes()}. Indices are dense, from
+   * 0 to one less than the number of nodes in blocks reachable from the entry block.
+   *
+   * @return the index of this node, or -1 if its block is not reachable from the entry block
+   */
+  @Pure
+  public int getGraphIndex() {
+    return graphIndex;
+  }
+
+  /**
+   * Set the index of this node in its control flow graph. Only {@link
+   * org.checkerframework.dataflow.cfg.ControlFlowGraph#numberBlocks()} should call this.
+   *
+   * @param graphIndex the index of this node
+   */
+  public void setGraphIndex(int graphIndex) {
+    this.graphIndex = graphIndex;
+  }
+
   /**
    * Returns the {@link Tree} in the abstract syntax tree, or {@code null} if no corresponding tree
    * exists. For instance, this is the case for an {@link ImplicitThisNode}.
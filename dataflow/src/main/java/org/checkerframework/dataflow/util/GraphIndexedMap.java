@@ -0,0 +1,432 @@
+package org.checkerframework.dataflow.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.node.Node;
+
+/**
+ * A map from {@link Block}s or {@link Node}s to values that stores the values of each control flow
+ * graph in an array, at the keys' {@link Block#getIndex() indices}. Keys are compared by reference
+ * equality, as in an {@link IdentityHashMap}. Keys that have not been numbered (such as nodes of
+ * formal parameters and blocks that are unreachable from the entry block) are kept in an {@link
+ * IdentityHashMap} instead.
+ *
+ * <p>Lookups of keys from the graph used most recently cost an array access. The map does not
+ * permit null values.
+ *
+ * @param <K> the type of keys: {@link Block} or {@link Node}
+ * @param <V> the type of values
+ */
+public abstract class GraphIndexedMap<K, V> extends AbstractMap<K, V> {
+
+  /** The values of the keys of each graph, by index. An absent key has a null entry. */
+  private final IdentityHashMap<ControlFlowGraph, @Nullable Object[]> segments =
+      new IdentityHashMap<>();
+
+  /** The values of keys that have not been numbered. */
+  private final IdentityHashMap<K, V> unindexed = new IdentityHashMap<>();
+
+  /** The graph whose values were used most recently, or null. */
+  private @Nullable ControlFlowGraph lastGraph;
+
+  /** The values of {@link #lastGraph}, or null. */
+  private @Nullable Object @Nullable [] lastValues;
+
+  /** The number of keys in the segments. */
+  private int indexedSize;
+
+  /** Create an empty map. */
+  protected GraphIndexedMap() {}
+
+  /**
+   * Create an empty map from blocks.
+   *
+   * @param <V> the type of values
+   * @return an empty map from blocks to values
+   */
+  public static <V> GraphIndexedMap<Block, V> forBlocks() {
+    return new BlockMap<>();
+  }
+
+  /**
+   * Create an empty map from nodes.
+   *
+   * @param <V> the type of values
+   * @return an empty map from nodes to values
+   */
+  public static <V> GraphIndexedMap<Node, V> forNodes() {
+    return new NodeMap<>();
+  }
+
+  /**
+   * Create a map with the same mappings as this one.
+   *
+   * @return a copy of this map
+   */
+  public abstract GraphIndexedMap<K, V> copy();
+
+  /**
+   * Returns the graph that numbered a key.
+   *
+   * @param key a key of this map's type
+   * @return the graph whose indexed keys contain {@code key}, or null if it has not been numbered
+   */
+  protected abstract @Nullable ControlFlowGraph graphOf(K key);
+
+  /**
+   * Returns the index of a key in its graph.
+   *
+   * @param key a key of this map's type that has been numbered
+   * @return the index of {@code key}
+   */
+  protected abstract int indexOf(K key);
+
+  /**
+   * Returns the keys that a graph has numbered.
+   *
+   * @param graph a control flow graph
+   * @return the keys of {@code graph}, by index
+   */
+  protected abstract List<? extends K> keysOf(ControlFlowGraph graph);
+
+  /**
+   * Converts an object to this map's key type.
+   *
+   * @param o an object
+   * @return {@code o} as a key, or null if it is not of this map's key type
+   */
+  protected abstract @Nullable K asKey(@Nullable Object o);
+
+  /**
+   * Returns the values of a graph.
+   *
+   * @param graph a control flow graph
+   * @param create whether to allocate the values if the graph has none yet
+   * @return the values of the keys of {@code graph}, or null if there are none and {@code create}
+   *     is false
+   */
+  private @Nullable Object @Nullable [] valuesOf(ControlFlowGraph graph, boolean create) {
+    if (graph == lastGraph) {
+      return lastValues;
+    }
+    @Nullable Object[] values = segments.get(graph);
+    if (values == null) {
+      if (!create) {
+        return null;
+      }
+      values = new Object[keysOf(graph).size()];
+      segments.put(graph, values);
+    }
+    lastGraph = graph;
+    lastValues = values;
+    return values;
+  }
+
+  @Override
+  public int size() {
+    return indexedSize + unindexed.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object o) {
+    return get(o) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V get(@Nullable Object o) {
+    K key = asKey(o);
+    if (key == null) {
+      return null;
+    }
+    ControlFlowGraph graph = graphOf(key);
+    if (graph == null) {
+      return unindexed.get(key);
+    }
+    @Nullable Object[] values = valuesOf(graph, false);
+    return values == null ? null : (V) values[indexOf(key)];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V put(K key, V value) {
+    Objects.requireNonNull(value, "GraphIndexedMap does not permit null values");
+    ControlFlowGraph graph = graphOf(key);
+    if (graph == null) {
+      return unindexed.put(key, value);
+    }
+    @Nullable Object[] values = valuesOf(graph, true);
+    int index = indexOf(key);
+    V old = (V) values[index];
+    values[index] = value;
+    if (old == null) {
+      indexedSize++;
+    }
+    return old;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V remove(@Nullable Object o) {
+    K key = asKey(o);
+    if (key == null) {
+      return null;
+    }
+    ControlFlowGraph graph = graphOf(key);
+    if (graph == null) {
+      return unindexed.remove(key);
+    }
+    @Nullable Object[] values = valuesOf(graph, false);
+    if (values == null) {
+      return null;
+    }
+    int index = indexOf(key);
+    V old = (V) values[index];
+    values[index] = null;
+    if (old != null) {
+      indexedSize--;
+    }
+    return old;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>If {@code m} is a {@link GraphIndexedMap}, its values are copied graph by graph.
+   */
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    if (!(m instanceof GraphIndexedMap)) {
+      super.putAll(m);
+      return;
+    }
+    GraphIndexedMap<? extends K, ? extends V> other = (GraphIndexedMap<? extends K, ? extends V>) m;
+    for (Map.Entry<ControlFlowGraph, @Nullable Object[]> entry : other.segments.entrySet()) {
+      @Nullable Object[] from = entry.getValue();
+      @Nullable Object[] to = segments.get(entry.getKey());
+      if (to == null) {
+        segments.put(entry.getKey(), from.clone());
+        for (Object value : from) {
+          if (value != null) {
+            indexedSize++;
+          }
+        }
+        continue;
+      }
+      for (int i = 0; i < from.length; i++) {
+        if (from[i] != null) {
+          if (to[i] == null) {
+            indexedSize++;
+          }
+          to[i] = from[i];
+        }
+      }
+    }
+    unindexed.putAll(other.unindexed);
+  }
+
+  @Override
+  public void clear() {
+    segments.clear();
+    unindexed.clear();
+    lastGraph = null;
+    lastValues = null;
+    indexedSize = 0;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public int size() {
+        return GraphIndexedMap.this.size();
+      }
+
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+    };
+  }
+
+  /** Iterates over the entries of the segments, then over the unindexed entries. */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    /** The remaining segments. */
+    private final Iterator<Map.Entry<ControlFlowGraph, @Nullable Object[]>> graphs =
+        segments.entrySet().iterator();
+
+    /** The unindexed entries, once the segments are exhausted. */
+    private @Nullable Iterator<Map.Entry<K, V>> rest;
+
+    /** The keys of the current segment, or null. */
+    private @Nullable List<? extends K> keys;
+
+    /** The values of the current segment, or null. */
+    private @Nullable Object @Nullable [] values;
+
+    /** The index of the next entry in the current segment. */
+    private int next;
+
+    /** The key of the entry returned last, for {@link #remove()}. */
+    private @Nullable K last;
+
+    /** Advance {@link #next} to the next non-null value, moving to later segments as needed. */
+    private void advance() {
+      while (rest == null) {
+        if (values != null) {
+          while (next < values.length && values[next] == null) {
+            next++;
+          }
+          if (next < values.length) {
+            return;
+          }
+        }
+        if (graphs.hasNext()) {
+          Map.Entry<ControlFlowGraph, @Nullable Object[]> segment = graphs.next();
+          keys = keysOf(segment.getKey());
+          values = segment.getValue();
+          next = 0;
+        } else {
+          rest = unindexed.entrySet().iterator();
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      advance();
+      return rest == null || rest.hasNext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked") // only values of type V are stored
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (rest != null) {
+        // Not the identity map's own entry, which would compare values by reference
+        Map.Entry<K, V> entry = rest.next();
+        last = entry.getKey();
+        return new Entry(last, entry.getValue());
+      }
+      last = keys.get(next);
+      return new Entry(last, (V) values[next++]);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      if (rest != null) {
+        rest.remove();
+      } else {
+        GraphIndexedMap.this.remove(last);
+      }
+      last = null;
+    }
+  }
+
+  /** An entry of the map; setting its value updates the map. */
+  private class Entry extends AbstractMap.SimpleEntry<K, V> {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create an entry.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+
+  /** A map from blocks. */
+  private static class BlockMap<V> extends GraphIndexedMap<Block, V> {
+
+    @Override
+    public GraphIndexedMap<Block, V> copy() {
+      GraphIndexedMap<Block, V> copy = new BlockMap<>();
+      copy.putAll(this);
+      return copy;
+    }
+
+    @Override
+    protected @Nullable ControlFlowGraph graphOf(Block key) {
+      return key.getGraph();
+    }
+
+    @Override
+    protected int indexOf(Block key) {
+      return key.getIndex();
+    }
+
+    @Override
+    protected List<Block> keysOf(ControlFlowGraph graph) {
+      return graph.getIndexedBlocks();
+    }
+
+    @Override
+    protected @Nullable Block asKey(@Nullable Object o) {
+      return o instanceof Block ? (Block) o : null;
+    }
+  }
+
+  /** A map from nodes. */
+  private static class NodeMap<V> extends GraphIndexedMap<Node, V> {
+
+    @Override
+    public GraphIndexedMap<Node, V> copy() {
+      GraphIndexedMap<Node, V> copy = new NodeMap<>();
+      copy.putAll(this);
+      return copy;
+    }
+
+    @Override
+    protected @Nullable ControlFlowGraph graphOf(Node key) {
+      Block block = key.getBlock();
+      return block == null || key.getGraphIndex() < 0 ? null : block.getGraph();
+    }
+
+    @Override
+    protected int indexOf(Node key) {
+      return key.getGraphIndex();
+    }
+
+    @Override
+    protected List<Node> keysOf(ControlFlowGraph graph) {
+      return graph.getIndexedNodes();
+    }
+
+    @Override
+    protected @Nullable Node asKey(@Nullable Object o) {
+      return o instanceof Node ? (Node) o : null;
+    }
+  }
+}
@@ -0,0 +1,869 @@
+package org.checkerframework.dataflow.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A hash map whose {@link #copy()} takes constant time. The entries are kept in a hash array mapped
+ * trie whose nodes are shared between a map and its copies; a map updates a shared node by copying
+ * the path to it, and updates in place the nodes that only it can reach.
+ *
+ * <p>Because copies share structure, {@link #intersect} and {@link #containsAllEntries} skip the
+ * subtrees two maps have in common, and two maps with the same trie are equal at once.
+ *
+ * <p>The map does not permit null keys or values; a caller with no value for a key, such as a
+ * dataflow store with no information about an expression, leaves the key out instead. Its
+ * iterators are not fail-fast.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+  /** The number of hash bits consumed by each level of the trie. */
+  private static final int BITS = 5;
+
+  /** The root of the empty trie, which no map may update in place. */
+  private static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+  /** The root of the trie. */
+  private TrieNode root;
+
+  /** The number of entries, or -1 if it has not been counted. */
+  private int size;
+
+  /**
+   * The token of the nodes this map may update in place. It is replaced whenever the map shares its
+   * nodes with another.
+   */
+  private Object owner = new Object();
+
+  /** Create an empty map. */
+  public PersistentHashMap() {
+    this(EMPTY, 0);
+  }
+
+  /**
+   * Create a map with the same entries as a given map.
+   *
+   * @param m the map whose entries to copy
+   */
+  public PersistentHashMap(Map<? extends K, ? extends V> m) {
+    this();
+    putAll(m);
+  }
+
+  /**
+   * Create a map with a given trie.
+   *
+   * @param root the root of the trie
+   * @param size the number of entries, or -1 if it is not known
+   */
+  private PersistentHashMap(TrieNode root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Create a map with the same entries as this one, in constant time.
+   *
+   * @return a copy of this map
+   */
+  public PersistentHashMap<K, V> copy() {
+    owner = new Object();
+    return new PersistentHashMap<>(root, size);
+  }
+
+  /**
+   * Create a map with the same entries as a given map, in constant time if it is a {@code
+   * PersistentHashMap}.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @param m the map whose entries to copy
+   * @return a copy of {@code m}
+   */
+  public static <K, V> PersistentHashMap<K, V> copyOf(Map<K, V> m) {
+    if (m instanceof PersistentHashMap) {
+      return ((PersistentHashMap<K, V>) m).copy();
+    }
+    return new PersistentHashMap<>(m);
+  }
+
+  /**
+   * Create a map of the keys this map has in common with another, each mapped to the combination
+   * of its two values. Subtrees the two maps share are kept as they are, without calling {@code
+   * merge}, so {@code merge} must map two equal values to an equal value.
+   *
+   * @param other another map
+   * @param merge the combination of this map's and {@code other}'s value for a key, or null to
+   *     leave the key out
+   * @return the combined entries of the keys in both maps
+   */
+  public PersistentHashMap<K, V> intersect(
+      PersistentHashMap<K, V> other, BiFunction<V, V, @Nullable V> merge) {
+    owner = new Object();
+    other.owner = new Object();
+    PersistentHashMap<K, V> result = new PersistentHashMap<>(EMPTY, -1);
+    TrieNode node = intersect(root, other.root, 0, merge, result.owner);
+    result.root = node == null ? EMPTY : node;
+    return result;
+  }
+
+  /**
+   * Determine whether this map contains every entry of another, comparing values with {@code
+   * equals}. Subtrees the two maps share are not examined.
+   *
+   * @param other another map
+   * @return true if each key of {@code other} is mapped to an equal value in this map
+   */
+  public boolean containsAllEntries(PersistentHashMap<K, V> other) {
+    return subsumes(root, other.root, 0);
+  }
+
+  @Override
+  public int size() {
+    if (size < 0) {
+      size = root.count();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0 || (size < 0 && size() == 0);
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V get(@Nullable Object key) {
+    if (key == null) {
+      return null;
+    }
+    return (V) root.find(0, hash(key), key);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V put(K key, V value) {
+    Objects.requireNonNull(key, "PersistentHashMap does not permit null keys");
+    Objects.requireNonNull(value, "PersistentHashMap does not permit null values");
+    Object[] old = new Object[1];
+    root = root.assoc(owner, 0, hash(key), key, value, old);
+    if (old[0] == null && size >= 0) {
+      size++;
+    }
+    return (V) old[0];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  public @Nullable V remove(@Nullable Object key) {
+    if (key == null) {
+      return null;
+    }
+    Object[] old = new Object[1];
+    TrieNode node = root.without(owner, 0, hash(key), key, old);
+    root = node == null ? EMPTY : node;
+    if (old[0] != null && size >= 0) {
+      size--;
+    }
+    return (V) old[0];
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>If this map is empty and {@code m} is a {@code PersistentHashMap}, this takes constant time.
+   */
+  @Override
+  @SuppressWarnings("unchecked") // the entries of m have types K and V
+  public void putAll(Map<? extends K, ? extends V> m) {
+    if (isEmpty() && m instanceof PersistentHashMap) {
+      PersistentHashMap<K, V> other = (PersistentHashMap<K, V>) m;
+      other.owner = new Object();
+      owner = new Object();
+      root = other.root;
+      size = other.size;
+      return;
+    }
+    super.putAll(m);
+  }
+
+  @Override
+  public void clear() {
+    root = EMPTY;
+    size = 0;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (o instanceof PersistentHashMap && ((PersistentHashMap<?, ?>) o).root == root) {
+      return true;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public int size() {
+        return PersistentHashMap.this.size();
+      }
+
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator();
+      }
+    };
+  }
+
+  /**
+   * Returns the hash of a key, with its high bits folded into its low bits.
+   *
+   * @param key a key
+   * @return the hash of {@code key}
+   */
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the bit for a hash at a level of the trie.
+   *
+   * @param hash a hash
+   * @param shift the number of hash bits consumed by the levels above
+   * @return the bit of {@code hash}'s slot in a {@link BitmapNode} at that level
+   */
+  private static int bitpos(int hash, int shift) {
+    return 1 << ((hash >>> shift) & 0x1f);
+  }
+
+  /**
+   * Create a node for two entries whose keys differ.
+   *
+   * @param owner the token of the map creating the node
+   * @param shift the number of hash bits consumed by the levels above
+   * @param key1 the first key
+   * @param val1 the first value
+   * @param hash2 the hash of the second key
+   * @param key2 the second key
+   * @param val2 the second value
+   * @return a node with both entries
+   */
+  private static TrieNode createNode(
+      Object owner, int shift, Object key1, Object val1, int hash2, Object key2, Object val2) {
+    int hash1 = hash(key1);
+    if (hash1 == hash2) {
+      return new CollisionNode(owner, hash1, new Object[] {key1, val1, key2, val2});
+    }
+    Object[] ignored = new Object[1];
+    return new BitmapNode(owner, 0, new Object[0])
+        .assoc(owner, shift, hash1, key1, val1, ignored)
+        .assoc(owner, shift, hash2, key2, val2, ignored);
+  }
+
+  /**
+   * Combine the entries of two subtrees at the same level whose keys they have in common.
+   *
+   * @param <V> the type of values
+   * @param a a subtree of this map
+   * @param b a subtree of the other map
+   * @param shift the number of hash bits consumed by the levels above
+   * @param merge the combination of two values, or null to leave the key out
+   * @param owner the token of the result map
+   * @return the combined subtree, or null if it is empty
+   */
+  @SuppressWarnings("unchecked") // only values of type V are stored
+  private static <V> @Nullable TrieNode intersect(
+      TrieNode a, TrieNode b, int shift, BiFunction<V, V, @Nullable V> merge, Object owner) {
+    if (a == b) {
+      return a;
+    }
+    if (!(a instanceof BitmapNode && b instanceof BitmapNode)) {
+      TrieNode result = EMPTY;
+      Object[] ignored = new Object[1];
+      for (Iterator<Object[]> i = new PairIterator(a); i.hasNext(); ) {
+        Object[] pair = i.next();
+        int hash = hash(pair[0]);
+        Object otherVal = b.find(shift, hash, pair[0]);
+        V merged = otherVal == null ? null : merge.apply((V) pair[1], (V) otherVal);
+        if (merged != null) {
+          result = result.assoc(owner, shift, hash, pair[0], merged, ignored);
+        }
+      }
+      return result == EMPTY ? null : result;
+    }
+    BitmapNode x = (BitmapNode) a;
+    BitmapNode y = (BitmapNode) b;
+    int common = x.bitmap & y.bitmap;
+    int bitmap = 0;
+    Object[] array = new Object[2 * Integer.bitCount(common)];
+    int j = 0;
+    for (int bits = common; bits != 0; bits &= bits - 1) {
+      int bit = Integer.lowestOneBit(bits);
+      int ix = 2 * x.index(bit);
+      int iy = 2 * y.index(bit);
+      Object kx = x.array[ix];
+      Object vx = x.array[ix + 1];
+      Object ky = y.array[iy];
+      Object vy = y.array[iy + 1];
+      Object key = null;
+      Object value = null;
+      if (kx != null && ky != null) {
+        if (kx.equals(ky)) {
+          key = kx;
+          value = merge.apply((V) vx, (V) vy);
+        }
+      } else if (kx != null) {
+        Object otherVal = ((TrieNode) vy).find(shift + BITS, hash(kx), kx);
+        if (otherVal != null) {
+          key = kx;
+          value = merge.apply((V) vx, (V) otherVal);
+        }
+      } else if (ky != null) {
+        Object thisVal = ((TrieNode) vx).find(shift + BITS, hash(ky), ky);
+        if (thisVal != null) {
+          key = ky;
+          value = merge.apply((V) thisVal, (V) vy);
+        }
+      } else {
+        value = intersect((TrieNode) vx, (TrieNode) vy, shift + BITS, merge, owner);
+      }
+      if (value != null) {
+        bitmap |= bit;
+        array[j++] = key;
+        array[j++] = value;
+      }
+    }
+    if (j == 0) {
+      return null;
+    }
+    if (j < array.length) {
+      Object[] trimmed = new Object[j];
+      System.arraycopy(array, 0, trimmed, 0, j);
+      array = trimmed;
+    }
+    return new BitmapNode(owner, bitmap, array);
+  }
+
+  /**
+   * Determine whether one subtree contains every entry of another at the same level.
+   *
+   * @param a a subtree of this map
+   * @param b a subtree of the other map
+   * @param shift the number of hash bits consumed by the levels above
+   * @return true if each key in {@code b} is mapped to an equal value in {@code a}
+   */
+  private static boolean subsumes(TrieNode a, TrieNode b, int shift) {
+    if (a == b) {
+      return true;
+    }
+    if (!(a instanceof BitmapNode && b instanceof BitmapNode)) {
+      return subsumesByLookup(a, b, shift);
+    }
+    BitmapNode x = (BitmapNode) a;
+    BitmapNode y = (BitmapNode) b;
+    if ((y.bitmap & ~x.bitmap) != 0) {
+      return false;
+    }
+    for (int bits = y.bitmap; bits != 0; bits &= bits - 1) {
+      int bit = Integer.lowestOneBit(bits);
+      int ix = 2 * x.index(bit);
+      int iy = 2 * y.index(bit);
+      Object kx = x.array[ix];
+      Object vx = x.array[ix + 1];
+      Object ky = y.array[iy];
+      Object vy = y.array[iy + 1];
+      boolean ok;
+      if (kx != null && ky != null) {
+        ok = kx.equals(ky) && vx.equals(vy);
+      } else if (ky != null) {
+        ok = vy.equals(((TrieNode) vx).find(shift + BITS, hash(ky), ky));
+      } else if (kx != null) {
+        ok = subsumesByLookup(singleton(kx, vx, shift + BITS), (TrieNode) vy, shift + BITS);
+      } else {
+        ok = subsumes((TrieNode) vx, (TrieNode) vy, shift + BITS);
+      }
+      if (!ok) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Create a node at a level of the trie with a single entry.
+   *
+   * @param key the key
+   * @param value the value
+   * @param shift the number of hash bits consumed by the levels above
+   * @return a node with the entry
+   */
+  private static TrieNode singleton(Object key, Object value, int shift) {
+    return EMPTY.assoc(new Object(), shift, hash(key), key, value, new Object[1]);
+  }
+
+  /**
+   * Determine whether one subtree contains every entry of another by looking each entry up.
+   *
+   * @param a a subtree of this map
+   * @param b a subtree of the other map
+   * @param shift the number of hash bits consumed by the levels above
+   * @return true if each key in {@code b} is mapped to an equal value in {@code a}
+   */
+  private static boolean subsumesByLookup(TrieNode a, TrieNode b, int shift) {
+    for (Iterator<Object[]> i = new PairIterator(b); i.hasNext(); ) {
+      Object[] pair = i.next();
+      if (!pair[1].equals(a.find(shift, hash(pair[0]), pair[0]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** A node of the trie. */
+  private abstract static class TrieNode {
+
+    /** The token of the map that may update this node in place, or null if none may. */
+    final @Nullable Object owner;
+
+    /**
+     * The entries of this node, as consecutive keys and values. A null key means that the value is
+     * a subtree.
+     */
+    Object[] array;
+
+    /**
+     * Create a node.
+     *
+     * @param owner the token of the map that may update this node in place
+     * @param array the entries of the node
+     */
+    TrieNode(@Nullable Object owner, Object[] array) {
+      this.owner = owner;
+      this.array = array;
+    }
+
+    /**
+     * Look up a key.
+     *
+     * @param shift the number of hash bits consumed by the levels above
+     * @param hash the hash of the key
+     * @param key the key
+     * @return the value of the key, or null if it is absent
+     */
+    abstract @Nullable Object find(int shift, int hash, Object key);
+
+    /**
+     * Add or replace an entry.
+     *
+     * @param owner the token of the map making the update
+     * @param shift the number of hash bits consumed by the levels above
+     * @param hash the hash of the key
+     * @param key the key
+     * @param value the value
+     * @param old receives the previous value of the key in its first element, if there was one
+     * @return the updated node, which is this node if it was updated in place or did not change
+     */
+    abstract TrieNode assoc(
+        Object owner, int shift, int hash, Object key, Object value, @Nullable Object[] old);
+
+    /**
+     * Remove an entry.
+     *
+     * @param owner the token of the map making the update
+     * @param shift the number of hash bits consumed by the levels above
+     * @param hash the hash of the key
+     * @param key the key
+     * @param old receives the previous value of the key in its first element, if there was one
+     * @return the updated node, or null if it is empty
+     */
+    abstract @Nullable TrieNode without(
+        Object owner, int shift, int hash, Object key, @Nullable Object[] old);
+
+    /**
+     * Count the entries of this subtree.
+     *
+     * @return the number of entries
+     */
+    int count() {
+      int count = 0;
+      for (int i = 0; i < array.length; i += 2) {
+        count += array[i] == null ? ((TrieNode) array[i + 1]).count() : 1;
+      }
+      return count;
+    }
+
+    /**
+     * Returns this node with one element of its array replaced, updating it in place if the map
+     * owns it.
+     *
+     * @param owner the token of the map making the update
+     * @param i the index in the array
+     * @param element the new element
+     * @return the updated node
+     */
+    TrieNode set(Object owner, int i, @Nullable Object element) {
+      if (this.owner == owner) {
+        array[i] = element;
+        return this;
+      }
+      Object[] newArray = array.clone();
+      newArray[i] = element;
+      return withArray(owner, newArray);
+    }
+
+    /**
+     * Returns this node with a new array, updating it in place if the map owns it.
+     *
+     * @param owner the token of the map making the update
+     * @param newArray the new entries
+     * @return the updated node
+     */
+    abstract TrieNode withArray(Object owner, Object[] newArray);
+  }
+
+  /** A node that holds up to 32 entries or subtrees, selected by 5 bits of their hashes. */
+  private static final class BitmapNode extends TrieNode {
+
+    /** The slots in use. */
+    int bitmap;
+
+    /**
+     * Create a node.
+     *
+     * @param owner the token of the map that may update this node in place
+     * @param bitmap the slots in use
+     * @param array the entries of the used slots, in order
+     */
+    BitmapNode(@Nullable Object owner, int bitmap, Object[] array) {
+      super(owner, array);
+      this.bitmap = bitmap;
+    }
+
+    /**
+     * Returns the position of a slot among the used slots.
+     *
+     * @param bit the bit of the slot
+     * @return the number of used slots before it
+     */
+    int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    @Nullable Object find(int shift, int hash, Object key) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      int i = 2 * index(bit);
+      Object k = array[i];
+      if (k == null) {
+        return ((TrieNode) array[i + 1]).find(shift + BITS, hash, key);
+      }
+      return key.equals(k) ? array[i + 1] : null;
+    }
+
+    @Override
+    TrieNode assoc(
+        Object owner, int shift, int hash, Object key, Object value, @Nullable Object[] old) {
+      int bit = bitpos(hash, shift);
+      int i = 2 * index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, i);
+        newArray[i] = key;
+        newArray[i + 1] = value;
+        System.arraycopy(array, i, newArray, i + 2, array.length - i);
+        BitmapNode node = (BitmapNode) withArray(owner, newArray);
+        node.bitmap |= bit;
+        return node;
+      }
+      Object k = array[i];
+      Object v = array[i + 1];
+      if (k == null) {
+        TrieNode child = ((TrieNode) v).assoc(owner, shift + BITS, hash, key, value, old);
+        return child == v ? this : set(owner, i + 1, child);
+      }
+      if (key.equals(k)) {
+        old[0] = v;
+        return v == value ? this : set(owner, i + 1, value);
+      }
+      TrieNode child = createNode(owner, shift + BITS, k, v, hash, key, value);
+      return set(owner, i, null).set(owner, i + 1, child);
+    }
+
+    @Override
+    @Nullable TrieNode without(
+        Object owner, int shift, int hash, Object key, @Nullable Object[] old) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int i = 2 * index(bit);
+      Object k = array[i];
+      Object v = array[i + 1];
+      if (k == null) {
+        TrieNode child = ((TrieNode) v).without(owner, shift + BITS, hash, key, old);
+        if (child == v) {
+          return this;
+        }
+        if (child != null) {
+          return set(owner, i + 1, child);
+        }
+      } else if (key.equals(k)) {
+        old[0] = v;
+      } else {
+        return this;
+      }
+      if (bitmap == bit) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, i);
+      System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+      BitmapNode node = (BitmapNode) withArray(owner, newArray);
+      node.bitmap ^= bit;
+      return node;
+    }
+
+    @Override
+    TrieNode withArray(Object owner, Object[] newArray) {
+      if (this.owner == owner) {
+        array = newArray;
+        return this;
+      }
+      return new BitmapNode(owner, bitmap, newArray);
+    }
+  }
+
+  /** A node that holds entries whose keys have the same hash. */
+  private static final class CollisionNode extends TrieNode {
+
+    /** The hash of every key in this node. */
+    final int hash;
+
+    /**
+     * Create a node.
+     *
+     * @param owner the token of the map that may update this node in place
+     * @param hash the hash of the keys
+     * @param array the entries
+     */
+    CollisionNode(@Nullable Object owner, int hash, Object[] array) {
+      super(owner, array);
+      this.hash = hash;
+    }
+
+    /**
+     * Returns the position of a key in the array.
+     *
+     * @param key a key
+     * @return the index of {@code key} in the array, or -1 if it is absent
+     */
+    int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    @Nullable Object find(int shift, int hash, Object key) {
+      int i = hash == this.hash ? indexOf(key) : -1;
+      return i < 0 ? null : array[i + 1];
+    }
+
+    @Override
+    TrieNode assoc(
+        Object owner, int shift, int hash, Object key, Object value, @Nullable Object[] old) {
+      if (hash != this.hash) {
+        return new BitmapNode(owner, bitpos(this.hash, shift), new Object[] {null, this})
+            .assoc(owner, shift, hash, key, value, old);
+      }
+      int i = indexOf(key);
+      if (i >= 0) {
+        old[0] = array[i + 1];
+        return array[i + 1] == value ? this : set(owner, i + 1, value);
+      }
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      return withArray(owner, newArray);
+    }
+
+    @Override
+    @Nullable TrieNode without(
+        Object owner, int shift, int hash, Object key, @Nullable Object[] old) {
+      int i = hash == this.hash ? indexOf(key) : -1;
+      if (i < 0) {
+        return this;
+      }
+      old[0] = array[i + 1];
+      if (array.length == 2) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, i);
+      System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+      return withArray(owner, newArray);
+    }
+
+    @Override
+    TrieNode withArray(Object owner, Object[] newArray) {
+      if (this.owner == owner) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(owner, hash, newArray);
+    }
+  }
+
+  /** Iterates over the entries of a subtree, as arrays holding a key and its value. */
+  private static class PairIterator implements Iterator<Object[]> {
+
+    /** The arrays of the nodes being visited, innermost first. */
+    private final ArrayDeque<Object[]> arrays = new ArrayDeque<>();
+
+    /** The position of the next pair in each array of {@link #arrays}. */
+    private final ArrayDeque<Integer> positions = new ArrayDeque<>();
+
+    /** The next pair, or null if there is none. */
+    private @Nullable Object[] next;
+
+    /**
+     * Create an iterator.
+     *
+     * @param node the subtree to iterate over
+     */
+    PairIterator(TrieNode node) {
+      arrays.push(node.array);
+      positions.push(0);
+      advance();
+    }
+
+    /** Find the next pair. */
+    private void advance() {
+      next = null;
+      while (!arrays.isEmpty()) {
+        Object[] array = arrays.peek();
+        int i = positions.pop();
+        if (i >= array.length) {
+          arrays.pop();
+          continue;
+        }
+        positions.push(i + 2);
+        if (array[i] == null) {
+          arrays.push(((TrieNode) array[i + 1]).array);
+          positions.push(0);
+        } else {
+          next = new Object[] {array[i], array[i + 1]};
+          return;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Object[] next() {
+      Object[] result = next;
+      if (result == null) {
+        throw new NoSuchElementException();
+      }
+      advance();
+      return result;
+    }
+  }
+
+  /** Iterates over the entries of this map. */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    /** The pairs of the trie when iteration began. */
+    private final PairIterator pairs = new PairIterator(root);
+
+    /** The key of the entry returned last, for {@link #remove()}. */
+    private @Nullable K last;
+
+    /** Whether the map has stopped updating the nodes being visited in place. */
+    private boolean detached = false;
+
+    @Override
+    public boolean hasNext() {
+      return pairs.hasNext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked") // only keys of type K and values of type V are stored
+    public Map.Entry<K, V> next() {
+      Object[] pair = pairs.next();
+      last = (K) pair[0];
+      return new Entry(last, (V) pair[1]);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      if (!detached) {
+        // Removing a key may shrink the arrays being visited, so copy them instead.
+        owner = new Object();
+        detached = true;
+      }
+      PersistentHashMap.this.remove(last);
+      last = null;
+    }
+  }
+
+  /** An entry of this map; setting its value updates the map. */
+  private class Entry extends AbstractMap.SimpleEntry<K, V> {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create an entry.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+}
@@ -0,0 +1,328 @@
+package org.checkerframework.dataflow.analysis;
+
+import com.sun.source.tree.Tree;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.lang.model.type.TypeMirror;
+import org.checkerframework.dataflow.cfg.UnderlyingAST;
+import org.checkerframework.dataflow.cfg.block.RegularBlockImpl;
+import org.checkerframework.dataflow.cfg.node.AbstractNodeVisitor;
+import org.checkerframework.dataflow.cfg.node.LocalVariableNode;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.cfg.node.NodeVisitor;
+import org.checkerframework.dataflow.cfg.visualize.CFGVisualizer;
+import org.checkerframework.dataflow.expression.JavaExpression;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the stores {@link ForwardAnalysisImpl#runAnalysisFor} reconstructs from checkpoints with
+ * those of a replay of the whole block.
+ */
+public final class ForwardAnalysisImplTest {
+
+  /** A type for the test nodes; no method of it is called. */
+  private static final TypeMirror TYPE =
+      (TypeMirror)
+          Proxy.newProxyInstance(
+              TypeMirror.class.getClassLoader(),
+              new Class<?>[] {TypeMirror.class},
+              (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+              });
+
+  /** A node with no tree or operands, which the transfer function visits as any node. */
+  private static final class TestNode extends Node {
+
+    /** Create a node. */
+    TestNode() {
+      super(TYPE);
+    }
+
+    @Override
+    public Tree getTree() {
+      return null;
+    }
+
+    @Override
+    public <R, P> R accept(NodeVisitor<R, P> visitor, P p) {
+      return ((AbstractNodeVisitor<R, P>) visitor).visitNode(this, p);
+    }
+
+    @Override
+    public Collection<Node> getOperands() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+      return "n" + getUid();
+    }
+  }
+
+  /** An abstract value, of which the test makes no use. */
+  private static final class Value implements AbstractValue<Value> {
+    @Override
+    public Value leastUpperBound(Value other) {
+      return this;
+    }
+  }
+
+  /** A store that records the nodes the transfer function has passed, in order. */
+  private static final class Trace implements Store<Trace> {
+
+    /** The nodes passed. */
+    final List<Node> trace;
+
+    /**
+     * Create a store.
+     *
+     * @param trace the nodes passed
+     */
+    Trace(List<Node> trace) {
+      this.trace = trace;
+    }
+
+    @Override
+    public Trace copy() {
+      return new Trace(new ArrayList<>(trace));
+    }
+
+    @Override
+    public Trace leastUpperBound(Trace other) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Trace widenedUpperBound(Trace previous) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean canAlias(JavaExpression a, JavaExpression b) {
+      return false;
+    }
+
+    @Override
+    public String visualize(CFGVisualizer<?, Trace, ?> viz) {
+      return trace.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Trace && ((Trace) o).trace.equals(trace);
+    }
+
+    @Override
+    public int hashCode() {
+      return trace.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return trace.toString();
+    }
+  }
+
+  /** A transfer function that appends each node to the store, and counts its steps. */
+  private static final class Transfer
+      extends AbstractNodeVisitor<TransferResult<Value, Trace>, TransferInput<Value, Trace>>
+      implements ForwardTransferFunction<Value, Trace> {
+
+    /** The number of nodes visited. */
+    int steps = 0;
+
+    @Override
+    public Trace initialStore(UnderlyingAST underlyingAST, List<LocalVariableNode> parameters) {
+      return new Trace(new ArrayList<>());
+    }
+
+    @Override
+    public TransferResult<Value, Trace> visitNode(Node n, TransferInput<Value, Trace> input) {
+      steps++;
+      Trace store = input.getRegularStore();
+      store.trace.add(n);
+      return new RegularTransferResult<>(null, store);
+    }
+  }
+
+  /** An analysis whose checkpoint budget can be set. */
+  private static final class TestAnalysis extends ForwardAnalysisImpl<Value, Trace, Transfer> {
+
+    /** The most checkpoints kept for one block. */
+    private final int budget;
+
+    /**
+     * Create an analysis.
+     *
+     * @param budget the most checkpoints kept for one block
+     */
+    TestAnalysis(int budget) {
+      super(new Transfer());
+      this.budget = budget;
+    }
+
+    @Override
+    protected int getCheckpointBudget() {
+      return budget;
+    }
+
+    /**
+     * Returns the number of transfer steps taken so far.
+     *
+     * @return the number of steps
+     */
+    int steps() {
+      assert transferFunction != null;
+      return transferFunction.steps;
+    }
+  }
+
+  /** A block of test nodes and its transfer input. */
+  private static final class TestBlock {
+
+    /** The nodes of the block, in order. */
+    final List<Node> nodes = new ArrayList<>();
+
+    /** The store at the start of the block, with one node passed before it. */
+    final Trace input = new Trace(new ArrayList<>(Collections.singletonList(new TestNode())));
+
+    /**
+     * The transfer input of the block for each analysis, which like an analysis result passes the
+     * same input to each query.
+     */
+    final Map<TestAnalysis, TransferInput<Value, Trace>> inputs = new IdentityHashMap<>();
+
+    /**
+     * Create a block.
+     *
+     * @param size the number of nodes
+     */
+    TestBlock(int size) {
+      RegularBlockImpl block = new RegularBlockImpl();
+      for (int i = 0; i < size; i++) {
+        Node n = new TestNode();
+        block.addNode(n);
+        nodes.add(n);
+      }
+    }
+
+    /**
+     * Returns the store a replay of the whole block computes before or after a node.
+     *
+     * @param position the position of the node
+     * @param after whether to return the store after the node
+     * @return the store
+     */
+    Trace replay(int position, boolean after) {
+      Trace store = input.copy();
+      store.trace.addAll(nodes.subList(0, after ? position + 1 : position));
+      return store;
+    }
+
+    /**
+     * Query the store before or after a node.
+     *
+     * @param analysis the analysis
+     * @param position the position of the node
+     * @param after whether to query the store after the node
+     * @param caches the analysis caches, or null
+     * @return the store
+     */
+    Trace query(
+        TestAnalysis analysis,
+        int position,
+        boolean after,
+        Map<TransferInput<Value, Trace>, IdentityHashMap<Node, TransferResult<Value, Trace>>>
+            caches) {
+      return analysis.runAnalysisFor(
+          nodes.get(position),
+          after ? Analysis.BeforeOrAfter.AFTER : Analysis.BeforeOrAfter.BEFORE,
+          inputs.computeIfAbsent(analysis, a -> new TransferInput<>(null, a, input)),
+          new HashMap<>(),
+          caches);
+    }
+  }
+
+  /**
+   * Query the stores before and after the given nodes of a block, and compare them with a replay of
+   * the whole block.
+   *
+   * @param block the block
+   * @param analysis the analysis
+   * @param positions the positions of the nodes, in query order
+   * @param caches the analysis caches, or null
+   */
+  private static void assertReplays(
+      TestBlock block,
+      TestAnalysis analysis,
+      int[] positions,
+      Map<TransferInput<Value, Trace>, IdentityHashMap<Node, TransferResult<Value, Trace>>>
+          caches) {
+    for (int position : positions) {
+      for (boolean after : new boolean[] {false, true}) {
+        Assert.assertEquals(
+            "position " + position + (after ? " after" : " before"),
+            block.replay(position, after),
+            block.query(analysis, position, after, caches));
+      }
+    }
+  }
+
+  /**
+   * Stores around each checkpoint boundary match a full replay, whether the queries are in order,
+   * in reverse, or random, and whether or not there is a cache.
+   */
+  @Test
+  public void matchesFullReplay() {
+    TestBlock block = new TestBlock(20);
+    int[] boundaries = {0, 6, 7, 8, 9, 15, 16, 17, 19};
+    int[] reversed = new int[boundaries.length];
+    for (int i = 0; i < boundaries.length; i++) {
+      reversed[i] = boundaries[boundaries.length - 1 - i];
+    }
+    int[] random = new int[50];
+    Random r = new Random(7);
+    for (int i = 0; i < random.length; i++) {
+      random[i] = r.nextInt(block.nodes.size());
+    }
+    for (int[] positions : new int[][] {boundaries, reversed, random}) {
+      assertReplays(block, new TestAnalysis(64), positions, new HashMap<>());
+      assertReplays(block, new TestAnalysis(64), positions, null);
+    }
+  }
+
+  /**
+   * Once the checkpoints exist, a query replays at most one interval of transfer steps, and a long
+   * block keeps no more checkpoints than the budget.
+   */
+  @Test
+  public void boundedReplayAndBudget() {
+    Map<TransferInput<Value, Trace>, IdentityHashMap<Node, TransferResult<Value, Trace>>>
+        caches = new HashMap<>();
+    TestBlock block = new TestBlock(100);
+    TestAnalysis analysis = new TestAnalysis(4);
+    int interval = analysis.getCheckpointInterval(block.nodes.size());
+    Assert.assertEquals(25, interval);
+    assertReplays(block, analysis, new int[] {99}, caches);
+    Assert.assertEquals(1, caches.size());
+    Assert.assertEquals(4, caches.values().iterator().next().size());
+
+    // Queries in reverse order cannot continue from where the previous query stopped
+    int[] positions = {99, 76, 75, 74, 50, 25, 24, 0};
+    for (int position : positions) {
+      int steps = analysis.steps();
+      assertReplays(block, analysis, new int[] {position}, caches);
+      steps = analysis.steps() - steps;
+      Assert.assertTrue("position " + position + " took " + steps + " steps", steps <= interval);
+    }
+    Assert.assertEquals(8, new TestAnalysis(64).getCheckpointInterval(100));
+  }
+}
@@ -0,0 +1,161 @@
+package org.checkerframework.dataflow.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import org.checkerframework.dataflow.analysis.AbstractAnalysis.Worklist;
+import org.checkerframework.dataflow.analysis.Analysis.Direction;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.block.ConditionalBlockImpl;
+import org.checkerframework.dataflow.cfg.block.RegularBlockImpl;
+import org.checkerframework.dataflow.cfg.block.SpecialBlock.SpecialBlockType;
+import org.checkerframework.dataflow.cfg.block.SpecialBlockImpl;
+import org.checkerframework.javacutil.BugInCF;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Checks the order in which the {@link Worklist} of an analysis polls blocks. */
+public final class WorklistTest {
+
+  /**
+   * Create a graph of a loop around a branch: the entry, a loop head, a conditional block, its two
+   * branches, the block they join at, and the exit.
+   *
+   * @return the graph, with its blocks numbered
+   */
+  private static ControlFlowGraph graph() {
+    SpecialBlockImpl entry = new SpecialBlockImpl(SpecialBlockType.ENTRY);
+    SpecialBlockImpl exit = new SpecialBlockImpl(SpecialBlockType.EXIT);
+    SpecialBlockImpl exceptionalExit = new SpecialBlockImpl(SpecialBlockType.EXCEPTIONAL_EXIT);
+    RegularBlockImpl head = new RegularBlockImpl();
+    ConditionalBlockImpl branch = new ConditionalBlockImpl();
+    RegularBlockImpl left = new RegularBlockImpl();
+    RegularBlockImpl right = new RegularBlockImpl();
+    ConditionalBlockImpl join = new ConditionalBlockImpl();
+    entry.setSuccessor(head);
+    head.setSuccessor(branch);
+    branch.setThenSuccessor(left);
+    branch.setElseSuccessor(right);
+    left.setSuccessor(join);
+    right.setSuccessor(join);
+    join.setThenSuccessor(head);
+    join.setElseSuccessor(exit);
+    ControlFlowGraph cfg =
+        new ControlFlowGraph(
+            entry,
+            exit,
+            exceptionalExit,
+            null,
+            new IdentityHashMap<>(),
+            new IdentityHashMap<>(),
+            new IdentityHashMap<>(),
+            new ArrayList<>(),
+            new ArrayList<>(),
+            new ArrayList<>());
+    cfg.numberBlocks();
+    return cfg;
+  }
+
+  /**
+   * Poll every block of a worklist.
+   *
+   * @param worklist the worklist
+   * @return the indices of the blocks, in the order they were polled
+   */
+  private static List<Integer> pollAll(Worklist worklist) {
+    List<Integer> polled = new ArrayList<>();
+    while (!worklist.isEmpty()) {
+      Block b = worklist.poll();
+      Assert.assertFalse(worklist.contains(b));
+      polled.add(b.getIndex());
+    }
+    Assert.assertNull(worklist.poll());
+    return polled;
+  }
+
+  /**
+   * Create a list of indices.
+   *
+   * @param indices the indices
+   * @return a list of them
+   */
+  private static List<Integer> indices(Integer... indices) {
+    return Arrays.asList(indices);
+  }
+
+  /** A forward worklist polls blocks in increasing index order, whatever the order added. */
+  @Test
+  public void forwardOrder() {
+    ControlFlowGraph cfg = graph();
+    List<Block> blocks = cfg.getIndexedBlocks();
+    Worklist worklist = new Worklist(Direction.FORWARD);
+    worklist.process(cfg);
+    for (int i : new int[] {4, 1, 6, 0, 3}) {
+      worklist.add(blocks.get(i));
+    }
+    Assert.assertEquals(indices(0, 1, 3, 4, 6), pollAll(worklist));
+  }
+
+  /** A backward worklist polls blocks in decreasing index order, whatever the order added. */
+  @Test
+  public void backwardOrder() {
+    ControlFlowGraph cfg = graph();
+    List<Block> blocks = cfg.getIndexedBlocks();
+    Worklist worklist = new Worklist(Direction.BACKWARD);
+    worklist.process(cfg);
+    for (int i : new int[] {4, 1, 6, 0, 3}) {
+      worklist.add(blocks.get(i));
+    }
+    Assert.assertEquals(indices(6, 4, 3, 1, 0), pollAll(worklist));
+  }
+
+  /**
+   * Adding a block that is already queued leaves it queued once, and a block added behind the last
+   * one polled, as a loop head is, is polled next.
+   */
+  @Test
+  public void readdQueuedAndPassedBlocks() {
+    ControlFlowGraph cfg = graph();
+    List<Block> blocks = cfg.getIndexedBlocks();
+    Worklist worklist = new Worklist(Direction.FORWARD);
+    worklist.process(cfg);
+    worklist.add(blocks.get(2));
+    worklist.add(blocks.get(5));
+    worklist.add(blocks.get(2));
+    Assert.assertTrue(worklist.contains(blocks.get(2)));
+    Assert.assertSame(blocks.get(2), worklist.poll());
+    Assert.assertFalse(worklist.contains(blocks.get(2)));
+    worklist.add(blocks.get(5));
+    Assert.assertSame(blocks.get(5), worklist.poll());
+    // The back edge from the join to the loop head
+    worklist.add(blocks.get(6));
+    worklist.add(blocks.get(1));
+    worklist.add(blocks.get(1));
+    Assert.assertEquals(indices(1, 6), pollAll(worklist));
+
+    Worklist backward = new Worklist(Direction.BACKWARD);
+    backward.process(cfg);
+    backward.add(blocks.get(3));
+    backward.add(blocks.get(3));
+    Assert.assertSame(blocks.get(3), backward.poll());
+    backward.add(blocks.get(0));
+    backward.add(blocks.get(5));
+    Assert.assertEquals(indices(5, 0), pollAll(backward));
+  }
+
+  /** Processing a graph empties the worklist, and blocks outside the graph cannot be added. */
+  @Test
+  public void processAndUnreachable() {
+    ControlFlowGraph cfg = graph();
+    Worklist worklist = new Worklist(Direction.FORWARD);
+    worklist.process(cfg);
+    worklist.add(cfg.getIndexedBlocks().get(3));
+    worklist.process(cfg);
+    Assert.assertTrue(worklist.isEmpty());
+    Block unreachable = new RegularBlockImpl();
+    Assert.assertFalse(worklist.contains(unreachable));
+    Assert.assertThrows(BugInCF.class, () -> worklist.add(unreachable));
+  }
+}
@@ -0,0 +1,147 @@
+package org.checkerframework.dataflow.cfg.builder;
+
+import com.sun.source.tree.Tree;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import javax.lang.model.type.TypeMirror;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.block.ConditionalBlockImpl;
+import org.checkerframework.dataflow.cfg.block.RegularBlockImpl;
+import org.checkerframework.dataflow.cfg.block.SpecialBlock.SpecialBlockType;
+import org.checkerframework.dataflow.cfg.block.SpecialBlockImpl;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.cfg.node.NodeVisitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Checks the block and node indices that {@link CFGTranslationPhaseThree} assigns. */
+public final class CFGTranslationPhaseThreeTest {
+
+  /** A type for the test nodes; no method of it is called. */
+  private static final TypeMirror TYPE =
+      (TypeMirror)
+          Proxy.newProxyInstance(
+              TypeMirror.class.getClassLoader(),
+              new Class<?>[] {TypeMirror.class},
+              (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+              });
+
+  /** A node with no tree or operands. */
+  private static final class TestNode extends Node {
+
+    /** Create a node. */
+    TestNode() {
+      super(TYPE);
+    }
+
+    @Override
+    public Tree getTree() {
+      return null;
+    }
+
+    @Override
+    public <R, P> R accept(NodeVisitor<R, P> visitor, P p) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Node> getOperands() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+      return "n" + getUid();
+    }
+  }
+
+  /**
+   * Create a regular block with one node.
+   *
+   * @return the block
+   */
+  private static RegularBlockImpl block() {
+    RegularBlockImpl b = new RegularBlockImpl();
+    b.addNode(new TestNode());
+    return b;
+  }
+
+  /**
+   * After the empty blocks are removed and consecutive blocks merged, the blocks left are numbered
+   * densely in depth-first order, their nodes are numbered densely block by block, and removed and
+   * unreachable blocks have no index.
+   */
+  @Test
+  public void denseIndices() {
+    SpecialBlockImpl entry = new SpecialBlockImpl(SpecialBlockType.ENTRY);
+    SpecialBlockImpl exit = new SpecialBlockImpl(SpecialBlockType.EXIT);
+    SpecialBlockImpl exceptionalExit = new SpecialBlockImpl(SpecialBlockType.EXCEPTIONAL_EXIT);
+    RegularBlockImpl first = block();
+    RegularBlockImpl empty = new RegularBlockImpl();
+    ConditionalBlockImpl branch = new ConditionalBlockImpl();
+    RegularBlockImpl then = block();
+    RegularBlockImpl merged = block();
+    RegularBlockImpl emptyElse = new RegularBlockImpl();
+    RegularBlockImpl join = block();
+    RegularBlockImpl unreachable = block();
+    entry.setSuccessor(first);
+    first.setSuccessor(empty);
+    empty.setSuccessor(branch);
+    branch.setThenSuccessor(then);
+    branch.setElseSuccessor(emptyElse);
+    then.setSuccessor(merged);
+    merged.setSuccessor(join);
+    emptyElse.setSuccessor(join);
+    unreachable.setSuccessor(join);
+    join.setSuccessor(exit);
+    ControlFlowGraph cfg =
+        CFGTranslationPhaseThree.process(
+            new ControlFlowGraph(
+                entry,
+                exit,
+                exceptionalExit,
+                null,
+                new IdentityHashMap<>(),
+                new IdentityHashMap<>(),
+                new IdentityHashMap<>(),
+                new ArrayList<>(),
+                new ArrayList<>(),
+                new ArrayList<>()));
+
+    List<Block> blocks = cfg.getIndexedBlocks();
+    Assert.assertEquals(cfg.getAllBlocks(), new HashSet<>(blocks));
+    Assert.assertEquals(6, blocks.size());
+    for (int i = 0; i < blocks.size(); i++) {
+      Assert.assertEquals(i, blocks.get(i).getIndex());
+      Assert.assertSame(cfg, blocks.get(i).getGraph());
+    }
+    Assert.assertSame(entry, blocks.get(0));
+    Assert.assertSame(exit, blocks.get(blocks.size() - 1));
+    // The graph has no loop, so each edge leads to a block with a larger index
+    for (Block b : blocks) {
+      for (Block succ : b.getSuccessors()) {
+        Assert.assertTrue(b + " -> " + succ, b.getIndex() < succ.getIndex());
+      }
+    }
+    for (Block removed : new Block[] {empty, emptyElse, merged, unreachable}) {
+      Assert.assertEquals(-1, removed.getIndex());
+      Assert.assertNull(removed.getGraph());
+    }
+
+    List<Node> nodes = cfg.getIndexedNodes();
+    Assert.assertEquals(4, nodes.size());
+    for (int i = 0; i < nodes.size(); i++) {
+      Assert.assertEquals(i, nodes.get(i).getGraphIndex());
+      Assert.assertTrue(blocks.contains(nodes.get(i).getBlock()));
+    }
+    Assert.assertEquals(2, then.getNodes().size());
+    Assert.assertEquals(-1, unreachable.getNodes().get(0).getGraphIndex());
+  }
+}
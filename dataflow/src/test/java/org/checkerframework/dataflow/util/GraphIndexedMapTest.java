@@ -0,0 +1,344 @@
+package org.checkerframework.dataflow.util;
+
+import com.sun.source.tree.Tree;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.lang.model.type.TypeMirror;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.block.Block;
+import org.checkerframework.dataflow.cfg.block.RegularBlockImpl;
+import org.checkerframework.dataflow.cfg.block.SingleSuccessorBlockImpl;
+import org.checkerframework.dataflow.cfg.block.SpecialBlock.SpecialBlockType;
+import org.checkerframework.dataflow.cfg.block.SpecialBlockImpl;
+import org.checkerframework.dataflow.cfg.node.Node;
+import org.checkerframework.dataflow.cfg.node.NodeVisitor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Compares {@link GraphIndexedMap} with {@link IdentityHashMap}. */
+public final class GraphIndexedMapTest {
+
+  /** A type for the test nodes; no method of it is called. */
+  private static final TypeMirror TYPE =
+      (TypeMirror)
+          Proxy.newProxyInstance(
+              TypeMirror.class.getClassLoader(),
+              new Class<?>[] {TypeMirror.class},
+              (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+              });
+
+  /** A node with no tree or operands. */
+  private static final class TestNode extends Node {
+
+    /** Create a node. */
+    TestNode() {
+      super(TYPE);
+    }
+
+    @Override
+    public Tree getTree() {
+      return null;
+    }
+
+    @Override
+    public <R, P> R accept(NodeVisitor<R, P> visitor, P p) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Node> getOperands() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+      return "n" + getUid();
+    }
+  }
+
+  /** A numbered control flow graph of a straight line of blocks. */
+  private static final class Graph {
+
+    /** The graph. */
+    final ControlFlowGraph cfg;
+
+    /** The regular blocks of the graph, in order. */
+    final List<Block> blocks = new ArrayList<>();
+
+    /** The nodes of the graph, in order. */
+    final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Create and number a graph.
+     *
+     * @param blockCount the number of regular blocks
+     * @param nodesPerBlock the number of nodes in each block
+     */
+    Graph(int blockCount, int nodesPerBlock) {
+      SpecialBlockImpl entry = new SpecialBlockImpl(SpecialBlockType.ENTRY);
+      SpecialBlockImpl exit = new SpecialBlockImpl(SpecialBlockType.EXIT);
+      SpecialBlockImpl exceptionalExit = new SpecialBlockImpl(SpecialBlockType.EXCEPTIONAL_EXIT);
+      SingleSuccessorBlockImpl last = entry;
+      for (int i = 0; i < blockCount; i++) {
+        RegularBlockImpl b = new RegularBlockImpl();
+        for (int j = 0; j < nodesPerBlock; j++) {
+          Node n = new TestNode();
+          b.addNode(n);
+          nodes.add(n);
+        }
+        last.setSuccessor(b);
+        last = b;
+        blocks.add(b);
+      }
+      last.setSuccessor(exit);
+      cfg =
+          new ControlFlowGraph(
+              entry,
+              exit,
+              exceptionalExit,
+              null,
+              new IdentityHashMap<>(),
+              new IdentityHashMap<>(),
+              new IdentityHashMap<>(),
+              new ArrayList<>(),
+              new ArrayList<>(),
+              new ArrayList<>());
+      cfg.numberBlocks();
+    }
+  }
+
+  /**
+   * Assert that a map has the same entries as a reference map, through every view.
+   *
+   * @param <K> the type of keys
+   * @param expected the reference map
+   * @param actual the map under test
+   */
+  private static <K> void assertSameEntries(
+      IdentityHashMap<K, Integer> expected, GraphIndexedMap<K, Integer> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected.isEmpty(), actual.isEmpty());
+    Assert.assertTrue(actual.equals(expected));
+    Assert.assertTrue(expected.equals(actual));
+    // IdentityHashMap hashes values by identity, but a GraphIndexedMap compares them with equals
+    Assert.assertEquals(new HashMap<>(expected).hashCode(), actual.hashCode());
+    IdentityHashMap<K, Integer> seen = new IdentityHashMap<>();
+    for (Map.Entry<K, Integer> e : actual.entrySet()) {
+      Assert.assertNull(seen.put(e.getKey(), e.getValue()));
+      Assert.assertEquals(expected.get(e.getKey()), e.getValue());
+    }
+    Assert.assertEquals(expected, seen);
+    for (K key : expected.keySet()) {
+      Assert.assertTrue(actual.containsKey(key));
+      Assert.assertEquals(expected.get(key), actual.get(key));
+    }
+  }
+
+  /** Nodes of formal parameters and blocks that are not reachable are kept apart. */
+  @Test
+  public void unindexedKeys() {
+    Graph g = new Graph(2, 2);
+    Node parameter = new TestNode();
+    Block unreachable = new RegularBlockImpl();
+    Assert.assertNull(unreachable.getGraph());
+
+    GraphIndexedMap<Node, Integer> nodes = GraphIndexedMap.forNodes();
+    IdentityHashMap<Node, Integer> expectedNodes = new IdentityHashMap<>();
+    nodes.put(parameter, 1);
+    expectedNodes.put(parameter, 1);
+    nodes.put(g.nodes.get(0), 2);
+    expectedNodes.put(g.nodes.get(0), 2);
+    assertSameEntries(expectedNodes, nodes);
+    Assert.assertEquals(Integer.valueOf(1), nodes.put(parameter, 3));
+    expectedNodes.put(parameter, 3);
+    assertSameEntries(expectedNodes, nodes);
+    Assert.assertEquals(Integer.valueOf(3), nodes.remove(parameter));
+    expectedNodes.remove(parameter);
+    assertSameEntries(expectedNodes, nodes);
+
+    GraphIndexedMap<Block, Integer> blocks = GraphIndexedMap.forBlocks();
+    IdentityHashMap<Block, Integer> expectedBlocks = new IdentityHashMap<>();
+    blocks.put(unreachable, 4);
+    expectedBlocks.put(unreachable, 4);
+    blocks.put(g.blocks.get(1), 5);
+    expectedBlocks.put(g.blocks.get(1), 5);
+    assertSameEntries(expectedBlocks, blocks);
+    Assert.assertNull(blocks.get(g.blocks.get(0)));
+    Assert.assertNull(blocks.get("not a block"));
+    Assert.assertNull(blocks.remove(g.blocks.get(0)));
+    Assert.assertEquals(Integer.valueOf(4), blocks.remove(unreachable));
+    expectedBlocks.remove(unreachable);
+    assertSameEntries(expectedBlocks, blocks);
+  }
+
+  /** Copying one map into another merges their entries graph by graph. */
+  @Test
+  public void putAllAcrossGraphs() {
+    Graph g1 = new Graph(3, 2);
+    Graph g2 = new Graph(2, 3);
+    Node parameter = new TestNode();
+
+    GraphIndexedMap<Node, Integer> a = GraphIndexedMap.forNodes();
+    GraphIndexedMap<Node, Integer> b = GraphIndexedMap.forNodes();
+    IdentityHashMap<Node, Integer> expected = new IdentityHashMap<>();
+    for (int i = 0; i < g1.nodes.size(); i += 2) {
+      a.put(g1.nodes.get(i), i);
+      expected.put(g1.nodes.get(i), i);
+    }
+    for (int i = 0; i < g1.nodes.size(); i += 3) {
+      b.put(g1.nodes.get(i), 100 + i);
+    }
+    for (Node n : g2.nodes) {
+      b.put(n, 200);
+    }
+    b.put(parameter, 300);
+    expected.putAll(b);
+
+    a.putAll(b);
+    assertSameEntries(expected, a);
+    Assert.assertEquals(expected.size(), a.size());
+
+    // A map that is not graph-indexed is copied entry by entry
+    GraphIndexedMap<Node, Integer> c = GraphIndexedMap.forNodes();
+    c.putAll(expected);
+    assertSameEntries(expected, c);
+
+    // A graph that the target has no values for yet is copied, not shared
+    GraphIndexedMap<Node, Integer> d = GraphIndexedMap.forNodes();
+    d.putAll(b);
+    b.remove(g2.nodes.get(0));
+    Assert.assertEquals(Integer.valueOf(200), d.get(g2.nodes.get(0)));
+  }
+
+  /** Removing entries through the iterator updates the map and its size. */
+  @Test
+  public void iteratorRemove() {
+    Graph g = new Graph(4, 1);
+    GraphIndexedMap<Block, Integer> map = GraphIndexedMap.forBlocks();
+    IdentityHashMap<Block, Integer> expected = new IdentityHashMap<>();
+    for (int i = 0; i < g.blocks.size(); i++) {
+      map.put(g.blocks.get(i), i);
+      expected.put(g.blocks.get(i), i);
+    }
+    Block unreachable = new RegularBlockImpl();
+    map.put(unreachable, 10);
+    expected.put(unreachable, 10);
+
+    Iterator<Map.Entry<Block, Integer>> it = map.entrySet().iterator();
+    Assert.assertThrows(IllegalStateException.class, it::remove);
+    while (it.hasNext()) {
+      Map.Entry<Block, Integer> e = it.next();
+      if (e.getValue() % 2 == 0) {
+        expected.remove(e.getKey());
+        it.remove();
+        Assert.assertThrows(IllegalStateException.class, it::remove);
+      }
+    }
+    assertSameEntries(expected, map);
+
+    map.entrySet().removeIf(e -> true);
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertFalse(map.entrySet().iterator().hasNext());
+  }
+
+  /** Setting the value of an entry writes through to the map. */
+  @Test
+  public void entrySetValue() {
+    Graph g = new Graph(2, 2);
+    GraphIndexedMap<Node, Integer> map = GraphIndexedMap.forNodes();
+    for (Node n : g.nodes) {
+      map.put(n, 1);
+    }
+    for (Map.Entry<Node, Integer> e : map.entrySet()) {
+      Assert.assertEquals(Integer.valueOf(1), e.setValue(2));
+      Assert.assertEquals(Integer.valueOf(2), e.getValue());
+    }
+    for (Node n : g.nodes) {
+      Assert.assertEquals(Integer.valueOf(2), map.get(n));
+    }
+    Assert.assertEquals(g.nodes.size(), map.size());
+  }
+
+  /** A copy does not see later changes to the original, and vice versa. */
+  @Test
+  public void copyIsolation() {
+    Graph g = new Graph(3, 2);
+    Node parameter = new TestNode();
+    GraphIndexedMap<Node, Integer> original = GraphIndexedMap.forNodes();
+    for (Node n : g.nodes) {
+      original.put(n, 1);
+    }
+    original.put(parameter, 1);
+    GraphIndexedMap<Node, Integer> copy = original.copy();
+    IdentityHashMap<Node, Integer> snapshot = new IdentityHashMap<>(original);
+
+    original.put(g.nodes.get(0), 2);
+    original.remove(g.nodes.get(1));
+    original.remove(parameter);
+    original.entrySet().iterator().next().setValue(3);
+    assertSameEntries(snapshot, copy);
+
+    IdentityHashMap<Node, Integer> changed = new IdentityHashMap<>(original);
+    copy.clear();
+    assertSameEntries(changed, original);
+  }
+
+  /** Random operations on several maps over several graphs agree with identity hash maps. */
+  @Test
+  public void randomOperations() {
+    Random random = new Random(7);
+    List<Node> keys = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      keys.addAll(new Graph(1 + random.nextInt(5), 1 + random.nextInt(4)).nodes);
+      keys.add(new TestNode());
+    }
+    List<GraphIndexedMap<Node, Integer>> maps = new ArrayList<>();
+    List<IdentityHashMap<Node, Integer>> expected = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      maps.add(GraphIndexedMap.forNodes());
+      expected.add(new IdentityHashMap<>());
+    }
+    for (int step = 0; step < 20000; step++) {
+      int m = random.nextInt(maps.size());
+      GraphIndexedMap<Node, Integer> map = maps.get(m);
+      IdentityHashMap<Node, Integer> identityMap = expected.get(m);
+      Node key = keys.get(random.nextInt(keys.size()));
+      int op = random.nextInt(100);
+      if (op < 50) {
+        Integer value = random.nextInt(4);
+        Assert.assertEquals(identityMap.put(key, value), map.put(key, value));
+      } else if (op < 80) {
+        Assert.assertEquals(identityMap.remove(key), map.remove(key));
+      } else if (op < 90) {
+        int n = random.nextInt(maps.size());
+        map.putAll(maps.get(n));
+        identityMap.putAll(expected.get(n));
+      } else if (op < 95) {
+        int n = random.nextInt(maps.size());
+        maps.set(n, map.copy());
+        expected.set(n, new IdentityHashMap<>(identityMap));
+      } else if (op < 99) {
+        map.entrySet().removeIf(e -> e.getValue() == 0);
+        identityMap.values().removeIf(v -> v == 0);
+      } else {
+        map.clear();
+        identityMap.clear();
+      }
+      Assert.assertEquals(identityMap.size(), map.size());
+      if (step % 100 == 0) {
+        for (int i = 0; i < maps.size(); i++) {
+          assertSameEntries(expected.get(i), maps.get(i));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package org.checkerframework.dataflow.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Compares {@link PersistentHashMap} with {@link HashMap}. */
+public final class PersistentHashMapTest {
+
+  /** A key with a chosen hash code, so that tests can force collisions. */
+  private static final class Key {
+
+    /** The identity of the key. */
+    final int id;
+
+    /** The hash code of the key. */
+    final int hash;
+
+    /**
+     * Create a key.
+     *
+     * @param id the identity of the key
+     * @param hash the hash code of the key
+     */
+    Key(int id, int hash) {
+      this.id = id;
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).id == id;
+    }
+
+    @Override
+    public String toString() {
+      return "K" + id;
+    }
+  }
+
+  /**
+   * Create keys whose hash codes are either random or drawn from only three values.
+   *
+   * @param random the source of randomness
+   * @param n the number of keys
+   * @param colliding whether the keys share three hash codes
+   * @return the keys
+   */
+  private static Key[] keys(Random random, int n, boolean colliding) {
+    Key[] keys = new Key[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = new Key(i, colliding ? i % 3 : random.nextInt());
+    }
+    return keys;
+  }
+
+  /**
+   * Assert that a map has the same entries as a reference map, through every view.
+   *
+   * @param expected the reference map
+   * @param actual the map under test
+   */
+  private static void assertSameEntries(
+      Map<Key, Integer> expected, PersistentHashMap<Key, Integer> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(actual, expected);
+    Assert.assertEquals(expected.hashCode(), actual.hashCode());
+    int count = 0;
+    for (Map.Entry<Key, Integer> e : actual.entrySet()) {
+      Assert.assertEquals(expected.get(e.getKey()), e.getValue());
+      count++;
+    }
+    Assert.assertEquals(expected.size(), count);
+  }
+
+  /**
+   * Apply random operations to several maps and their copies, and to the same number of hash maps,
+   * checking that each pair agrees after every step.
+   */
+  @Test
+  public void randomOperations() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      boolean colliding = round % 2 == 0;
+      Key[] keys = keys(random, 1 + random.nextInt(round % 3 == 0 ? 8 : 500), colliding);
+      List<PersistentHashMap<Key, Integer>> maps = new ArrayList<>();
+      List<Map<Key, Integer>> expected = new ArrayList<>();
+      maps.add(new PersistentHashMap<>());
+      expected.add(new HashMap<>());
+      for (int step = 0; step < 1000; step++) {
+        int m = random.nextInt(maps.size());
+        PersistentHashMap<Key, Integer> map = maps.get(m);
+        Map<Key, Integer> hashMap = expected.get(m);
+        Key key = keys[random.nextInt(keys.length)];
+        int op = random.nextInt(100);
+        if (op < 45) {
+          Integer value = random.nextInt(5);
+          Assert.assertEquals(hashMap.put(key, value), map.put(key, value));
+        } else if (op < 65) {
+          Assert.assertEquals(hashMap.remove(key), map.remove(key));
+        } else if (op < 72) {
+          if (maps.size() < 12) {
+            maps.add(map.copy());
+            expected.add(new HashMap<>(hashMap));
+          }
+        } else if (op < 78) {
+          map.entrySet().removeIf(e -> e.getValue() == 1);
+          hashMap.entrySet().removeIf(e -> e.getValue() == 1);
+        } else if (op < 84) {
+          for (Iterator<Map.Entry<Key, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() == 0) {
+              it.remove();
+            }
+          }
+          hashMap.values().removeIf(v -> v == 0);
+        } else if (op < 90) {
+          for (Map.Entry<Key, Integer> e : map.entrySet()) {
+            if (e.getValue() == 2) {
+              e.setValue(3);
+            }
+          }
+          hashMap.replaceAll((k, v) -> v == 2 ? 3 : v);
+        } else if (op < 95) {
+          int n = random.nextInt(maps.size());
+          boolean contains = true;
+          for (Map.Entry<Key, Integer> e : expected.get(n).entrySet()) {
+            contains &= e.getValue().equals(hashMap.get(e.getKey()));
+          }
+          Assert.assertEquals(contains, map.containsAllEntries(maps.get(n)));
+        } else if (op < 99) {
+          int n = random.nextInt(maps.size());
+          PersistentHashMap<Key, Integer> both = map.intersect(maps.get(n), Math::max);
+          Map<Key, Integer> expectedBoth = new HashMap<>();
+          for (Map.Entry<Key, Integer> e : hashMap.entrySet()) {
+            Integer other = expected.get(n).get(e.getKey());
+            if (other != null) {
+              expectedBoth.put(e.getKey(), Math.max(e.getValue(), other));
+            }
+          }
+          assertSameEntries(expectedBoth, both);
+          if (maps.size() < 12) {
+            maps.add(both);
+            expected.add(expectedBoth);
+          }
+        } else {
+          map.clear();
+          hashMap.clear();
+        }
+        if (step % 25 == 0) {
+          for (int i = 0; i < maps.size(); i++) {
+            assertSameEntries(expected.get(i), maps.get(i));
+          }
+        } else {
+          Assert.assertEquals(hashMap.size(), map.size());
+        }
+      }
+    }
+  }
+
+  /** Changes to a map after a copy is taken do not show in the copy, and vice versa. */
+  @Test
+  public void copyIsolation() {
+    Key[] keys = keys(new Random(1), 100, false);
+    PersistentHashMap<Key, Integer> original = new PersistentHashMap<>();
+    for (Key k : keys) {
+      original.put(k, k.id);
+    }
+    PersistentHashMap<Key, Integer> copy = original.copy();
+    Map<Key, Integer> snapshot = new HashMap<>(copy);
+
+    original.put(keys[0], -1);
+    original.remove(keys[1]);
+    original.entrySet().removeIf(e -> e.getKey().id % 7 == 0);
+    for (Map.Entry<Key, Integer> e : original.entrySet()) {
+      e.setValue(e.getValue() + 1000);
+    }
+    assertSameEntries(snapshot, copy);
+
+    Map<Key, Integer> changed = new HashMap<>(original);
+    copy.put(keys[2], -2);
+    Iterator<Map.Entry<Key, Integer>> it = copy.entrySet().iterator();
+    it.next();
+    it.remove();
+    assertSameEntries(changed, original);
+  }
+
+  /** Keys with equal hash codes are kept apart, and removing them restores the map. */
+  @Test
+  public void collisions() {
+    Key[] keys = new Key[6];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new Key(i, 17);
+    }
+    PersistentHashMap<Key, Integer> map = new PersistentHashMap<>();
+    Map<Key, Integer> expected = new HashMap<>();
+    for (Key k : keys) {
+      map.put(k, k.id);
+      expected.put(k, k.id);
+    }
+    assertSameEntries(expected, map);
+
+    PersistentHashMap<Key, Integer> copy = map.copy();
+    map.put(keys[3], 30);
+    map.remove(keys[4]);
+    Assert.assertEquals(Integer.valueOf(3), copy.get(keys[3]));
+    Assert.assertEquals(Integer.valueOf(4), copy.get(keys[4]));
+    Assert.assertFalse(map.containsAllEntries(copy));
+    Assert.assertFalse(copy.containsAllEntries(map));
+
+    PersistentHashMap<Key, Integer> both = map.intersect(copy, (a, b) -> a.equals(b) ? a : null);
+    expected.remove(keys[3]);
+    expected.remove(keys[4]);
+    assertSameEntries(expected, both);
+    Assert.assertTrue(map.containsAllEntries(both));
+    Assert.assertTrue(copy.containsAllEntries(both));
+
+    for (Key k : keys) {
+      map.remove(k);
+    }
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertEquals(6, copy.size());
+  }
+
+  /** Entries for which the merge function returns null are left out of an intersection. */
+  @Test
+  public void intersectDropsNull() {
+    PersistentHashMap<Key, Integer> a = new PersistentHashMap<>();
+    PersistentHashMap<Key, Integer> b = new PersistentHashMap<>();
+    Key[] keys = keys(new Random(2), 50, false);
+    for (Key k : keys) {
+      a.put(k, k.id % 4);
+      if (k.id % 2 == 0) {
+        b.put(k, k.id % 3);
+      }
+    }
+    PersistentHashMap<Key, Integer> both = a.intersect(b, (x, y) -> x.equals(y) ? x : null);
+    Map<Key, Integer> expected = new HashMap<>();
+    for (Key k : keys) {
+      if (k.id % 2 == 0 && k.id % 4 == k.id % 3) {
+        expected.put(k, k.id % 4);
+      }
+    }
+    assertSameEntries(expected, both);
+  }
+
+  /** Null values are rejected, so that a null value never stands for an entry. */
+  @Test(expected = NullPointerException.class)
+  public void putNullValue() {
+    new PersistentHashMap<Key, Integer>().put(new Key(0, 0), null);
+  }
+
+  /**
+   * Widening each value of a copy with a least upper bound that may be null, as the initial store
+   * of a lambda does for field values, removes the keys whose bound is null and leaves the original
+   * map unchanged.
+   */
+  @Test
+  public void nullLeastUpperBound() {
+    PersistentHashMap<Key, Integer> original = new PersistentHashMap<>();
+    Map<Key, Integer> expected = new HashMap<>();
+    Key[] keys = keys(new Random(3), 40, false);
+    for (Key k : keys) {
+      original.put(k, k.id);
+      expected.put(k, k.id);
+    }
+    PersistentHashMap<Key, Integer> copy = PersistentHashMap.copyOf(original);
+    Map<Key, Integer> widened = new HashMap<>();
+    for (Map.Entry<Key, Integer> e : PersistentHashMap.copyOf(copy).entrySet()) {
+      Integer lub = e.getValue() % 3 == 0 ? null : e.getValue() | 1;
+      if (lub != null) {
+        copy.put(e.getKey(), lub);
+        widened.put(e.getKey(), lub);
+      } else {
+        copy.remove(e.getKey());
+      }
+    }
+    assertSameEntries(widened, copy);
+    assertSameEntries(expected, original);
+  }
+}
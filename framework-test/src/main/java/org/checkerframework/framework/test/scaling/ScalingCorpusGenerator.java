@@ -0,0 +1,369 @@
+package org.checkerframework.framework.test.scaling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates synthetic Java sources for stress-testing effect checkers. The sources call methods
+ * annotated with a given set of effect annotations, inside structures whose size is controlled by
+ * the generator's parameters:
+ *
+ * <ul>
+ *   <li>{@link #methodLength}: the number of effectful calls in the innermost body of each method
+ *   <li>{@link #nestingDepth}: the number of nested {@code try}/{@code finally} statements around
+ *       that body
+ *   <li>{@link #exceptionFanOut}: the number of distinct checked exceptions thrown in the body and
+ *       caught by the innermost {@code try}
+ *   <li>{@link #loopNesting}: the number of nested labeled loops around the body; every few calls
+ *       the body breaks to, or continues, one of the enclosing labels
+ *   <li>{@link #distinctEffects}: how many of the given effects the calls cycle through
+ *   <li>{@link #switchCases}: the number of cases in a {@code switch} statement following the body
+ *       (none if zero)
+ *   <li>{@link #methods}: the number of generated methods
+ * </ul>
+ *
+ * <p>The generated code compiles without the checker. All names are in the unnamed package, so each
+ * corpus should be generated into its own directory.
+ */
+public class ScalingCorpusGenerator {
+
+  /** Fully-qualified names of the effect annotations the calls use. */
+  private final List<String> effects;
+
+  /** The number of effectful calls in the innermost body of each method. */
+  private int methodLength = 10;
+  /** The number of nested try statements around the body. */
+  private int nestingDepth = 0;
+  /** The number of distinct checked exceptions thrown in the body. */
+  private int exceptionFanOut = 0;
+  /** The number of nested labeled loops around the body. */
+  private int loopNesting = 0;
+  /** The number of effects the calls cycle through. */
+  private int distinctEffects;
+  /** The number of cases of the switch statement after the body. */
+  private int switchCases = 0;
+  /** The number of generated methods. */
+  private int methods = 1;
+  /** Fully-qualified name of the effect annotation on generated methods, or null for none. */
+  private String methodEffect = null;
+  /** Whether the throwing helpers declare thrown effects with {@code @ThrownEffect}. */
+  private boolean thrownEffects = false;
+
+  /** How often (in calls) the body breaks to or continues an enclosing loop. */
+  private static final int JUMP_INTERVAL = 5;
+
+  /**
+   * Creates a generator using the given effect annotations.
+   *
+   * @param effects fully-qualified names of effect annotations; must not be empty
+   */
+  public ScalingCorpusGenerator(List<String> effects) {
+    if (effects.isEmpty()) {
+      throw new IllegalArgumentException("At least one effect annotation is required");
+    }
+    this.effects = new ArrayList<>(effects);
+    this.distinctEffects = effects.size();
+  }
+
+  /**
+   * Sets the number of effectful calls in the innermost body of each method.
+   *
+   * @param methodLength the number of calls
+   * @return this
+   */
+  public ScalingCorpusGenerator methodLength(int methodLength) {
+    this.methodLength = methodLength;
+    return this;
+  }
+
+  /**
+   * Sets the number of nested try statements around the body of each method.
+   *
+   * @param nestingDepth the number of nested try statements
+   * @return this
+   */
+  public ScalingCorpusGenerator nestingDepth(int nestingDepth) {
+    this.nestingDepth = nestingDepth;
+    return this;
+  }
+
+  /**
+   * Sets the number of distinct checked exceptions thrown in the body and caught by the innermost
+   * try.
+   *
+   * @param exceptionFanOut the number of exception types
+   * @return this
+   */
+  public ScalingCorpusGenerator exceptionFanOut(int exceptionFanOut) {
+    this.exceptionFanOut = exceptionFanOut;
+    return this;
+  }
+
+  /**
+   * Sets the number of nested labeled loops around the body of each method.
+   *
+   * @param loopNesting the number of nested loops
+   * @return this
+   */
+  public ScalingCorpusGenerator loopNesting(int loopNesting) {
+    this.loopNesting = loopNesting;
+    return this;
+  }
+
+  /**
+   * Sets how many of the effects the calls cycle through.
+   *
+   * @param distinctEffects the number of effects used, at most the number given to the constructor
+   * @return this
+   */
+  public ScalingCorpusGenerator distinctEffects(int distinctEffects) {
+    if (distinctEffects < 1 || distinctEffects > effects.size()) {
+      throw new IllegalArgumentException(
+          "Between 1 and " + effects.size() + " distinct effects are available");
+    }
+    this.distinctEffects = distinctEffects;
+    return this;
+  }
+
+  /**
+   * Sets the number of cases of the switch statement following the body.
+   *
+   * @param switchCases the number of cases, or zero for no switch statement
+   * @return this
+   */
+  public ScalingCorpusGenerator switchCases(int switchCases) {
+    this.switchCases = switchCases;
+    return this;
+  }
+
+  /**
+   * Sets the number of generated methods.
+   *
+   * @param methods the number of methods
+   * @return this
+   */
+  public ScalingCorpusGenerator methods(int methods) {
+    this.methods = methods;
+    return this;
+  }
+
+  /**
+   * Sets the effect annotation written on each generated method.
+   *
+   * @param methodEffect a fully-qualified annotation name, or null to leave methods unannotated
+   * @return this
+   */
+  public ScalingCorpusGenerator methodEffect(String methodEffect) {
+    this.methodEffect = methodEffect;
+    return this;
+  }
+
+  /**
+   * Sets whether the helpers that throw declare their behavior before the throw with the generic
+   * effect checker's {@code @ThrownEffect} annotation.
+   *
+   * @param thrownEffects whether to write {@code @ThrownEffect} annotations
+   * @return this
+   */
+  public ScalingCorpusGenerator thrownEffects(boolean thrownEffects) {
+    this.thrownEffects = thrownEffects;
+    return this;
+  }
+
+  /**
+   * Writes the corpus into a directory, creating it if necessary.
+   *
+   * @param dir the output directory
+   * @return the generated source files
+   * @throws IOException if the files cannot be written
+   */
+  public List<File> generate(File dir) throws IOException {
+    Files.createDirectories(dir.toPath());
+    File helpers = new File(dir, "ScalingHelpers.java");
+    File corpus = new File(dir, "ScalingCorpus.java");
+    write(helpers, helpersSource());
+    write(corpus, corpusSource());
+    return Arrays.asList(helpers, corpus);
+  }
+
+  /**
+   * Writes a source file.
+   *
+   * @param file the file
+   * @param source its contents
+   * @throws IOException if the file cannot be written
+   */
+  private static void write(File file, String source) throws IOException {
+    Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the effect annotation used by the {@code i}th call.
+   *
+   * @param i the index of a call
+   * @return the fully-qualified name of its effect annotation
+   */
+  private String effectFor(int i) {
+    return effects.get(i % distinctEffects);
+  }
+
+  /**
+   * Generates the helper class: an effectful method for each effect in use, a method throwing each
+   * exception, and the exception classes themselves.
+   *
+   * @return the source of ScalingHelpers.java
+   */
+  String helpersSource() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("class ScalingHelpers {\n");
+    for (int e = 0; e < distinctEffects; e++) {
+      sb.append("  @").append(effectFor(e)).append('\n');
+      sb.append("  static void op").append(e).append("() {}\n\n");
+    }
+    for (int x = 0; x < exceptionFanOut; x++) {
+      sb.append("  @").append(effectFor(x)).append('\n');
+      if (thrownEffects) {
+        sb.append("  @org.checkerframework.checker.genericeffects.qual.ThrownEffect(exception = ")
+            .append("ScalingException")
+            .append(x)
+            .append(".class, behavior = ")
+            .append(effectFor(x))
+            .append(".class)\n");
+      }
+      sb.append("  static void throw")
+          .append(x)
+          .append("(int n) throws ScalingException")
+          .append(x)
+          .append(" {\n");
+      sb.append("    if (n == ").append(x).append(") {\n");
+      sb.append("      throw new ScalingException").append(x).append("();\n");
+      sb.append("    }\n");
+      sb.append("  }\n\n");
+    }
+    sb.append("}\n");
+    for (int x = 0; x < exceptionFanOut; x++) {
+      sb.append("\nclass ScalingException").append(x).append(" extends Exception {}\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Generates the class of stress methods.
+   *
+   * @return the source of ScalingCorpus.java
+   */
+  String corpusSource() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("class ScalingCorpus {\n");
+    for (int m = 0; m < methods; m++) {
+      if (m > 0) {
+        sb.append('\n');
+      }
+      appendMethod(sb, m);
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Appends one stress method.
+   *
+   * @param sb the destination
+   * @param m the index of the method
+   */
+  private void appendMethod(StringBuilder sb, int m) {
+    if (methodEffect != null) {
+      sb.append("  @").append(methodEffect).append('\n');
+    }
+    sb.append("  void method").append(m).append("(int n) {\n");
+    String indent = "    ";
+    for (int l = 0; l < loopNesting; l++) {
+      sb.append(indent)
+          .append("loop")
+          .append(l)
+          .append(": for (int i")
+          .append(l)
+          .append(" = 0; i")
+          .append(l)
+          .append(" < n; i")
+          .append(l)
+          .append("++) {\n");
+      indent += "  ";
+    }
+    for (int d = 0; d < nestingDepth; d++) {
+      sb.append(indent).append("try {\n");
+      indent += "  ";
+    }
+
+    for (int i = 0; i < methodLength; i++) {
+      sb.append(indent).append("ScalingHelpers.op").append(i % distinctEffects).append("();\n");
+      if (loopNesting > 0 && i % JUMP_INTERVAL == JUMP_INTERVAL - 1) {
+        int target = (i / JUMP_INTERVAL) % loopNesting;
+        String jump = (i / JUMP_INTERVAL) % 2 == 0 ? "break" : "continue";
+        sb.append(indent)
+            .append("if (n == ")
+            .append(i)
+            .append(") ")
+            .append(jump)
+            .append(" loop")
+            .append(target)
+            .append(";\n");
+      }
+    }
+    for (int x = 0; x < exceptionFanOut; x++) {
+      if (nestingDepth == 0) {
+        // Nothing would catch the exception; keep the code compilable
+        sb.append(indent).append("try {\n");
+        sb.append(indent).append("  ScalingHelpers.throw").append(x).append("(n);\n");
+        sb.append(indent)
+            .append("} catch (ScalingException")
+            .append(x)
+            .append(" e")
+            .append(x)
+            .append(") {}\n");
+      } else {
+        sb.append(indent).append("ScalingHelpers.throw").append(x).append("(n);\n");
+      }
+    }
+
+    for (int d = nestingDepth - 1; d >= 0; d--) {
+      indent = indent.substring(2);
+      sb.append(indent).append('}');
+      // Only the innermost try can catch; the outer ones are try/finally
+      for (int x = 0; d == nestingDepth - 1 && x < exceptionFanOut; x++) {
+        sb.append(" catch (ScalingException").append(x).append(" e) {\n");
+        sb.append(indent).append("  ScalingHelpers.op").append(x % distinctEffects).append("();\n");
+        sb.append(indent).append('}');
+      }
+      sb.append(" finally {\n");
+      sb.append(indent).append("  ScalingHelpers.op").append(d % distinctEffects).append("();\n");
+      sb.append(indent).append("}\n");
+    }
+
+    if (switchCases > 0) {
+      sb.append(indent).append("switch (n) {\n");
+      for (int c = 0; c < switchCases; c++) {
+        sb.append(indent).append("  case ").append(c).append(":\n");
+        sb.append(indent)
+            .append("    ScalingHelpers.op")
+            .append(c % distinctEffects)
+            .append("();\n");
+        sb.append(indent).append("    break;\n");
+      }
+      sb.append(indent).append("  default:\n");
+      sb.append(indent).append("    break;\n");
+      sb.append(indent).append("}\n");
+    }
+
+    for (int l = loopNesting - 1; l >= 0; l--) {
+      indent = indent.substring(2);
+      sb.append(indent).append("}\n");
+    }
+    sb.append("  }\n");
+  }
+}
@@ -0,0 +1,471 @@
+package org.checkerframework.framework.test.scaling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Runs an effect checker over corpora produced by {@link ScalingCorpusGenerator} of growing size
+ * along one dimension, and reports the time and allocation of each run. For each size after the
+ * first, it also reports the growth exponent relative to the previous size: about 1 for linear
+ * behavior, about 2 for quadratic behavior. Exponents above {@link #SUPERLINEAR} are flagged.
+ *
+ * <p>The checker runs in-process with {@code -proc:only}, so the JVM running the harness needs the
+ * checker on its classpath, and on JDK 9+ the same {@code --add-exports} options as javac. Usage:
+ *
+ * <pre>{@code
+ * ScalingHarness --checker=<processor> --effects=<annotation>,<annotation>,...
+ *     [--dimension=methodLength] [--sizes=50,100,200,400] [--method-effect=<annotation>]
+ *     [--option=-A<option>]... [--csv=<file>]
+ * }</pre>
+ *
+ * The dimensions are the lower-camel-case names of {@link Dimension}'s constants, or {@code all}.
+ */
+public class ScalingHarness {
+
+  /** Growth exponents above this are reported as super-linear. */
+  public static final double SUPERLINEAR = 1.5;
+
+  /** The number of untimed runs of the smallest corpus before measuring, to warm up the JIT. */
+  private static final int WARMUP_RUNS = 3;
+
+  /** The number of timed runs of each corpus; the fastest is reported. */
+  private static final int MEASURED_RUNS = 3;
+
+  /** A parameter of the generated corpus that the harness grows. */
+  public enum Dimension {
+    /** {@link ScalingCorpusGenerator#methodLength}. */
+    METHOD_LENGTH,
+    /** {@link ScalingCorpusGenerator#nestingDepth}. */
+    NESTING_DEPTH,
+    /** {@link ScalingCorpusGenerator#exceptionFanOut}, inside a single try statement. */
+    EXCEPTION_FAN_OUT,
+    /** {@link ScalingCorpusGenerator#loopNesting}. */
+    LOOP_NESTING,
+    /** {@link ScalingCorpusGenerator#distinctEffects}, capped at the number of effects given. */
+    DISTINCT_EFFECTS,
+    /** {@link ScalingCorpusGenerator#switchCases}. */
+    SWITCH_CASES;
+
+    /**
+     * Returns the name of this dimension on the command line.
+     *
+     * @return the name in lower camel case, e.g. {@code methodLength}
+     */
+    public String optionName() {
+      StringBuilder sb = new StringBuilder();
+      boolean upper = false;
+      for (char c : name().toLowerCase(Locale.ROOT).toCharArray()) {
+        if (c == '_') {
+          upper = true;
+        } else {
+          sb.append(upper ? Character.toUpperCase(c) : c);
+          upper = false;
+        }
+      }
+      return sb.toString();
+    }
+
+    /**
+     * Returns the dimension with the given command-line name.
+     *
+     * @param optionName a name returned by {@link #optionName}
+     * @return the dimension
+     */
+    public static Dimension fromOptionName(String optionName) {
+      for (Dimension d : values()) {
+        if (d.optionName().equals(optionName)) {
+          return d;
+        }
+      }
+      throw new IllegalArgumentException("Unknown dimension " + optionName);
+    }
+
+    /**
+     * Configures a generator to the given size along this dimension. The other dimensions are left
+     * at small fixed values, so that the dimension being measured dominates.
+     *
+     * @param gen a generator
+     * @param size the size
+     */
+    void configure(ScalingCorpusGenerator gen, int size) {
+      switch (this) {
+        case METHOD_LENGTH:
+          gen.methodLength(size);
+          break;
+        case NESTING_DEPTH:
+          gen.nestingDepth(size).exceptionFanOut(1);
+          break;
+        case EXCEPTION_FAN_OUT:
+          gen.nestingDepth(1).exceptionFanOut(size);
+          break;
+        case LOOP_NESTING:
+          gen.loopNesting(size).methodLength(Math.max(10, 5 * size));
+          break;
+        case DISTINCT_EFFECTS:
+          gen.distinctEffects(size);
+          break;
+        case SWITCH_CASES:
+          gen.switchCases(size);
+          break;
+        default:
+          throw new Error("Unhandled dimension " + this);
+      }
+    }
+  }
+
+  /** The measurements of one size. */
+  public static class Measurement {
+    /** The dimension grown. */
+    public final Dimension dimension;
+    /** The size along that dimension. */
+    public final int size;
+    /** The wall-clock time of checking the corpus, in nanoseconds. */
+    public final long nanos;
+    /** The bytes allocated by the checking thread, or -1 if unavailable. */
+    public final long allocatedBytes;
+    /** The number of diagnostics the checker reported. */
+    public final int diagnostics;
+
+    /**
+     * Creates a measurement.
+     *
+     * @param dimension the dimension grown
+     * @param size the size along that dimension
+     * @param nanos the time taken, in nanoseconds
+     * @param allocatedBytes the bytes allocated, or -1 if unavailable
+     * @param diagnostics the number of diagnostics reported
+     */
+    public Measurement(
+        Dimension dimension, int size, long nanos, long allocatedBytes, int diagnostics) {
+      this.dimension = dimension;
+      this.size = size;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  /** The fully-qualified name of the checker to run. */
+  private final String checker;
+
+  /** The effect annotations the generated code uses. */
+  private final List<String> effects;
+
+  /** The effect annotation on the generated methods, or null. */
+  private final String methodEffect;
+
+  /** Additional javac options, such as {@code -A} options for the checker. */
+  private final List<String> extraOptions;
+
+  /** The directory the corpora are generated into. */
+  private final File workDir;
+
+  /**
+   * Creates a harness.
+   *
+   * @param checker the fully-qualified name of the checker to run
+   * @param effects the effect annotations the generated code uses
+   * @param methodEffect the effect annotation on the generated methods, or null
+   * @param extraOptions additional javac options
+   * @param workDir the directory the corpora are generated into
+   */
+  public ScalingHarness(
+      String checker,
+      List<String> effects,
+      String methodEffect,
+      List<String> extraOptions,
+      File workDir) {
+    this.checker = checker;
+    this.effects = effects;
+    this.methodEffect = methodEffect;
+    this.extraOptions = extraOptions;
+    this.workDir = workDir;
+  }
+
+  /**
+   * Measures the checker on each size along a dimension.
+   *
+   * @param dimension the dimension to grow
+   * @param sizes the sizes, in increasing order
+   * @return one measurement per size
+   * @throws IOException if a corpus cannot be written
+   */
+  public List<Measurement> measure(Dimension dimension, List<Integer> sizes) throws IOException {
+    List<Measurement> result = new ArrayList<>();
+    if (sizes.isEmpty()) {
+      return result;
+    }
+    List<File> warmup = generate(dimension, sizes.get(0));
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      run(dimension, sizes.get(0), warmup);
+    }
+    for (int size : sizes) {
+      List<File> files = generate(dimension, size);
+      Measurement best = null;
+      for (int i = 0; i < MEASURED_RUNS; i++) {
+        Measurement m = run(dimension, size, files);
+        if (best == null || m.nanos < best.nanos) {
+          best = m;
+        }
+      }
+      result.add(best);
+    }
+    return result;
+  }
+
+  /**
+   * Generates the corpus for one size.
+   *
+   * @param dimension the dimension grown
+   * @param size the size along that dimension
+   * @return the generated files
+   * @throws IOException if the corpus cannot be written
+   */
+  private List<File> generate(Dimension dimension, int size) throws IOException {
+    ScalingCorpusGenerator gen = new ScalingCorpusGenerator(effects).methodEffect(methodEffect);
+    dimension.configure(gen, size);
+    return gen.generate(new File(workDir, dimension.optionName() + "-" + size));
+  }
+
+  /**
+   * Checks one corpus once, measuring time and allocation.
+   *
+   * @param dimension the dimension grown
+   * @param size the size along that dimension
+   * @param files the corpus
+   * @return the measurement
+   */
+  private Measurement run(Dimension dimension, int size, List<File> files) {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> options = new ArrayList<>();
+    options.add("-proc:only");
+    options.add("-processor");
+    options.add(checker);
+    options.add("-classpath");
+    options.add(System.getProperty("java.class.path"));
+    options.addAll(extraOptions);
+    try (StandardJavaFileManager fileManager =
+        javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      javac.getTask(new StringWriter(), fileManager, diagnostics, options, null, units).call();
+      long nanos = System.nanoTime() - start;
+      long allocatedAfter = allocatedBytes();
+      long allocated =
+          allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+      int count = 0;
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+        if (d.getKind() == Diagnostic.Kind.ERROR) {
+          count++;
+        }
+      }
+      return new Measurement(dimension, size, nanos, allocated, count);
+    } catch (IOException e) {
+      throw new Error("Could not close the file manager", e);
+    }
+  }
+
+  /**
+   * Returns the bytes allocated so far by the current thread, if the JVM can measure it.
+   *
+   * @return the allocated bytes, or -1 if unavailable
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the growth exponent between two measurements: the {@code k} for which the cost grows
+   * like {@code size^k}.
+   *
+   * @param previous the measurement of the smaller size
+   * @param current the measurement of the larger size
+   * @param ofTime whether to compare times; if false, allocations are compared
+   * @return the exponent, or NaN if it cannot be computed
+   */
+  public static double growthExponent(Measurement previous, Measurement current, boolean ofTime) {
+    double before = ofTime ? previous.nanos : previous.allocatedBytes;
+    double after = ofTime ? current.nanos : current.allocatedBytes;
+    if (before <= 0 || after <= 0 || previous.size <= 0 || current.size <= previous.size) {
+      return Double.NaN;
+    }
+    return Math.log(after / before) / Math.log((double) current.size / previous.size);
+  }
+
+  /**
+   * Prints a table of measurements, with growth exponents and super-linear growth flagged.
+   *
+   * @param out the destination
+   * @param measurements the measurements of one dimension, in increasing order of size
+   * @return true if any growth exponent exceeded {@link #SUPERLINEAR}
+   */
+  public static boolean report(PrintWriter out, List<Measurement> measurements) {
+    boolean superlinear = false;
+    if (measurements.isEmpty()) {
+      return false;
+    }
+    out.printf("%s%n", measurements.get(0).dimension.optionName());
+    out.printf(
+        "%10s %12s %8s %14s %8s %6s%n",
+        "size", "time (ms)", "k(time)", "alloc (KB)", "k(alloc)", "errors");
+    Measurement previous = null;
+    for (Measurement m : measurements) {
+      double kTime = previous == null ? Double.NaN : growthExponent(previous, m, true);
+      double kAlloc = previous == null ? Double.NaN : growthExponent(previous, m, false);
+      boolean flag = kTime > SUPERLINEAR || kAlloc > SUPERLINEAR;
+      superlinear |= flag;
+      out.printf(
+          "%10d %12.1f %8s %14s %8s %6d%s%n",
+          m.size,
+          m.nanos / 1e6,
+          formatExponent(kTime),
+          m.allocatedBytes < 0 ? "n/a" : String.valueOf(m.allocatedBytes / 1024),
+          formatExponent(kAlloc),
+          m.diagnostics,
+          flag ? "  <-- super-linear" : "");
+      previous = m;
+    }
+    out.flush();
+    return superlinear;
+  }
+
+  /**
+   * Formats a growth exponent for the report.
+   *
+   * @param k an exponent, or NaN
+   * @return the formatted exponent, or "-" for NaN
+   */
+  private static String formatExponent(double k) {
+    return Double.isNaN(k) ? "-" : String.format(Locale.ROOT, "%.2f", k);
+  }
+
+  /**
+   * Returns the measurements as CSV, with a header row.
+   *
+   * @param measurements the measurements
+   * @return the CSV lines
+   */
+  public static List<String> toCsv(List<Measurement> measurements) {
+    List<String> lines = new ArrayList<>();
+    lines.add("dimension,size,nanos,allocated_bytes,errors");
+    for (Measurement m : measurements) {
+      lines.add(
+          String.join(
+              ",",
+              m.dimension.optionName(),
+              String.valueOf(m.size),
+              String.valueOf(m.nanos),
+              String.valueOf(m.allocatedBytes),
+              String.valueOf(m.diagnostics)));
+    }
+    return lines;
+  }
+
+  /**
+   * Runs the harness from the command line; see the class documentation for the arguments. Exits
+   * with status 1 if any dimension grew super-linearly.
+   *
+   * @param args the command-line arguments
+   * @throws IOException if a corpus or the CSV file cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    String checker = null;
+    List<String> effects = new ArrayList<>();
+    String methodEffect = null;
+    String dimensionName = "all";
+    List<Integer> sizes = Arrays.asList(50, 100, 200, 400);
+    List<String> options = new ArrayList<>();
+    String csv = null;
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      String key = eq < 0 ? arg : arg.substring(0, eq);
+      String value = eq < 0 ? "" : arg.substring(eq + 1);
+      switch (key) {
+        case "--checker":
+          checker = value;
+          break;
+        case "--effects":
+          effects.addAll(Arrays.asList(value.split(",")));
+          break;
+        case "--method-effect":
+          methodEffect = value;
+          break;
+        case "--dimension":
+          dimensionName = value;
+          break;
+        case "--sizes":
+          sizes = new ArrayList<>();
+          for (String s : value.split(",")) {
+            sizes.add(Integer.parseInt(s.trim()));
+          }
+          break;
+        case "--option":
+          options.add(value);
+          break;
+        case "--csv":
+          csv = value;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown argument " + arg);
+      }
+    }
+    if (checker == null || effects.isEmpty()) {
+      throw new IllegalArgumentException("--checker and --effects are required");
+    }
+
+    List<Dimension> dimensions =
+        dimensionName.equals("all")
+            ? Arrays.asList(Dimension.values())
+            : Arrays.asList(Dimension.fromOptionName(dimensionName));
+    File workDir = Files.createTempDirectory("effect-scaling").toFile();
+    ScalingHarness harness = new ScalingHarness(checker, effects, methodEffect, options, workDir);
+    PrintWriter out = new PrintWriter(System.out);
+    List<Measurement> all = new ArrayList<>();
+    boolean superlinear = false;
+    for (Dimension d : dimensions) {
+      List<Integer> dimSizes = sizes;
+      if (d == Dimension.DISTINCT_EFFECTS) {
+        dimSizes = new ArrayList<>();
+        for (int i = 1; i <= effects.size(); i++) {
+          dimSizes.add(i);
+        }
+      }
+      List<Measurement> measurements = harness.measure(d, dimSizes);
+      superlinear |= report(out, measurements);
+      out.println();
+      all.addAll(measurements);
+    }
+    out.printf("Corpora were generated in %s%n", workDir);
+    out.flush();
+    if (csv != null) {
+      Files.write(new File(csv).toPath(), toCsv(all), StandardCharsets.UTF_8);
+    }
+    if (superlinear) {
+      System.exit(1);
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package org.checkerframework.framework.flow;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +32,7 @@ import org.checkerframework.dataflow.expression.LocalVariable;
 import org.checkerframework.dataflow.expression.MethodCall;
 import org.checkerframework.dataflow.expression.ThisReference;
 import org.checkerframework.dataflow.qual.SideEffectFree;
+import org.checkerframework.dataflow.util.PersistentHashMap;
 import org.checkerframework.dataflow.util.PurityUtils;
 import org.checkerframework.framework.qual.MonotonicQualifier;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
@@ -41,7 +41,6 @@ import org.checkerframework.javacutil.AnnotationBuilder;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.Pair;
-import org.plumelib.util.CollectionsPlume;
 import org.plumelib.util.ToStringComparator;
 import org.plumelib.util.UniqueId;
 
@@ -66,7 +65,12 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
   /** The analysis class this store belongs to. */
   protected final CFAbstractAnalysis<V, S, ?> analysis;
 
-  /** Information collected about local variables (including method parameters). */
+  /**
+   * Information collected about local variables (including method parameters).
+   *
+   * <p>This map and the other maps of values never map a key to null: an expression without a known
+   * value is left out of the map instead.
+   */
   protected final Map<LocalVariable, V> localVariableValues;
 
   /** Information collected about the current object. */
@@ -130,24 +134,24 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
    */
   protected CFAbstractStore(CFAbstractAnalysis<V, S, ?> analysis, boolean sequentialSemantics) {
     this.analysis = analysis;
-    localVariableValues = new HashMap<>();
+    localVariableValues = new PersistentHashMap<>();
     thisValue = null;
-    fieldValues = new HashMap<>();
-    methodValues = new HashMap<>();
-    arrayValues = new HashMap<>();
-    classValues = new HashMap<>();
+    fieldValues = new PersistentHashMap<>();
+    methodValues = new PersistentHashMap<>();
+    arrayValues = new PersistentHashMap<>();
+    classValues = new PersistentHashMap<>();
     this.sequentialSemantics = sequentialSemantics;
   }
 
-  /** Copy constructor. */
+  /** Copy constructor. The maps share their entries with {@code other}'s until either changes. */
   protected CFAbstractStore(CFAbstractStore<V, S> other) {
     this.analysis = other.analysis;
-    localVariableValues = new HashMap<>(other.localVariableValues);
+    localVariableValues = PersistentHashMap.copyOf(other.localVariableValues);
     thisValue = other.thisValue;
-    fieldValues = new HashMap<>(other.fieldValues);
-    methodValues = new HashMap<>(other.methodValues);
-    arrayValues = new HashMap<>(other.arrayValues);
-    classValues = new HashMap<>(other.classValues);
+    fieldValues = PersistentHashMap.copyOf(other.fieldValues);
+    methodValues = PersistentHashMap.copyOf(other.methodValues);
+    arrayValues = PersistentHashMap.copyOf(other.arrayValues);
+    classValues = PersistentHashMap.copyOf(other.classValues);
     sequentialSemantics = other.sequentialSemantics;
   }
 
@@ -235,8 +239,7 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
       if (sideEffectsUnrefineAliases) {
         fieldValues.entrySet().removeIf(e -> !e.getKey().isUnmodifiableByOtherCode());
       } else {
-        Map<FieldAccess, V> newFieldValues =
-            new HashMap<>(CollectionsPlume.mapCapacity(fieldValues));
+        Map<FieldAccess, V> newFieldValues = new PersistentHashMap<>();
         for (Map.Entry<FieldAccess, V> e : fieldValues.entrySet()) {
           FieldAccess fieldAccess = e.getKey();
           V otherVal = e.getValue();
@@ -1086,20 +1089,8 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
   private S upperBound(S other, boolean shouldWiden) {
     S newStore = analysis.createEmptyStore(sequentialSemantics);
 
-    for (Map.Entry<LocalVariable, V> e : other.localVariableValues.entrySet()) {
-      // local variables that are only part of one store, but not the other are discarded, as one of
-      // store implicitly contains 'top' for that variable.
-      LocalVariable localVar = e.getKey();
-      V thisVal = localVariableValues.get(localVar);
-      if (thisVal != null) {
-        V otherVal = e.getValue();
-        V mergedVal = upperBoundOfValues(otherVal, thisVal, shouldWiden);
-
-        if (mergedVal != null) {
-          newStore.localVariableValues.put(localVar, mergedVal);
-        }
-      }
-    }
+    upperBoundOfMaps(
+        localVariableValues, other.localVariableValues, newStore.localVariableValues, shouldWiden);
 
     // information about the current object
     {
@@ -1111,57 +1102,49 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
       }
     }
 
-    for (Map.Entry<FieldAccess, V> e : other.fieldValues.entrySet()) {
-      // information about fields that are only part of one store, but not the other are discarded,
-      // as one store implicitly contains 'top' for that field.
-      FieldAccess el = e.getKey();
-      V thisVal = fieldValues.get(el);
-      if (thisVal != null) {
-        V otherVal = e.getValue();
-        V mergedVal = upperBoundOfValues(otherVal, thisVal, shouldWiden);
-        if (mergedVal != null) {
-          newStore.fieldValues.put(el, mergedVal);
-        }
-      }
-    }
-    for (Map.Entry<ArrayAccess, V> e : other.arrayValues.entrySet()) {
-      // information about arrays that are only part of one store, but not the other are discarded,
-      // as one store implicitly contains 'top' for that array access.
-      ArrayAccess el = e.getKey();
-      V thisVal = arrayValues.get(el);
-      if (thisVal != null) {
-        V otherVal = e.getValue();
-        V mergedVal = upperBoundOfValues(otherVal, thisVal, shouldWiden);
-        if (mergedVal != null) {
-          newStore.arrayValues.put(el, mergedVal);
-        }
-      }
-    }
-    for (Map.Entry<MethodCall, V> e : other.methodValues.entrySet()) {
-      // information about methods that are only part of one store, but not the other are discarded,
-      // as one store implicitly contains 'top' for that field.
-      MethodCall el = e.getKey();
-      V thisVal = methodValues.get(el);
-      if (thisVal != null) {
-        V otherVal = e.getValue();
-        V mergedVal = upperBoundOfValues(otherVal, thisVal, shouldWiden);
-        if (mergedVal != null) {
-          newStore.methodValues.put(el, mergedVal);
-        }
-      }
+    upperBoundOfMaps(fieldValues, other.fieldValues, newStore.fieldValues, shouldWiden);
+    upperBoundOfMaps(arrayValues, other.arrayValues, newStore.arrayValues, shouldWiden);
+    upperBoundOfMaps(methodValues, other.methodValues, newStore.methodValues, shouldWiden);
+    upperBoundOfMaps(classValues, other.classValues, newStore.classValues, shouldWiden);
+    return newStore;
+  }
+
+  /**
+   * Put the upper bounds of the values of the keys two maps have in common into a third map. Keys
+   * that are only in one of the maps are discarded, as the other store implicitly contains 'top'
+   * for them.
+   *
+   * @param <K> the type of keys
+   * @param thisValues the values of this store
+   * @param otherValues the values of the other store
+   * @param result the map to put the upper bounds into
+   * @param shouldWiden whether to widen instead of taking the least upper bound
+   */
+  private <K> void upperBoundOfMaps(
+      Map<K, V> thisValues, Map<K, V> otherValues, Map<K, V> result, boolean shouldWiden) {
+    if (!shouldWiden
+        && thisValues instanceof PersistentHashMap
+        && otherValues instanceof PersistentHashMap) {
+      // The least upper bound of a value with itself is the value (see the contract of
+      // CFAbstractValue.leastUpperBound), so the entries the two maps share need not be visited.
+      result.putAll(
+          ((PersistentHashMap<K, V>) thisValues)
+              .intersect(
+                  (PersistentHashMap<K, V>) otherValues,
+                  (thisVal, otherVal) -> upperBoundOfValues(otherVal, thisVal, false)));
+      return;
     }
-    for (Map.Entry<ClassName, V> e : other.classValues.entrySet()) {
-      ClassName el = e.getKey();
-      V thisVal = classValues.get(el);
+    for (Map.Entry<K, V> e : otherValues.entrySet()) {
+      K key = e.getKey();
+      V thisVal = thisValues.get(key);
       if (thisVal != null) {
         V otherVal = e.getValue();
         V mergedVal = upperBoundOfValues(otherVal, thisVal, shouldWiden);
         if (mergedVal != null) {
-          newStore.classValues.put(el, mergedVal);
+          result.put(key, mergedVal);
         }
       }
     }
-    return newStore;
   }
 
   private V upperBoundOfValues(V otherVal, V thisVal, boolean shouldWiden) {
@@ -1175,40 +1158,29 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
    * predicate.
    */
   protected boolean supersetOf(CFAbstractStore<V, S> other) {
-    for (Map.Entry<LocalVariable, V> e : other.localVariableValues.entrySet()) {
-      LocalVariable key = e.getKey();
-      V value = localVariableValues.get(key);
-      if (value == null || !value.equals(e.getValue())) {
-        return false;
-      }
-    }
-    if (!Objects.equals(thisValue, other.thisValue)) {
-      return false;
-    }
-    for (Map.Entry<FieldAccess, V> e : other.fieldValues.entrySet()) {
-      FieldAccess key = e.getKey();
-      V value = fieldValues.get(key);
-      if (value == null || !value.equals(e.getValue())) {
-        return false;
-      }
-    }
-    for (Map.Entry<ArrayAccess, V> e : other.arrayValues.entrySet()) {
-      ArrayAccess key = e.getKey();
-      V value = arrayValues.get(key);
-      if (value == null || !value.equals(e.getValue())) {
-        return false;
-      }
-    }
-    for (Map.Entry<MethodCall, V> e : other.methodValues.entrySet()) {
-      MethodCall key = e.getKey();
-      V value = methodValues.get(key);
-      if (value == null || !value.equals(e.getValue())) {
-        return false;
-      }
+    return Objects.equals(thisValue, other.thisValue)
+        && containsAllEntries(localVariableValues, other.localVariableValues)
+        && containsAllEntries(fieldValues, other.fieldValues)
+        && containsAllEntries(arrayValues, other.arrayValues)
+        && containsAllEntries(methodValues, other.methodValues)
+        && containsAllEntries(classValues, other.classValues);
+  }
+
+  /**
+   * Returns true iff one map contains every entry of another, comparing values by Java equality.
+   *
+   * @param <K> the type of keys
+   * @param thisValues the values of this store
+   * @param otherValues the values of the other store
+   * @return true iff each key of {@code otherValues} maps to an equal value in {@code thisValues}
+   */
+  private <K> boolean containsAllEntries(Map<K, V> thisValues, Map<K, V> otherValues) {
+    if (thisValues instanceof PersistentHashMap && otherValues instanceof PersistentHashMap) {
+      return ((PersistentHashMap<K, V>) thisValues)
+          .containsAllEntries((PersistentHashMap<K, V>) otherValues);
     }
-    for (Map.Entry<ClassName, V> e : other.classValues.entrySet()) {
-      ClassName key = e.getKey();
-      V value = classValues.get(key);
+    for (Map.Entry<K, V> e : otherValues.entrySet()) {
+      V value = thisValues.get(e.getKey());
       if (value == null || !value.equals(e.getValue())) {
         return false;
       }
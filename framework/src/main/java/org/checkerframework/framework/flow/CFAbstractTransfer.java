@@ -10,7 +10,6 @@ import com.sun.tools.javac.code.Symbol.ClassSymbol;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +60,7 @@ import org.checkerframework.dataflow.expression.FieldAccess;
 import org.checkerframework.dataflow.expression.JavaExpression;
 import org.checkerframework.dataflow.expression.LocalVariable;
 import org.checkerframework.dataflow.util.NodeUtils;
+import org.checkerframework.dataflow.util.PersistentHashMap;
 import org.checkerframework.framework.flow.CFAbstractAnalysis.FieldInitialValue;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
@@ -344,12 +344,16 @@ public abstract class CFAbstractTransfer<
       }
 
       // We want the initialization stuff, but need to throw out any refinements.
-      Map<FieldAccess, V> fieldValuesClone = new HashMap<>(store.fieldValues);
+      Map<FieldAccess, V> fieldValuesClone = PersistentHashMap.copyOf(store.fieldValues);
       for (Map.Entry<FieldAccess, V> fieldValue : fieldValuesClone.entrySet()) {
         AnnotatedTypeMirror declaredType = factory.getAnnotatedType(fieldValue.getKey().getField());
         V lubbedValue =
             analysis.createAbstractValue(declaredType).leastUpperBound(fieldValue.getValue());
-        store.fieldValues.put(fieldValue.getKey(), lubbedValue);
+        if (lubbedValue != null) {
+          store.fieldValues.put(fieldValue.getKey(), lubbedValue);
+        } else {
+          store.fieldValues.remove(fieldValue.getKey());
+        }
       }
     } else {
       assert false : "Unexpected tree: " + underlyingAST;
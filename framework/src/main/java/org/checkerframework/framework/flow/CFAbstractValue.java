@@ -375,6 +375,13 @@ public abstract class CFAbstractValue<V extends CFAbstractValue<V>> implements A
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>In addition, subclasses that override this method must keep it idempotent: the least upper
+   * bound of a value with an equal value must be equal to that value. {@link CFAbstractStore}
+   * relies on this to skip the entries two stores share when it joins them.
+   */
   @Override
   public V leastUpperBound(@Nullable V other) {
     return upperBound(other, false);
@@ -277,11 +277,10 @@ public abstract class GenericAnnotatedTypeFactory<
 
   /**
    * Caches for {@link AnalysisResult#runAnalysisFor(Node, Analysis.BeforeOrAfter, TransferInput,
-   * IdentityHashMap, Map)}. This cache is enabled if {@link #shouldCache} is true. The cache size
-   * is derived from {@link #getCacheSize()}.
+   * Map, Map)}. This cache is enabled if {@link #shouldCache} is true. The cache size is derived
+   * from {@link #getCacheSize()}.
    *
-   * @see AnalysisResult#runAnalysisFor(Node, Analysis.BeforeOrAfter, TransferInput,
-   *     IdentityHashMap, Map)
+   * @see AnalysisResult#runAnalysisFor(Node, Analysis.BeforeOrAfter, TransferInput, Map, Map)
    */
   protected final Map<
           TransferInput<Value, Store>, IdentityHashMap<Node, TransferResult<Value, Store>>>
@@ -1272,6 +1271,11 @@ public abstract class GenericAnnotatedTypeFactory<
    * Perform a org.checkerframework.dataflow analysis over a single class tree and its nested
    * classes.
    *
+   * <p>The methods, lambdas and initializers are analyzed one at a time, with the single {@link
+   * #analysis} and {@link #transfer}. They cannot be analyzed concurrently: the transfer function
+   * sets per-method state on both, it queries this factory (whose caches are not synchronized) for
+   * types, and those queries complete symbols through javac, which is not thread-safe.
+   *
    * @param classTree the class to analyze
    */
   protected void performFlowAnalysis(ClassTree classTree) {